@@ -0,0 +1,104 @@
+package gopher.benchmark;
+
+import gopher.io.GenomeSequenceReader;
+import gopher.service.model.RestrictionEnzyme;
+import gopher.service.model.digest.CutSiteScanner;
+import gopher.service.model.digest.CutSites;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Input data of the benchmarks. The benchmarks use the genomes in {@code src/test/resources} (they are run from the
+ * project directory), and the data that is not bundled, such as an alignability map for the 600 kb excerpt of chr11,
+ * is generated with a fixed seed, so that every run (and every version of GOPHER) measures the same work.
+ */
+public final class BenchmarkData {
+
+    /** 600 kb of chr11 of hg19. */
+    public static final String SMALL_GENOME = "src/test/resources/smallgenome/chr11_0-600000.fa";
+    /** Name of the chromosome in {@link #SMALL_GENOME}. */
+    public static final String CHROMOSOME = "chr11";
+    /** Alignability map (bedGraph) and chromosome sizes of the sequences in testAlignabilityMap.fa. */
+    public static final String TEST_ALIGNABILITY_MAP = "src/test/resources/testAlignabilityMap/testAlignabilityMap.bedgraph.gz";
+    public static final String TEST_CHROM_INFO = "src/test/resources/testAlignabilityMap/chromInfo.txt.gz";
+    /** Small genome of the tests with six short sequences (e.g., with only DpnII or only HindIII sites). */
+    public static final String TEST_GENOME = "src/test/resources/testgenome/test_genome.fa";
+    /** Excerpt of the refGene file of hg19. */
+    public static final String REFGENE = "src/test/resources/refGeneSmall.txt.gz";
+    /** Name of the generated chromosome sizes file (see {@link #writeAlignabilityMap}). */
+    public static final String CHROM_INFO_NAME = "chromInfo.txt.gz";
+    /** Seed of all random data of the benchmarks. */
+    public static final long SEED = 42L;
+
+    public static final RestrictionEnzyme DPNII = new RestrictionEnzyme("DpnII", "^GATC");
+    public static final RestrictionEnzyme HINDIII = new RestrictionEnzyme("HindIII", "A^AGCTT");
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Write an alignability map of {@link #CHROMOSOME} in the format of the bedGraph files from UCSC, i.e., regions of
+     * random lengths with the scores 1/1 (unique k-mers, most regions), 1/2, 1/3 or 1/4. The first and last kb of the
+     * chromosome are not covered, as with the N's at the ends of real chromosomes. The file {@link #CHROM_INFO_NAME}
+     * with the size of the chromosome is written to the same directory.
+     * @param dir directory for the files
+     * @return path of the (gzipped) bedGraph file
+     */
+    public static Path writeAlignabilityMap(Path dir) throws IOException {
+        int length;
+        try (GenomeSequenceReader reader = new GenomeSequenceReader(SMALL_GENOME)) {
+            length = reader.getLength(CHROMOSOME);
+        }
+        try (Writer w = gzipWriter(dir.resolve(CHROM_INFO_NAME))) {
+            w.write(String.format("%s\t%d\t/gbdb/hg19/hg19.2bit\n", CHROMOSOME, length));
+        }
+        String[] scores = {"1", "1", "1", "1", "1", "0.5", "0.333333", "0.25"};
+        Random random = new Random(SEED);
+        Path bedGraph = dir.resolve("alignability.bedgraph.gz");
+        try (Writer w = gzipWriter(bedGraph)) {
+            int start = 1000;
+            while (start < length - 1000) {
+                int end = Math.min(start + 1 + random.nextInt(400), length - 1000);
+                w.write(String.format("%s\t%d\t%d\t%s\n", CHROMOSOME, start, end, scores[random.nextInt(scores.length)]));
+                start = end;
+            }
+        }
+        return bedGraph;
+    }
+
+    /**
+     * Delete a directory with generated data (see {@link #writeAlignabilityMap}) and its files.
+     * @param dir directory created by a benchmark
+     */
+    public static void deleteDirectory(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static Writer gzipWriter(Path path) throws IOException {
+        OutputStream out = new GZIPOutputStream(Files.newOutputStream(path));
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param reader genome
+     * @param chrom name of a chromosome
+     * @param enzymes restriction enzymes
+     * @return the (one-based) positions at which the enzymes cut the chromosome
+     */
+    public static int[] cutPositions(GenomeSequenceReader reader, String chrom, List<RestrictionEnzyme> enzymes) {
+        CutSites cuts = new CutSiteScanner(enzymes).scan(reader.getBases(chrom), 1);
+        return cuts.getPositions();
+    }
+}
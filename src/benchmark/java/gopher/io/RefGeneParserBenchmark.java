@@ -0,0 +1,31 @@
+package gopher.io;
+
+import gopher.benchmark.BenchmarkData;
+import gopher.service.model.GopherGene;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of reading the target genes from the excerpt of the refGene file with {@link RefGeneParser}: parsing the
+ * file, checking the gene symbols of the user and creating the {@link GopherGene} objects.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RefGeneParserBenchmark {
+
+    /** Gene symbols as entered by the user, including one that is not in the refGene file. */
+    private final List<String> symbols = List.of("WASH7P", "CUEDC1", "DKC1", "FAM216B", "LINC01010", "FAKE");
+
+    @Benchmark
+    public List<GopherGene> parseAndCheckGenes() {
+        RefGeneParser parser = new RefGeneParser(BenchmarkData.REFGENE);
+        parser.checkGenes(symbols);
+        return parser.getGopherGeneList();
+    }
+}
@@ -0,0 +1,114 @@
+package gopher.service.model.digest;
+
+import gopher.benchmark.BenchmarkData;
+import gopher.io.GenomeSequenceReader;
+import gopher.service.model.Default;
+import gopher.service.model.viewpoint.Segment;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the digest of the 600 kb excerpt of chr11 with DpnII and HindIII: cutting the chromosome with
+ * {@link GenomeDigester#cutOneChromosome}, and looking up the selected fragments in {@link SelectedSegments} (which
+ * replaced the binary tree of the selected segments), both in the order of the digests and in random order. The
+ * digest of the small genome of the tests, whose sequences are only a few hundred bp long, measures the work per
+ * chromosome (which matters for genomes with many short contigs).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GenomeDigesterBenchmark {
+
+    private byte[] sequence;
+    private GenomeDigester digester;
+    /** Sequences of {@link BenchmarkData#TEST_GENOME} in the order of the FASTA file. */
+    private final Map<String, byte[]> testGenome = new LinkedHashMap<>();
+    private GenomeDigester testGenomeDigester;
+    /** Every fourth DpnII fragment of the chromosome. */
+    private SelectedSegments selectedSegments;
+    /** Start positions of all DpnII fragments (in ascending order). */
+    private int[] fragmentStarts;
+    /** The start positions in random (but fixed) order. */
+    private int[] shuffledStarts;
+
+    @Setup
+    public void setup() throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        try (GenomeSequenceReader reader = new GenomeSequenceReader(BenchmarkData.SMALL_GENOME)) {
+            sequence = reader.getBases(BenchmarkData.CHROMOSOME);
+            fragmentStarts = BenchmarkData.cutPositions(reader, BenchmarkData.CHROMOSOME, List.of(BenchmarkData.DPNII));
+            for (int i = 0; i + 1 < fragmentStarts.length; i += 4) {
+                segments.add(new Segment(BenchmarkData.CHROMOSOME, fragmentStarts[i], fragmentStarts[i + 1] - 1,
+                        reader, Default.MARGIN_SIZE));
+            }
+            selectedSegments = new SelectedSegments(segments);
+        }
+        digester = new GenomeDigester(List.of(BenchmarkData.DPNII, BenchmarkData.HINDIII), BenchmarkData.SMALL_GENOME,
+                List.of(), Default.MARGIN_SIZE);
+        try (GenomeSequenceReader reader = new GenomeSequenceReader(BenchmarkData.TEST_GENOME)) {
+            for (String name : reader.getContigNames()) {
+                testGenome.put(name, reader.getBases(name));
+            }
+        }
+        testGenomeDigester = new GenomeDigester(List.of(BenchmarkData.DPNII, BenchmarkData.HINDIII),
+                BenchmarkData.TEST_GENOME, List.of(), Default.MARGIN_SIZE);
+        shuffledStarts = fragmentStarts.clone();
+        Random random = new Random(BenchmarkData.SEED);
+        for (int i = shuffledStarts.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = shuffledStarts[i];
+            shuffledStarts[i] = shuffledStarts[j];
+            shuffledStarts[j] = tmp;
+        }
+    }
+
+    @Benchmark
+    public List<DetailedDigest> cutOneChromosome() {
+        return digester.cutOneChromosome(BenchmarkData.CHROMOSOME, sequence);
+    }
+
+    /** Digest all sequences of the small genome of the tests. */
+    @Benchmark
+    public int cutTestGenome() {
+        int n = 0;
+        for (Map.Entry<String, byte[]> e : testGenome.entrySet()) {
+            n += testGenomeDigester.cutOneChromosome(e.getKey(), e.getValue()).size();
+        }
+        return n;
+    }
+
+    /** Look up all fragments in the order of their positions, as when the digest file is written. */
+    @Benchmark
+    public int selectedSegmentsCursor() {
+        SelectedSegments.Cursor cursor = selectedSegments.cursor(BenchmarkData.CHROMOSOME);
+        int n = 0;
+        for (int pos : fragmentStarts) {
+            if (cursor.find(pos) >= 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** Look up all fragments in random order. */
+    @Benchmark
+    public int selectedSegmentsContains() {
+        int n = 0;
+        for (int pos : shuffledStarts) {
+            if (selectedSegments.contains(BenchmarkData.CHROMOSOME, pos)) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,59 @@
+package gopher.service.model.viewpoint;
+
+import gopher.benchmark.BenchmarkData;
+import gopher.service.model.Default;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of parsing (gzipped) alignability maps with {@link AlignabilityMapIterator}: the small map of the tests
+ * with three chromosomes, and a generated map of the 600 kb excerpt of chr11 with about 3000 regions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AlignabilityMapIteratorBenchmark {
+
+    /** Directory with the generated alignability map. */
+    private Path dir;
+    private String bedGraphPath;
+    private String chromInfoPath;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("gopher-benchmark");
+        bedGraphPath = BenchmarkData.writeAlignabilityMap(dir).toString();
+        chromInfoPath = dir.resolve(BenchmarkData.CHROM_INFO_NAME).toString();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteDirectory(dir);
+    }
+
+    private static int parse(String bedGraph, String chromInfo) throws IOException {
+        AlignabilityMapIterator iterator = new AlignabilityMapIterator(bedGraph, chromInfo, Default.KMER_SIZE);
+        int n = 0;
+        while (iterator.hasNext()) {
+            n += iterator.next().getSize();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int testAlignabilityMap() throws IOException {
+        return parse(BenchmarkData.TEST_ALIGNABILITY_MAP, BenchmarkData.TEST_CHROM_INFO);
+    }
+
+    @Benchmark
+    public int smallGenomeAlignabilityMap() throws IOException {
+        return parse(bedGraphPath, chromInfoPath);
+    }
+}
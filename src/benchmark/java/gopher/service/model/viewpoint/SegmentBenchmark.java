@@ -0,0 +1,103 @@
+package gopher.service.model.viewpoint;
+
+import gopher.benchmark.BenchmarkData;
+import gopher.io.GenomeSequenceReader;
+import gopher.service.GopherService;
+import gopher.service.impl.GopherServiceImpl;
+import gopher.service.model.Default;
+import gopher.service.model.GopherModel;
+import gopher.service.model.RestrictionEnzyme;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the creation of viewpoints on the 600 kb excerpt of chr11: finding the cuts around the genomic
+ * positions with {@link SegmentFactory}, and calculating the G/C and repeat contents and placing the baits of the
+ * {@link Segment} objects of all DpnII fragments with {@link Segment#setUsableBaits}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SegmentBenchmark {
+
+    /** Number of genomic positions (viewpoints) for {@link #segmentFactory}. */
+    private static final int N_POSITIONS = 200;
+
+    private final List<RestrictionEnzyme> enzymes = List.of(BenchmarkData.DPNII, BenchmarkData.HINDIII);
+
+    private GenomeSequenceReader reader;
+    /** Directory with the generated alignability map. */
+    private Path dir;
+    private int chromosomeLength;
+    private AlignabilityMap alignabilityMap;
+    private GopherService service;
+    /** Positions at which DpnII cuts, i.e., the boundaries of the fragments. */
+    private int[] cuts;
+    /** Random (but fixed) genomic positions for {@link #segmentFactory}. */
+    private int[] genomicPositions;
+
+    @Setup
+    public void setup() throws IOException {
+        reader = new GenomeSequenceReader(BenchmarkData.SMALL_GENOME);
+        chromosomeLength = reader.getLength(BenchmarkData.CHROMOSOME);
+        dir = Files.createTempDirectory("gopher-benchmark");
+        Path bedGraph = BenchmarkData.writeAlignabilityMap(dir);
+        AlignabilityMapIterator iterator = new AlignabilityMapIterator(bedGraph.toString(),
+                dir.resolve(BenchmarkData.CHROM_INFO_NAME).toString(), Default.KMER_SIZE);
+        alignabilityMap = iterator.next();
+        service = new GopherServiceImpl(new GopherModel());
+        service.setMinBaitCount(Default.MIN_BAIT_NUMBER);
+        service.setProbeLength(Default.BAIT_LENGTH);
+        service.setMinGCcontent(Default.MIN_GC_CONTENT);
+        service.setMaxGCcontent(Default.MAX_GC_CONTENT);
+        cuts = BenchmarkData.cutPositions(reader, BenchmarkData.CHROMOSOME, List.of(BenchmarkData.DPNII));
+        Random random = new Random(BenchmarkData.SEED);
+        genomicPositions = random.ints(N_POSITIONS, 1, chromosomeLength).toArray();
+        SegmentFactory.setRestrictionEnzymeMap(Map.of("GATC", BenchmarkData.DPNII, "AAGCTT", BenchmarkData.HINDIII));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        BenchmarkData.deleteDirectory(dir);
+    }
+
+    /** G/C and repeat contents and baits of all DpnII fragments of at least 120 bp. */
+    @Benchmark
+    public int segmentsWithBaits() {
+        int baits = 0;
+        for (int i = 1; i < cuts.length; i++) {
+            int start = cuts[i - 1];
+            int end = cuts[i] - 1;
+            if (end - start + 1 < Default.MINIMUM_FRAGMENT_SIZE) {
+                continue;
+            }
+            Segment segment = new Segment(BenchmarkData.CHROMOSOME, start, end, reader, Default.MARGIN_SIZE);
+            segment.setUsableBaits(service, alignabilityMap, Default.MAXIMUM_KMER_ALIGNABILITY);
+            baits += segment.getBaitNumTotal();
+        }
+        return baits;
+    }
+
+    /** Cuts of DpnII and HindIII in the windows around the genomic positions (as for the extended approach, without index). */
+    @Benchmark
+    public int segmentFactory() {
+        int n = 0;
+        for (int pos : genomicPositions) {
+            SegmentFactory factory = new SegmentFactory(BenchmarkData.CHROMOSOME, pos, reader, chromosomeLength,
+                    Default.SIZE_UPSTREAM, Default.SIZE_DOWNSTREAM, enzymes);
+            n += factory.getAllCuts().size();
+        }
+        return n;
+    }
+}
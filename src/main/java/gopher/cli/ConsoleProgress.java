@@ -0,0 +1,45 @@
+package gopher.cli;
+
+import gopher.util.GopherTask;
+
+import java.io.PrintStream;
+
+/**
+ * Prints the progress of a task that is run headless to a stream (usually stdout). Tasks such as the creation of
+ * viewpoints report a message for every gene, and so we only print a line when the progress has advanced by at least
+ * one percent (with the latest message), and when the title changes.
+ */
+class ConsoleProgress implements GopherTask.ProgressListener {
+    private final PrintStream out;
+    /** Name of the step of the pipeline, printed at the start of each line. */
+    private final String step;
+    private int lastPercent = -1;
+    private String lastMessage = "";
+
+    ConsoleProgress(PrintStream out, String step) {
+        this.out = out;
+        this.step = step;
+    }
+
+    @Override
+    public synchronized void progress(double workDone, double max) {
+        if (max <= 0) {
+            return;
+        }
+        int percent = (int) Math.max(0, Math.min(100, 100 * workDone / max));
+        if (percent > lastPercent) {
+            lastPercent = percent;
+            out.printf("[%s] %3d%% %s%n", step, percent, lastMessage);
+        }
+    }
+
+    @Override
+    public synchronized void message(String message) {
+        lastMessage = message == null ? "" : message;
+    }
+
+    @Override
+    public synchronized void title(String title) {
+        out.printf("[%s] %s%n", step, title);
+    }
+}
@@ -0,0 +1,231 @@
+package gopher.cli;
+
+import gopher.exception.GopherException;
+import gopher.io.*;
+import gopher.service.GopherService;
+import gopher.service.impl.GopherServiceImpl;
+import gopher.service.model.Design;
+import gopher.service.model.GopherModel;
+import gopher.service.model.GopherReport;
+import gopher.service.model.RestrictionEnzyme;
+import gopher.service.model.digest.DigestCreationTask;
+import gopher.service.model.digest.DigestStatistics;
+import gopher.service.model.digest.MultiEnzymeDigestSweepTask;
+import gopher.service.model.viewpoint.ExtendedViewPointCreationTask;
+import gopher.service.model.viewpoint.SimpleViewPointCreationTask;
+import gopher.service.model.viewpoint.ViewPoint;
+import gopher.service.model.viewpoint.ViewPointCreationTask;
+import gopher.util.GopherTask;
+import gopher.util.Metrics;
+import gopher.util.SerializationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs the steps of a panel design without the GUI, in the same way as the corresponding buttons of the main window:
+ * <ol>
+ *     <li>extract and index the genome, if this has not been done yet (nothing is downloaded)</li>
+ *     <li>read the target genes (or the BED file)</li>
+ *     <li>create the viewpoints with the simple or extended approach</li>
+ *     <li>write the project file (which can be opened in the GUI), the digest file, the BED files, the probe file,
+ *     the report, the timers and counters of the run (see {@link Metrics}) and the design statistics</li>
+ *     <li>optionally, compare the digests of several enzymes in a summary report (see
+ *     {@link DesignSettings#SWEEP_ENZYMES})</li>
+ * </ol>
+ * The tasks are run with {@link GopherTask#runHeadless} on the thread that calls {@link #run()}, and the viewpoints and
+ * digests are calculated on the given thread pool.
+ */
+public class DesignPipeline {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DesignPipeline.class.getName());
+
+    private final DesignSettings settings;
+    private final GopherModel model;
+    private final GopherService service;
+    /** Thread pool for the calculation of viewpoints, digests and indices. */
+    private final ExecutorService executor;
+    /** Stream to which the progress of the steps is written. */
+    private final PrintStream out;
+
+    public DesignPipeline(DesignSettings settings, ExecutorService executor, PrintStream out) {
+        this.settings = settings;
+        this.model = new GopherModel();
+        this.service = new GopherServiceImpl(model);
+        this.executor = executor;
+        this.out = out;
+    }
+
+    /** @return the project, e.g., to inspect the viewpoints after {@link #run()} */
+    public GopherService getService() {
+        return service;
+    }
+
+    /**
+     * Run all steps of the design. The {@link Metrics} are reset first, so that the metrics file only contains
+     * this run.
+     * @throws Exception if a setting is invalid, an input file cannot be read or a step fails
+     */
+    public void run() throws Exception {
+        Metrics.reset();
+        settings.apply(service);
+        prepareGenome();
+        readTargets();
+        createViewPoints();
+        writeResults();
+        sweepEnzymes();
+    }
+
+    /** Run one task and report its progress and duration (which is also recorded in {@link Metrics}). */
+    private <V> V runTask(String step, GopherTask<V> task) throws Exception {
+        long start = System.nanoTime();
+        V result = task.runHeadless(new ConsoleProgress(out, step));
+        long nanos = System.nanoTime() - start;
+        Metrics.timer("pipeline." + step.replace(' ', '_')).record(nanos);
+        out.printf("[%s] done in %.1f s%n", step, nanos / 1e9);
+        return result;
+    }
+
+    /** Extract the genome from the downloaded archive and index it if needed. */
+    private void prepareGenome() throws Exception {
+        String fasta = service.getGenomeFastaFile();
+        if (! new File(fasta).isFile()) {
+            GenomeGunZipper gunZipper = new GenomeGunZipper(service.getGenome(), null);
+            if (! gunZipper.gZippedFileExists()) {
+                throw new GopherException(String.format("Could not find the genome %s or the downloaded archive %s in %s",
+                        model.getGenome().getGenomeFastaName(), service.getGenomeBasename(), service.getGenomeDirectoryPath()));
+            }
+            runTask("extract genome", gunZipper);
+        }
+        service.setGenomeUnpacked();
+        Faidx faidx = new Faidx(model, null, executor);
+        runTask("index genome", faidx);
+        model.setIndexedGenomeFastaIndexFile(faidx.getGenomeFastaIndexPath());
+        service.setGenomeIndexed(true);
+    }
+
+    /** Read the target genes and pass the {@link gopher.service.model.GopherGene} objects to the project. */
+    private void readTargets() throws GopherException {
+        GopherModel.TargetType targetType = settings.getTargetType();
+        switch (targetType) {
+            case TARGET_GENES -> {
+                String path = settings.getTargetsPath();
+                service.setTargetGenesPath(path);
+                RefGeneParser parser = new RefGeneParser(service.getRefGenePath());
+                parser.checkGenes(readGeneSymbols(path));
+                if (! parser.getInvalidGeneSymbols().isEmpty()) {
+                    LOGGER.warn("Ignoring {} invalid gene symbols: {}", parser.getInvalidGeneSymbols().size(),
+                            String.join(", ", parser.getInvalidGeneSymbols()));
+                }
+                setGenes(parser, parser.getValidGeneSymbols().size());
+            }
+            case ALL_GENES -> {
+                RefGeneParser parser = new RefGeneParser(service.getRefGenePath());
+                setGenes(parser, parser.getAllProteinCodingGeneSymbols().size());
+            }
+            case BED_TARGETS -> {
+                String path = settings.getTargetsPath();
+                service.setTargetGenesPath(path);
+                BedFileParser parser = new BedFileParser(path);
+                int n = parser.getGopherGeneList().size();
+                service.setN_validGeneSymbols(n);
+                service.setUniqueTSScount(n);
+                service.setUniqueChosenTSScount(n);
+                service.setChosenGeneCount(n);
+                service.setTotalRefGeneCount(n);
+                service.setGopherGenes(parser.getGopherGeneList());
+            }
+        }
+        service.setTargetType(targetType);
+        if (service.getGopherGeneList() == null || service.getGopherGeneList().isEmpty()) {
+            throw new GopherException("No valid target genes or regions");
+        }
+        out.printf("[targets] %d genes/regions%n", service.getN_validGeneSymbols());
+    }
+
+    private void setGenes(RefGeneParser parser, int n_validGeneSymbols) {
+        service.setN_validGeneSymbols(n_validGeneSymbols);
+        service.setUniqueTSScount(parser.getTotalTSScount());
+        service.setUniqueChosenTSScount(parser.getCountOfChosenTSS());
+        service.setChosenGeneCount(parser.getNumberOfRefGenesChosenByUser());
+        service.setTotalRefGeneCount(parser.getTotalNumberOfRefGenes());
+        service.setGopherGenes(parser.getGopherGeneList());
+    }
+
+    /** @return the gene symbols in the first column of a file (as in the GUI). */
+    private static List<String> readGeneSymbols(String path) throws GopherException {
+        List<String> symbols = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(Path.of(path))) {
+                if (! line.isBlank()) {
+                    symbols.add(line.split("\t")[0].trim());
+                }
+            }
+        } catch (IOException e) {
+            throw new GopherException(String.format("Could not read target genes from %s: %s", path, e.getMessage()), e);
+        }
+        return symbols;
+    }
+
+    private void createViewPoints() throws Exception {
+        ViewPointCreationTask task;
+        if (service.useSimpleApproach()) {
+            task = new SimpleViewPointCreationTask(service, executor);
+        } else {
+            task = new ExtendedViewPointCreationTask(service, executor);
+        }
+        runTask("viewpoints", task);
+        List<ViewPoint> viewpoints = service.getViewPointList();
+        if (viewpoints == null || viewpoints.isEmpty()) {
+            throw new GopherException("No viewpoints were created");
+        }
+        out.printf("[viewpoints] %d viewpoints, %d with selected digests%n",
+                viewpoints.size(), service.getActiveViewPointList().size());
+    }
+
+    private void writeResults() throws Exception {
+        String dir = settings.getOutputDirectory();
+        Files.createDirectories(Path.of(dir));
+        String prefix = service.getProjectName(true);
+        SerializationManager.serializeModel(model, dir + File.separator + prefix + ".ser");
+        runTask("digests", new DigestCreationTask(dir + File.separator, service, settings.compressDigests(), executor));
+        List<ViewPoint> viewpoints = service.getViewPointList();
+        new BEDFileExporter(dir, prefix).printRestFragsToBed(viewpoints, service.getGenomeBuild());
+        new ProbeFileExporter(dir, prefix).printProbeFileInAgilentFormat(service.getProbeLength(),
+                viewpoints, service.getGenomeBuild(), service.getGenomeFastaFile());
+        new GopherReport(service).outputRegulatoryReport(dir + File.separator + prefix + "-report.txt");
+        Design design = new Design(service);
+        design.calculateDesignParameters();
+        Path designPath = Path.of(dir, prefix + "-design.tsv");
+        try (BufferedWriter w = Files.newBufferedWriter(designPath, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> e : design.getDesignStatisticsList().entrySet()) {
+                w.write(String.format("%s\t%s\n", e.getKey(), e.getValue()));
+            }
+        }
+        out.printf("[results] written to %s%n", dir);
+    }
+
+    /** Compare the digests of the enzymes of {@link DesignSettings#SWEEP_ENZYMES} (if any) in a summary report. */
+    private void sweepEnzymes() throws Exception {
+        List<RestrictionEnzyme> enzymes = settings.getSweepEnzymes(service.getAllEnyzmes());
+        if (enzymes.isEmpty()) {
+            return;
+        }
+        MultiEnzymeDigestSweepTask task = new MultiEnzymeDigestSweepTask(enzymes, service.getGenomeFastaFile(),
+                service.getViewPointList(), service.getMarginSize(), executor);
+        List<DigestStatistics> statistics = runTask("enzyme sweep", task);
+        String path = settings.getOutputDirectory() + File.separator + service.getProjectName(true) + "-enzyme-sweep.tsv";
+        MultiEnzymeDigestSweepTask.writeReport(statistics, path);
+        out.printf("[enzyme sweep] %d enzymes compared in %s%n", enzymes.size(), path);
+    }
+}
@@ -0,0 +1,290 @@
+package gopher.cli;
+
+import gopher.configuration.GopherConfig;
+import gopher.exception.GopherException;
+import gopher.service.GopherService;
+import gopher.service.model.Default;
+import gopher.service.model.GopherModel;
+import gopher.service.model.RestrictionEnzyme;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Settings of a panel design that is run without the GUI (see {@link GopherCli}). The settings are read from a Java
+ * properties file, for instance
+ * <pre>
+ * project.name=cd4-panel
+ * genome.build=hg38
+ * genome.directory=/data/genomes/hg38
+ * refgene.path=/data/genomes/hg38/refGene.txt.gz
+ * alignability.path=/data/genomes/hg38/hg38.50mer.Alignability.bedgraph.gz
+ * chrominfo.path=/data/genomes/hg38/chromInfo.txt.gz
+ * enzymes=DpnII
+ * targets=genes
+ * targets.path=cd4-genes.txt
+ * approach=simple
+ * output.directory=results/cd4-panel
+ * </pre>
+ * With {@code digest.sweep.enzymes=all} (or a list of enzymes), the digests of these enzymes are also compared in a
+ * summary report ({@code <project>-enzyme-sweep.tsv}).
+ * The genome directory must contain the genome FASTA file (e.g., {@code hg38.fa}) or the archive downloaded from
+ * UCSC (e.g., {@code hg38.chromFa.tar.gz}); nothing is downloaded. Relative paths are resolved against the directory
+ * of the settings file. The design parameters ({@link #SIZE_UP} etc.) are optional and default to the values of
+ * {@link Default}; G/C and repeat content are proportions (e.g., 0.35), not percentages.
+ */
+public class DesignSettings {
+    public static final String PROJECT_NAME = "project.name";
+    public static final String GENOME_BUILD = "genome.build";
+    public static final String GENOME_DIRECTORY = "genome.directory";
+    public static final String REFGENE_PATH = "refgene.path";
+    public static final String ALIGNABILITY_PATH = "alignability.path";
+    public static final String CHROMINFO_PATH = "chrominfo.path";
+    /** Comma-separated names of the restriction enzymes (as in the enzyme list of Gopher, e.g., DpnII). */
+    public static final String ENZYMES = "enzymes";
+    /** {@code genes} (list of gene symbols), {@code all} (all protein-coding genes) or {@code bed} (BED file). */
+    public static final String TARGETS = "targets";
+    public static final String TARGETS_PATH = "targets.path";
+    /** {@code simple} or {@code extended}. */
+    public static final String APPROACH = "approach";
+    public static final String SIZE_UP = "size.up";
+    public static final String SIZE_DOWN = "size.down";
+    public static final String MIN_FRAGMENT_SIZE = "min.fragment.size";
+    public static final String MAX_REPEAT_CONTENT = "max.repeat.content";
+    public static final String MIN_GC_CONTENT = "min.gc.content";
+    public static final String MAX_GC_CONTENT = "max.gc.content";
+    public static final String MAX_KMER_ALIGNABILITY = "max.kmer.alignability";
+    public static final String MIN_BAIT_COUNT = "min.bait.count";
+    public static final String BAIT_LENGTH = "bait.length";
+    public static final String MARGIN_SIZE = "margin.size";
+    public static final String ALLOW_UNBALANCED_MARGINS = "allow.unbalanced.margins";
+    public static final String ALLOW_PATCHING = "allow.patching";
+    /** Directory for the project, digest, BED, probe and report files (default: directory of the settings file). */
+    public static final String OUTPUT_DIRECTORY = "output.directory";
+    /** If true, the digest file is written in the BGZF format. */
+    public static final String COMPRESS_DIGESTS = "digest.compress";
+    /**
+     * Comma-separated names of restriction enzymes (or {@code all}) whose digests are compared in a summary report
+     * (see {@link gopher.service.model.digest.MultiEnzymeDigestSweepTask}); optional.
+     */
+    public static final String SWEEP_ENZYMES = "digest.sweep.enzymes";
+
+    /** The genome builds that {@link GopherModel#setGenomeBuild} knows. */
+    private static final Set<String> GENOME_BUILDS = Set.of("hg19", "hg38", "mm9", "mm10", "xenTro9", "danRer10");
+
+    private final Properties properties;
+    /** Directory against which relative paths are resolved. */
+    private final Path baseDirectory;
+
+    /**
+     * @param properties the settings
+     * @param baseDirectory directory against which relative paths are resolved
+     */
+    public DesignSettings(Properties properties, Path baseDirectory) {
+        this.properties = properties;
+        this.baseDirectory = baseDirectory.toAbsolutePath();
+    }
+
+    /**
+     * @param path path of the settings file
+     * @return the settings
+     * @throws GopherException if the file cannot be read
+     */
+    public static DesignSettings load(String path) throws GopherException {
+        Path file = Path.of(path).toAbsolutePath();
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            properties.load(is);
+        } catch (IOException e) {
+            throw new GopherException(String.format("Could not read settings file %s: %s", path, e.getMessage()), e);
+        }
+        return new DesignSettings(properties, file.getParent());
+    }
+
+    public Properties getProperties() {
+        return properties;
+    }
+
+    private String getRequired(String key) throws GopherException {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            throw new GopherException(String.format("Missing setting %s", key));
+        }
+        return value.trim();
+    }
+
+    private String getPath(String key) throws GopherException {
+        return baseDirectory.resolve(getRequired(key)).normalize().toString();
+    }
+
+    private int getInt(String key, int defaultValue) throws GopherException {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new GopherException(String.format("Invalid value for %s: `%s` (integer expected)", key, value));
+        }
+    }
+
+    private double getDouble(String key, double defaultValue) throws GopherException {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new GopherException(String.format("Invalid value for %s: `%s` (number expected)", key, value));
+        }
+    }
+
+    private boolean getBoolean(String key, boolean defaultValue) throws GopherException {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        return switch (value.trim().toLowerCase()) {
+            case "true", "yes" -> true;
+            case "false", "no" -> false;
+            default -> throw new GopherException(String.format("Invalid value for %s: `%s` (true or false expected)", key, value));
+        };
+    }
+
+    public String getProjectName() throws GopherException {
+        return getRequired(PROJECT_NAME);
+    }
+
+    public GopherModel.TargetType getTargetType() throws GopherException {
+        String targets = properties.getProperty(TARGETS, "genes").trim().toLowerCase();
+        return switch (targets) {
+            case "genes" -> GopherModel.TargetType.TARGET_GENES;
+            case "all" -> GopherModel.TargetType.ALL_GENES;
+            case "bed" -> GopherModel.TargetType.BED_TARGETS;
+            default -> throw new GopherException(String.format("Invalid value for %s: `%s` (genes, all or bed expected)", TARGETS, targets));
+        };
+    }
+
+    /** @return path of the file with the gene symbols or the BED file */
+    public String getTargetsPath() throws GopherException {
+        return getPath(TARGETS_PATH);
+    }
+
+    public String getOutputDirectory() {
+        String dir = properties.getProperty(OUTPUT_DIRECTORY);
+        if (dir == null || dir.isBlank()) {
+            return baseDirectory.toString();
+        }
+        return baseDirectory.resolve(dir.trim()).normalize().toString();
+    }
+
+    public boolean compressDigests() throws GopherException {
+        return getBoolean(COMPRESS_DIGESTS, false);
+    }
+
+    /** @return number of worker threads ({@link GopherConfig#NUMBER_OF_THREADS}, by default all processors) */
+    public int getNumberOfThreads() {
+        return GopherConfig.getNumberOfThreads(properties);
+    }
+
+    /**
+     * Check the settings and pass them on to the project.
+     * @param service the (new) project
+     * @throws GopherException if a setting is missing or invalid
+     */
+    public void apply(GopherService service) throws GopherException {
+        service.setProjectName(getProjectName());
+        String build = getRequired(GENOME_BUILD);
+        if (! GENOME_BUILDS.contains(build)) {
+            throw new GopherException(String.format("Unsupported genome build %s (supported: %s)",
+                    build, String.join(", ", new TreeSet<>(GENOME_BUILDS))));
+        }
+        service.setGenomeBuild(build);
+        String genomeDirectory = getPath(GENOME_DIRECTORY);
+        if (! new File(genomeDirectory).isDirectory()) {
+            throw new GopherException(String.format("Genome directory %s not found", genomeDirectory));
+        }
+        service.setGenomeDirectoryPath(genomeDirectory);
+        if (getTargetType() != GopherModel.TargetType.BED_TARGETS || properties.containsKey(REFGENE_PATH)) {
+            service.setRefGenePath(getExistingPath(REFGENE_PATH));
+        }
+        service.setAlignabilityMapPathIncludingFileNameGz(getExistingPath(ALIGNABILITY_PATH));
+        service.setChromInfoPathIncludingFileNameGz(getExistingPath(CHROMINFO_PATH));
+        service.setChosenRestrictionEnzymes(getEnzymes(service.getAllEnyzmes()));
+        String approach = properties.getProperty(APPROACH, "simple").trim();
+        if (! approach.equalsIgnoreCase("simple") && ! approach.equalsIgnoreCase("extended")) {
+            throw new GopherException(String.format("Invalid value for %s: `%s` (simple or extended expected)", APPROACH, approach));
+        }
+        service.setApproach(approach);
+        service.setSizeUp(getInt(SIZE_UP, Default.SIZE_UPSTREAM));
+        service.setSizeDown(getInt(SIZE_DOWN, Default.SIZE_DOWNSTREAM));
+        service.setMinFragSize(getInt(MIN_FRAGMENT_SIZE, Default.MINIMUM_FRAGMENT_SIZE));
+        // same default as in the GUI, i.e., no limit
+        service.setMaxRepeatContent(getDouble(MAX_REPEAT_CONTENT, Default.MAXIMUM_KMER_ALIGNABILITY));
+        service.setMinGCcontent(getDouble(MIN_GC_CONTENT, Default.MIN_GC_CONTENT));
+        service.setMaxGCcontent(getDouble(MAX_GC_CONTENT, Default.MAX_GC_CONTENT));
+        service.setMaxMeanKmerAlignability(getInt(MAX_KMER_ALIGNABILITY, Default.MAXIMUM_KMER_ALIGNABILITY));
+        service.setMinBaitCount(getInt(MIN_BAIT_COUNT, Default.MIN_BAIT_NUMBER));
+        service.setProbeLength(getInt(BAIT_LENGTH, Default.BAIT_LENGTH));
+        service.setMarginSize(getInt(MARGIN_SIZE, Default.MARGIN_SIZE));
+        service.setAllowUnbalancedMargins(getBoolean(ALLOW_UNBALANCED_MARGINS, Default.ALLOW_UNBALANCED_MARGINs));
+        service.setAllowPatching(getBoolean(ALLOW_PATCHING, Default.ALLOW_PATCHING));
+    }
+
+    private String getExistingPath(String key) throws GopherException {
+        String path = getPath(key);
+        if (! new File(path).isFile()) {
+            throw new GopherException(String.format("File %s (%s) not found", path, key));
+        }
+        return path;
+    }
+
+    /**
+     * @param allEnzymes the enzymes that Gopher knows
+     * @return the enzymes of the {@link #ENZYMES} setting in the given order
+     * @throws GopherException if no enzyme is given or an enzyme is unknown
+     */
+    List<RestrictionEnzyme> getEnzymes(List<RestrictionEnzyme> allEnzymes) throws GopherException {
+        return parseEnzymes(getRequired(ENZYMES), allEnzymes);
+    }
+
+    /**
+     * @param allEnzymes the enzymes that Gopher knows
+     * @return the enzymes of the {@link #SWEEP_ENZYMES} setting in the given order (all enzymes for {@code all}), or
+     * an empty list if the setting is missing, i.e., if no sweep is wanted
+     * @throws GopherException if an enzyme is unknown
+     */
+    public List<RestrictionEnzyme> getSweepEnzymes(List<RestrictionEnzyme> allEnzymes) throws GopherException {
+        String value = properties.getProperty(SWEEP_ENZYMES);
+        if (value == null || value.isBlank()) {
+            return List.of();
+        }
+        if (value.trim().equalsIgnoreCase("all")) {
+            return List.copyOf(allEnzymes);
+        }
+        return parseEnzymes(value, allEnzymes);
+    }
+
+    private static List<RestrictionEnzyme> parseEnzymes(String value, List<RestrictionEnzyme> allEnzymes) throws GopherException {
+        Map<String, RestrictionEnzyme> byName = new HashMap<>();
+        for (RestrictionEnzyme enzyme : allEnzymes) {
+            byName.put(enzyme.getName(), enzyme);
+        }
+        List<RestrictionEnzyme> enzymes = new ArrayList<>();
+        for (String name : value.split(",")) {
+            RestrictionEnzyme enzyme = byName.get(name.trim());
+            if (enzyme == null) {
+                throw new GopherException(String.format("Unknown restriction enzyme %s (known enzymes: %s)",
+                        name.trim(), String.join(", ", new TreeSet<>(byName.keySet()))));
+            }
+            enzymes.add(enzyme);
+        }
+        return enzymes;
+    }
+}
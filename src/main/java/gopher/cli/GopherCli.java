@@ -0,0 +1,44 @@
+package gopher.cli;
+
+import gopher.configuration.GopherConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Command-line entry point for running a panel design without the GUI (and without a display), e.g., to design
+ * many variants of a panel in parallel on a compute cluster. The only argument is the settings file of the design
+ * (see {@link DesignSettings}). Since the GOPHER jar is a Spring Boot jar that starts the GUI, the class is selected
+ * with the {@code PropertiesLauncher}:
+ * <pre>
+ * java -Dloader.main=gopher.cli.GopherCli -cp GOPHER-0.9.0.jar org.springframework.boot.loader.PropertiesLauncher design.properties
+ * </pre>
+ * The exit code is 0 if the design was completed, 1 if it failed and 2 if the arguments are invalid.
+ */
+public class GopherCli {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GopherCli.class.getName());
+
+    public static void main(String[] args) {
+        if (args.length != 1 || args[0].equals("-h") || args[0].equals("--help")) {
+            System.err.println("Usage: GopherCli <design settings file>");
+            System.exit(2);
+        }
+        int status = 0;
+        ExecutorService executor = null;
+        try {
+            DesignSettings settings = DesignSettings.load(args[0]);
+            executor = new GopherConfig().executorService(settings.getProperties());
+            new DesignPipeline(settings, executor, System.out).run();
+        } catch (Exception e) {
+            LOGGER.error("Design failed", e);
+            System.err.println("Design failed: " + e.getMessage());
+            status = 1;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        System.exit(status);
+    }
+}
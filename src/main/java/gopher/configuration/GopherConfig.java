@@ -1,5 +1,6 @@
 package gopher.configuration;
 
+import gopher.io.ReadAheadGzipInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -14,6 +15,7 @@ import java.nio.file.Files;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 public class GopherConfig {
@@ -22,11 +24,52 @@ public class GopherConfig {
     public static final String CONFIG_FILE_BASENAME = "gopher.properties";
 
     public static final String GENOME_DOWNLOAD_DIRECTORY = "genome.download.directory";
+    /** Number of worker threads for the creation of viewpoints (defaults to the number of available processors). */
+    public static final String NUMBER_OF_THREADS = "number.of.threads";
 
-
+    /**
+     * Thread pool for compute-intensive work such as the creation of viewpoints. The size of the pool (and of the
+     * pool that inflates compressed input files, see {@link ReadAheadGzipInputStream}) can be configured with the
+     * {@link #NUMBER_OF_THREADS} property.
+     *
+     * @param pgProperties user configuration
+     * @return pool of daemon worker threads
+     */
     @Bean
-    public ExecutorService executorService() {
-        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    public ExecutorService executorService(@Qualifier("pgProperties") Properties pgProperties) {
+        int nThreads = getNumberOfThreads(pgProperties);
+        LOGGER.info("Using {} worker threads", nThreads);
+        // the BGZF blocks of compressed input files are inflated by as many threads
+        ReadAheadGzipInputStream.setInflaterThreads(nThreads);
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(nThreads, runnable -> {
+            Thread thread = new Thread(runnable, "gopher-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param properties user configuration
+     * @return the number of worker threads from the {@link #NUMBER_OF_THREADS} property, or the number of available
+     * processors if the property is not set or invalid
+     */
+    public static int getNumberOfThreads(Properties properties) {
+        int nProcessors = Runtime.getRuntime().availableProcessors();
+        String value = properties.getProperty(NUMBER_OF_THREADS);
+        if (value == null) {
+            return nProcessors;
+        }
+        try {
+            int n = Integer.parseInt(value.trim());
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the warning below
+        }
+        LOGGER.warn("Invalid value for {}: `{}`, using {} threads", NUMBER_OF_THREADS, value, nProcessors);
+        return nProcessors;
     }
 
     /**
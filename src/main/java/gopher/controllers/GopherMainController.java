@@ -9,6 +9,7 @@ import gopher.gui.logviewer.LogViewerFactory;
 import gopher.gui.progresspopup.ProgressPopup;
 import gopher.gui.regulatoryexomebox.RegulatoryExomeBoxFactory;
 import gopher.gui.util.MyPreloader;
+import gopher.gui.webpopup.MetricsPopup;
 import gopher.gui.webpopup.ProgressForm;
 import gopher.gui.webpopup.SettingsViewFactory;
 import gopher.gui.util.WindowCloser;
@@ -21,6 +22,7 @@ import gopher.service.model.viewpoint.SimpleViewPointCreationTask;
 import gopher.service.model.viewpoint.ViewPoint;
 import gopher.service.model.viewpoint.ViewPointCreationTask;
 import gopher.service.GopherService;
+import gopher.util.Metrics;
 import gopher.util.Utils;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.*;
@@ -52,6 +54,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 import static gopher.configuration.GopherConfig.GENOME_DOWNLOAD_DIRECTORY;
@@ -197,6 +200,9 @@ public class GopherMainController implements Initializable {
 
     @Autowired
     GopherService gopherService;
+    /** Thread pool for the creation of viewpoints (see {@link gopher.configuration.GopherConfig}). */
+    @Autowired
+    private ExecutorService executorService;
 
     @Value("${application.version}")
     private String applicationVersion;
@@ -777,6 +783,10 @@ public class GopherMainController implements Initializable {
         genomeGunZipper.setOnSucceeded(event -> {
             if (genomeGunZipper.OK()) {
                 gopherService.setGenomeUnpacked();
+                if (genomeGunZipper.isIndexed()) {
+                    // the index was written while extracting, this only updates the model
+                    gopherService.indexGenome(this.genomeIndexPI);
+                }
             } else {
                 PopupFactory.displayError("Error", "Error from Genome g-unzipper");
             }
@@ -1001,6 +1011,18 @@ public class GopherMainController implements Initializable {
 
     @FXML
     private void saveDigestFileAs(ActionEvent e) {
+        saveDigestFile(false);
+        e.consume();
+    }
+
+    /** Save the digest file in the BGZF format (a gzip-compatible format, the file name ends with .gz). */
+    @FXML
+    private void saveCompressedDigestFileAs(ActionEvent e) {
+        saveDigestFile(true);
+        e.consume();
+    }
+
+    private void saveDigestFile(boolean compress) {
         LOGGER.trace("Saving the digest file");
         DirectoryChooser dirChooser = new DirectoryChooser();
         dirChooser.setTitle("Choose directory for exporting digest file.");
@@ -1013,7 +1035,7 @@ public class GopherMainController implements Initializable {
 
         String path = dir.getAbsolutePath();
         path += File.separator;
-        DigestCreationTask task = new DigestCreationTask(path, gopherService);
+        DigestCreationTask task = new DigestCreationTask(path, gopherService, compress, executorService);
 
         ProgressForm pform = new ProgressForm();
         pform.messageProperty().bind(task.messageProperty());
@@ -1035,7 +1057,6 @@ public class GopherMainController implements Initializable {
         Thread th = new Thread(task);
         th.setDaemon(true);
         th.start();
-        e.consume();
     }
 
     @FXML
@@ -1095,12 +1116,14 @@ public class GopherMainController implements Initializable {
             return;
         }
         LOGGER.trace("User entered OK for parameter check");
+        // the metrics (and the metrics file of the report) are for the current design only
+        Metrics.reset();
         ViewPointCreationTask task;
 
         if (gopherService.useSimpleApproach()) {
-            task = new SimpleViewPointCreationTask(gopherService);
+            task = new SimpleViewPointCreationTask(gopherService, executorService);
         } else {
-            task = new ExtendedViewPointCreationTask(gopherService);
+            task = new ExtendedViewPointCreationTask(gopherService, executorService);
         }
         ProgressForm pform = new ProgressForm();
         pform.messageProperty().bind(task.messageProperty());
@@ -1305,6 +1328,14 @@ public class GopherMainController implements Initializable {
         e.consume();
     }
 
+    /** Show the timers and counters of the stages of the design (creation of viewpoints, exports, ...). */
+    @FXML
+    public void showMetrics(ActionEvent e) {
+        MetricsPopup popup = new MetricsPopup(getPrimaryStageReference());
+        popup.popup();
+        e.consume();
+    }
+
     @FXML
     public void about(ActionEvent e) {
         if (applicationVersion == null) {
@@ -0,0 +1,71 @@
+package gopher.gui.webpopup;
+
+import gopher.util.Metrics;
+import javafx.stage.Stage;
+
+/**
+ * Shows the timers and counters of the stages of the design (see {@link Metrics}), e.g., how much of the time of the
+ * viewpoint creation was spent reading the genome, calculating the segment contents or placing the baits.
+ */
+public class MetricsPopup extends WebViewerPopup {
+
+    public MetricsPopup(Stage stage) {
+        super(stage);
+    }
+
+    private String getHTML() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<html><head>");
+        sb.append(inlineCSS());
+        sb.append("""
+                </head>
+                <body><h3>Performance metrics</h3>
+                <p>Times of the stages of the current design (since the viewpoints were created). Stages that run on several threads
+                (e.g., the viewpoints of the individual genes) may add up to more than the elapsed time. The metrics
+                are also written next to the exported report.</p>
+                """);
+        if (Metrics.getTimers().isEmpty() && Metrics.getCounters().isEmpty()) {
+            sb.append("<p>Nothing has been measured yet.</p>");
+        }
+        if (! Metrics.getTimers().isEmpty()) {
+            sb.append("<table><tr><th>Stage</th><th>Count</th><th>Total (s)</th><th>Mean (ms)</th>")
+                    .append("<th>Median (ms)</th><th>90% (ms)</th><th>99% (ms)</th><th>Max (ms)</th></tr>\n");
+            for (Metrics.Timer t : Metrics.getTimers()) {
+                sb.append(String.format("<tr><td>%s</td><td>%,d</td><td>%.2f</td><td>%.3f</td><td>%.3f</td>" +
+                                "<td>%.3f</td><td>%.3f</td><td>%.3f</td></tr>\n",
+                        t.getName(), t.getCount(), t.getTotalMillis() / 1000.0, t.getMeanMillis(),
+                        t.getPercentileMillis(0.5), t.getPercentileMillis(0.9), t.getPercentileMillis(0.99),
+                        t.getMaxMillis()));
+            }
+            sb.append("</table>\n");
+        }
+        if (! Metrics.getCounters().isEmpty()) {
+            sb.append("<table><tr><th>Counter</th><th>Count</th></tr>\n");
+            for (Metrics.Counter c : Metrics.getCounters()) {
+                sb.append(String.format("<tr><td>%s</td><td>%,d</td></tr>\n", c.getName(), c.getCount()));
+            }
+            sb.append("</table>\n");
+        }
+        sb.append("</body></html>");
+        return sb.toString();
+    }
+
+    @Override
+    protected String inlineCSS() {
+        return "<style>\n" +
+                "  html { margin: 20; padding: 20; }" +
+                "body { font: 75% georgia, sans-serif; line-height: 1.5;color: #001f3f; margin: 0; padding: 0; }" +
+                "p { margin-top: 0;text-align: justify;}" +
+                "h3 {font-family: 'serif';font-size: 1.4em;font-style: normal;font-weight: bold;" +
+                "letter-spacing: 1px; margin-bottom: 0; color: #001f3f;}" +
+                "table { border-collapse: collapse; margin-bottom: 20px; }" +
+                "th, td { padding: 2px 8px; text-align: right; border-bottom: 1px solid #ddd; }" +
+                "th:first-child, td:first-child { text-align: left; }" +
+                "  </style>";
+    }
+
+    @Override
+    public void popup() {
+        showHtmlContent("Performance metrics", getHTML());
+    }
+}
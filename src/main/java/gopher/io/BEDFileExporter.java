@@ -3,6 +3,7 @@ package gopher.io;
 import gopher.service.model.viewpoint.Bait;
 import gopher.service.model.viewpoint.Segment;
 import gopher.service.model.viewpoint.ViewPoint;
+import gopher.util.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +30,7 @@ import java.util.Set;
  */
 public class BEDFileExporter {
     private static final Logger LOGGER = LoggerFactory.getLogger(BEDFileExporter.class.getName());
+    private static final Metrics.Timer EXPORT_TIMER = Metrics.timer("export.bed");
     private final String allTracksBEDfile;
     private final String targetRegionBEDfile;
     private final String gopherSummaryTSVfile;
@@ -68,6 +70,15 @@ public class BEDFileExporter {
      * @throws FileNotFoundException if we cannot find the file
      */
     public void printRestFragsToBed(List<ViewPoint> viewpointlist, String genomeBuild) throws FileNotFoundException {
+        long start = EXPORT_TIMER.start();
+        try {
+            writeRestFragsToBed(viewpointlist, genomeBuild);
+        } finally {
+            EXPORT_TIMER.stop(start);
+        }
+    }
+
+    private void writeRestFragsToBed(List<ViewPoint> viewpointlist, String genomeBuild) throws FileNotFoundException {
 
         PrintStream out_targetRegions = new PrintStream(new FileOutputStream(getFullPath(targetRegionBEDfile)));
         out_targetRegions.println("track name='" + targetRegionBEDfile + "' description='" + targetRegionBEDfile + "'");
@@ -0,0 +1,49 @@
+package gopher.io;
+
+/**
+ * Counts of the different kinds of nucleotides in an interval of a genome, which are used to calculate the G/C and
+ * repeat content of segments, baits and digests. Soft-masked (repetitive) nucleotides are written in lower case
+ * letters in the genome FASTA file.
+ * @param length number of nucleotides in the interval
+ * @param gc number of G and C nucleotides (upper and lower case)
+ * @param acgt number of A, C, G and T nucleotides (upper and lower case)
+ * @param softMasked number of lower case letters (including, e.g., n)
+ * @param softMaskedAcgt number of lower case a, c, g and t nucleotides
+ * @param letters number of upper and lower case letters
+ */
+public record BaseComposition(int length, int gc, int acgt, int softMasked, int softMaskedAcgt, int letters) {
+
+    /**
+     * Count the nucleotides of a sequence.
+     * @param sequence ASCII bases
+     * @param from zero-based index of the first nucleotide
+     * @param to zero-based index one past the last nucleotide
+     * @return the composition of the interval
+     */
+    public static BaseComposition of(byte[] sequence, int from, int to) {
+        int gc = 0, acgt = 0, softMasked = 0, softMaskedAcgt = 0, letters = 0;
+        for (int i = from; i < to; i++) {
+            switch (sequence[i]) {
+                case 'G', 'C' -> gc++;
+                case 'g', 'c' -> { gc++; softMaskedAcgt++; }
+                case 'A', 'T' -> acgt++;
+                case 'a', 't' -> { acgt++; softMaskedAcgt++; }
+            }
+            byte b = sequence[i];
+            if (b >= 'a' && b <= 'z') {
+                softMasked++;
+                letters++;
+            } else if (b >= 'A' && b <= 'Z') {
+                letters++;
+            }
+        }
+        // every G/C was counted only once above
+        acgt += gc;
+        return new BaseComposition(to - from, gc, acgt, softMasked, softMaskedAcgt, letters);
+    }
+
+    /** @return the composition of an entire sequence. */
+    public static BaseComposition of(byte[] sequence) {
+        return of(sequence, 0, sequence.length);
+    }
+}
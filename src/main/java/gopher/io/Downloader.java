@@ -1,8 +1,8 @@
 package gopher.io;
 
-import javafx.concurrent.Task;
 import javafx.scene.control.ProgressIndicator;
 import gopher.exception.GopherException;
+import gopher.util.GopherTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,7 +19,7 @@ import java.net.URLConnection;
  * @author Peter Robinson
  * @version 0.2.0 (2017-10-20)
  */
-public class Downloader extends Task<Void> {
+public class Downloader extends GopherTask<Void> {
     private static final Logger LOGGER = LoggerFactory.getLogger(Downloader.class.getName());
     /**
      * The absolute path to the place (directory) where the downloaded file will be
@@ -106,7 +106,6 @@ public class Downloader extends Task<Void> {
                 block = size /100;
             while ((bytesRead = reader.read(buffer)) > 0) {
                 writer.write(buffer, 0, bytesRead);
-                buffer = new byte[153600];
                 totalBytesRead += bytesRead;
                 if (size>0 && totalBytesRead > threshold) {
                     updateProgress((double)totalBytesRead/size);
@@ -129,17 +128,11 @@ public class Downloader extends Task<Void> {
         return null;
     }
 
-    /** Update the progress bar of the GUI in a separate thread.
+    /** Update the progress bar of the GUI (or, without a progress indicator, the progress of the task).
      * @param pr Current progress.
      */
     private void updateProgress(double pr) {
-        javafx.application.Platform.runLater(() -> {
-            if (progress==null) {
-                LOGGER.error("NULL pointer to download progress indicator");
-                return;
-            }
-            progress.setProgress(pr);
-        });
+        updateProgress(progress, pr);
     }
 
     /**
@@ -1,29 +1,27 @@
 package gopher.io;
 
-import javafx.concurrent.Task;
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
 import javafx.scene.control.ProgressIndicator;
-import gopher.exception.UnindexableFastaFileException;
 import gopher.exception.GopherException;
 import gopher.service.model.GopherModel;
+import gopher.util.GopherTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Coordinates the task of creating a FAI index for the genome fasta file.
  * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
  * @version 0.2.2 (2018-02-15)
  */
-public class Faidx extends Task<Void> {
+public class Faidx extends GopherTask<Void> {
     private static final Logger logger = LoggerFactory.getLogger(Faidx.class.getName());
     /**  Path to the directory where we will search for the genome FASTA file and produce the faidx file. */
     private final String genomeDirectoryPath;
@@ -35,13 +33,16 @@ public class Faidx extends Task<Void> {
     private final Map<String, Integer> contigLengths;
     /** The progress indicator on the GUI that will show progress of indexing. */
     private final ProgressIndicator progress;
+    /** Thread pool for scanning the FASTA file (see {@link FastaIndexer}). */
+    private final ExecutorService executor;
 
-    public Faidx(GopherModel model, ProgressIndicator pi) {
+    public Faidx(GopherModel model, ProgressIndicator pi, ExecutorService executor) {
         this.genomeDirectoryPath = model.getGenomeDirectoryPath();
         this.genomeFastaBaseName =model.getGenome().getGenomeFastaName();
         this.genomeFastaIndexBaseName =genomeFastaBaseName + ".fai"; // fai suffix
         logger.trace("Initializing fasta indexing at directory " + this.genomeDirectoryPath);
         this.progress = pi;
+        this.executor = executor;
         this.contigLengths = new HashMap<>();
     }
 
@@ -65,95 +66,27 @@ public class Faidx extends Task<Void> {
         String path = genomeDirectoryPath + File.separator + genomeFastaBaseName;
         if (alreadyIndexed(path)) {
             logger.trace("We found index for " + path +" and are skipping the FAI indexing step");
+            if (! PackedGenome.isUpToDate(path)) {
+                buildPackedGenome(path);
+            }
+            FastaSequenceIndex index = new FastaSequenceIndex(Paths.get(path + ".fai"));
+            for (FastaSequenceIndexEntry entry : index) {
+                this.contigLengths.put(entry.getContig(), (int) entry.getSize());
+            }
             updateProgress(1.00);
             return null;
         }
-        File fasta = new File(path);
-        double file_size = fasta.length();
-        double currentProgress=0.0D;
-        updateProgress(currentProgress);
-
-        try {
-            FileChannel fileChannel = FileChannel.open(Paths.get(fasta.getAbsolutePath()));
-            int noOfBytesRead = 0;
-            StringBuilder sb = new StringBuilder();
-
-            boolean isFirstSeqLine = false;
-            long currOffset = 0;
-            long prevOffset = 0;
-            boolean isLast = false; // True when line is expected to be the last one of sequence
-
-            Set<String> seqNames = new HashSet<>();
-            List<FastaIndexEntry> records = new ArrayList<>();
-            FastaIndexEntry faidxEntry = null;
-
-            while (noOfBytesRead != -1) {
-                ByteBuffer buffer = ByteBuffer.allocate(100000);
-                noOfBytesRead = fileChannel.read(buffer);
-                buffer.flip();
-
-                while (buffer.hasRemaining()) {
-                    char x = (char) buffer.get();
-                    currOffset++;
-                    sb.append(x);
-                    if (x == '\n') { // One full line read.
-                        String line = sb.toString();
-                        sb.setLength(0);
-                        if (line.trim().isEmpty()) {
-                            isLast = true;
-                            continue;
-                        }
-                        if (line.startsWith(">")) {
-                            isLast = false;
-                            if (faidxEntry != null) {
-                                records.add(faidxEntry);
-                            }
-                            updateProgress(Math.min(0.99, currOffset/file_size));
-                            faidxEntry = new FastaIndexEntry();
-                            faidxEntry.makeSeqNameFromRawLine(line);
-                            logger.trace("Indexing " + faidxEntry.getSeqName());
-
-                            if (seqNames.contains(faidxEntry.getSeqName())) {
-                                String err = fasta.getAbsolutePath() + ": Duplicate sequence name found for " + faidxEntry.getSeqName();
-                                throw new UnindexableFastaFileException(err);
-                            } else {
-                                seqNames.add(faidxEntry.getSeqName());
-                            }
-                            faidxEntry.byteOffset = currOffset;
-                            isFirstSeqLine = true;
-                        } else {
-                            if (isLast) {
-                                String err = fasta.getAbsolutePath() + ": Different line length in " + faidxEntry.getSeqName();
-                                throw new UnindexableFastaFileException(err);
-                            }
-                            int seqLen = line.replaceAll("\\s", "").length();
-                            faidxEntry.seqLength += seqLen;
-                            if (isFirstSeqLine) {
-                                faidxEntry.lineLength = seqLen;
-                                faidxEntry.lineFullLength = (int) (currOffset - prevOffset);
-                                isFirstSeqLine = false;
-                            } else if (faidxEntry.lineLength != seqLen) {
-                                isLast = true;
-                            }
-                        }
-                        prevOffset = currOffset;
-                    } // End of processing one full line
-                } // End reading chunk of bytes
-            } // End of reading channel.
-
-            records.add(faidxEntry); // Add last record
-
-            // Write out index
-            String faipath = getGenomeFastaIndexPath();
-            BufferedWriter wr = new BufferedWriter(new FileWriter(faipath));
+        updateProgress(0.0D);
+        try (FastaIndexer indexer = new FastaIndexer(path, executor)) {
+            List<FastaIndexEntry> records = indexer.index();
+            updateProgress(0.2D);
+            FastaIndexer.writeIndex(records, getGenomeFastaIndexPath());
             for (FastaIndexEntry rec : records) {
-                wr.write(rec.toString() + "\n");
                 // also record the contig lengths
-                String contigname=rec.getSeqName();
-                int len=rec.seqLength;
-                this.contigLengths.put(contigname,len);
+                this.contigLengths.put(rec.getSeqName(), rec.seqLength);
             }
-            wr.close();
+            // the packed genome is written from the same mapped FASTA file
+            writePackedGenome(indexer, path);
             updateProgress(1.0D);
         } catch (IOException ioe) {
             throw new GopherException(ioe.getMessage());
@@ -162,15 +95,44 @@ public class Faidx extends Task<Void> {
         return null;
     }
 
+    /**
+     * Write the packed genome after the FASTA file has been indexed. The packed genome is only a cache, and so we just
+     * log problems.
+     */
+    private void writePackedGenome(FastaIndexer indexer, String path) {
+        PackedGenomeWriter packedWriter = null;
+        try {
+            packedWriter = new PackedGenomeWriter(PackedGenome.getPackedGenomePath(path));
+            indexer.writeSequences(packedWriter, fraction -> updateProgress(Math.min(0.99, 0.2 + 0.8 * fraction)));
+            packedWriter.close();
+        } catch (IOException e) {
+            logger.warn("Could not build packed genome for {}: {}", path, e.getMessage());
+        } finally {
+            if (packedWriter != null) {
+                packedWriter.abort(); // no effect if the packed genome was completed
+            }
+        }
+    }
+
+    /**
+     * Build the packed genome for a FASTA file that was indexed before packed genomes were introduced (or whose
+     * packed genome is outdated). The packed genome is only a cache, and so we just log problems.
+     */
+    private void buildPackedGenome(String path) {
+        logger.trace("Building packed genome for " + path);
+        try (GenomeSequenceReader genome = new GenomeSequenceReader(path)) {
+            PackedGenomeWriter.write(genome, PackedGenome.getPackedGenomePath(path));
+        } catch (IOException e) {
+            logger.warn("Could not build packed genome for {}: {}", path, e.getMessage());
+        }
+    }
 
-    /** Update the progress bar of the GUI in a separate thread.
+
+    /** Update the progress bar of the GUI (or, without a PI, e.g., headless, the progress of the task).
      * @param pr Current progress.
      */
     private void updateProgress(double pr) {
-        if (progress==null) { // can run the class without a PI
-            return;
-        }
-        javafx.application.Platform.runLater( () -> progress.setProgress(pr) );
+        updateProgress(progress, pr);
     }
 
     public Map<String,Integer> getContigLengths () { return this.contigLengths; }
@@ -0,0 +1,201 @@
+package gopher.io;
+
+import gopher.exception.UnindexableFastaFileException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds the FAI index entries of FASTA data that are passed to {@link #accept} in chunks of any size, e.g., while
+ * the FASTA file is being written by {@link GenomeGunZipper} or for one record that is scanned by
+ * {@link FastaIndexer}. The entries are identical to the index produced by {@code samtools faidx}. A record may only
+ * contain lines of the same length, except for the last line, which may be shorter and may be followed by empty
+ * lines. Optionally, the bases are also written to a {@link PackedGenomeWriter}, so that the packed genome is built
+ * in the same pass over the data.
+ * <p>
+ * Problems with the FASTA data do not interrupt the caller, which usually is writing the data at the same time;
+ * the first problem is reported by {@link #finish()}.
+ */
+public class FastaIndexBuilder {
+    /** Number of bases that are handed over to the {@link PackedGenomeWriter} at a time. */
+    private static final int BASE_BUFFER_SIZE = 1 << 16;
+
+    /** Path of the FASTA file, used for error messages. */
+    private final String path;
+    /** Writer for the packed genome, or null. */
+    private final PackedGenomeWriter packedWriter;
+    /** Position of the next byte in the FASTA file. */
+    private long position;
+    private final Set<String> seqNames = new HashSet<>();
+    private final List<FastaIndexEntry> entries = new ArrayList<>();
+    /** The record that is being scanned (null before the first header line). */
+    private FastaIndexEntry current = null;
+    /** Bytes of the current header line, or null if we are not in a header line. */
+    private ByteArrayOutputStream header = null;
+    private boolean atLineStart = true;
+    /** Number of non-whitespace bytes in the current line. */
+    private int nonWhitespace = 0;
+    /** Position after the previous sequence line (or the header line). */
+    private long prevOffset = 0;
+    private boolean isFirstSeqLine = false;
+    private boolean isLast = false; // True when line is expected to be the last one of sequence
+    private final byte[] bases;
+    private int nBases = 0;
+    /** The first problem with the FASTA data. */
+    private UnindexableFastaFileException error = null;
+
+    /**
+     * @param path path of the FASTA file (for error messages)
+     * @param offset position of the first byte that will be passed to {@link #accept} in the FASTA file
+     * @param packedWriter writer for the packed genome, or null if only the index is needed
+     */
+    public FastaIndexBuilder(String path, long offset, PackedGenomeWriter packedWriter) {
+        this.path = path;
+        this.position = offset;
+        this.packedWriter = packedWriter;
+        this.bases = packedWriter == null ? null : new byte[BASE_BUFFER_SIZE];
+    }
+
+    /** Whitespace as in the regular expression {@code \s}, which is removed from the sequence lines. */
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == 0x0B || b == '\f';
+    }
+
+    /**
+     * Scan the next bytes of the FASTA data.
+     * @param data buffer with FASTA data
+     * @param off index of the first byte in the buffer
+     * @param len number of bytes
+     * @throws IOException if the packed genome cannot be written
+     */
+    public void accept(byte[] data, int off, int len) throws IOException {
+        if (error != null) {
+            position += len;
+            return;
+        }
+        int end = off + len;
+        for (int i = off; i < end; i++) {
+            byte b = data[i];
+            if (atLineStart && b == '>') {
+                finishRecord();
+                header = new ByteArrayOutputStream();
+            }
+            atLineStart = b == '\n';
+            if (header != null) {
+                if (atLineStart) {
+                    beginRecord(position + i - off + 1);
+                } else {
+                    header.write(b);
+                }
+            } else if (atLineStart) {
+                endLine(position + i - off + 1, false);
+            } else if (!isWhitespace(b)) {
+                nonWhitespace++;
+                if (bases != null && current != null) {
+                    bases[nBases++] = b;
+                    if (nBases == bases.length) {
+                        packedWriter.append(bases, 0, nBases);
+                        nBases = 0;
+                    }
+                }
+            }
+            if (error != null) {
+                break;
+            }
+        }
+        position += len;
+    }
+
+    /** The header line ends before {@code offset}, which is the start of the sequence. */
+    private void beginRecord(long offset) throws IOException {
+        FastaIndexEntry entry = new FastaIndexEntry();
+        try {
+            entry.makeSeqNameFromRawLine(header.toString(StandardCharsets.US_ASCII));
+        } catch (UnindexableFastaFileException e) {
+            error = e;
+            return;
+        }
+        header = null;
+        if (!seqNames.add(entry.getSeqName())) {
+            error = new UnindexableFastaFileException(path + ": Duplicate sequence name found for " + entry.getSeqName());
+            return;
+        }
+        entry.byteOffset = offset;
+        current = entry;
+        prevOffset = offset;
+        nonWhitespace = 0;
+        isFirstSeqLine = true;
+        isLast = false;
+        if (packedWriter != null) {
+            packedWriter.beginContig(entry.getSeqName());
+        }
+    }
+
+    /**
+     * A sequence line ends before {@code lineEnd}.
+     * @param noLineBreak true for the last line of the file if it does not end with a line break
+     */
+    private void endLine(long lineEnd, boolean noLineBreak) {
+        if (nonWhitespace == 0) {
+            isLast = true;
+        } else if (current == null) {
+            error = new UnindexableFastaFileException(path + ": Sequence found before the first header line");
+        } else if (isLast) {
+            error = new UnindexableFastaFileException(path + ": Different line length in " + current.getSeqName());
+        } else {
+            current.seqLength += nonWhitespace;
+            if (isFirstSeqLine) {
+                current.lineLength = nonWhitespace;
+                // samtools counts a missing line break at the end of the file
+                current.lineFullLength = (int) (lineEnd - prevOffset) + (noLineBreak ? 1 : 0);
+                isFirstSeqLine = false;
+            } else if (current.lineLength != nonWhitespace) {
+                isLast = true;
+            }
+            prevOffset = lineEnd;
+        }
+        nonWhitespace = 0;
+    }
+
+    private void finishRecord() {
+        if (current != null) {
+            if (nBases > 0) {
+                packedWriter.append(bases, 0, nBases);
+                nBases = 0;
+            }
+            entries.add(current);
+            current = null;
+        }
+        isLast = false;
+    }
+
+    /**
+     * Finish the scan at the end of the FASTA data.
+     * @return the index entries in the order of the FASTA data
+     * @throws UnindexableFastaFileException if the FASTA data cannot be indexed
+     * @throws IOException if the packed genome cannot be written
+     */
+    public List<FastaIndexEntry> finish() throws UnindexableFastaFileException, IOException {
+        if (error == null) {
+            if (header != null) {
+                // header line without a line break at the end of the file
+                beginRecord(position);
+            } else if (!atLineStart && nonWhitespace > 0) {
+                endLine(position, true);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        finishRecord();
+        if (entries.isEmpty()) {
+            throw new UnindexableFastaFileException(path + ": No sequences found");
+        }
+        return List.copyOf(entries);
+    }
+}
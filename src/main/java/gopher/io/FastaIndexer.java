@@ -0,0 +1,229 @@
+package gopher.io;
+
+import gopher.exception.GopherException;
+import gopher.exception.UnindexableFastaFileException;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Creates the FAI index of a FASTA file, which is identical to the index produced by {@code samtools faidx}. The file
+ * is memory-mapped and indexed in two parallel passes: first, chunks of the file are searched for the header lines
+ * ({@code >name}) to find the records, and then the lines of each record are scanned by a {@link FastaIndexBuilder}
+ * to get the number of bases and the line lengths.
+ */
+public class FastaIndexer implements Closeable {
+    /** Size of the parts of the file that are mapped at a time (mapped buffers are limited to 2 GB). */
+    private static final long WINDOW_SIZE = 1L << 30;
+    /** Minimum size of the chunks in which we search for header lines. */
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+    /** Number of bytes that are copied from the mapped file at a time. */
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+    private final String path;
+    private final FileChannel channel;
+    private final long size;
+    private final ExecutorService executor;
+    /** Number of chunks in which we search for the header lines. */
+    private final int nChunks;
+    /** Index entries in the order of the FASTA file (available after {@link #index()}). */
+    private List<FastaIndexEntry> entries = null;
+    /** Position after the last byte of each record, i.e., the start of the next header line. */
+    private long[] recordEnds = null;
+
+    /**
+     * @param path path of the FASTA file
+     * @param executor thread pool for scanning the file
+     * @throws IOException if the file cannot be opened
+     */
+    public FastaIndexer(String path, ExecutorService executor) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(Path.of(path), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.executor = executor;
+        this.nChunks = 4 * Runtime.getRuntime().availableProcessors();
+    }
+
+    private MappedByteBuffer map(long from, long to) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+    }
+
+    /**
+     * Index the FASTA file.
+     * @return the entries of the FAI index in the order of the FASTA file
+     * @throws UnindexableFastaFileException if the file has duplicate sequence names or lines of different lengths
+     * @throws IOException if the file cannot be read
+     */
+    public List<FastaIndexEntry> index() throws GopherException, IOException {
+        // first pass: positions of the header lines
+        long chunkSize = Math.min(WINDOW_SIZE, Math.max(MIN_CHUNK_SIZE, (size + nChunks - 1) / nChunks));
+        List<Future<long[]>> headerFutures = new ArrayList<>();
+        for (long from = 0; from < size; from += chunkSize) {
+            long start = from;
+            long end = Math.min(size, from + chunkSize);
+            headerFutures.add(executor.submit(() -> findHeaders(start, end)));
+        }
+        long[] headers = Arrays.stream(getAll(headerFutures)).flatMapToLong(Arrays::stream).toArray();
+        if (headers.length == 0) {
+            throw new UnindexableFastaFileException(path + ": No sequences found");
+        }
+        // second pass: the lines of each record (the first record also includes the empty lines before the header)
+        long[] ends = new long[headers.length];
+        List<Future<FastaIndexEntry>> entryFutures = new ArrayList<>();
+        for (int i = 0; i < headers.length; i++) {
+            long start = i == 0 ? 0 : headers[i];
+            long end = i + 1 < headers.length ? headers[i + 1] : size;
+            ends[i] = end;
+            entryFutures.add(executor.submit(() -> indexRecord(start, end)));
+        }
+        Set<String> seqNames = new HashSet<>();
+        List<FastaIndexEntry> list = new ArrayList<>();
+        for (Future<FastaIndexEntry> future : entryFutures) {
+            FastaIndexEntry entry = get(future);
+            if (! seqNames.add(entry.getSeqName())) {
+                throw new UnindexableFastaFileException(path + ": Duplicate sequence name found for " + entry.getSeqName());
+            }
+            list.add(entry);
+        }
+        this.entries = List.copyOf(list);
+        this.recordEnds = ends;
+        return entries;
+    }
+
+    /** @return positions of the '>' characters at the start of a line in {@code [from, to)}. */
+    private long[] findHeaders(long from, long to) throws IOException {
+        // we also map the byte before the chunk to see whether the first byte is at the start of a line
+        long mapStart = Math.max(0, from - 1);
+        MappedByteBuffer buffer = map(mapStart, to);
+        int n = (int) (to - mapStart);
+        long[] positions = new long[16];
+        int count = 0;
+        for (int i = (int) (from - mapStart); i < n; i++) {
+            if (buffer.get(i) == '>' && (mapStart + i == 0 || buffer.get(i - 1) == '\n')) {
+                if (count == positions.length) {
+                    positions = Arrays.copyOf(positions, 2 * count);
+                }
+                positions[count++] = mapStart + i;
+            }
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * Scan the header line and the sequence lines of one record.
+     * @param start position of the '>' of the header line (0 for the first record)
+     * @param end position after the last byte of the record
+     * @return the index entry of the record
+     */
+    private FastaIndexEntry indexRecord(long start, long end) throws IOException, UnindexableFastaFileException {
+        FastaIndexBuilder builder = new FastaIndexBuilder(path, start, null);
+        byte[] chunk = new byte[(int) Math.min(COPY_BUFFER_SIZE, end - start)];
+        for (long w = start; w < end; w += WINDOW_SIZE) {
+            long windowEnd = Math.min(end, w + WINDOW_SIZE);
+            MappedByteBuffer buffer = map(w, windowEnd);
+            while (buffer.hasRemaining()) {
+                int n = Math.min(chunk.length, buffer.remaining());
+                buffer.get(chunk, 0, n);
+                builder.accept(chunk, 0, n);
+            }
+        }
+        return builder.finish().get(0);
+    }
+
+    /**
+     * Write the sequences of all records (without line breaks) to a packed genome. Must be called after
+     * {@link #index()}.
+     * @param writer the packed genome
+     * @param progress receives the fraction of the file that has been written after each record
+     * @throws IOException if the FASTA file cannot be read or the packed genome cannot be written
+     */
+    public void writeSequences(PackedGenomeWriter writer, DoubleConsumer progress) throws IOException {
+        if (entries == null) {
+            throw new IllegalStateException("FASTA file has not been indexed");
+        }
+        // the index has been checked, and so we only need to remove the line breaks
+        byte[] bases = new byte[COPY_BUFFER_SIZE];
+        for (int k = 0; k < entries.size(); k++) {
+            FastaIndexEntry entry = entries.get(k);
+            writer.beginContig(entry.getSeqName());
+            long from = entry.byteOffset;
+            long to = recordEnds[k];
+            int count = 0;
+            for (long w = from; w < to; w += WINDOW_SIZE) {
+                long windowEnd = Math.min(to, w + WINDOW_SIZE);
+                MappedByteBuffer buffer = map(w, windowEnd);
+                int n = (int) (windowEnd - w);
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer.get(i);
+                    if (! FastaIndexBuilder.isWhitespace(b)) {
+                        bases[count++] = b;
+                        if (count == bases.length) {
+                            writer.append(bases, 0, count);
+                            count = 0;
+                        }
+                    }
+                }
+            }
+            writer.append(bases, 0, count);
+            progress.accept((double) to / size);
+        }
+    }
+
+    /** @return the results of all tasks in the order of the list. */
+    private long[][] getAll(List<Future<long[]>> futures) throws GopherException, IOException {
+        long[][] results = new long[futures.size()][];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = get(futures.get(i));
+        }
+        return results;
+    }
+
+    private <T> T get(Future<T> future) throws GopherException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Indexing of " + path + " was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GopherException ge) {
+                throw ge;
+            } else if (e.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IOException("Could not index " + path, e.getCause());
+        }
+    }
+
+    /**
+     * Write the FAI index.
+     * @param entries the index entries from {@link #index()}
+     * @param faiPath path of the index, usually the path of the FASTA file with the suffix .fai
+     * @throws IOException if the index cannot be written
+     */
+    public static void writeIndex(List<FastaIndexEntry> entries, String faiPath) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(Path.of(faiPath), StandardCharsets.US_ASCII)) {
+            for (FastaIndexEntry entry : entries) {
+                writer.write(entry.toString());
+                writer.write('\n');
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
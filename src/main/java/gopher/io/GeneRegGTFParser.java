@@ -5,7 +5,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.util.zip.GZIPInputStream;
 
 /** This class is responsible for parsing the Ensembl regulatory build GTF file. This can be used to
  * create a separate "exome" like panel that contains not only coding sequences but also the regulatory
@@ -51,8 +50,7 @@ public class GeneRegGTFParser {
         if (this.pathToGTFfile==null) {
             throw new IOException("Regulatory build GTF file not initialized");
         }
-        InputStream fileStream = new FileInputStream(this.pathToGTFfile);
-        InputStream gzipStream = new GZIPInputStream(fileStream);
+        InputStream gzipStream = new ReadAheadGzipInputStream(this.pathToGTFfile);
         Reader decoder = new InputStreamReader(gzipStream, encoding);
         this.reader = new BufferedReader(decoder);
         this.currentLine=reader.readLine();
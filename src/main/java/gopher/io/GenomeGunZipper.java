@@ -1,17 +1,18 @@
 package gopher.io;
 
-import javafx.concurrent.Task;
 import javafx.scene.control.ProgressIndicator;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 
 
+import gopher.exception.UnindexableFastaFileException;
 import gopher.service.model.genome.Genome;
+import gopher.util.GopherTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.util.List;
 
 /**
  * This class is responsible for g-unzipping and untarring a downloaded genome file.
@@ -19,17 +20,20 @@ import java.io.*;
  * unpacks, it does so into a new "chroms" directory. We need to create that directory in code for the un-gzipping and
  * un-tarring to work. We then also need to transmit back to the model that the genome download path has been extended
  * by "/chroms".
+ * <p>
+ * The FAI index and the {@link PackedGenome} are built while the FASTA file is written (see {@link FastaIndexBuilder}),
+ * so that the genome is only read once; the indexing step then finds the index and has nothing to do.
  * @author Peter Robinson
  * @version 0.2.3 (2018-02-17)
  */
-public class GenomeGunZipper extends Task<Void>  {
+public class GenomeGunZipper extends GopherTask<Void>  {
     private static final Logger logger = LoggerFactory.getLogger(GenomeGunZipper.class.getName());
     /** Model of the current genome, e.g., hg19, with paths and canonical chromosomes etc. */
     private final Genome genome;
     /** This is the basename of the compressed genome file that we download from UCSC. */
     private final String genomeFileNameTarGZ;
-    /** Size of buffer for reading the g-zip'd files.*/
-    private static final int BUFFER_SIZE=1024;
+    /** Size of buffer for reading the g-zip'd files and writing the FASTA file.*/
+    private static final int BUFFER_SIZE=1 << 20;
     /** Indicator of progress of unzipping the genome tar.gz file. */
     private final ProgressIndicator progress;
 
@@ -37,6 +41,9 @@ public class GenomeGunZipper extends Task<Void>  {
 
     private boolean OK = false;
     public boolean OK() {return OK;}
+    /** True if the FAI index and the packed genome were written while extracting the genome. */
+    private boolean indexed = false;
+    public boolean isIndexed() { return indexed; }
 
     /**
      * @param genome Reference to the model for downloaded/unpacked/index genome data.
@@ -89,9 +96,10 @@ public class GenomeGunZipper extends Task<Void>  {
         double extracted_bytes_estimate = 3100000000D;
         double currentProgress=0.0D;
         updateProgress(currentProgress);
+        PackedGenomeWriter packedWriter = null;
         try {
-            InputStream in = new FileInputStream(INPUT_GZIP_FILE);
-            GzipCompressorInputStream gzipIn = new GzipCompressorInputStream(in);
+            // the file is decompressed on a separate thread while we write the FASTA file
+            ReadAheadGzipInputStream gzipIn = new ReadAheadGzipInputStream(INPUT_GZIP_FILE);
             TarArchiveInputStream tarIn = new TarArchiveInputStream(gzipIn);
             TarArchiveEntry entry;
             String dirpath =this.genome.getPathToGenomeDirectory();
@@ -99,9 +107,12 @@ public class GenomeGunZipper extends Task<Void>  {
             File outfile = new File( dirpath + File.separator + outputFastaFileName);
             FileOutputStream fos = new FileOutputStream(outfile.getAbsolutePath(), false);
             BufferedOutputStream dest = new BufferedOutputStream(fos, BUFFER_SIZE);
+            // the FAI index and the packed genome are built from the bytes we write to the FASTA file
+            packedWriter = new PackedGenomeWriter(PackedGenome.getPackedGenomePath(outfile.getAbsolutePath()));
+            FastaIndexBuilder indexBuilder = new FastaIndexBuilder(outfile.getAbsolutePath(), 0, packedWriter);
 
             while ((entry = (TarArchiveEntry) tarIn.getNextEntry()) != null) {
-                updateProgress(Math.min(0.99, gzipIn.getBytesRead()/extracted_bytes_estimate));
+                updateProgress(Math.min(0.99, gzipIn.getCompressedBytesRead()/extracted_bytes_estimate));
                 // If the entry is a directory, skip, this should never happen with the chromFa.tag.gx data anyway.
                 if (entry.isFile()) {
                     int count;
@@ -116,12 +127,15 @@ public class GenomeGunZipper extends Task<Void>  {
                     // Note that since filename may have the "chroms" subdirectory itself, we do not need to add it here.
                     while ((count = tarIn.read(data, 0, BUFFER_SIZE)) != -1) {
                         dest.write(data, 0, count);
+                        indexBuilder.accept(data, 0, count);
                     }
                     logger.trace("extracted chromosome:  " + entry.getName());
                     n_extracted_chromosomes++;
                 }
             } // end of loop over Tar archive contents
+            tarIn.close();
             dest.close();
+            finishIndex(indexBuilder, packedWriter, outfile.getAbsolutePath());
             this.status=String.format("extracted %d chromosomes",n_extracted_chromosomes);
             updateProgress(100.0);
             OK=true;
@@ -131,6 +145,10 @@ public class GenomeGunZipper extends Task<Void>  {
             updateProgress(0.0);
             this.status="extraction could not be completed.";
             throw e;
+        } finally {
+            if (packedWriter != null) {
+                packedWriter.abort(); // no effect if the packed genome was completed
+            }
         }
     }
 
@@ -145,21 +163,28 @@ public class GenomeGunZipper extends Task<Void>  {
         double extracted_bytes_estimate = 3100000000D;
         double currentProgress=0.0D;
         updateProgress(currentProgress);
+        PackedGenomeWriter packedWriter = null;
         try {
-            InputStream in = new FileInputStream(INPUT_GZIP_FILE);
-            GzipCompressorInputStream gzipIn = new GzipCompressorInputStream(in);
+            // the file is decompressed on a separate thread while we write the FASTA file
+            ReadAheadGzipInputStream gzipIn = new ReadAheadGzipInputStream(INPUT_GZIP_FILE);
             String dirpath =this.genome.getPathToGenomeDirectory();
             String outputFastaFileName = genome.getGenomeBuild() + ".fa";
             File outfile = new File( dirpath + File.separator + outputFastaFileName);
             FileOutputStream fos = new FileOutputStream(outfile.getAbsolutePath(), false);
             BufferedOutputStream dest = new BufferedOutputStream(fos, BUFFER_SIZE);
+            // the FAI index and the packed genome are built from the bytes we write to the FASTA file
+            packedWriter = new PackedGenomeWriter(PackedGenome.getPackedGenomePath(outfile.getAbsolutePath()));
+            FastaIndexBuilder indexBuilder = new FastaIndexBuilder(outfile.getAbsolutePath(), 0, packedWriter);
             int len;
             byte[] buffer = new byte[BUFFER_SIZE];
             while ((len = gzipIn.read(buffer)) > 0) {
-                updateProgress(Math.min(0.99, gzipIn.getBytesRead()/extracted_bytes_estimate));
-                fos.write(buffer,0,len);
+                updateProgress(Math.min(0.99, gzipIn.getCompressedBytesRead()/extracted_bytes_estimate));
+                dest.write(buffer,0,len);
+                indexBuilder.accept(buffer,0,len);
             }
+            gzipIn.close();
             dest.close();
+            finishIndex(indexBuilder, packedWriter, outfile.getAbsolutePath());
             this.status=String.format("extracted %d chromosomes",n_extracted_chromosomes);
             updateProgress(100.0);
             OK=true;
@@ -169,6 +194,31 @@ public class GenomeGunZipper extends Task<Void>  {
             updateProgress(0.0);
             this.status="extraction could not be completed.";
             throw e;
+        } finally {
+            if (packedWriter != null) {
+                packedWriter.abort(); // no effect if the packed genome was completed
+            }
+        }
+    }
+
+
+    /**
+     * Write the FAI index and the packed genome of the extracted FASTA file, so that the genome does not need to be
+     * read again by {@link Faidx}. If the FASTA file cannot be indexed, we leave the error to the indexing step.
+     * @param indexBuilder index builder that has seen all bytes of the FASTA file
+     * @param packedWriter writer of the packed genome
+     * @param fastaPath path of the extracted FASTA file
+     * @throws IOException if the index or the packed genome cannot be written
+     */
+    private void finishIndex(FastaIndexBuilder indexBuilder, PackedGenomeWriter packedWriter, String fastaPath) throws IOException {
+        try {
+            List<FastaIndexEntry> entries = indexBuilder.finish();
+            FastaIndexer.writeIndex(entries, fastaPath + ".fai");
+            packedWriter.close();
+            indexed = true;
+            logger.info("Indexed {} sequences of {}", entries.size(), fastaPath);
+        } catch (UnindexableFastaFileException e) {
+            logger.warn("Could not index {}: {}", fastaPath, e.getMessage());
         }
     }
 
@@ -200,13 +250,7 @@ public class GenomeGunZipper extends Task<Void>  {
      * @param pr Current progress.
      */
     private void updateProgress(double pr) {
-        javafx.application.Platform.runLater(() -> {
-            if (progress == null) {
-                logger.error("NULL pointer to download progress indicator");
-                return;
-            }
-            progress.setProgress(pr);
-        });
+        updateProgress(progress, Math.min(pr, 1.0));
     }
 
 }
@@ -0,0 +1,61 @@
+package gopher.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Random access to the sequences of the contigs of a genome. Positions are one-based and fully closed, as in
+ * the HTSJDK {@code getSubsequenceAt} method. The bases are returned as ASCII characters, and soft-masked
+ * (repetitive) sequence is written in lower case letters.
+ */
+public interface GenomeSequence extends Closeable {
+
+    /** @return names of all contigs in the order of the FASTA file. */
+    List<String> getContigNames();
+
+    /** @return true if the genome has a contig with this name. */
+    boolean hasContig(String contig);
+
+    /**
+     * @param contig name of a contig, e.g., chr1
+     * @return length of the contig
+     * @throws IllegalArgumentException if there is no contig with this name
+     */
+    int getLength(String contig);
+
+    /**
+     * Read a part of a contig.
+     * @param contig name of a contig, e.g., chr1
+     * @param start one-based position of the first nucleotide
+     * @param end one-based position of the last nucleotide (inclusive)
+     * @return the bases of the subsequence
+     */
+    byte[] getBases(String contig, int start, int end);
+
+    /**
+     * Count the G/C, soft-masked and other nucleotides of a part of a contig. The default implementation reads
+     * and counts the bases; {@link PackedGenome} answers the query from its cumulative counts.
+     * @param contig name of a contig, e.g., chr1
+     * @param start one-based position of the first nucleotide
+     * @param end one-based position of the last nucleotide (inclusive)
+     * @return the composition of the subsequence
+     */
+    default BaseComposition getBaseComposition(String contig, int start, int end) {
+        return BaseComposition.of(getBases(contig, start, end));
+    }
+
+    /**
+     * Open the genome that belongs to an indexed FASTA file. If an up-to-date {@link PackedGenome} has been built
+     * for the FASTA file, we use it, otherwise we read the FASTA file.
+     * @param fastaPath path to a FASTA file with a FAI index
+     * @return the genome sequence
+     * @throws IOException if neither the packed genome nor the FASTA file can be read
+     */
+    static GenomeSequence open(String fastaPath) throws IOException {
+        if (PackedGenome.isUpToDate(fastaPath)) {
+            return new PackedGenome(PackedGenome.getPackedGenomePath(fastaPath));
+        }
+        return new GenomeSequenceReader(fastaPath);
+    }
+}
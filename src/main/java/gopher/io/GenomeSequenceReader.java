@@ -0,0 +1,127 @@
+package gopher.io;
+
+import htsjdk.samtools.reference.FastaSequenceIndex;
+import htsjdk.samtools.reference.FastaSequenceIndexEntry;
+import gopher.util.Metrics;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Access to the sequences of an indexed genome FASTA file. The names and lengths of the contigs are taken from
+ * the FAI index, so that we do not need to read a sequence just to find out its length, and every call to
+ * {@link #getBases(String)} reads and decodes the contig exactly once. Note that the HTSJDK methods
+ * {@code nextSequence()} and {@code getSequence()} both read the entire contig, so that code that uses
+ * the name returned by the former to call the latter reads each contig twice.
+ * <p>
+ * Objects of this class are not thread-safe; each thread needs to use its own reader. A {@link PackedGenome}
+ * can be shared by any number of threads.
+ */
+public class GenomeSequenceReader implements GenomeSequence {
+    private static final Metrics.Timer READ_TIMER = Metrics.timer("genome.read.fasta");
+    private static final Metrics.Counter BASES_COUNTER = Metrics.counter("genome.read.bases");
+    /** Path to the genome FASTA file. */
+    private final String fastaPath;
+    /** HTSJDK reader for the FASTA file. */
+    private final IndexedFastaSequenceFile fastaReader;
+    /** Key: name of a contig, value: length of the contig (in the order of the FASTA index). */
+    private final Map<String, Integer> contigLengths;
+
+    /**
+     * @param fastaPath path to a FASTA file with a FAI index ({@code fastaPath + ".fai"})
+     * @throws IOException if the FASTA file or the index cannot be read
+     */
+    public GenomeSequenceReader(String fastaPath) throws IOException {
+        this.fastaPath = fastaPath;
+        FastaSequenceIndex index;
+        try {
+            index = new FastaSequenceIndex(Path.of(fastaPath + ".fai"));
+        } catch (RuntimeException e) {
+            throw new IOException(String.format("Could not read FASTA index for %s [%s]", fastaPath, e.getMessage()), e);
+        }
+        Map<String, Integer> lengths = new LinkedHashMap<>();
+        for (FastaSequenceIndexEntry entry : index) {
+            lengths.put(entry.getContig(), (int) entry.getSize());
+        }
+        this.contigLengths = Collections.unmodifiableMap(lengths);
+        this.fastaReader = new IndexedFastaSequenceFile(new File(fastaPath), index);
+    }
+
+    /** @return path to the genome FASTA file. */
+    public String getFastaPath() {
+        return fastaPath;
+    }
+
+    /** @return names of all contigs in the order of the FASTA file. */
+    @Override
+    public List<String> getContigNames() {
+        return new ArrayList<>(contigLengths.keySet());
+    }
+
+    /** @return true if the genome has a contig with this name. */
+    @Override
+    public boolean hasContig(String contig) {
+        return contigLengths.containsKey(contig);
+    }
+
+    /**
+     * @param contig name of a contig, e.g., chr1
+     * @return length of the contig (from the FASTA index)
+     * @throws IllegalArgumentException if there is no contig with this name
+     */
+    @Override
+    public int getLength(String contig) {
+        Integer len = contigLengths.get(contig);
+        if (len == null) {
+            throw new IllegalArgumentException(String.format("Unable to find entry for contig %s in %s", contig, fastaPath));
+        }
+        return len;
+    }
+
+    /** @return total length of all contigs. */
+    public long getTotalLength() {
+        return contigLengths.values().stream().mapToLong(Integer::longValue).sum();
+    }
+
+    /**
+     * Read the entire sequence of a contig.
+     * @param contig name of a contig, e.g., chr1
+     * @return the bases of the contig (ASCII, lower case letters for soft-masked repeats)
+     */
+    public byte[] getBases(String contig) {
+        long start = READ_TIMER.start();
+        byte[] bases = fastaReader.getSequence(contig).getBases();
+        READ_TIMER.stop(start);
+        BASES_COUNTER.add(bases.length);
+        return bases;
+    }
+
+    /**
+     * Read a part of a contig.
+     * @param contig name of a contig, e.g., chr1
+     * @param start one-based position of the first nucleotide
+     * @param end one-based position of the last nucleotide (inclusive)
+     * @return the bases of the subsequence
+     */
+    @Override
+    public byte[] getBases(String contig, int start, int end) {
+        long t = READ_TIMER.start();
+        byte[] bases = fastaReader.getSubsequenceAt(contig, start, end).getBases();
+        READ_TIMER.stop(t);
+        BASES_COUNTER.add(bases.length);
+        return bases;
+    }
+
+    /** @return the underlying HTSJDK reader (for classes that query subsequences directly). */
+    public IndexedFastaSequenceFile getFastaReader() {
+        return fastaReader;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fastaReader.close();
+    }
+}
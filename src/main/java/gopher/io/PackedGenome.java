@@ -0,0 +1,342 @@
+package gopher.io;
+
+import gopher.util.Metrics;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A compact on-disk copy of a genome FASTA file that is memory-mapped for random access. Each nucleotide is stored
+ * with two bits (A=0, C=1, G=2, T=3), soft-masked nucleotides (lower case letters in the FASTA file) are marked in a
+ * bitmap with one bit per nucleotide, and all other characters (usually N) are stored as a table of runs. For every
+ * block of {@link #BLOCK_SIZE} nucleotides, we also store the cumulative number of G/C and soft-masked nucleotides
+ * from the start of the contig, so that {@link #getBaseComposition} only needs two lookups plus the population count
+ * of at most two partial blocks. For the human genome, the file is about 1.3 GB, compared to 3.1 GB for the FASTA
+ * file.
+ * <p>
+ * The file is built by {@link PackedGenomeWriter} (usually together with the FAI index, see {@link Faidx}) and is
+ * stored next to the FASTA file with the suffix {@link #SUFFIX}. The layout is
+ * <pre>
+ *   int magic, int version
+ *   for each contig: packed bases, soft-mask bitmap (both padded to a multiple of 8 bytes),
+ *                    cumulative G/C counts, cumulative soft-mask counts (one int per block)
+ *   int number of contigs
+ *   for each contig: name, length, offset of bases, offset of bitmap, offset of counts, runs of other characters
+ *   long offset of the contig table, int magic
+ * </pre>
+ * Since the data are only read with absolute {@code get} calls on the mapped buffers, an object of this class can
+ * be shared by any number of threads, and the operating system keeps the pages that are in use in its page cache.
+ */
+public class PackedGenome implements GenomeSequence {
+    /** Suffix that is appended to the path of the FASTA file to get the path of the packed genome. */
+    public static final String SUFFIX = ".packed";
+    /** "GPKG" */
+    static final int MAGIC = 0x47504B47;
+    static final int VERSION = 2;
+    /** Number of nucleotides between two cumulative counts (a power of two). */
+    static final int BLOCK_SIZE = 256;
+    private static final int BLOCK_SHIFT = Integer.numberOfTrailingZeros(BLOCK_SIZE);
+    /** Bit mask for the low bit of each two-bit code; C (01) and G (10) are the codes whose two bits differ. */
+    private static final long LOW_BITS = 0x5555555555555555L;
+    /** Upper case letter of each two-bit code. */
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+    private static final Metrics.Timer READ_TIMER = Metrics.timer("genome.read.packed");
+    private static final Metrics.Counter BASES_COUNTER = Metrics.counter("genome.read.bases");
+
+    /**
+     * Index entry of a contig. Positions are zero-based.
+     * @param name name of the contig
+     * @param length number of nucleotides
+     * @param basesOffset offset of the packed bases in the file
+     * @param maskOffset offset of the soft-mask bitmap in the file
+     * @param checkpointOffset offset of the cumulative counts in the file
+     * @param runStarts start positions of the runs of characters other than ACGT (sorted)
+     * @param runLengths lengths of the runs
+     * @param runBases character of each run (a run is either entirely upper case or entirely lower case)
+     */
+    record Contig(String name, int length, long basesOffset, long maskOffset, long checkpointOffset,
+                  int[] runStarts, int[] runLengths, byte[] runBases) {}
+
+    /**
+     * A contig together with the mapped parts of the file. The bases and the bitmap are read as little-endian
+     * longs, so that nucleotide {@code i} of a word is stored in bits {@code 2i} (bases) and {@code i} (bitmap).
+     * The counts buffer holds the G/C counts followed by the soft-mask counts.
+     */
+    private record MappedContig(Contig contig, ByteBuffer bases, ByteBuffer mask, ByteBuffer counts) {}
+
+    private final String path;
+    /** Key: name of a contig, value: mapped contig (in the order of the FASTA file). */
+    private final Map<String, MappedContig> contigs;
+
+    /**
+     * Open and map a packed genome.
+     * @param path path of the packed genome file
+     * @throws IOException if the file cannot be read or is not a packed genome
+     */
+    public PackedGenome(String path) throws IOException {
+        this.path = path;
+        Map<String, MappedContig> map = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(8);
+            ByteBuffer trailer = ByteBuffer.allocate(12);
+            if (size < 20 || channel.read(header, 0) != 8 || channel.read(trailer, size - 12) != 12) {
+                throw new IOException(String.format("%s is not a packed genome (truncated file)", path));
+            }
+            header.flip();
+            trailer.flip();
+            long indexOffset = trailer.getLong();
+            if (header.getInt() != MAGIC || trailer.getInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a packed genome", path));
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported version %d of packed genome %s", version, path));
+            }
+            // do not close this stream, this would close the channel before the contigs have been mapped
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(indexOffset))));
+            int n = in.readInt();
+            List<Contig> entries = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                byte[] name = new byte[in.readInt()];
+                in.readFully(name);
+                int length = in.readInt();
+                long basesOffset = in.readLong();
+                long maskOffset = in.readLong();
+                long checkpointOffset = in.readLong();
+                int n_runs = in.readInt();
+                int[] runStarts = new int[n_runs];
+                int[] runLengths = new int[n_runs];
+                byte[] runBases = new byte[n_runs];
+                for (int j = 0; j < n_runs; j++) {
+                    runStarts[j] = in.readInt();
+                    runLengths[j] = in.readInt();
+                    runBases[j] = in.readByte();
+                }
+                entries.add(new Contig(new String(name, StandardCharsets.UTF_8), length, basesOffset, maskOffset,
+                        checkpointOffset, runStarts, runLengths, runBases));
+            }
+            for (Contig c : entries) {
+                MappedByteBuffer bases = channel.map(FileChannel.MapMode.READ_ONLY, c.basesOffset(), baseBytes(c.length()));
+                MappedByteBuffer mask = channel.map(FileChannel.MapMode.READ_ONLY, c.maskOffset(), maskBytes(c.length()));
+                MappedByteBuffer counts = channel.map(FileChannel.MapMode.READ_ONLY, c.checkpointOffset(),
+                        8L * checkpointCount(c.length()));
+                bases.order(ByteOrder.LITTLE_ENDIAN);
+                mask.order(ByteOrder.LITTLE_ENDIAN);
+                map.put(c.name(), new MappedContig(c, bases, mask, counts));
+            }
+        } catch (EOFException e) {
+            throw new IOException(String.format("%s is not a packed genome (truncated index)", path), e);
+        }
+        this.contigs = Collections.unmodifiableMap(map);
+    }
+
+    /** @return path of the packed genome that belongs to a FASTA file. */
+    public static String getPackedGenomePath(String fastaPath) {
+        return fastaPath + SUFFIX;
+    }
+
+    /**
+     * @return true if there is a packed genome for the FASTA file that is not older than the FASTA file and was
+     * written in the current version of the format.
+     */
+    public static boolean isUpToDate(String fastaPath) {
+        File packed = new File(getPackedGenomePath(fastaPath));
+        File fasta = new File(fastaPath);
+        if (! packed.isFile() || packed.lastModified() < fasta.lastModified()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(packed))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** @return number of bytes needed for the packed bases of a contig (a multiple of 8). */
+    static int baseBytes(int length) {
+        return (int) (8 * (((long) length + 31) / 32));
+    }
+
+    /** @return number of bytes needed for the soft-mask bitmap of a contig (a multiple of 8). */
+    static int maskBytes(int length) {
+        return (int) (8 * (((long) length + 63) / 64));
+    }
+
+    /** @return number of cumulative counts of a contig (one at the start of each block and one at the end). */
+    static int checkpointCount(int length) {
+        return (length >>> BLOCK_SHIFT) + 1;
+    }
+
+    /** @return path of the packed genome file. */
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public List<String> getContigNames() {
+        return new ArrayList<>(contigs.keySet());
+    }
+
+    @Override
+    public boolean hasContig(String contig) {
+        return contigs.containsKey(contig);
+    }
+
+    @Override
+    public int getLength(String contig) {
+        return getContig(contig).contig().length();
+    }
+
+    private MappedContig getContig(String contig) {
+        MappedContig mc = contigs.get(contig);
+        if (mc == null) {
+            throw new IllegalArgumentException(String.format("Unable to find entry for contig %s in %s", contig, path));
+        }
+        return mc;
+    }
+
+    private void checkInterval(Contig c, int start, int end) {
+        if (start < 1 || end > c.length() || end < start - 1) {
+            throw new IllegalArgumentException(String.format("Invalid interval %s:%d-%d (length of contig: %d)",
+                    c.name(), start, end, c.length()));
+        }
+    }
+
+    @Override
+    public byte[] getBases(String contig, int start, int end) {
+        long t = READ_TIMER.start();
+        byte[] bases = readBases(contig, start, end);
+        READ_TIMER.stop(t);
+        BASES_COUNTER.add(bases.length);
+        return bases;
+    }
+
+    private byte[] readBases(String contig, int start, int end) {
+        MappedContig mc = getContig(contig);
+        Contig c = mc.contig();
+        checkInterval(c, start, end);
+        int from = start - 1; // zero-based, inclusive
+        int to = end; // zero-based, exclusive
+        byte[] seq = new byte[to - from];
+        ByteBuffer bases = mc.bases();
+        for (int pos = from; pos < to; pos++) {
+            int code = (bases.get(pos >>> 2) >>> ((pos & 3) << 1)) & 3;
+            seq[pos - from] = BASES[code];
+        }
+        // overwrite the positions that belong to runs of other characters
+        int[] runStarts = c.runStarts();
+        int r = Arrays.binarySearch(runStarts, from);
+        if (r < 0) {
+            r = Math.max(0, -r - 2); // the run before the insertion point may overlap the interval
+        }
+        for (; r < runStarts.length && runStarts[r] < to; r++) {
+            int runFrom = Math.max(from, runStarts[r]);
+            int runTo = Math.min(to, runStarts[r] + c.runLengths()[r]);
+            if (runFrom < runTo) {
+                Arrays.fill(seq, runFrom - from, runTo - from, c.runBases()[r]);
+            }
+        }
+        // soft-masked positions are returned in lower case
+        ByteBuffer mask = mc.mask();
+        for (int pos = from; pos < to; ) {
+            byte m = mask.get(pos >>> 3);
+            if (m == 0) {
+                pos = (pos | 7) + 1; // skip to the next byte of the bitmap
+                continue;
+            }
+            if ((m & (1 << (pos & 7))) != 0) {
+                seq[pos - from] = toLowerCase(seq[pos - from]);
+            }
+            pos++;
+        }
+        return seq;
+    }
+
+    /**
+     * Count the nucleotides of a part of a contig using the cumulative counts. Runs of characters other than ACGT
+     * are usually rare (mostly long runs of N), and so we iterate over the runs that overlap the interval.
+     */
+    @Override
+    public BaseComposition getBaseComposition(String contig, int start, int end) {
+        MappedContig mc = getContig(contig);
+        Contig c = mc.contig();
+        checkInterval(c, start, end);
+        int from = start - 1;
+        int to = end;
+        int length = to - from;
+        int gc = cumulativeGc(mc, to) - cumulativeGc(mc, from);
+        int softMasked = cumulativeMask(mc, to) - cumulativeMask(mc, from);
+        int other = 0, otherSoftMasked = 0, nonLetters = 0;
+        int[] runStarts = c.runStarts();
+        int r = Arrays.binarySearch(runStarts, from);
+        if (r < 0) {
+            r = Math.max(0, -r - 2);
+        }
+        for (; r < runStarts.length && runStarts[r] < to; r++) {
+            int overlap = Math.min(to, runStarts[r] + c.runLengths()[r]) - Math.max(from, runStarts[r]);
+            if (overlap <= 0) {
+                continue;
+            }
+            byte b = c.runBases()[r];
+            other += overlap;
+            if (b >= 'a' && b <= 'z') {
+                otherSoftMasked += overlap;
+            } else if (b < 'A' || b > 'Z') {
+                nonLetters += overlap;
+            }
+        }
+        return new BaseComposition(length, gc, length - other, softMasked, softMasked - otherSoftMasked,
+                length - nonLetters);
+    }
+
+    /** @return number of G/C nucleotides in the zero-based interval [0, pos). */
+    private static int cumulativeGc(MappedContig mc, int pos) {
+        int block = pos >>> BLOCK_SHIFT;
+        int count = mc.counts().getInt(4 * block);
+        ByteBuffer bases = mc.bases();
+        for (int i = block << BLOCK_SHIFT; i < pos; i += 32) {
+            long word = bases.getLong(i >>> 2); // 32 nucleotides
+            long gc = (word ^ (word >>> 1)) & LOW_BITS;
+            int n = pos - i;
+            if (n < 32) {
+                gc &= (1L << (2 * n)) - 1;
+            }
+            count += Long.bitCount(gc);
+        }
+        return count;
+    }
+
+    /** @return number of soft-masked nucleotides in the zero-based interval [0, pos). */
+    private static int cumulativeMask(MappedContig mc, int pos) {
+        int block = pos >>> BLOCK_SHIFT;
+        int count = mc.counts().getInt(4 * (checkpointCount(mc.contig().length()) + block));
+        ByteBuffer mask = mc.mask();
+        for (int i = block << BLOCK_SHIFT; i < pos; i += 64) {
+            long word = mask.getLong(i >>> 3); // 64 nucleotides
+            int n = pos - i;
+            if (n < 64) {
+                word &= (1L << n) - 1;
+            }
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static byte toLowerCase(byte b) {
+        return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /** The mapped buffers are released by the garbage collector; this method only exists for {@link Closeable}. */
+    @Override
+    public void close() {
+    }
+}
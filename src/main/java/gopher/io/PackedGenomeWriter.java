@@ -0,0 +1,261 @@
+package gopher.io;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes the {@link PackedGenome} cache for a genome. The contigs are passed to the writer one after the other in
+ * the order of the FASTA file, either as a whole ({@link #write(GenomeSequenceReader, String)}) or line by line while
+ * the FASTA file is being parsed ({@link #beginContig}, {@link #append}). The bases, the soft-mask bitmap, the
+ * table of non-ACGT runs and the cumulative G/C and soft-mask counts of a contig are collected in memory (about 3/8
+ * bytes per nucleotide) and written to disk once the contig is complete. The cache is first written to a temporary file that is renamed on {@link #close()},
+ * so that an interrupted run never leaves a truncated cache behind.
+ */
+public class PackedGenomeWriter implements Closeable {
+    /** Two-bit code of each ASCII character (-1 for characters other than ACGT/acgt). */
+    private static final byte[] CODE = new byte[256];
+
+    static {
+        Arrays.fill(CODE, (byte) -1);
+        CODE['A'] = CODE['a'] = 0;
+        CODE['C'] = CODE['c'] = 1;
+        CODE['G'] = CODE['g'] = 2;
+        CODE['T'] = CODE['t'] = 3;
+    }
+
+    /** Final path of the packed genome. */
+    private final Path path;
+    /** Temporary file to which we write until {@link #close()} is called. */
+    private final Path tmpPath;
+    private final DataOutputStream out;
+    /** Number of bytes that have been written to {@link #out} so far. */
+    private long offset;
+    /** Index entries of the contigs that have been written. */
+    private final List<PackedGenome.Contig> contigs = new ArrayList<>();
+
+    /* state of the current contig */
+    private String contigName = null;
+    private long contigLength;
+    private byte[] bases = new byte[1 << 16];
+    private byte[] mask = new byte[1 << 15];
+    private int[] runStarts = new int[16];
+    private int[] runLengths = new int[16];
+    private byte[] runBases = new byte[16];
+    private int n_runs;
+    /** Cumulative counts at the start of every block of {@link PackedGenome#BLOCK_SIZE} nucleotides. */
+    private int[] gcCheckpoints = new int[1 << 10];
+    private int[] maskCheckpoints = new int[1 << 10];
+    private int n_checkpoints;
+    /** Number of G/C and soft-masked nucleotides of the current contig so far. */
+    private int gcCount;
+    private int maskCount;
+    private boolean closed = false;
+
+    /**
+     * @param path path of the packed genome (usually {@link PackedGenome#getPackedGenomePath})
+     * @throws IOException if the file cannot be opened
+     */
+    public PackedGenomeWriter(String path) throws IOException {
+        this.path = Path.of(path);
+        // unique name, since several design jobs may pack the same genome at the same time
+        this.tmpPath = Path.of(path + "." + UUID.randomUUID() + ".tmp");
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath), 1 << 20));
+        out.writeInt(PackedGenome.MAGIC);
+        out.writeInt(PackedGenome.VERSION);
+        this.offset = 8;
+    }
+
+    /**
+     * Build the packed genome for an indexed FASTA file.
+     * @param genome reader for the FASTA file
+     * @param path path of the packed genome
+     * @throws IOException if the FASTA file cannot be read or the packed genome cannot be written
+     */
+    public static void write(GenomeSequenceReader genome, String path) throws IOException {
+        try (PackedGenomeWriter writer = new PackedGenomeWriter(path)) {
+            for (String name : genome.getContigNames()) {
+                byte[] seq = genome.getBases(name);
+                writer.beginContig(name);
+                writer.append(seq, 0, seq.length);
+            }
+        } catch (RuntimeException e) {
+            // HTSJDK reports I/O problems with unchecked exceptions
+            throw new IOException(String.format("Could not build packed genome for %s [%s]", genome.getFastaPath(), e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Start a new contig (the previous contig, if any, is written to disk).
+     * @param name name of the contig
+     */
+    public void beginContig(String name) throws IOException {
+        endContig();
+        this.contigName = name;
+        this.contigLength = 0;
+        this.n_runs = 0;
+        this.n_checkpoints = 0;
+        this.gcCount = 0;
+        this.maskCount = 0;
+    }
+
+    /**
+     * Append bases to the current contig. The bytes must not contain line breaks or other white space.
+     * @param seq ASCII bases
+     * @param off index of the first base in {@code seq}
+     * @param len number of bases
+     */
+    public void append(byte[] seq, int off, int len) {
+        if (contigName == null) {
+            throw new IllegalStateException("append called before beginContig");
+        }
+        if (contigLength + len > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Contig %s is too long for the packed genome", contigName));
+        }
+        ensureCapacity((int) contigLength + len);
+        int pos = (int) contigLength;
+        for (int i = off; i < off + len; i++, pos++) {
+            if ((pos & (PackedGenome.BLOCK_SIZE - 1)) == 0) {
+                addCheckpoint();
+            }
+            byte b = seq[i];
+            if (b >= 'a' && b <= 'z') {
+                mask[pos >>> 3] |= (byte) (1 << (pos & 7));
+                maskCount++;
+            }
+            int code = CODE[b & 0xFF];
+            if (code >= 0) {
+                bases[pos >>> 2] |= (byte) (code << ((pos & 3) << 1));
+                if (code == 1 || code == 2) {
+                    gcCount++;
+                }
+            } else if (n_runs > 0 && runBases[n_runs - 1] == b && runStarts[n_runs - 1] + runLengths[n_runs - 1] == pos) {
+                runLengths[n_runs - 1]++;
+            } else {
+                addRun(pos, b);
+            }
+        }
+        contigLength = pos;
+    }
+
+    private void addCheckpoint() {
+        if (n_checkpoints == gcCheckpoints.length) {
+            gcCheckpoints = Arrays.copyOf(gcCheckpoints, 2 * n_checkpoints);
+            maskCheckpoints = Arrays.copyOf(maskCheckpoints, 2 * n_checkpoints);
+        }
+        gcCheckpoints[n_checkpoints] = gcCount;
+        maskCheckpoints[n_checkpoints] = maskCount;
+        n_checkpoints++;
+    }
+
+    private void addRun(int pos, byte b) {
+        if (n_runs == runStarts.length) {
+            runStarts = Arrays.copyOf(runStarts, 2 * n_runs);
+            runLengths = Arrays.copyOf(runLengths, 2 * n_runs);
+            runBases = Arrays.copyOf(runBases, 2 * n_runs);
+        }
+        runStarts[n_runs] = pos;
+        runLengths[n_runs] = 1;
+        runBases[n_runs] = b;
+        n_runs++;
+    }
+
+    private void ensureCapacity(int length) {
+        int baseBytes = PackedGenome.baseBytes(length);
+        if (baseBytes > bases.length) {
+            int newSize = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(baseBytes, 2L * bases.length));
+            bases = Arrays.copyOf(bases, newSize);
+        }
+        int maskBytes = PackedGenome.maskBytes(length);
+        if (maskBytes > mask.length) {
+            int newSize = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(maskBytes, 2L * mask.length));
+            mask = Arrays.copyOf(mask, newSize);
+        }
+    }
+
+    /** Write the bases and the mask of the current contig and record its index entry. */
+    private void endContig() throws IOException {
+        if (contigName == null) {
+            return;
+        }
+        int length = (int) contigLength;
+        while (n_checkpoints < PackedGenome.checkpointCount(length)) {
+            addCheckpoint(); // the checkpoint at the end of the contig if its length is a multiple of the block size
+        }
+        int baseBytes = PackedGenome.baseBytes(length);
+        int maskBytes = PackedGenome.maskBytes(length);
+        long basesOffset = offset;
+        out.write(bases, 0, baseBytes);
+        long maskOffset = basesOffset + baseBytes;
+        out.write(mask, 0, maskBytes);
+        long checkpointOffset = maskOffset + maskBytes;
+        for (int i = 0; i < n_checkpoints; i++) {
+            out.writeInt(gcCheckpoints[i]);
+        }
+        for (int i = 0; i < n_checkpoints; i++) {
+            out.writeInt(maskCheckpoints[i]);
+        }
+        offset = checkpointOffset + 8L * n_checkpoints;
+        contigs.add(new PackedGenome.Contig(contigName, length, basesOffset, maskOffset, checkpointOffset,
+                Arrays.copyOf(runStarts, n_runs), Arrays.copyOf(runLengths, n_runs), Arrays.copyOf(runBases, n_runs)));
+        // the buffers are filled with OR operations and must be cleared for the next contig
+        Arrays.fill(bases, 0, baseBytes, (byte) 0);
+        Arrays.fill(mask, 0, maskBytes, (byte) 0);
+        contigName = null;
+    }
+
+    /** Delete the temporary file, e.g., because the FASTA file could not be parsed. */
+    public void abort() {
+        closed = true;
+        try {
+            out.close();
+            Files.deleteIfExists(tmpPath);
+        } catch (IOException e) {
+            // nothing we can do, the packed genome is written again the next time
+        }
+    }
+
+    /**
+     * Write the index of the contigs and move the packed genome to its final location.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            endContig();
+            long indexOffset = offset;
+            out.writeInt(contigs.size());
+            for (PackedGenome.Contig c : contigs) {
+                byte[] name = c.name().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeInt(c.length());
+                out.writeLong(c.basesOffset());
+                out.writeLong(c.maskOffset());
+                out.writeLong(c.checkpointOffset());
+                out.writeInt(c.runStarts().length);
+                for (int i = 0; i < c.runStarts().length; i++) {
+                    out.writeInt(c.runStarts()[i]);
+                    out.writeInt(c.runLengths()[i]);
+                    out.writeByte(c.runBases()[i]);
+                }
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(PackedGenome.MAGIC);
+            out.close();
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+}
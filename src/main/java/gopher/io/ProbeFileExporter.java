@@ -3,12 +3,12 @@ package gopher.io;
 import gopher.service.model.viewpoint.Bait;
 import gopher.service.model.viewpoint.Segment;
 import gopher.service.model.viewpoint.ViewPoint;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
-import htsjdk.samtools.reference.ReferenceSequence;
+import gopher.util.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.zip.ZipEntry;
@@ -23,6 +23,7 @@ import java.util.zip.ZipOutputStream;
  */
 public class ProbeFileExporter {
     private static final Logger LOGGER = LoggerFactory.getLogger(gopher.io.BEDFileExporter.class.getName());
+    private static final Metrics.Timer EXPORT_TIMER = Metrics.timer("export.probes");
 
         private final String ProbeFileAgilentFormat;
     private final String ProbeFileAgilentFormatZip;
@@ -51,8 +52,17 @@ public class ProbeFileExporter {
     }
 
     public void printProbeFileInAgilentFormat(Integer probe_length, List<ViewPoint> viewpointlist, String genomeBuild, String IndexedFastaSequenceFilePath) throws IOException {
+        long start = EXPORT_TIMER.start();
+        try {
+            writeProbeFileInAgilentFormat(probe_length, viewpointlist, genomeBuild, IndexedFastaSequenceFilePath);
+        } finally {
+            EXPORT_TIMER.stop(start);
+        }
+    }
+
+    private void writeProbeFileInAgilentFormat(Integer probe_length, List<ViewPoint> viewpointlist, String genomeBuild, String IndexedFastaSequenceFilePath) throws IOException {
 
-        IndexedFastaSequenceFile fastaReader = new IndexedFastaSequenceFile(new File(IndexedFastaSequenceFilePath));
+        GenomeSequence fastaReader = GenomeSequence.open(IndexedFastaSequenceFilePath);
 
         PrintStream out_probe_file_bed = new PrintStream(new FileOutputStream(getFullPath(ProbeFileBedFormat)));
 
@@ -132,13 +142,14 @@ public class ProbeFileExporter {
                 // note that in HTSJDK, the start and stop positions in the following function
                 // are both inclusive, 1-based start/stop of region.
                 // the probeID, in contrast, is using the zero-based coordinates
-                ReferenceSequence sequence = fastaReader.getSubsequenceAt(refID, baitStartPosition, baitStartPosition + probe_length - 1);
-                String printToZip = refID + "\t" + probeID + "\t" + sequence.getBaseString().toUpperCase() + "\t" + 1 + "\t" + "+" + "\t" + refID + ":" + baitStartPosition + "-" + (baitStartPosition + 120 - 1) + "\n";
+                byte[] sequence = fastaReader.getBases(refID, baitStartPosition, baitStartPosition + probe_length - 1);
+                String printToZip = refID + "\t" + probeID + "\t" + new String(sequence, StandardCharsets.US_ASCII).toUpperCase() + "\t" + 1 + "\t" + "+" + "\t" + refID + ":" + baitStartPosition + "-" + (baitStartPosition + 120 - 1) + "\n";
                 zipOutAgillent.write(printToZip.getBytes());
                 out_probe_file_bed.println(refID + "\t" + (baitStartPosition - 1) + "\t" + (baitStartPosition + probe_length - 2) + "\t" + probeID); // start and end 0-based
             }
         }
         zipOutAgillent.closeEntry();
         zipOutAgillent.close();
+        fastaReader.close();
     }
 }
\ No newline at end of file
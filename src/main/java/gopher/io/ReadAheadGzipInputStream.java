@@ -0,0 +1,320 @@
+package gopher.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Stream over the decompressed contents of a gzip file that is inflated on a separate thread, so that parsing the
+ * data overlaps with the decompression. The reader thread stays at most {@link #QUEUE_CAPACITY} chunks ahead of the
+ * consumer. If the file is in the block-compressed BGZF format (e.g., files compressed with {@code bgzip}), the
+ * blocks are inflated in parallel; other gzip files are inflated sequentially on the reader thread.
+ * <p>
+ * The stream is not thread-safe, i.e., it should be read by one thread.
+ */
+public class ReadAheadGzipInputStream extends InputStream {
+    private static final Logger logger = LoggerFactory.getLogger(ReadAheadGzipInputStream.class.getName());
+    /** Size of the decompressed chunks that are handed over to the consumer (for non-BGZF files). */
+    private static final int CHUNK_SIZE = 1 << 20;
+    /** Maximum number of chunks (or BGZF blocks) that are decompressed ahead of the consumer. */
+    private static final int QUEUE_CAPACITY = 64;
+    /** Size of the header of a BGZF block (gzip header with the 6 byte BC extra subfield). */
+    private static final int BGZF_HEADER_SIZE = 18;
+    /** Marks the end of the data in {@link #queue}. */
+    private static final Future<byte[]> END_OF_STREAM = CompletableFuture.completedFuture(new byte[0]);
+    /** Idle inflater threads are stopped after this time (in seconds). */
+    private static final long INFLATER_KEEP_ALIVE = 30;
+    /** Number of threads that inflate BGZF blocks (see {@link #setInflaterThreads(int)}). */
+    private static int inflaterThreads = Runtime.getRuntime().availableProcessors();
+    /** Threads that inflate BGZF blocks, shared by all streams. */
+    private static ThreadPoolExecutor inflaterPool = null;
+
+    private final String path;
+    private final InputStream fileStream;
+    private final BlockingQueue<Future<byte[]>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread readerThread;
+    /** Number of compressed bytes read from the file so far. */
+    private final AtomicLong compressedBytesRead = new AtomicLong();
+    /** Set if the reader thread stopped with an exception. */
+    private volatile IOException readerException = null;
+    private volatile boolean closed = false;
+    private final boolean bgzf;
+
+    private byte[] chunk = new byte[0];
+    private int chunkPos = 0;
+    private boolean eof = false;
+
+    /**
+     * Open a gzip file and start decompressing it.
+     * @param path path of a gzip (or BGZF) file
+     * @throws IOException if the file cannot be opened
+     */
+    public ReadAheadGzipInputStream(String path) throws IOException {
+        this.path = path;
+        this.fileStream = new BufferedInputStream(new FileInputStream(path) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    compressedBytesRead.addAndGet(n);
+                }
+                return n;
+            }
+        }, CHUNK_SIZE);
+        this.bgzf = isBgzf(path);
+        this.readerThread = new Thread(this::readAhead, "gunzip-" + new File(path).getName());
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    /** @return true if the file starts with a BGZF block header. */
+    private static boolean isBgzf(String path) throws IOException {
+        byte[] header = new byte[BGZF_HEADER_SIZE];
+        try (InputStream in = new FileInputStream(path)) {
+            if (in.readNBytes(header, 0, BGZF_HEADER_SIZE) != BGZF_HEADER_SIZE) {
+                return false;
+            }
+        }
+        return (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8 && (header[3] & 4) != 0 &&
+                readShort(header, 10) == 6 && header[12] == 'B' && header[13] == 'C' && readShort(header, 14) == 2;
+    }
+
+    private static int readShort(byte[] b, int off) {
+        return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return readShort(b, off) | readShort(b, off + 2) << 16;
+    }
+
+    /**
+     * Set the number of threads that inflate BGZF blocks, usually to the number of worker threads of the application
+     * ({@link gopher.configuration.GopherConfig#NUMBER_OF_THREADS}). We do not inflate the blocks on the worker pool
+     * itself, because a worker that reads a stream would then wait for tasks that are queued behind it.
+     * @param n number of threads (at least 1)
+     */
+    public static synchronized void setInflaterThreads(int n) {
+        inflaterThreads = Math.max(1, n);
+        if (inflaterPool != null) {
+            if (inflaterThreads > inflaterPool.getMaximumPoolSize()) {
+                inflaterPool.setMaximumPoolSize(inflaterThreads);
+                inflaterPool.setCorePoolSize(inflaterThreads);
+            } else {
+                inflaterPool.setCorePoolSize(inflaterThreads);
+                inflaterPool.setMaximumPoolSize(inflaterThreads);
+            }
+        }
+    }
+
+    /** @return the pool of inflater threads, whose threads are stopped when they have been idle for a while. */
+    private static synchronized ExecutorService getInflaterPool() {
+        if (inflaterPool == null) {
+            inflaterPool = new ThreadPoolExecutor(inflaterThreads, inflaterThreads,
+                    INFLATER_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "bgzf-inflater");
+                t.setDaemon(true);
+                return t;
+            });
+            inflaterPool.allowCoreThreadTimeOut(true);
+        }
+        return inflaterPool;
+    }
+
+    /** @return number of compressed bytes that have been read from the file, e.g., for a progress indicator. */
+    public long getCompressedBytesRead() {
+        return compressedBytesRead.get();
+    }
+
+    /** @return true if the file is in the BGZF format and is inflated in parallel. */
+    public boolean isBgzf() {
+        return bgzf;
+    }
+
+    /** Runs on {@link #readerThread} and fills {@link #queue} with decompressed chunks. */
+    private void readAhead() {
+        try {
+            if (bgzf) {
+                readBgzfBlocks();
+            } else {
+                readGzip();
+            }
+            queue.put(END_OF_STREAM);
+        } catch (IOException e) {
+            readerException = e;
+        } catch (InterruptedException e) {
+            if (!closed) {
+                readerException = new InterruptedIOException("Decompression of " + path + " was interrupted");
+            }
+        } finally {
+            try {
+                fileStream.close();
+            } catch (IOException e) {
+                logger.warn("Could not close {}: {}", path, e.getMessage());
+            }
+        }
+        if (readerException != null || closed) {
+            // the consumer waits for the end marker, so we make room for it and drop the remaining data
+            queue.clear();
+            queue.offer(END_OF_STREAM);
+        }
+    }
+
+    private void readGzip() throws IOException, InterruptedException {
+        GZIPInputStream gzipStream = new GZIPInputStream(fileStream, CHUNK_SIZE);
+        while (!closed) {
+            byte[] data = gzipStream.readNBytes(CHUNK_SIZE);
+            if (data.length == 0) {
+                return;
+            }
+            queue.put(CompletableFuture.completedFuture(data));
+        }
+    }
+
+    /**
+     * Read the compressed BGZF blocks and submit them to the {@link #inflaterPool}. The futures are queued in the order
+     * of the blocks, so the consumer gets the data in the right order.
+     */
+    private void readBgzfBlocks() throws IOException, InterruptedException {
+        ExecutorService pool = getInflaterPool();
+        byte[] header = new byte[BGZF_HEADER_SIZE];
+        while (!closed) {
+            int n = fileStream.readNBytes(header, 0, BGZF_HEADER_SIZE);
+            if (n == 0) {
+                return;
+            }
+            if (n != BGZF_HEADER_SIZE || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b) {
+                throw new IOException(String.format("Malformed BGZF block in %s", path));
+            }
+            int blockSize = readShort(header, 16) + 1;
+            byte[] block = new byte[blockSize - BGZF_HEADER_SIZE];
+            if (fileStream.readNBytes(block, 0, block.length) != block.length) {
+                throw new EOFException(String.format("Truncated BGZF block in %s", path));
+            }
+            queue.put(pool.submit(() -> inflateBgzfBlock(block)));
+        }
+    }
+
+    /**
+     * @param block compressed data of a BGZF block, followed by the CRC32 and the size of the decompressed data
+     * @return the decompressed data
+     */
+    private byte[] inflateBgzfBlock(byte[] block) throws IOException {
+        int compressedSize = block.length - 8;
+        int crc = readInt(block, compressedSize);
+        byte[] data = new byte[readInt(block, compressedSize + 4)];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, 0, compressedSize);
+            int n = 0;
+            while (n < data.length && !inflater.finished()) {
+                int k = inflater.inflate(data, n, data.length - n);
+                if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += k;
+            }
+            if (n != data.length) {
+                throw new IOException(String.format("Malformed BGZF block in %s", path));
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("Malformed BGZF block in %s", path), e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        if ((int) crc32.getValue() != crc) {
+            throw new IOException(String.format("CRC error in BGZF block of %s", path));
+        }
+        return data;
+    }
+
+    /** @return false if there are no more data. */
+    private boolean nextChunk() throws IOException {
+        while (!eof && chunkPos == chunk.length) {
+            Future<byte[]> future;
+            try {
+                future = queue.take();
+                if (future == END_OF_STREAM) {
+                    eof = true;
+                    if (readerException != null) {
+                        throw readerException;
+                    }
+                    return false;
+                }
+                chunk = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + path);
+            } catch (ExecutionException e) {
+                // the reader thread may be blocked on a full queue, so we stop it and drop the data it holds
+                stopReader();
+                if (e.getCause() instanceof IOException ioe) {
+                    throw ioe;
+                }
+                throw new IOException(String.format("Could not decompress %s", path), e.getCause());
+            }
+            chunkPos = 0;
+        }
+        return !eof;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return chunk[chunkPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int n = Math.min(len, chunk.length - chunkPos);
+        System.arraycopy(chunk, chunkPos, b, off, n);
+        chunkPos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - chunkPos;
+    }
+
+    /** Stops the reader thread; the remaining data are discarded. */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        stopReader();
+    }
+
+    /** Stop the reader thread and cancel the chunks that were decompressed (or are being decompressed) ahead. */
+    private void stopReader() {
+        closed = true;
+        eof = true;
+        readerThread.interrupt();
+        Future<byte[]> future;
+        while ((future = queue.poll()) != null) {
+            future.cancel(false);
+        }
+    }
+
+    /** @return the thread that decompresses the data (for testing). */
+    Thread getReaderThread() {
+        return readerThread;
+    }
+}
@@ -10,7 +10,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Parse the refGene.txt.gz file from UCSC. The format is the same for all of the genome builds we are considering.
@@ -85,8 +84,7 @@ public class RefGeneParser {
      * by the functions {@link #getTotalTSScount()} and {@link #getTotalNumberOfRefGenes()}.*/
     private void parse(String path) {
         try {
-            InputStream fileStream = new FileInputStream(path);
-            InputStream gzipStream = new GZIPInputStream(fileStream);
+            InputStream gzipStream = new ReadAheadGzipInputStream(path);
             Reader decoder = new InputStreamReader(gzipStream);
             BufferedReader br = new BufferedReader(decoder);
             String line;
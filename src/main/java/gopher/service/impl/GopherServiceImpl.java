@@ -23,12 +23,16 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 
 @Service
 public class GopherServiceImpl implements GopherService, Serializable {
     private final static Logger LOGGER = LoggerFactory.getLogger(GopherServiceImpl.class);
     @Autowired
     private GopherModel model;
+    /** Thread pool for compute-intensive work (see {@link gopher.configuration.GopherConfig}). */
+    @Autowired
+    private transient ExecutorService executorService;
 
     @Autowired
     public GopherServiceImpl(GopherModel model) {
@@ -263,7 +267,7 @@ public class GopherServiceImpl implements GopherService, Serializable {
 
     @Override
     public void indexGenome(ProgressIndicator genomeIndexPI) {
-        Faidx manager = new Faidx(this.model,genomeIndexPI);
+        Faidx manager = new Faidx(this.model,genomeIndexPI,executorService);
         if (! manager.genomeFileExists()) {
             PopupFactory.displayError("Could not find genome file",
                     "Download and extract genome file before indexing step!");
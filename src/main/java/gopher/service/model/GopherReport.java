@@ -3,6 +3,7 @@ package gopher.service.model;
 
 import com.google.common.collect.ImmutableList;
 import gopher.service.GopherService;
+import gopher.util.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +11,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.text.DateFormat;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
@@ -26,6 +28,7 @@ import java.util.Properties;
  */
 public class GopherReport {
     private static final Logger LOGGER = LoggerFactory.getLogger(GopherReport.class.getName());
+    private static final Metrics.Timer REPORT_TIMER = Metrics.timer("export.report");
     private final GopherService service;
 
     private static final NumberFormat dformater= NumberFormat.getInstance(Locale.US);
@@ -123,8 +126,12 @@ public class GopherReport {
         return builder.build();
     }
 
-    /** Output the regulatory report to a simple text file. */
+    /**
+     * Output the regulatory report to a simple text file. The timers and counters of the design (see {@link Metrics})
+     * are written next to the report, e.g., to {@code project-report-metrics.tsv}.
+     */
     public void outputRegulatoryReport(String path) {
+        long start = REPORT_TIMER.start();
         try{
             BufferedWriter bw = new BufferedWriter(new FileWriter(path));
             bw.write(getReport());
@@ -132,6 +139,12 @@ public class GopherReport {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        REPORT_TIMER.stop(start);
+        try {
+            Metrics.writeTsv(Path.of(Metrics.getMetricsPath(path)));
+        } catch (IOException e) {
+            LOGGER.error("Could not write metrics next to {}: {}", path, e.getMessage());
+        }
     }
 
 
@@ -0,0 +1,365 @@
+package gopher.service.model.digest;
+
+import gopher.exception.GopherException;
+import gopher.service.model.RestrictionEnzyme;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * Persistent index of the cutting positions of a set of restriction enzymes in a genome. The genome is scanned once
+ * with a {@link CutSiteScanner}, and the sorted cutting positions and enzyme ids of each chromosome are stored in a
+ * file next to the FASTA file (one file per set of enzymes). The file is memory-mapped, and the cuts in any window of
+ * a chromosome are found by binary search (see {@link #getCuts}), e.g., for the many overlapping windows of the
+ * viewpoints in gene clusters. The layout is
+ * <pre>
+ *   int magic, int version, int number of enzymes
+ *   for each enzyme: name, site (e.g., ^GATC)
+ *   for each chromosome: positions (int[n]), enzyme ids (byte[n])
+ *   int number of chromosomes
+ *   for each chromosome: name, n, offset of the positions
+ *   long offset of the chromosome table, int magic
+ * </pre>
+ */
+public class CutSiteIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CutSiteIndex.class.getName());
+    /** Suffix of the index files. */
+    public static final String SUFFIX = ".cuts";
+    /** "GCSI" */
+    private static final int MAGIC = 0x47435349;
+    private static final int VERSION = 1;
+
+    /** Index entry of a chromosome. */
+    private record Entry(String name, int n, long offset) {}
+
+    /** A chromosome with the mapped positions and enzyme ids. */
+    private record MappedChromosome(int n, ByteBuffer data) {}
+
+    private final String path;
+    /** Scanner for the enzymes of the index, used for the lengths and cut offsets of the sites. */
+    private final CutSiteScanner scanner;
+    /** Key: name of a chromosome; value: its cutting positions. */
+    private final Map<String, MappedChromosome> chromosomes;
+
+    /**
+     * Open and map a cut site index.
+     * @param path path of the index file
+     * @throws IOException if the file cannot be read or is not a cut site index
+     */
+    public CutSiteIndex(String path) throws IOException {
+        this.path = path;
+        Map<String, MappedChromosome> map = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer trailer = ByteBuffer.allocate(12);
+            if (size < 24 || channel.read(trailer, size - 12) != 12) {
+                throw new IOException(String.format("%s is not a cut site index (truncated file)", path));
+            }
+            trailer.flip();
+            long indexOffset = trailer.getLong();
+            // do not close these streams, this would close the channel before the data have been mapped
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+            this.scanner = new CutSiteScanner(readHeader(in, path));
+            if (trailer.getInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a cut site index", path));
+            }
+            in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(indexOffset))));
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                String name = readString(in);
+                int n_cuts = in.readInt();
+                long offset = in.readLong();
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, 5L * n_cuts);
+                map.put(name, new MappedChromosome(n_cuts, data));
+            }
+        } catch (EOFException e) {
+            throw new IOException(String.format("%s is not a cut site index (truncated index)", path), e);
+        }
+        this.chromosomes = Map.copyOf(map);
+    }
+
+    /** @return the enzymes in the header of an index file. */
+    private static List<RestrictionEnzyme> readHeader(DataInputStream in, String path) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException(String.format("%s is not a cut site index", path));
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported version %d of cut site index %s", version, path));
+        }
+        int n = in.readInt();
+        List<RestrictionEnzyme> enzymes = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String name = readString(in);
+            enzymes.add(new RestrictionEnzyme(name, readString(in)));
+        }
+        return enzymes;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /** @return true if the two lists have enzymes with the same names and sites in the same order. */
+    private static boolean sameEnzymes(List<RestrictionEnzyme> a, List<RestrictionEnzyme> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).getName().equals(b.get(i).getName()) || !a.get(i).getSite().equals(b.get(i).getSite())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open the index of a genome for a set of enzymes, and scan the genome if there is no up-to-date index.
+     * @param fastaPath path to the indexed genome FASTA file
+     * @param enzymes the restriction enzymes
+     * @param executor thread pool for scanning the chromosomes (null to scan them one after the other)
+     * @return the index
+     * @throws IOException if the genome cannot be scanned or the index cannot be read
+     */
+    public static CutSiteIndex open(String fastaPath,
+                                    List<RestrictionEnzyme> enzymes,
+                                    ExecutorService executor) throws IOException {
+        String indexPath = getIndexPath(fastaPath, enzymes);
+        if (! isUpToDate(fastaPath, enzymes)) {
+            LOGGER.info("Indexing cut sites of {} in {}", fastaPath, indexPath);
+            write(fastaPath, enzymes, executor, indexPath);
+        }
+        return new CutSiteIndex(indexPath);
+    }
+
+    /** @return path of the index for a genome and a set of enzymes, e.g., {@code hg38.fa.DpnII.cuts}. */
+    public static String getIndexPath(String fastaPath, List<RestrictionEnzyme> enzymes) {
+        String names = enzymes.stream().map(RestrictionEnzyme::getName).collect(Collectors.joining("_"));
+        return fastaPath + "." + names + SUFFIX;
+    }
+
+    /** @return true if there is an index for the same enzymes that is newer than the FASTA file. */
+    public static boolean isUpToDate(String fastaPath, List<RestrictionEnzyme> enzymes) {
+        File index = new File(getIndexPath(fastaPath, enzymes));
+        if (! index.isFile() || index.lastModified() < new File(fastaPath).lastModified()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            return sameEnzymes(readHeader(in, index.getPath()), enzymes);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Scan all chromosomes and write the index. The file is first written to a temporary file, so that an
+     * interrupted scan does not leave a truncated index behind.
+     * @param fastaPath path to the indexed genome FASTA file
+     * @param enzymes the restriction enzymes
+     * @param executor thread pool for scanning the chromosomes (null to scan them one after the other)
+     * @param path path of the index
+     * @throws IOException if the genome cannot be scanned or the index cannot be written
+     */
+    static void write(String fastaPath,
+                      List<RestrictionEnzyme> enzymes,
+                      ExecutorService executor,
+                      String path) throws IOException {
+        CutSiteScanner scanner = new CutSiteScanner(enzymes);
+        // unique name, since several design jobs may index the same genome at the same time
+        Path tmpPath = Path.of(path + "." + UUID.randomUUID() + ".tmp");
+        List<Entry> list = new ArrayList<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath), 1 << 20))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(enzymes.size());
+            for (RestrictionEnzyme enzyme : enzymes) {
+                writeString(out, enzyme.getName());
+                writeString(out, enzyme.getSite());
+            }
+            long[] offset = {out.size()};
+            OrderedChromosomeRunner runner = new OrderedChromosomeRunner(fastaPath, executor);
+            runner.run((name, sequence) -> scanner.scan(sequence, 1),
+                    (name, length, cuts) -> {
+                        list.add(new Entry(name, cuts.size(), offset[0]));
+                        for (int i = 0; i < cuts.size(); i++) {
+                            out.writeInt(cuts.getPosition(i));
+                        }
+                        for (int i = 0; i < cuts.size(); i++) {
+                            out.writeByte(cuts.getEnzymeId(i));
+                        }
+                        offset[0] += 5L * cuts.size();
+                    },
+                    () -> false);
+            out.writeInt(list.size());
+            for (Entry e : list) {
+                writeString(out, e.name());
+                out.writeInt(e.n());
+                out.writeLong(e.offset());
+            }
+            out.writeLong(offset[0]);
+            out.writeInt(MAGIC);
+        } catch (IOException | GopherException e) {
+            Files.deleteIfExists(tmpPath);
+            throw e instanceof IOException ioe ? ioe : new IOException(e.getMessage(), e);
+        }
+        Files.move(tmpPath, Path.of(path), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** @return path of the index file. */
+    public String getPath() {
+        return path;
+    }
+
+    /** @return the enzymes in the order of their ids. */
+    public List<RestrictionEnzyme> getEnzymes() {
+        return scanner.getEnzymes();
+    }
+
+    /** @return true if the index is for the same enzymes (names and sites) in the same order. */
+    public boolean hasEnzymes(List<RestrictionEnzyme> enzymes) {
+        return sameEnzymes(scanner.getEnzymes(), enzymes);
+    }
+
+    public boolean hasContig(String contig) {
+        return chromosomes.containsKey(contig);
+    }
+
+    /**
+     * Get the cuts of all recognition sites that lie completely within a window, which are the same cuts as
+     * {@link CutSiteScanner#scan(byte[], int)} finds in the sequence of the window.
+     * @param contig name of a chromosome
+     * @param from one-based position of the first nucleotide of the window
+     * @param to one-based position of the last nucleotide of the window (inclusive)
+     * @return the cuts, sorted by position and enzyme id
+     * @throws IllegalArgumentException if the index has no chromosome with this name
+     */
+    public CutSites getCuts(String contig, int from, int to) {
+        MappedChromosome c = getChromosome(contig);
+        ByteBuffer data = c.data();
+        int maxSiteLength = scanner.getMaxSiteLength();
+        CutSites cuts = new CutSites(scanner.getEnzymes(), 16);
+        long maxPosition = (long) to + maxSiteLength;
+        // first cut at or after from - maxSiteLength
+        for (int i = firstCutAtOrAfter(c, (long) from - maxSiteLength); i < c.n(); i++) {
+            int position = data.getInt(4 * i);
+            if (position > maxPosition) {
+                break;
+            }
+            byte id = getEnzymeId(c, i);
+            if (isInWindow(position, id, from, to)) {
+                cuts.insert(position, id);
+            }
+        }
+        return cuts;
+    }
+
+    /**
+     * Get the nearest cuts before a position, i.e., the last k of the cuts that {@link #getCuts} finds in a window
+     * with a position less than pos. Enzymes that cut at the same position are reported once. In contrast to
+     * {@link #getCuts}, only the cuts up to the k-th one are looked at, also if the window is large.
+     * @param contig name of a chromosome
+     * @param from one-based position of the first nucleotide of the window
+     * @param to one-based position of the last nucleotide of the window (inclusive)
+     * @param pos the cuts must be at positions less than pos
+     * @param k maximum number of cuts
+     * @return the distinct positions of the (at most k) cuts, nearest first
+     * @throws IllegalArgumentException if the index has no chromosome with this name
+     */
+    public int[] getNearestCutsUpstream(String contig, int from, int to, int pos, int k) {
+        MappedChromosome c = getChromosome(contig);
+        int[] positions = new int[k];
+        int n = 0;
+        // the recognition site starts at or before the cut, so there are no more cuts in the window left of from
+        for (int i = firstCutAtOrAfter(c, pos) - 1; i >= 0 && n < k; i--) {
+            int position = c.data().getInt(4 * i);
+            if (position < from) {
+                break;
+            }
+            if (isInWindow(position, getEnzymeId(c, i), from, to) && (n == 0 || positions[n - 1] != position)) {
+                positions[n++] = position;
+            }
+        }
+        return Arrays.copyOf(positions, n);
+    }
+
+    /**
+     * Get the nearest cuts at or after a position, i.e., the first k of the cuts that {@link #getCuts} finds in a
+     * window with a position of at least pos. Enzymes that cut at the same position are reported once.
+     * @param contig name of a chromosome
+     * @param from one-based position of the first nucleotide of the window
+     * @param to one-based position of the last nucleotide of the window (inclusive)
+     * @param pos the cuts must be at positions greater than or equal to pos
+     * @param k maximum number of cuts
+     * @return the distinct positions of the (at most k) cuts, nearest first
+     * @throws IllegalArgumentException if the index has no chromosome with this name
+     */
+    public int[] getNearestCutsDownstream(String contig, int from, int to, int pos, int k) {
+        MappedChromosome c = getChromosome(contig);
+        int[] positions = new int[k];
+        int n = 0;
+        long maxPosition = (long) to + scanner.getMaxSiteLength();
+        for (int i = firstCutAtOrAfter(c, pos); i < c.n() && n < k; i++) {
+            int position = c.data().getInt(4 * i);
+            if (position > maxPosition) {
+                break;
+            }
+            if (isInWindow(position, getEnzymeId(c, i), from, to) && (n == 0 || positions[n - 1] != position)) {
+                positions[n++] = position;
+            }
+        }
+        return Arrays.copyOf(positions, n);
+    }
+
+    private MappedChromosome getChromosome(String contig) {
+        MappedChromosome c = chromosomes.get(contig);
+        if (c == null) {
+            throw new IllegalArgumentException(String.format("No chromosome %s in cut site index %s", contig, path));
+        }
+        return c;
+    }
+
+    /** @return index of the first cut at or after a position (binary search, the positions are sorted). */
+    private static int firstCutAtOrAfter(MappedChromosome c, long position) {
+        int lo = 0, hi = c.n();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (c.data().getInt(4 * mid) < position) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static byte getEnzymeId(MappedChromosome c, int i) {
+        return c.data().get(4 * c.n() + i);
+    }
+
+    /** @return true if the recognition site of a cut lies completely within the window. */
+    private boolean isInWindow(int position, byte id, int from, int to) {
+        int siteStart = position - scanner.getCutOffset(id);
+        return siteStart >= from && siteStart + scanner.getSiteLength(id) - 1 <= to;
+    }
+}
@@ -0,0 +1,213 @@
+package gopher.service.model.digest;
+
+import gopher.service.model.RestrictionEnzyme;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class finds the cutting positions of a list of {@link RestrictionEnzyme} objects in a single pass over a
+ * DNA sequence. The recognition sites of all enzymes are compiled into an Aho-Corasick automaton over the
+ * alphabet {A,C,G,T}, so that the time needed to scan a sequence does not depend on the number of enzymes.
+ * The automaton reports all occurrences of all sites, including overlapping occurrences (e.g., GATC and GAATC
+ * from DpnII and the DpnIIcX variants, or two overlapping CGATCG sites of PvuI). The search is case-insensitive,
+ * and any character other than A, C, G or T (e.g., N) cannot be part of a match.
+ * <p>
+ * An object of this class is immutable once it has been created and can be shared between threads.
+ * @version 0.0.1
+ */
+public class CutSiteScanner {
+    /** Size of the alphabet (A, C, G, T). */
+    private static final int ALPHABET_SIZE = 4;
+    /** Key: an ASCII character; value: its code in the automaton (0-3), or -1 for all other characters. */
+    private static final byte[] NUCLEOTIDE_CODE = new byte[256];
+
+    static {
+        Arrays.fill(NUCLEOTIDE_CODE, (byte) -1);
+        NUCLEOTIDE_CODE['A'] = NUCLEOTIDE_CODE['a'] = 0;
+        NUCLEOTIDE_CODE['C'] = NUCLEOTIDE_CODE['c'] = 1;
+        NUCLEOTIDE_CODE['G'] = NUCLEOTIDE_CODE['g'] = 2;
+        NUCLEOTIDE_CODE['T'] = NUCLEOTIDE_CODE['t'] = 3;
+    }
+
+    /** The enzymes; the index of an enzyme in this list is the enzyme id that is reported in {@link CutSites}. */
+    private final List<RestrictionEnzyme> enzymes;
+    /** Length of the (plain) recognition site of each enzyme. */
+    private final int[] siteLength;
+    /** Offset of the cut within the recognition site of each enzyme. */
+    private final int[] cutOffset;
+    /** Transition table of the automaton: the next state for state s and nucleotide c is at index s*4+c. */
+    private final int[] transitions;
+    /** Ids of the enzymes whose recognition site ends in a given state (ordered by id). */
+    private final int[][] matches;
+    /** Length of the longest recognition site. */
+    private final int maxSiteLength;
+
+    /**
+     * @param enzymes list of restriction enzymes (at most 127) whose recognition sites consist of A, C, G and T
+     * @throws IllegalArgumentException if a recognition site contains other characters
+     */
+    public CutSiteScanner(List<RestrictionEnzyme> enzymes) {
+        if (enzymes.size() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many restriction enzymes: " + enzymes.size());
+        }
+        this.enzymes = List.copyOf(enzymes);
+        int n = enzymes.size();
+        this.siteLength = new int[n];
+        this.cutOffset = new int[n];
+        // build the trie; state 0 is the root
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> output = new ArrayList<>();
+        trie.add(newNode());
+        output.add(new ArrayList<>());
+        int longest = 0;
+        for (int id = 0; id < n; id++) {
+            RestrictionEnzyme enzyme = enzymes.get(id);
+            String site = enzyme.getPlainSite();
+            siteLength[id] = site.length();
+            cutOffset[id] = enzyme.getOffset();
+            longest = Math.max(longest, site.length());
+            int state = 0;
+            for (int i = 0; i < site.length(); i++) {
+                int c = site.charAt(i) < 256 ? NUCLEOTIDE_CODE[site.charAt(i)] : -1;
+                if (c < 0) {
+                    throw new IllegalArgumentException(String.format("Unsupported character '%c' in site %s of %s",
+                            site.charAt(i), enzyme.getSite(), enzyme.getName()));
+                }
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newNode());
+                    output.add(new ArrayList<>());
+                }
+                state = trie.get(state)[c];
+            }
+            output.get(state).add(id);
+        }
+        this.maxSiteLength = longest;
+        // breadth-first traversal to calculate the failure links and to complete the transition table
+        int nStates = trie.size();
+        this.transitions = new int[nStates * ALPHABET_SIZE];
+        int[] failure = new int[nStates];
+        int[] queue = new int[nStates];
+        int head = 0, tail = 0;
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            int child = trie.get(0)[c];
+            if (child < 0) {
+                transitions[c] = 0;
+            } else {
+                transitions[c] = child;
+                failure[child] = 0;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            output.get(state).addAll(output.get(failure[state]));
+            for (int c = 0; c < ALPHABET_SIZE; c++) {
+                int child = trie.get(state)[c];
+                if (child < 0) {
+                    transitions[state * ALPHABET_SIZE + c] = transitions[failure[state] * ALPHABET_SIZE + c];
+                } else {
+                    transitions[state * ALPHABET_SIZE + c] = child;
+                    failure[child] = transitions[failure[state] * ALPHABET_SIZE + c];
+                    queue[tail++] = child;
+                }
+            }
+        }
+        this.matches = new int[nStates][];
+        for (int s = 0; s < nStates; s++) {
+            matches[s] = output.get(s).stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+    }
+
+    private static int[] newNode() {
+        int[] node = new int[ALPHABET_SIZE];
+        Arrays.fill(node, -1);
+        return node;
+    }
+
+    /** @return the enzymes in the order of their ids. */
+    public List<RestrictionEnzyme> getEnzymes() {
+        return enzymes;
+    }
+
+    /** @return length of the recognition site of the enzyme with the given id. */
+    int getSiteLength(int id) {
+        return siteLength[id];
+    }
+
+    /** @return offset of the cut within the recognition site of the enzyme with the given id. */
+    int getCutOffset(int id) {
+        return cutOffset[id];
+    }
+
+    /** @return length of the longest recognition site. */
+    public int getMaxSiteLength() {
+        return maxSiteLength;
+    }
+
+    /**
+     * Find all cutting positions in the sequence.
+     * @param bases the DNA sequence (ASCII)
+     * @param firstPosition the position of {@code bases[0]} (e.g., 1 for the start of a chromosome in one-based numbering)
+     * @return the cutting positions (position of the first nucleotide after the cut), sorted by position and enzyme id
+     */
+    public CutSites scan(byte[] bases, int firstPosition) {
+        CutSites cuts = new CutSites(enzymes, Math.max(16, bases.length >> 8));
+        int state = 0;
+        for (int i = 0; i < bases.length; i++) {
+            int c = NUCLEOTIDE_CODE[bases[i] & 0xFF];
+            state = c < 0 ? 0 : transitions[state * ALPHABET_SIZE + c];
+            if (matches[state].length > 0) {
+                addMatches(cuts, state, i, firstPosition);
+            }
+        }
+        return cuts;
+    }
+
+    /**
+     * Find all cutting positions in the sequence.
+     * @param sequence the DNA sequence
+     * @param firstPosition the position of the first character (e.g., 1 for the start of a chromosome in one-based numbering)
+     * @return the cutting positions (position of the first nucleotide after the cut), sorted by position and enzyme id
+     */
+    public CutSites scan(CharSequence sequence, int firstPosition) {
+        int len = sequence.length();
+        CutSites cuts = new CutSites(enzymes, Math.max(16, len >> 8));
+        int state = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = sequence.charAt(i);
+            int c = ch < 256 ? NUCLEOTIDE_CODE[ch] : -1;
+            state = c < 0 ? 0 : transitions[state * ALPHABET_SIZE + c];
+            if (matches[state].length > 0) {
+                addMatches(cuts, state, i, firstPosition);
+            }
+        }
+        return cuts;
+    }
+
+    /**
+     * Count the recognition sites in the sequence without recording their positions.
+     * @param bases the DNA sequence (ASCII)
+     * @return total number of occurrences of all recognition sites
+     */
+    public int countSites(byte[] bases) {
+        int count = 0;
+        int state = 0;
+        for (byte b : bases) {
+            int c = NUCLEOTIDE_CODE[b & 0xFF];
+            state = c < 0 ? 0 : transitions[state * ALPHABET_SIZE + c];
+            count += matches[state].length;
+        }
+        return count;
+    }
+
+    /** Record the matches that end at index {@code end} of the sequence. */
+    private void addMatches(CutSites cuts, int state, int end, int firstPosition) {
+        for (int id : matches[state]) {
+            int matchStart = end - siteLength[id] + 1;
+            cuts.insert(firstPosition + matchStart + cutOffset[id], (byte) id);
+        }
+    }
+}
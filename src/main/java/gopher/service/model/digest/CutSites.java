@@ -0,0 +1,94 @@
+package gopher.service.model.digest;
+
+import gopher.service.model.RestrictionEnzyme;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The cutting positions found by a {@link CutSiteScanner}, stored in primitive arrays that are sorted by position
+ * (and by enzyme id for enzymes that cut at the same position). Each cut is represented by the position of the first
+ * nucleotide after the cut and by the id of the enzyme, i.e., the index of the enzyme in the list passed to the scanner.
+ * @version 0.0.1
+ */
+public class CutSites {
+    /** The enzymes in the order of their ids. */
+    private final List<RestrictionEnzyme> enzymes;
+    private int[] positions;
+    private byte[] enzymeIds;
+    private int size;
+
+    CutSites(List<RestrictionEnzyme> enzymes, int initialCapacity) {
+        this.enzymes = enzymes;
+        this.positions = new int[initialCapacity];
+        this.enzymeIds = new byte[initialCapacity];
+        this.size = 0;
+    }
+
+    /**
+     * Insert a cut at its sorted position. Since the scanner finds the sites in the order of their end positions,
+     * cuts arrive almost sorted (the disorder is bounded by the length of the recognition sites), and so the
+     * insertion only needs to move a few elements at the end of the arrays.
+     */
+    void insert(int position, byte enzymeId) {
+        if (size == positions.length) {
+            int capacity = positions.length + (positions.length >> 1) + 1;
+            positions = Arrays.copyOf(positions, capacity);
+            enzymeIds = Arrays.copyOf(enzymeIds, capacity);
+        }
+        int i = size;
+        while (i > 0 && (positions[i - 1] > position ||
+                (positions[i - 1] == position && enzymeIds[i - 1] > enzymeId))) {
+            positions[i] = positions[i - 1];
+            enzymeIds[i] = enzymeIds[i - 1];
+            i--;
+        }
+        positions[i] = position;
+        enzymeIds[i] = enzymeId;
+        size++;
+    }
+
+    /** @return number of cuts. */
+    public int size() {
+        return size;
+    }
+
+    /** @return position of the first nucleotide after the i'th cut. */
+    public int getPosition(int i) {
+        return positions[i];
+    }
+
+    /** @return id of the enzyme of the i'th cut. */
+    public int getEnzymeId(int i) {
+        return enzymeIds[i];
+    }
+
+    /** @return the enzyme of the i'th cut. */
+    public RestrictionEnzyme getEnzyme(int i) {
+        return enzymes.get(enzymeIds[i]);
+    }
+
+    /** @return a copy of the sorted cutting positions. */
+    public int[] getPositions() {
+        return Arrays.copyOf(positions, size);
+    }
+
+    /** @return a copy of the enzyme ids (in the same order as {@link #getPositions()}). */
+    public byte[] getEnzymeIds() {
+        return Arrays.copyOf(enzymeIds, size);
+    }
+
+    /**
+     * @param enzymeId id of one of the enzymes
+     * @return the cuts of this enzyme only, i.e., the cuts of a digest with this enzyme alone (with enzyme id 0)
+     */
+    CutSites forEnzyme(int enzymeId) {
+        CutSites cuts = new CutSites(List.of(enzymes.get(enzymeId)), Math.max(1, size / enzymes.size()));
+        for (int i = 0; i < size; i++) {
+            if (enzymeIds[i] == enzymeId) {
+                cuts.insert(positions[i], (byte) 0);
+            }
+        }
+        return cuts;
+    }
+}
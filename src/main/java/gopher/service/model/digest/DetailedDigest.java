@@ -25,10 +25,13 @@ public record DetailedDigest(String chromosome,
                              boolean enrichmentStatus,
                              int nProbes5prime,
                              int nProbes3prime) {
+    /** Format of a line of the digest file (also used by {@link DigestTable#formatRow(int)}). */
+    static final String FORMAT = "%s\t%d\t%d\t%d\t%s\t%s\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%s\t%d\t%d\n";
+
     @Override
     public
     String toString() {
-        return String.format("%s\t%d\t%d\t%d\t%s\t%s\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%s\t%d\t%d\n",
+        return String.format(FORMAT,
                 chromosome(),
                 digestStartPosition(),
                 digestEndPosition(),
@@ -0,0 +1,59 @@
+package gopher.service.model.digest;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes {@link DetailedDigest} objects to the digest file as soon as they have been created, so that we
+ * only need to keep the digests of one chromosome in memory. If the name of the output file ends with
+ * {@code .gz}, the file is compressed in the BGZF format (which can be read by any gzip reader).
+ */
+public class DigestFileWriter implements Closeable {
+    /** Size of the output buffer (characters). */
+    private static final int BUFFER_SIZE = 1 << 20;
+    /** Suffix of the names of compressed digest files. */
+    public static final String GZIP_SUFFIX = ".gz";
+
+    private final Writer writer;
+    /** Number of digests that have been written so far. */
+    private long n_digests;
+
+    /**
+     * @param path path of the output file (compressed if the path ends with {@link #GZIP_SUFFIX})
+     * @throws IOException if the file cannot be opened
+     */
+    public DigestFileWriter(String path) throws IOException {
+        OutputStream os = path.endsWith(GZIP_SUFFIX) ?
+                new BlockCompressedOutputStream(new File(path)) :
+                new FileOutputStream(path);
+        this.writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.US_ASCII), BUFFER_SIZE);
+        this.n_digests = 0;
+    }
+
+    /** Write the header line with the names of the columns. */
+    public void writeHeader() throws IOException {
+        writer.write(String.join("\t", DetailedDigest.headerFields()));
+        writer.write('\n');
+    }
+
+    /** Write one line per digest. */
+    public void write(List<DetailedDigest> digests) throws IOException {
+        for (DetailedDigest digest : digests) {
+            writer.write(digest.toString());
+        }
+        n_digests += digests.size();
+    }
+
+    /** @return number of digests that have been written so far. */
+    public long getDigestCount() {
+        return n_digests;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,167 @@
+package gopher.service.model.digest;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Summary statistics of the digests of one restriction enzyme, e.g., to compare the enzymes for a new capture
+ * Hi-C panel. The statistics are accumulated chromosome by chromosome with {@link #add(DetailedDigest)} and
+ * {@link #add(DigestStatistics)}, so that we never need to keep the digests of the whole genome in memory. The median
+ * length is exact for digests of up to {@link #MAX_EXACT_LENGTH} nucleotides; longer digests are counted in a single
+ * bin, and so the median of an enzyme whose digests are mostly longer than that is reported as {@code >} the limit.
+ */
+public class DigestStatistics {
+    /** Lengths up to this value are counted individually for the median. */
+    static final int MAX_EXACT_LENGTH = 20_000;
+
+    private final String enzymeName;
+    private long count = 0;
+    private long totalLength = 0;
+    private int minLength = Integer.MAX_VALUE;
+    private int maxLength = 0;
+    /** Sum of the mean G/C content of the two margins of each digest. */
+    private double gcSum = 0;
+    /** Sum of the mean repeat content of the two margins of each digest. */
+    private double repeatSum = 0;
+    private long enrichedCount = 0;
+    /** Number of digests of each length up to {@link #MAX_EXACT_LENGTH}, and of all longer digests in the last bin. */
+    private final long[] lengthCounts = new long[MAX_EXACT_LENGTH + 2];
+
+    public DigestStatistics(String enzymeName) {
+        this.enzymeName = enzymeName;
+    }
+
+    /** Add one digest to the statistics. */
+    public void add(DetailedDigest digest) {
+        int len = digest.digestLength();
+        count++;
+        totalLength += len;
+        minLength = Math.min(minLength, len);
+        maxLength = Math.max(maxLength, len);
+        gcSum += (digest.gcContent5prime() + digest.gcContent3prime()) / 2;
+        repeatSum += (digest.repeatContent5prime() + digest.repeatContent3prime()) / 2;
+        if (digest.enrichmentStatus()) {
+            enrichedCount++;
+        }
+        lengthCounts[Math.max(0, Math.min(len, MAX_EXACT_LENGTH + 1))]++;
+    }
+
+    /** Add the digests of a list, e.g., of one chromosome. */
+    public void addAll(List<DetailedDigest> digests) {
+        for (DetailedDigest digest : digests) {
+            add(digest);
+        }
+    }
+
+    /** Add the statistics of other digests of the same enzyme, e.g., of another chromosome. */
+    public void add(DigestStatistics other) {
+        if (other.count == 0) {
+            return;
+        }
+        count += other.count;
+        totalLength += other.totalLength;
+        minLength = Math.min(minLength, other.minLength);
+        maxLength = Math.max(maxLength, other.maxLength);
+        gcSum += other.gcSum;
+        repeatSum += other.repeatSum;
+        enrichedCount += other.enrichedCount;
+        for (int i = 0; i < lengthCounts.length; i++) {
+            lengthCounts[i] += other.lengthCounts[i];
+        }
+    }
+
+    public String getEnzymeName() {
+        return enzymeName;
+    }
+
+    /** @return number of digests. */
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    /** @return length of the shortest digest, or 0 if there are no digests. */
+    public int getMinLength() {
+        return count == 0 ? 0 : minLength;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public double getMeanLength() {
+        return count == 0 ? 0 : (double) totalLength / count;
+    }
+
+    /**
+     * @return the (lower) median length of the digests, or {@link #MAX_EXACT_LENGTH}+1 if the median is longer than
+     * {@link #MAX_EXACT_LENGTH}
+     */
+    public int getMedianLength() {
+        if (count == 0) {
+            return 0;
+        }
+        long half = (count + 1) / 2;
+        long cumulative = 0;
+        for (int len = 0; len < lengthCounts.length; len++) {
+            cumulative += lengthCounts[len];
+            if (cumulative >= half) {
+                return len;
+            }
+        }
+        return MAX_EXACT_LENGTH + 1;
+    }
+
+    /** @return mean G/C content of the margins of the digests. */
+    public double getMeanGcContent() {
+        return count == 0 ? 0 : gcSum / count;
+    }
+
+    /** @return mean repeat content of the margins of the digests. */
+    public double getMeanRepeatContent() {
+        return count == 0 ? 0 : repeatSum / count;
+    }
+
+    /** @return number of digests that are selected for enrichment. */
+    public long getEnrichedCount() {
+        return enrichedCount;
+    }
+
+    private static final String[] headerFields = {
+            "Enzyme",
+            "Digests",
+            "Total_Length",
+            "Min_Length",
+            "Median_Length",
+            "Mean_Length",
+            "Max_Length",
+            "Mean_GC_Content",
+            "Mean_Repeat_Content",
+            "Enriched_Digests"
+    };
+
+    /** @return the names of the columns of the summary report (one line per {@link DigestStatistics} object). */
+    public static String[] headerFields() {
+        return headerFields;
+    }
+
+    /** @return line of the summary report. */
+    @Override
+    public String toString() {
+        int median = getMedianLength();
+        return String.format(Locale.ROOT, "%s\t%d\t%d\t%d\t%s\t%.1f\t%d\t%.3f\t%.3f\t%d\n",
+                enzymeName,
+                count,
+                totalLength,
+                getMinLength(),
+                median > MAX_EXACT_LENGTH ? ">" + MAX_EXACT_LENGTH : String.valueOf(median),
+                getMeanLength(),
+                maxLength,
+                getMeanGcContent(),
+                getMeanRepeatContent(),
+                enrichedCount);
+    }
+}
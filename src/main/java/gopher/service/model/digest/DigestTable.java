@@ -0,0 +1,324 @@
+package gopher.service.model.digest;
+
+import java.util.*;
+
+/**
+ * Column-oriented table of restriction digests. A genome-wide digest has millions of rows (e.g., about 7 million for
+ * DpnII and hg38), and so instead of one {@link DetailedDigest} object per digest we store each field in a primitive
+ * array. The chromosome of each row is stored as runs of rows with the same chromosome (the digests are added one
+ * chromosome at a time), and the names of the enzymes as byte ids. The G/C and repeat contents are stored as doubles, so
+ * that {@link #formatRow(int)} writes exactly the same lines as {@link DetailedDigest#toString()}.
+ * {@link DetailedDigest} objects are only created by {@link #get(int)} and {@link #iterator()}, e.g., for display.
+ * <p>
+ * The length of a digest is not stored, since it is always {@code end - start + 1}.
+ */
+public class DigestTable implements Iterable<DetailedDigest> {
+    private static final int INITIAL_CAPACITY = 1024;
+    /** Maximum number of distinct enzyme names (including "None"). */
+    private static final int MAX_ENZYMES = 256;
+
+    /** Interned chromosome names. */
+    private final List<String> chromosomes = new ArrayList<>();
+    private final Map<String, Integer> chromosomeIds = new HashMap<>();
+    /** First row of each run of rows with the same chromosome. */
+    private int[] runStarts = new int[16];
+    /** Chromosome id of each run. */
+    private int[] runChromosomes = new int[16];
+    private int nRuns = 0;
+
+    /** Interned enzyme names. */
+    private final List<String> enzymes = new ArrayList<>();
+    private final Map<String, Byte> enzymeIds = new HashMap<>();
+
+    private int size = 0;
+    private int[] startPositions;
+    private int[] endPositions;
+    private int[] digestNumbers;
+    private byte[] enzymes5prime;
+    private byte[] enzymes3prime;
+    private double[] gcContents5prime;
+    private double[] gcContents3prime;
+    private double[] repeatContents5prime;
+    private double[] repeatContents3prime;
+    private final BitSet enrichmentStatus = new BitSet();
+    private short[] nProbes5prime;
+    private short[] nProbes3prime;
+
+    public DigestTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private DigestTable(int capacity) {
+        allocate(Math.max(1, capacity));
+    }
+
+    /**
+     * @param digests digests, e.g., of one chromosome
+     * @return table with the digests in the order of the list
+     */
+    public static DigestTable of(List<DetailedDigest> digests) {
+        DigestTable table = new DigestTable(digests.size());
+        for (DetailedDigest d : digests) {
+            table.add(d);
+        }
+        return table;
+    }
+
+    private void allocate(int capacity) {
+        startPositions = startPositions == null ? new int[capacity] : Arrays.copyOf(startPositions, capacity);
+        endPositions = endPositions == null ? new int[capacity] : Arrays.copyOf(endPositions, capacity);
+        digestNumbers = digestNumbers == null ? new int[capacity] : Arrays.copyOf(digestNumbers, capacity);
+        enzymes5prime = enzymes5prime == null ? new byte[capacity] : Arrays.copyOf(enzymes5prime, capacity);
+        enzymes3prime = enzymes3prime == null ? new byte[capacity] : Arrays.copyOf(enzymes3prime, capacity);
+        gcContents5prime = gcContents5prime == null ? new double[capacity] : Arrays.copyOf(gcContents5prime, capacity);
+        gcContents3prime = gcContents3prime == null ? new double[capacity] : Arrays.copyOf(gcContents3prime, capacity);
+        repeatContents5prime = repeatContents5prime == null ? new double[capacity] : Arrays.copyOf(repeatContents5prime, capacity);
+        repeatContents3prime = repeatContents3prime == null ? new double[capacity] : Arrays.copyOf(repeatContents3prime, capacity);
+        nProbes5prime = nProbes5prime == null ? new short[capacity] : Arrays.copyOf(nProbes5prime, capacity);
+        nProbes3prime = nProbes3prime == null ? new short[capacity] : Arrays.copyOf(nProbes3prime, capacity);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > startPositions.length) {
+            allocate(Math.max(capacity, 2 * startPositions.length));
+        }
+    }
+
+    private int chromosomeId(String chromosome) {
+        return chromosomeIds.computeIfAbsent(chromosome, c -> {
+            chromosomes.add(c);
+            return chromosomes.size() - 1;
+        });
+    }
+
+    private byte enzymeId(String enzyme) {
+        Byte id = enzymeIds.get(enzyme);
+        if (id == null) {
+            if (enzymes.size() == MAX_ENZYMES) {
+                throw new IllegalStateException("Too many restriction enzymes for a digest table: " + enzyme);
+            }
+            id = (byte) enzymes.size();
+            enzymes.add(enzyme);
+            enzymeIds.put(enzyme, id);
+        }
+        return id;
+    }
+
+    /** Start a new run if the chromosome of the next row differs from the chromosome of the last row. */
+    private void setChromosome(String chromosome) {
+        int id = chromosomeId(chromosome);
+        if (nRuns > 0 && runChromosomes[nRuns - 1] == id) {
+            return;
+        }
+        if (nRuns == runStarts.length) {
+            runStarts = Arrays.copyOf(runStarts, 2 * nRuns);
+            runChromosomes = Arrays.copyOf(runChromosomes, 2 * nRuns);
+        }
+        runStarts[nRuns] = size;
+        runChromosomes[nRuns] = id;
+        nRuns++;
+    }
+
+    /** Append a digest to the table. */
+    public void add(DetailedDigest digest) {
+        ensureCapacity(size + 1);
+        setChromosome(digest.chromosome());
+        int i = size;
+        startPositions[i] = digest.digestStartPosition();
+        endPositions[i] = digest.digestEndPosition();
+        digestNumbers[i] = digest.digestNumber();
+        enzymes5prime[i] = enzymeId(digest.restrictionSite5prime());
+        enzymes3prime[i] = enzymeId(digest.restrictionSite3prime());
+        gcContents5prime[i] = digest.gcContent5prime();
+        gcContents3prime[i] = digest.gcContent3prime();
+        repeatContents5prime[i] = digest.repeatContent5prime();
+        repeatContents3prime[i] = digest.repeatContent3prime();
+        enrichmentStatus.set(i, digest.enrichmentStatus());
+        nProbes5prime[i] = (short) Math.min(Short.MAX_VALUE, digest.nProbes5prime());
+        nProbes3prime[i] = (short) Math.min(Short.MAX_VALUE, digest.nProbes3prime());
+        size++;
+    }
+
+    /** Append all rows of another table, e.g., the digests of the next chromosome. */
+    public void addAll(DigestTable other) {
+        ensureCapacity(size + other.size);
+        // the ids of the other table are translated to the ids of this table
+        byte[] enzymeMap = new byte[other.enzymes.size()];
+        for (int e = 0; e < enzymeMap.length; e++) {
+            enzymeMap[e] = enzymeId(other.enzymes.get(e));
+        }
+        for (int r = 0; r < other.nRuns; r++) {
+            int from = other.runStarts[r];
+            int to = r + 1 < other.nRuns ? other.runStarts[r + 1] : other.size;
+            setChromosome(other.chromosomes.get(other.runChromosomes[r]));
+            int n = to - from;
+            System.arraycopy(other.startPositions, from, startPositions, size, n);
+            System.arraycopy(other.endPositions, from, endPositions, size, n);
+            System.arraycopy(other.digestNumbers, from, digestNumbers, size, n);
+            System.arraycopy(other.gcContents5prime, from, gcContents5prime, size, n);
+            System.arraycopy(other.gcContents3prime, from, gcContents3prime, size, n);
+            System.arraycopy(other.repeatContents5prime, from, repeatContents5prime, size, n);
+            System.arraycopy(other.repeatContents3prime, from, repeatContents3prime, size, n);
+            System.arraycopy(other.nProbes5prime, from, nProbes5prime, size, n);
+            System.arraycopy(other.nProbes3prime, from, nProbes3prime, size, n);
+            for (int i = 0; i < n; i++) {
+                enzymes5prime[size + i] = enzymeMap[other.enzymes5prime[from + i]];
+                enzymes3prime[size + i] = enzymeMap[other.enzymes3prime[from + i]];
+                enrichmentStatus.set(size + i, other.enrichmentStatus.get(from + i));
+            }
+            size += n;
+        }
+    }
+
+    /** @return number of digests. */
+    public int size() {
+        return size;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of digest table with " + size + " rows");
+        }
+    }
+
+    public String getChromosome(int row) {
+        checkRow(row);
+        int r = Arrays.binarySearch(runStarts, 0, nRuns, row);
+        if (r < 0) {
+            r = -r - 2; // the run that starts before the row
+        }
+        return chromosomes.get(runChromosomes[r]);
+    }
+
+    public int getStartPosition(int row) {
+        checkRow(row);
+        return startPositions[row];
+    }
+
+    public int getEndPosition(int row) {
+        checkRow(row);
+        return endPositions[row];
+    }
+
+    public int getLength(int row) {
+        checkRow(row);
+        return endPositions[row] - startPositions[row] + 1;
+    }
+
+    public int getDigestNumber(int row) {
+        checkRow(row);
+        return digestNumbers[row];
+    }
+
+    public String getRestrictionSite5prime(int row) {
+        checkRow(row);
+        return enzymes.get(enzymes5prime[row] & 0xff);
+    }
+
+    public String getRestrictionSite3prime(int row) {
+        checkRow(row);
+        return enzymes.get(enzymes3prime[row] & 0xff);
+    }
+
+    public double getGcContent5prime(int row) {
+        checkRow(row);
+        return gcContents5prime[row];
+    }
+
+    public double getGcContent3prime(int row) {
+        checkRow(row);
+        return gcContents3prime[row];
+    }
+
+    public double getRepeatContent5prime(int row) {
+        checkRow(row);
+        return repeatContents5prime[row];
+    }
+
+    public double getRepeatContent3prime(int row) {
+        checkRow(row);
+        return repeatContents3prime[row];
+    }
+
+    public boolean isEnriched(int row) {
+        checkRow(row);
+        return enrichmentStatus.get(row);
+    }
+
+    public int getNProbes5prime(int row) {
+        checkRow(row);
+        return nProbes5prime[row];
+    }
+
+    public int getNProbes3prime(int row) {
+        checkRow(row);
+        return nProbes3prime[row];
+    }
+
+    /** @return number of digests that are selected for enrichment. */
+    public int getEnrichedCount() {
+        return enrichmentStatus.cardinality();
+    }
+
+    /**
+     * @param row index of a row
+     * @return the line of the digest file for this row (in the format of {@link DetailedDigest#toString()})
+     */
+    public String formatRow(int row) {
+        return String.format(DetailedDigest.FORMAT,
+                getChromosome(row),
+                startPositions[row],
+                endPositions[row],
+                digestNumbers[row],
+                getRestrictionSite5prime(row),
+                getRestrictionSite3prime(row),
+                getLength(row),
+                gcContents5prime[row],
+                gcContents3prime[row],
+                repeatContents5prime[row],
+                repeatContents3prime[row],
+                enrichmentStatus.get(row) ? "T" : "F",
+                nProbes5prime[row],
+                nProbes3prime[row]);
+    }
+
+    /** @return a {@link DetailedDigest} object for one row, e.g., for display. */
+    public DetailedDigest get(int row) {
+        checkRow(row);
+        return new DetailedDigest(getChromosome(row),
+                startPositions[row],
+                endPositions[row],
+                digestNumbers[row],
+                getRestrictionSite5prime(row),
+                getRestrictionSite3prime(row),
+                getLength(row),
+                gcContents5prime[row],
+                gcContents3prime[row],
+                repeatContents5prime[row],
+                repeatContents3prime[row],
+                enrichmentStatus.get(row),
+                nProbes5prime[row],
+                nProbes3prime[row]);
+    }
+
+    /** @return iterator that creates a {@link DetailedDigest} object for each row. */
+    @Override
+    public Iterator<DetailedDigest> iterator() {
+        return new Iterator<>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < size;
+            }
+
+            @Override
+            public DetailedDigest next() {
+                if (row >= size) {
+                    throw new NoSuchElementException();
+                }
+                return get(row++);
+            }
+        };
+    }
+}
@@ -1,6 +1,7 @@
 package gopher.service.model.digest;
 
-import com.google.common.collect.ImmutableList;
+import gopher.io.BaseComposition;
+import gopher.io.PackedGenome;
 import gopher.service.GopherService;
 import gopher.service.model.RestrictionEnzyme;
 import gopher.service.model.viewpoint.Segment;
@@ -8,11 +9,10 @@ import gopher.service.model.viewpoint.ViewPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Objects;
 
 public class GenomeDigester {
     private static final Logger LOGGER = LoggerFactory.getLogger(GenomeDigester.class.getName());
@@ -21,13 +21,9 @@ public class GenomeDigester {
      */
     private final List<RestrictionEnzyme> restrictionEnzymeList;
     /**
-     * key: index of enzyme; value: name of enzyme (Note: usually, we just have one enzyme!). Symmetrical with {@link #enzyme2number}).
+     * Finds the cutting positions of all enzymes in {@link #restrictionEnzymeList} in one pass over a chromosome.
      */
-    private Map<Integer, RestrictionEnzyme> number2enzyme;
-    /**
-     * key: name of enzyme; value: index of enzyme (Note: usually, we just have one enzyme!). Symmetrical with {@link #number2enzyme}).
-     */
-    private Map<RestrictionEnzyme, Integer> enzyme2number;
+    private final CutSiteScanner cutSiteScanner;
     /**
      * Path to the combined FASTA file with all (or all canonical) chromosomes.
      */
@@ -36,122 +32,137 @@ public class GenomeDigester {
      * size of margin of fragments used for calculating GC and fivePrimeRepeatContent content.
      */
     private final int marginSize;
-    private BinaryTree btree;
+    /**
+     * Packed genome for {@link #genomeFastaFilePath}, used to look up the G/C and repeat counts of the margins
+     * (null if there is no up-to-date packed genome, in which case we count the nucleotides of the sequence).
+     */
+    private final PackedGenome packedGenome;
+    /** The selected segments of the viewpoints, which are marked in the digest file. */
+    private SelectedSegments selectedSegments;
 
     public GenomeDigester(GopherService model) {
         this.marginSize = model.getMarginSize();
         this.restrictionEnzymeList = model.getChosenEnzymelist();
+        this.cutSiteScanner = new CutSiteScanner(this.restrictionEnzymeList);
         this.genomeFastaFilePath = model.getGenomeFastaFile();
+        this.packedGenome = openPackedGenome(this.genomeFastaFilePath);
         LOGGER.trace(String.format("GenomeDigester initializes with FASTA file=%s", this.genomeFastaFilePath));
         extractChosenSegments(model.getViewPointList());
     }
 
 
     public GenomeDigester(RestrictionEnzyme enzyme, String genomeFasta, List<ViewPoint> vplist, int marginSize) {
-        this.restrictionEnzymeList = List.of(enzyme);
+        this(List.of(enzyme), genomeFasta, vplist, marginSize);
+    }
+
+
+    public GenomeDigester(List<RestrictionEnzyme> enzymes, String genomeFasta, List<ViewPoint> vplist, int marginSize) {
+        this.restrictionEnzymeList = enzymes;
+        this.cutSiteScanner = new CutSiteScanner(this.restrictionEnzymeList);
         this.genomeFastaFilePath = genomeFasta;
+        this.packedGenome = openPackedGenome(genomeFasta);
         this.marginSize = marginSize;
         extractChosenSegments(vplist);
     }
 
 
+    private static PackedGenome openPackedGenome(String genomeFasta) {
+        if (genomeFasta == null || ! PackedGenome.isUpToDate(genomeFasta)) {
+            return null;
+        }
+        try {
+            return new PackedGenome(PackedGenome.getPackedGenomePath(genomeFasta));
+        } catch (IOException e) {
+            LOGGER.warn("Could not open packed genome, counting G/C and repeats from the sequence: {}", e.getMessage());
+            return null;
+        }
+    }
+
     /**
      *  The coordinates of the fragments correspond to coordinates in digest file
      *  segments are one based, digests in file are one based
      * @param vplist A list of Viewpoints that contain at least one selected digest.
      */
     private void extractChosenSegments(List<ViewPoint> vplist) {
-        this.btree = new BinaryTree();
+        List<Segment> segments = new ArrayList<>();
         for (ViewPoint vp : vplist) {
-            List<Segment> seglist = vp.getActiveSegments();
-            for (Segment seg : seglist) {
-                btree.add(seg);
-            }
+            segments.addAll(vp.getActiveSegments());
         }
+        this.selectedSegments = new SelectedSegments(segments);
+        LOGGER.trace(String.format("We got a total of %d chosen segments", selectedSegments.size()));
+    }
+
+    /**
+     * @param scaffoldName name of chromosome or alt scaffold
+     * @param sequence     DNA sequence of the chromosome (ASCII bases as returned by the FASTA reader)
+     */
+    public List<DetailedDigest> cutOneChromosome(String scaffoldName, byte[] sequence) {
+        /* Note that we are trying to match the 1-based positions in SegmentFactory.
+        In SegmentFactory, we use the HTSJDK IndexedFastaSequenceFile/Reader, which
+        gives back one-based positions. Here, we are using a zero-based array, and so we
+        pass "1" as the position of the first base.
+         */
+        return cutOneChromosome(scaffoldName, sequence, cutSiteScanner.scan(sequence, 1));
+    }
+
+    /** @return the {@link CutSiteScanner} for all enzymes of this digester. */
+    CutSiteScanner getCutSiteScanner() {
+        return cutSiteScanner;
     }
 
     /**
      * @param scaffoldName name of chromosome or alt scaffold
      * @param sequence     DNA sequence of the chromosome
+     * @param cuts         one-based cutting positions in the sequence, e.g., of only one of the enzymes
      */
-    public List<DetailedDigest> cutOneChromosome(String scaffoldName, String sequence) {
-        ImmutableList.Builder<Digest> builder = new ImmutableList.Builder<>();
-        for (Map.Entry<RestrictionEnzyme, Integer> ent : enzyme2number.entrySet()) {
-            int enzymeNumber = ent.getValue();
-            RestrictionEnzyme enzyme = ent.getKey();
-            String cutpat = enzyme.getPlainSite();
-            int offset = enzyme.getOffset();
-            Pattern pattern = Pattern.compile(cutpat, Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(sequence);
-            /* one-based position of first nucleotide in the entire subsequence returned by fasta reader */
-            while (matcher.find()) {
-                /* Note that we are trying to match the 1-based positions in SegmentFactory.
-                In SegmentFactory, we use the HTSJDK IndexedFastaSequenceFile/Reader, which
-                gives back one-based positions. Here, we are using a Java string, and so we
-                need to add the "1" ourselves.
-                 */
-                int pos = matcher.start() + offset + 1;
-                builder.add(new Digest(enzymeNumber, pos));
-            }
-        }
-        ImmutableList<Digest> fraglist = ImmutableList.sortedCopyOf(builder.build());
+    List<DetailedDigest> cutOneChromosome(String scaffoldName, byte[] sequence, CutSites cuts) {
         String previousCutEnzyme = "None";
         int previousCutPosition = 1; // start of chromosome
         //Header
         List<DetailedDigest> detailedDigestList = new ArrayList<>();
+        // the digests are created in the order of their positions
+        SelectedSegments.Cursor selected = selectedSegments.cursor(scaffoldName);
         int n = 0;
-        for (Digest f : fraglist) {
+        for (int i = 0; i < cuts.size(); i++) {
+            int cutPosition = cuts.getPosition(i);
+            String cutEnzyme = cuts.getEnzyme(i).getName();
             int startpos = previousCutPosition;
-            int endpos = f.position - 1; // f.position is the 1-based first coordinate of the next fragment
+            int endpos = cutPosition - 1; // cutPosition is the 1-based first coordinate of the next fragment
             // Note: to get subsequence, decrement startpos by one to get zero-based numbering
             // leave endpos as is--it is one past the end in zero-based numbering.
-            String subsequence = sequence.substring(startpos - 1, endpos);
-            Result result = getGcAndRepeat(subsequence, this.marginSize);
+            Result result = getGcAndRepeat(scaffoldName, sequence, startpos - 1, endpos, this.marginSize);
 
-            boolean selected = false;
-            int baitNumUp = 0;
-            int baitNumDown = 0;
-            if (btree.containsNode(scaffoldName, startpos)) {
-                selected = true;
-                Segment seg = btree.getNode(scaffoldName, startpos).segment;
-                baitNumUp = seg.getBaitNumUp();
-                baitNumDown = seg.getBaitNumDown();
-            }
+            int k = selected.find(startpos);
+            int baitNumUp = k >= 0 ? selected.getBaitNumUp(k) : 0;
+            int baitNumDown = k >= 0 ? selected.getBaitNumDown(k) : 0;
             detailedDigestList.add(new DetailedDigest(scaffoldName,
                     startpos,
                     endpos,
                     (++n),
                     previousCutEnzyme,
-                    number2enzyme.get(f.enzymeNumber).getName(),
+                    cutEnzyme,
                     result.getLen(),
                     result.getFivePrimeGcContent(),
                     result.getThreePrimeGcContent(),
                     result.getFivePrimeRepeatContent(),
                     result.getThreePrimeRepeatContent(),
-                    selected,
+                    k >= 0,
                     baitNumUp,
                     baitNumDown));
-            previousCutEnzyme = number2enzyme.get(f.enzymeNumber).getName();
-            previousCutPosition = f.position;
+            previousCutEnzyme = cutEnzyme;
+            previousCutPosition = cutPosition;
         }
         // output last digest also
         // No cut ("None") at end of chromosome
-        int endpos = sequence.length();
+        int endpos = sequence.length;
         int startpos = (previousCutPosition + 1);
         // Note: to get subsequence, decrement startpos by one to get zero-based numbering
         // leave endpos as is--it is one past the end in zero-based numbering.
 
-        String subsequence = sequence.substring(startpos - 1, endpos);
-        Result result = getGcAndRepeat(subsequence, marginSize);
-        boolean selected = false;
-        int baitNumUp = 0;
-        int baitNumDown = 0;
-        if (btree.containsNode(scaffoldName, startpos)) {
-            selected = true;
-            Segment seg = btree.getNode(scaffoldName, startpos).segment;
-            baitNumUp = seg.getBaitNumUp();
-            baitNumDown = seg.getBaitNumDown();
-        }
+        Result result = getGcAndRepeat(scaffoldName, sequence, startpos - 1, endpos, marginSize);
+        int k = selected.find(startpos);
+        int baitNumUp = k >= 0 ? selected.getBaitNumUp(k) : 0;
+        int baitNumDown = k >= 0 ? selected.getBaitNumDown(k) : 0;
         detailedDigestList.add(new DetailedDigest(scaffoldName,
                 (previousCutPosition + 1),
                 endpos,
@@ -163,7 +174,7 @@ public class GenomeDigester {
                 result.getThreePrimeGcContent(),
                 result.getFivePrimeRepeatContent(),
                 result.getThreePrimeRepeatContent(),
-                selected,
+                k >= 0,
                 baitNumUp,
                 baitNumDown));
 
@@ -225,32 +236,30 @@ public class GenomeDigester {
         }
     }
 
-    private Result getGcAndRepeat(String subsequence, int marginSize) {
-        int len = subsequence.length();
-        int repeat5 = 0;
-        int repeat3 = 0;
-        int gc5 = 0;
-        int gc3 = 0;
-        for (int i = 0; i < len; ++i) {
-            switch (subsequence.charAt(i)) {
-                case 'a':
-                case 't':
-                    if (i < marginSize) repeat5++;
-                    if ((len - marginSize) <= i) repeat3++;
-                    break;
-                case 'c':
-                case 'g':
-                    if (i < marginSize) repeat5++;
-                    if ((len - marginSize) <= i) repeat3++;
-                    // don't break because we also need to count G/C here
-                case 'C':
-                case 'G':
-                    if (i < marginSize) gc5++;
-                    if ((len - marginSize) <= i) gc3++;
-                    break;
-            }
+    /**
+     * Count G/C and repeat (lower case a, c, g, t) nucleotides in the margins of a fragment. If the fragment is
+     * shorter than the margin size, both margins comprise the entire fragment.
+     * @param scaffoldName name of the chromosome
+     * @param sequence sequence of the chromosome
+     * @param from zero-based index of the first nucleotide of the fragment
+     * @param to zero-based index one past the last nucleotide of the fragment
+     * @param marginSize size of the margins
+     */
+    private Result getGcAndRepeat(String scaffoldName, byte[] sequence, int from, int to, int marginSize) {
+        Objects.checkFromToIndex(from, to, sequence.length);
+        int len = to - from;
+        int margin = Math.max(0, Math.min(marginSize, len));
+        BaseComposition fivePrime;
+        BaseComposition threePrime;
+        if (packedGenome != null && packedGenome.hasContig(scaffoldName)) {
+            // one-based, fully closed coordinates
+            fivePrime = packedGenome.getBaseComposition(scaffoldName, from + 1, from + margin);
+            threePrime = packedGenome.getBaseComposition(scaffoldName, to - margin + 1, to);
+        } else {
+            fivePrime = BaseComposition.of(sequence, from, from + margin);
+            threePrime = BaseComposition.of(sequence, to - margin, to);
         }
-        return new Result(len, gc5, gc3, repeat5, repeat3);
+        return new Result(len, fivePrime.gc(), threePrime.gc(), fivePrime.softMaskedAcgt(), threePrime.softMaskedAcgt());
     }
 
 
@@ -0,0 +1,111 @@
+package gopher.service.model.digest;
+
+import gopher.service.model.RestrictionEnzyme;
+import gopher.service.model.viewpoint.ViewPoint;
+import gopher.util.GopherTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Compares the digests of several restriction enzymes (e.g., all 19 enzymes of Gopher) in a single pass over the
+ * genome. Unlike running a {@link SingleEnzymeDigestCreationTask} for each enzyme, each chromosome is read only once,
+ * and the recognition sites of all enzymes are found in one scan by a {@link CutSiteScanner}. The cuts of each
+ * enzyme are then digested separately, and the digests are summarized in one {@link DigestStatistics} object per
+ * enzyme. The chromosomes are processed in parallel by an {@link OrderedChromosomeRunner}, and the selected segments
+ * of the viewpoints are only indexed once for all enzymes.
+ */
+public class MultiEnzymeDigestSweepTask extends GopherTask<List<DigestStatistics>> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiEnzymeDigestSweepTask.class.getName());
+    /**
+     * Path to the combined FASTA file with all (or all canonical) chromosomes.
+     */
+    private final String genomeFastaFilePath;
+    /** The enzymes that are compared. */
+    private final List<RestrictionEnzyme> enzymes;
+    /**
+     * Digester for all enzymes; we only use its scanner and digest the cuts of one enzyme at a time.
+     */
+    private final GenomeDigester digester;
+    /**
+     * Thread pool for digesting the chromosomes in parallel (null if the chromosomes are digested one after the other).
+     */
+    private final ExecutorService executor;
+
+    public MultiEnzymeDigestSweepTask(List<RestrictionEnzyme> enzymes,
+                                      String genomeFasta,
+                                      List<ViewPoint> vplist,
+                                      int marginSize,
+                                      ExecutorService executor) {
+        this.genomeFastaFilePath = genomeFasta;
+        this.enzymes = List.copyOf(enzymes);
+        this.executor = executor;
+        this.digester = new GenomeDigester(this.enzymes, genomeFasta, vplist, marginSize);
+    }
+
+    /**
+     * @param name name of the chromosome
+     * @param sequence sequence of the chromosome
+     * @return statistics of the digests of the chromosome for each enzyme (in the order of {@link #enzymes})
+     */
+    DigestStatistics[] sweepChromosome(String name, byte[] sequence) {
+        CutSites cuts = digester.getCutSiteScanner().scan(sequence, 1);
+        DigestStatistics[] statistics = new DigestStatistics[enzymes.size()];
+        for (int e = 0; e < statistics.length; e++) {
+            statistics[e] = new DigestStatistics(enzymes.get(e).getName());
+            statistics[e].addAll(digester.cutOneChromosome(name, sequence, cuts.forEnzyme(e)));
+        }
+        return statistics;
+    }
+
+    @Override
+    protected List<DigestStatistics> call() throws Exception {
+        updateProgress(1, 100);
+        List<DigestStatistics> summary = new ArrayList<>();
+        for (RestrictionEnzyme enzyme : enzymes) {
+            summary.add(new DigestStatistics(enzyme.getName()));
+        }
+        OrderedChromosomeRunner runner = new OrderedChromosomeRunner(genomeFastaFilePath, executor);
+        long referenceLength = runner.getTotalLength();
+        updateProgress(10, 100);
+        long[] cumulativeLength = {0};
+        runner.run(this::sweepChromosome,
+                (seqname, length, statistics) -> {
+                    for (int e = 0; e < statistics.length; e++) {
+                        summary.get(e).add(statistics[e]);
+                    }
+                    cumulativeLength[0] += length;
+                    updateProgress(100 * cumulativeLength[0] / referenceLength, 100,
+                            () -> String.format("Digested %s with %d enzymes", seqname, enzymes.size()));
+                },
+                this::isCancelled);
+        if (isCancelled()) // true if user has cancelled the task
+            return null;
+        LOGGER.trace("Digested {} with {} enzymes", genomeFastaFilePath, enzymes.size());
+        return summary;
+    }
+
+    /**
+     * Write the summary report with one line per enzyme.
+     * @param statistics the result of the task
+     * @param path path of the report (tab-separated)
+     * @throws IOException if the report cannot be written
+     */
+    public static void writeReport(List<DigestStatistics> statistics, String path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(Path.of(path), StandardCharsets.US_ASCII)) {
+            writer.write(String.join("\t", DigestStatistics.headerFields()));
+            writer.write('\n');
+            for (DigestStatistics s : statistics) {
+                writer.write(s.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package gopher.service.model.digest;
+
+import gopher.exception.GopherException;
+import gopher.io.GenomeSequenceReader;
+import gopher.util.CancellableJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class processes all chromosomes of an indexed genome FASTA file, e.g., to digest them. The chromosomes are
+ * processed concurrently on a thread pool, but the results are passed to the consumer in the order of the FASTA
+ * index, so that the output is identical to the output of serial processing.
+ * <p>
+ * The number of chromosome sequences that are held in memory at the same time is limited by a memory budget:
+ * before a chromosome is submitted, we reserve {@link #BYTES_PER_BASE} bytes per nucleotide from the budget, and the
+ * reservation is released once its result has been consumed. Reservations are made in index order, and if the budget
+ * is exhausted, we first consume the results of the oldest chromosomes. A chromosome that is larger than the
+ * entire budget is processed on its own.
+ */
+public class OrderedChromosomeRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderedChromosomeRunner.class.getName());
+    /** Estimated number of bytes of heap needed per nucleotide while a chromosome is processed (the bases and the
+     * results). */
+    static final int BYTES_PER_BASE = 2;
+    /** The memory budget is managed in units of one megabyte. */
+    private static final long PERMIT_SIZE = 1L << 20;
+
+    /** Function that is applied to the sequence of each chromosome (called concurrently by the worker threads). */
+    @FunctionalInterface
+    public interface ChromosomeFunction<T> {
+        T apply(String name, byte[] sequence) throws Exception;
+    }
+
+    /** Consumer of the results (called on the thread of {@link #run}, in the order of the FASTA index). */
+    @FunctionalInterface
+    public interface ChromosomeConsumer<T> {
+        void accept(String name, int length, T result) throws Exception;
+    }
+
+    /** Path to the indexed genome FASTA file. */
+    private final String genomeFastaFilePath;
+    /** Thread pool for the chromosomes (if null, the chromosomes are processed one after the other). */
+    private final ExecutorService executor;
+    /** Memory budget in units of {@link #PERMIT_SIZE}. */
+    private final int budget;
+
+    /**
+     * @param genomeFastaFilePath path to the indexed genome FASTA file
+     * @param executor thread pool for the chromosomes (null for serial processing)
+     * @param memoryBudget maximum number of bytes for the chromosomes that are processed at the same time
+     */
+    public OrderedChromosomeRunner(String genomeFastaFilePath, ExecutorService executor, long memoryBudget) {
+        this.genomeFastaFilePath = genomeFastaFilePath;
+        this.executor = executor;
+        this.budget = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / PERMIT_SIZE));
+    }
+
+    /**
+     * @param genomeFastaFilePath path to the indexed genome FASTA file
+     * @param executor thread pool for the chromosomes (null for serial processing)
+     */
+    public OrderedChromosomeRunner(String genomeFastaFilePath, ExecutorService executor) {
+        this(genomeFastaFilePath, executor, getDefaultMemoryBudget());
+    }
+
+    /** @return half of the maximum heap size */
+    public static long getDefaultMemoryBudget() {
+        return Runtime.getRuntime().maxMemory() / 2;
+    }
+
+    /**
+     * @return total length of all chromosomes
+     * @throws GopherException if the FASTA file or its index cannot be read
+     */
+    public long getTotalLength() throws GopherException {
+        try (GenomeSequenceReader genome = new GenomeSequenceReader(genomeFastaFilePath)) {
+            return genome.getTotalLength();
+        } catch (IOException e) {
+            throw new GopherException(String.format("Could not read FASTA index for %s [%s]", genomeFastaFilePath, e.getMessage()), e);
+        }
+    }
+
+    /** A submitted chromosome whose result has not been consumed yet. */
+    private record Pending<T>(String name, int length, int permits, CancellableJob<T> job) {}
+
+    /**
+     * Apply the function to every chromosome and pass the results to the consumer in the order of the FASTA index.
+     * @param function function that is applied to each chromosome
+     * @param consumer consumer of the results
+     * @param cancelled returns true if processing should be stopped (e.g., because the user has cancelled a task)
+     * @throws GopherException if the FASTA file cannot be read or a chromosome cannot be processed
+     */
+    public <T> void run(ChromosomeFunction<T> function,
+                        ChromosomeConsumer<T> consumer,
+                        BooleanSupplier cancelled) throws GopherException {
+        try (GenomeSequenceReader genome = new GenomeSequenceReader(genomeFastaFilePath)) {
+            if (executor == null) {
+                runSerially(genome, function, consumer, cancelled);
+            } else {
+                runInParallel(genome, function, consumer, cancelled);
+            }
+        } catch (GopherException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GopherException(String.format("Could not process chromosomes of %s [%s]", genomeFastaFilePath, e), e);
+        }
+    }
+
+    private <T> void runSerially(GenomeSequenceReader genome,
+                                 ChromosomeFunction<T> function,
+                                 ChromosomeConsumer<T> consumer,
+                                 BooleanSupplier cancelled) throws Exception {
+        for (String name : genome.getContigNames()) {
+            if (cancelled.getAsBoolean())
+                return;
+            byte[] sequence = genome.getBases(name);
+            consumer.accept(name, genome.getLength(name), function.apply(name, sequence));
+        }
+    }
+
+    private <T> void runInParallel(GenomeSequenceReader genome,
+                                   ChromosomeFunction<T> function,
+                                   ChromosomeConsumer<T> consumer,
+                                   BooleanSupplier cancelled) throws Exception {
+        List<GenomeSequenceReader> workerFastaReaders = new CopyOnWriteArrayList<>();
+        ThreadLocal<GenomeSequenceReader> workerFastaReader = ThreadLocal.withInitial(() -> {
+            try {
+                GenomeSequenceReader reader = new GenomeSequenceReader(genomeFastaFilePath);
+                workerFastaReaders.add(reader);
+                return reader;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        Semaphore memory = new Semaphore(budget);
+        Deque<Pending<T>> pending = new ArrayDeque<>();
+        try {
+            for (String name : genome.getContigNames()) {
+                if (cancelled.getAsBoolean())
+                    return;
+                int length = genome.getLength(name);
+                int permits = (int) Math.min(budget, ((long) length * BYTES_PER_BASE + PERMIT_SIZE - 1) / PERMIT_SIZE);
+                permits = Math.max(1, permits);
+                while (!memory.tryAcquire(permits)) {
+                    // budget exhausted: consume the oldest chromosome, which releases its reservation
+                    consume(pending.poll(), consumer, memory);
+                }
+                CancellableJob<T> job = new CancellableJob<>(() -> {
+                    byte[] sequence = workerFastaReader.get().getBases(name);
+                    return function.apply(name, sequence);
+                });
+                executor.execute(job);
+                pending.add(new Pending<>(name, length, permits, job));
+                while (!pending.isEmpty() && pending.peek().job().isDone()) {
+                    consume(pending.poll(), consumer, memory);
+                }
+            }
+            while (!pending.isEmpty()) {
+                if (cancelled.getAsBoolean())
+                    return;
+                consume(pending.poll(), consumer, memory);
+            }
+        } finally {
+            pending.forEach(p -> p.job().cancel(true));
+            // the readers may only be closed once the jobs that are already running have finished
+            pending.forEach(p -> p.job().awaitStopped());
+            for (GenomeSequenceReader reader : workerFastaReaders) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not close FASTA reader: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** Wait for the result of the chromosome, pass it to the consumer, and release its memory reservation. */
+    private <T> void consume(Pending<T> p, ChromosomeConsumer<T> consumer, Semaphore memory) throws Exception {
+        T result;
+        try {
+            result = p.job().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GopherException("Interrupted while processing " + p.name(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new GopherException(String.format("Could not process %s: %s", p.name(), cause.getMessage()), cause);
+        }
+        try {
+            consumer.accept(p.name(), p.length(), result);
+        } finally {
+            memory.release(p.permits());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package gopher.service.model.digest;
+
+import gopher.service.model.viewpoint.Segment;
+
+import java.util.*;
+
+/**
+ * The selected restriction fragments of a design. When we create the digest file, we need to find out for each
+ * restriction fragment whether it is selected, and if so, how many baits it has. For each chromosome, we store the
+ * sorted start positions of the selected segments together with their bait counts in primitive arrays. The digests of
+ * a chromosome are created in the order of their positions, and so they are looked up with a {@link Cursor} that
+ * walks along the start positions; lookups in arbitrary order use a binary search.
+ */
+class SelectedSegments {
+
+    /** Start positions (sorted) and bait counts of the selected segments of one chromosome. */
+    private record Chromosome(int[] startPositions, int[] baitNumUp, int[] baitNumDown) {}
+
+    private static final Chromosome EMPTY = new Chromosome(new int[0], new int[0], new int[0]);
+
+    private final Map<String, Chromosome> chromosomes;
+
+    private final int size;
+
+    /**
+     * @param segments the selected segments (in any order); if there are several segments with the same chromosome
+     *                 and start position, the first one is used
+     */
+    SelectedSegments(Collection<Segment> segments) {
+        Map<String, List<Segment>> segmentsByChromosome = new HashMap<>();
+        for (Segment seg : segments) {
+            segmentsByChromosome.computeIfAbsent(seg.getReferenceSequenceID(), k -> new ArrayList<>()).add(seg);
+        }
+        Map<String, Chromosome> map = new HashMap<>();
+        int n = 0;
+        for (Map.Entry<String, List<Segment>> e : segmentsByChromosome.entrySet()) {
+            List<Segment> list = e.getValue();
+            // stable sort, so that the first of several segments with the same start position is kept
+            list.sort(Comparator.comparingInt(Segment::getStartPos));
+            int[] starts = new int[list.size()];
+            int[] up = new int[list.size()];
+            int[] down = new int[list.size()];
+            int k = 0;
+            for (Segment seg : list) {
+                if (k > 0 && starts[k - 1] == seg.getStartPos()) {
+                    continue;
+                }
+                starts[k] = seg.getStartPos();
+                up[k] = seg.getBaitNumUp();
+                down[k] = seg.getBaitNumDown();
+                k++;
+            }
+            map.put(e.getKey(), new Chromosome(Arrays.copyOf(starts, k), Arrays.copyOf(up, k), Arrays.copyOf(down, k)));
+            n += k;
+        }
+        this.chromosomes = Map.copyOf(map);
+        this.size = n;
+    }
+
+    /** @return number of selected segments. */
+    int size() {
+        return size;
+    }
+
+    /** @return true iff the chromosome and position correspond to the start of one of the selected segments. */
+    boolean contains(String chrom, int pos) {
+        Chromosome c = chromosomes.getOrDefault(chrom, EMPTY);
+        return Arrays.binarySearch(c.startPositions(), pos) >= 0;
+    }
+
+    /**
+     * @param chrom name of a chromosome
+     * @return cursor for looking up positions of the chromosome in ascending order
+     */
+    Cursor cursor(String chrom) {
+        return new Cursor(chromosomes.getOrDefault(chrom, EMPTY));
+    }
+
+    /**
+     * Looks up the start positions of the digests of one chromosome. The positions must be passed to {@link #find} in
+     * ascending order, and so all lookups of a chromosome take time proportional to the number of digests plus the
+     * number of selected segments.
+     */
+    static class Cursor {
+        private final Chromosome chromosome;
+        /** Index of the first selected segment whose start position has not been passed yet. */
+        private int index = 0;
+
+        private Cursor(Chromosome chromosome) {
+            this.chromosome = chromosome;
+        }
+
+        /**
+         * @param pos start position of a digest (not smaller than the previous position)
+         * @return index of the selected segment that starts at pos, or -1 if the digest is not selected
+         */
+        int find(int pos) {
+            int[] starts = chromosome.startPositions();
+            while (index < starts.length && starts[index] < pos) {
+                index++;
+            }
+            return index < starts.length && starts[index] == pos ? index : -1;
+        }
+
+        /** @return number of baits in the upstream direction of the segment found by {@link #find}. */
+        int getBaitNumUp(int i) {
+            return chromosome.baitNumUp()[i];
+        }
+
+        /** @return number of baits in the downstream direction of the segment found by {@link #find}. */
+        int getBaitNumDown(int i) {
+            return chromosome.baitNumDown()[i];
+        }
+    }
+}
@@ -2,21 +2,19 @@ package gopher.service.model.digest;
 
 import gopher.service.model.RestrictionEnzyme;
 import gopher.service.model.viewpoint.ViewPoint;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
-import htsjdk.samtools.reference.ReferenceSequence;
-import javafx.concurrent.Task;
+import gopher.util.GopherTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * This is intended to be used to assay the quality of baited digests for all protein coding
- * genes and for each of the 19 restriction enzymes in turn.
+ * genes and for each of the 19 restriction enzymes in turn. The digests of the genome are returned as a
+ * {@link DigestTable}, which needs much less memory than a list of {@link DetailedDigest} objects.
  */
-public class SingleEnzymeDigestCreationTask extends Task<List<DetailedDigest>> {
+public class SingleEnzymeDigestCreationTask extends GopherTask<DigestTable> {
     private static final Logger LOGGER = LoggerFactory.getLogger(SingleEnzymeDigestCreationTask.class.getName());
     /**
      * Path to the combined FASTA file with all (or all canonical) chromosomes.
@@ -26,40 +24,49 @@ public class SingleEnzymeDigestCreationTask extends Task<List<DetailedDigest>> {
      * Object that creates restiction digests.
      */
     private final GenomeDigester digester;
+    /**
+     * Thread pool for digesting the chromosomes in parallel (null if the chromosomes are digested one after the other).
+     */
+    private final ExecutorService executor;
 
 
     public SingleEnzymeDigestCreationTask(RestrictionEnzyme enzyme, String genomeFasta, List<ViewPoint> vplist, int marginSize) {
+        this(enzyme, genomeFasta, vplist, marginSize, null);
+    }
+
+
+    public SingleEnzymeDigestCreationTask(RestrictionEnzyme enzyme,
+                                          String genomeFasta,
+                                          List<ViewPoint> vplist,
+                                          int marginSize,
+                                          ExecutorService executor) {
         this.genomeFastaFilePath = genomeFasta;
+        this.executor = executor;
         digester = new GenomeDigester(enzyme, genomeFasta, vplist, marginSize);
     }
 
 
     @Override
-    protected List<DetailedDigest> call() throws Exception {
+    protected DigestTable call() throws Exception {
         updateProgress(1, 100);
-        List<DetailedDigest> allDetailedDigestList = new ArrayList<>();
-        try (IndexedFastaSequenceFile fastaReader = new IndexedFastaSequenceFile(new File(genomeFastaFilePath))) {
-            String msg = String.format("Indexing Fasta file %s", genomeFastaFilePath);
-            long referenceLength = fastaReader.getSequenceDictionary().getReferenceLength();
-            long cumulativeLength = 0;
-            LOGGER.trace(msg);
-            updateProgress(10, 100);
-            ReferenceSequence refseq;
-            while ((refseq = fastaReader.nextSequence()) != null) {
-                if (isCancelled()) // true if user has cancelled the task
-                    return null;
-                String seqname = refseq.getName();
-                String sequence = fastaReader.getSequence(seqname).getBaseString();
-                cumulativeLength += sequence.length();
-                updateMessage(String.format("Digesting %s", seqname));
-                // how much of all chromosomes have we digested so far?
-                long current = 100 * cumulativeLength / referenceLength;
-                updateProgress(current, 100);
-                List<DetailedDigest> detailedDigestList = digester.cutOneChromosome(seqname, sequence);
-                allDetailedDigestList.addAll(detailedDigestList);
-            }
-        }
-        return allDetailedDigestList;
+        DigestTable allDigests = new DigestTable();
+        OrderedChromosomeRunner runner = new OrderedChromosomeRunner(genomeFastaFilePath, executor);
+        long referenceLength = runner.getTotalLength();
+        updateProgress(10, 100);
+        long[] cumulativeLength = {0};
+        // the digests of each chromosome are converted to a table by the worker threads
+        runner.run((seqname, sequence) -> DigestTable.of(digester.cutOneChromosome(seqname, sequence)),
+                (seqname, length, digests) -> {
+                    allDigests.addAll(digests);
+                    cumulativeLength[0] += length;
+                    // how much of all chromosomes have we digested so far?
+                    updateProgress(100 * cumulativeLength[0] / referenceLength, 100,
+                            () -> String.format("Digested %s", seqname));
+                },
+                this::isCancelled);
+        if (isCancelled()) // true if user has cancelled the task
+            return null;
+        return allDigests;
     }
 
 
@@ -1,19 +1,19 @@
 package gopher.service.model.regulatoryexome;
 
 import gopher.service.GopherService;
-import javafx.concurrent.Task;
 import javafx.scene.control.ProgressIndicator;
 import gopher.exception.GopherException;
 import gopher.gui.factories.PopupFactory;
 import gopher.io.GeneRegGTFParser;
+import gopher.io.ReadAheadGzipInputStream;
 import gopher.service.model.GopherModel;
 import gopher.service.model.viewpoint.ViewPoint;
+import gopher.util.GopherTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
 
 /**
  * This class uses data from the Ensembl regulatory build as well as the UCSC refGene.txt.gz files to create
@@ -22,7 +22,7 @@ import java.util.zip.GZIPInputStream;
  * @author Peter Robinson
  * @version 0.1.3 (2018-02-16)
  */
-public class RegulatoryExomeBuilder extends Task<Void> {
+public class RegulatoryExomeBuilder extends GopherTask<Void> {
     private static final Logger LOGGER = LoggerFactory.getLogger(RegulatoryExomeBuilder.class.getName());
     /** Path to regulatory build file, e.g., homo_sapiens.GRCh38.Regulatory_Build.regulatory_features.20161111.gff.gz */
     private final String pathToEnsemblRegulatoryBuild;
@@ -128,8 +128,7 @@ public class RegulatoryExomeBuilder extends Task<Void> {
         int totalgenes=vpmap.size();
         status.add(String.format("%d genes for regulatory exome",totalgenes));
 
-        InputStream fileStream = new FileInputStream(this.pathToRefGeneFile);
-        InputStream gzipStream = new GZIPInputStream(fileStream);
+        InputStream gzipStream = new ReadAheadGzipInputStream(this.pathToRefGeneFile);
         Reader decoder = new InputStreamReader(gzipStream);
         BufferedReader br = new BufferedReader(decoder);
         String line;
@@ -251,10 +250,7 @@ public class RegulatoryExomeBuilder extends Task<Void> {
      * @param pr Current progress.
      */
     private void updateProgress(double pr) {
-        if (progressInd ==null) {
-            return; // do nothing
-        }
-        javafx.application.Platform.runLater( ()-> progressInd.setProgress(pr) );
+        updateProgress(progressInd, pr);
     }
 
     /** This information will be used in the "report" dialog that gives the User feedbqck about the data and the chosen
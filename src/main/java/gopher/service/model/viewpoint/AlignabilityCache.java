@@ -0,0 +1,240 @@
+package gopher.service.model.viewpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Binary copy of the alignability map. Parsing the genome-wide bedGraph file with {@link AlignabilityMapIterator}
+ * takes minutes for the human genome, and so we convert the bedGraph file once into a file with the run-length
+ * encoded coordinates and scores of each chromosome (as used by {@link AlignabilityMap}) and a table with the offsets
+ * of the chromosomes. The file is stored next to the bedGraph file with the suffix {@link #SUFFIX}. The data of each
+ * chromosome are memory-mapped, and the {@link AlignabilityMap} of a chromosome is only read when it is needed.
+ * The layout is
+ * <pre>
+ *   int magic, int version, int k-mer size
+ *   for each chromosome: coordinates (int[n]), scores (int[n])
+ *   int number of chromosomes
+ *   for each chromosome: name, n, offset of the coordinates
+ *   long offset of the chromosome table, int magic
+ * </pre>
+ */
+public class AlignabilityCache {
+    private static final Logger logger = LoggerFactory.getLogger(AlignabilityCache.class.getName());
+    /** Suffix that is appended to the path of the bedGraph file to get the path of the cache. */
+    public static final String SUFFIX = ".amap";
+    /** "GAMC" */
+    private static final int MAGIC = 0x47414D43;
+    private static final int VERSION = 1;
+
+    /** Index entry of a chromosome. */
+    private record Entry(String name, int n, long offset) {}
+
+    /** A chromosome with the mapped coordinates and scores. */
+    private record MappedChromosome(String name, int n, ByteBuffer data) {}
+
+    private final String path;
+    private final int kmerSize;
+    /** Chromosomes in the order of the bedGraph file. */
+    private final List<MappedChromosome> chromosomes;
+
+    /**
+     * Open and map an alignability cache.
+     * @param path path of the cache file
+     * @throws IOException if the file cannot be read or is not an alignability cache
+     */
+    public AlignabilityCache(String path) throws IOException {
+        this.path = path;
+        List<MappedChromosome> list = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(12);
+            ByteBuffer trailer = ByteBuffer.allocate(12);
+            if (size < 28 || channel.read(header, 0) != 12 || channel.read(trailer, size - 12) != 12) {
+                throw new IOException(String.format("%s is not an alignability cache (truncated file)", path));
+            }
+            header.flip();
+            trailer.flip();
+            long indexOffset = trailer.getLong();
+            if (header.getInt() != MAGIC || trailer.getInt() != MAGIC) {
+                throw new IOException(String.format("%s is not an alignability cache", path));
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported version %d of alignability cache %s", version, path));
+            }
+            this.kmerSize = header.getInt();
+            // do not close this stream, this would close the channel before the data have been mapped
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(indexOffset))));
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                byte[] name = new byte[in.readInt()];
+                in.readFully(name);
+                int n_runs = in.readInt();
+                long offset = in.readLong();
+                MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, 8L * n_runs);
+                list.add(new MappedChromosome(new String(name, StandardCharsets.UTF_8), n_runs, data));
+            }
+        } catch (EOFException e) {
+            throw new IOException(String.format("%s is not an alignability cache (truncated index)", path), e);
+        }
+        this.chromosomes = List.copyOf(list);
+    }
+
+    /**
+     * Open the cache for a bedGraph file, and convert the bedGraph file if there is no up-to-date cache.
+     * @param alignabilityMapPath path of the (gzipped) bedGraph file
+     * @param chromInfoPath path of the (gzipped) chromInfo file
+     * @param kmerSize k-mer size of the alignability map
+     * @return the cache
+     * @throws IOException if the bedGraph file cannot be converted or the cache cannot be read
+     */
+    public static AlignabilityCache open(String alignabilityMapPath, String chromInfoPath, int kmerSize) throws IOException {
+        String cachePath = getCachePath(alignabilityMapPath);
+        if (! isUpToDate(alignabilityMapPath, chromInfoPath, kmerSize)) {
+            logger.info("Converting alignability map {} to {}", alignabilityMapPath, cachePath);
+            write(new AlignabilityMapIterator(alignabilityMapPath, chromInfoPath, kmerSize), kmerSize, cachePath);
+        }
+        return new AlignabilityCache(cachePath);
+    }
+
+    /** @return path of the cache that belongs to a bedGraph file. */
+    public static String getCachePath(String alignabilityMapPath) {
+        return alignabilityMapPath + SUFFIX;
+    }
+
+    /**
+     * @return true if there is a cache for the bedGraph file with the same k-mer size that is newer than the bedGraph
+     * and chromInfo files.
+     */
+    public static boolean isUpToDate(String alignabilityMapPath, String chromInfoPath, int kmerSize) {
+        File cache = new File(getCachePath(alignabilityMapPath));
+        if (! cache.isFile() ||
+                cache.lastModified() < new File(alignabilityMapPath).lastModified() ||
+                cache.lastModified() < new File(chromInfoPath).lastModified()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(cache))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION && in.readInt() == kmerSize;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Write the alignability maps of all chromosomes to a cache file. The file is first written to a temporary
+     * file, so that an interrupted conversion does not leave a truncated cache behind.
+     * @param iterator parser for the bedGraph file
+     * @param kmerSize k-mer size of the alignability map
+     * @param path path of the cache
+     * @throws IOException if the bedGraph file cannot be parsed or the cache cannot be written
+     */
+    static void write(Iterator<AlignabilityMap> iterator, int kmerSize, String path) throws IOException {
+        // unique name, since several design jobs may convert the same map at the same time
+        Path tmpPath = Path.of(path + "." + UUID.randomUUID() + ".tmp");
+        List<Entry> list = new ArrayList<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath), 1 << 20))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(kmerSize);
+            long offset = 12;
+            while (iterator.hasNext()) {
+                AlignabilityMap map = iterator.next();
+                if (map == null) {
+                    throw new IOException("Could not parse alignability map");
+                }
+                int[] coordinates = map.getCoordinates();
+                int[] scores = map.getScores();
+                list.add(new Entry(map.getChromName(), coordinates.length, offset));
+                for (int c : coordinates) {
+                    out.writeInt(c);
+                }
+                for (int s : scores) {
+                    out.writeInt(s);
+                }
+                offset += 8L * coordinates.length;
+            }
+            out.writeInt(list.size());
+            for (Entry e : list) {
+                byte[] name = e.name().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeInt(e.n());
+                out.writeLong(e.offset());
+            }
+            out.writeLong(offset);
+            out.writeInt(MAGIC);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmpPath);
+            throw e;
+        }
+        Files.move(tmpPath, Path.of(path), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** @return path of the cache file. */
+    public String getPath() {
+        return path;
+    }
+
+    public int getKmerSize() {
+        return kmerSize;
+    }
+
+    /** @return names of the chromosomes in the order of the bedGraph file. */
+    public List<String> getChromosomeNames() {
+        return chromosomes.stream().map(MappedChromosome::name).toList();
+    }
+
+    /**
+     * Read the alignability map of one chromosome from the mapped file.
+     * @param chromosome name of the chromosome, e.g., chr1
+     * @return the alignability map, or null if there are no alignability data for the chromosome
+     */
+    public AlignabilityMap getAlignabilityMap(String chromosome) {
+        for (MappedChromosome c : chromosomes) {
+            if (c.name().equals(chromosome)) {
+                return read(c);
+            }
+        }
+        return null;
+    }
+
+    private AlignabilityMap read(MappedChromosome c) {
+        int[] coordinates = new int[c.n()];
+        int[] scores = new int[c.n()];
+        // use a view of the buffer, since the position of a buffer must not be shared between threads
+        c.data().duplicate().asIntBuffer().get(coordinates).get(scores);
+        return new AlignabilityMap(c.name(), coordinates, scores, kmerSize);
+    }
+
+    /**
+     * @param chromosomes names of the chromosomes that are needed
+     * @return iterator over the alignability maps of the requested chromosomes (in the order of the bedGraph file);
+     * the maps are only read when {@link Iterator#next()} is called
+     */
+    public Iterator<AlignabilityMap> iterator(Set<String> chromosomes) {
+        Iterator<MappedChromosome> it = this.chromosomes.stream().filter(c -> chromosomes.contains(c.name())).iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public AlignabilityMap next() {
+                return read(it.next());
+            }
+        };
+    }
+}
@@ -1,8 +1,9 @@
 package gopher.service.model.viewpoint;
 
+import gopher.util.Metrics;
+
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 
 /**
@@ -26,10 +27,16 @@ import java.util.List;
  * The downloadable files are sorted like this.
  */
 public class AlignabilityMap {
+    private static final Metrics.Counter LOOKUP_COUNTER = Metrics.counter("alignability.lookups");
     /** Array of coordinates with boundaries of the region that has a certain score. */
     private final int[] coordArray;
      /** Array of alignability score entries */
     private final int[] scoreArray;
+    /** Sum of the scores of all positions from {@code coordArray[0]} up to (excluding) {@code coordArray[i]}. The
+     * positions without score (-1, i.e., k-mers with Ns) are not included in the sums. */
+    private final long[] cumulativeScores;
+    /** Number of positions without score from {@code coordArray[0]} up to (excluding) {@code coordArray[i]}. */
+    private final int[] cumulativeUnscored;
 
     private final String chromName;
 
@@ -42,13 +49,39 @@ public class AlignabilityMap {
 
     int getKmersize() { return kmersize; }
 
-    AlignabilityMap(String chrom, List<Integer> coordinateList, List<Integer> scoreList, int kmer) {
-        this.coordArray = coordinateList.stream().mapToInt(Integer::intValue).toArray();
-        this.scoreArray = scoreList.stream().mapToInt(Integer::intValue).toArray();
+    /**
+     * @param chrom name of the chromosome
+     * @param coordArray positions at which the alignability score changes (the array is not copied)
+     * @param scoreArray alignability score of each region (the array is not copied)
+     * @param kmer k-mer size of the alignability map
+     */
+    AlignabilityMap(String chrom, int[] coordArray, int[] scoreArray, int kmer) {
+        this.coordArray = coordArray;
+        this.scoreArray = scoreArray;
         this.chromName=chrom;
         this.kmersize=kmer;
+        this.cumulativeScores = new long[coordArray.length];
+        this.cumulativeUnscored = new int[coordArray.length];
+        for (int i = 1; i < coordArray.length; i++) {
+            int len = coordArray[i] - coordArray[i-1];
+            cumulativeScores[i] = cumulativeScores[i-1];
+            cumulativeUnscored[i] = cumulativeUnscored[i-1];
+            if (scoreArray[i-1] == -1) {
+                cumulativeUnscored[i] += len;
+            } else {
+                cumulativeScores[i] += (long) scoreArray[i-1] * len;
+            }
+        }
+    }
 
+    /** @return positions at which the alignability score changes (must not be modified). */
+    int[] getCoordinates() {
+        return coordArray;
+    }
 
+    /** @return alignability score of each region (must not be modified). */
+    int[] getScores() {
+        return scoreArray;
     }
 
     /** @return number of elements in the array of alignability scores. */
@@ -76,5 +109,60 @@ public class AlignabilityMap {
         return scoreArrayForRegion;
     }
 
+    /**
+     * Calculate the mean alignability score of the k-mers that start at the positions from fromPos to toPos
+     * (inclusive) from the cumulative sums, i.e., with two binary searches and without creating any objects.
+     * The result is the same as the average of the list returned by {@link #getScoreFromTo}, except that if any
+     * position has no score (-1, i.e., the k-mer contains Ns), the result is -1/n, as in {@link Bait}.
+     * @param fromPos first k-mer start position
+     * @param toPos last k-mer start position
+     * @return mean score, -1/n if at least one k-mer has no score, or NaN if the interval is empty
+     */
+    double getMeanScore(int fromPos, int toPos) {
+        LOOKUP_COUNTER.increment();
+        int n = toPos - fromPos + 1;
+        if (n <= 0) {
+            return Double.NaN;
+        }
+        int first = getRunIndex(fromPos);
+        int last = getRunIndex(toPos);
+        int unscored = unscoredBefore(last, toPos + 1) - unscoredBefore(first, fromPos);
+        if (unscored > 0) {
+            return -1.0 / n;
+        }
+        return (double) (scoreSumBefore(last, toPos + 1) - scoreSumBefore(first, fromPos)) / n;
+    }
+
+    /** @return index of the region that contains pos (the last region extends to the end of the chromosome). */
+    private int getRunIndex(int pos) {
+        int index = Arrays.binarySearch(coordArray, pos);
+        if (index < 0) {
+            index = -index - 2; // the region that starts before pos
+        }
+        if (index < 0) {
+            throw new IndexOutOfBoundsException(String.format("Position %d is before the first alignability region on %s",
+                    pos, chromName));
+        }
+        return index;
+    }
+
+    /** @return sum of the scores of all positions before pos, which is a position within (or one past) region i. */
+    private long scoreSumBefore(int i, int pos) {
+        long sum = cumulativeScores[i];
+        if (scoreArray[i] != -1) {
+            sum += (long) scoreArray[i] * (pos - coordArray[i]);
+        }
+        return sum;
+    }
+
+    /** @return number of positions without score before pos, which is a position within (or one past) region i. */
+    private int unscoredBefore(int i, int pos) {
+        int count = cumulativeUnscored[i];
+        if (scoreArray[i] == -1) {
+            count += pos - coordArray[i];
+        }
+        return count;
+    }
+
 
 }
@@ -1,31 +1,52 @@
 package gopher.service.model.viewpoint;
 
 import com.google.common.collect.ImmutableMap;
+import gopher.io.ReadAheadGzipInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 import java.util.zip.GZIPInputStream;
 
 /**
  * Input data for the alignability map, one chromosome at a time.
+ * <p>
+ * Genome-wide bedGraph files have tens of millions of lines, and so we parse the decompressed bytes directly instead
+ * of reading and splitting lines as Strings. The coordinates and scores of the current chromosome are appended to
+ * growable int arrays, and a new String is only created when the chromosome changes.
  */
 public class AlignabilityMapIterator implements Iterator<AlignabilityMap> {
     private static final Logger logger = LoggerFactory.getLogger(AlignabilityMapIterator.class.getName());
 
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Powers of ten that can be represented exactly as doubles. */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    /** Largest mantissa for which {@code mantissa / 10^scale} is exactly the value of the decimal number. */
+    private static final long MAX_EXACT_MANTISSA = (1L << 53) - 1;
+
     /**
-     * The reader that is being read.
+     * The (decompressed) stream that is being read.
      */
-    private final BufferedReader bufferedReader;
+    private final InputStream inputStream;
+    /** Bytes that have been read from {@link #inputStream} but not yet parsed. */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPos = 0;
+    private int bufferEnd = 0;
+    /** The current line of the bedGraph file (without the line break). */
+    private byte[] line = new byte[256];
     /**
      * This variable helps to keep track of when are finished with a chromosome and need to go to the next one.
      */
     private String prevChr = "chr0";
+    /** ASCII bytes of {@link #prevChr}, used to compare the chromosome of each line without creating a String. */
+    private byte[] prevChrBytes = prevChr.getBytes(StandardCharsets.US_ASCII);
 
-    private Integer prevEnd = 0;
+    private int prevEnd = 0;
     /**
      * The first and last positions of the chromosomes often consists of N's. For regions consisting of N's
      * there are no alignability scores. The parser for the bedgraph file will fill those gaps with
@@ -39,13 +60,15 @@ public class AlignabilityMapIterator implements Iterator<AlignabilityMap> {
     private boolean ready;
 
     /**
-     * Coordinates for the chromosome we are currently parsing.
+     * Coordinates for the chromosome we are currently parsing (the first {@link #size} elements are used).
      */
-    private final List<Integer> coordinateList;
+    private int[] coordinates = new int[1024];
     /**
      * Scores for the chromosome we are currently parsing.
      */
-    private final List<Integer> scoreList;
+    private int[] scores = new int[1024];
+    /** Number of regions of the chromosome we are currently parsing. */
+    private int size = 0;
 
 
     private final static int NO_ALIGNABILITY_SCORE_AVAILABLE = -1;
@@ -61,13 +84,9 @@ public class AlignabilityMapIterator implements Iterator<AlignabilityMap> {
     public AlignabilityMapIterator(String alignabilityMapPath, String chromInfoPath, int kmerSize) throws IOException {
         parseChromInfoFile(chromInfoPath);
         logger.debug("About to parse bedgraph file " + alignabilityMapPath + "...");
-        InputStream fileStream = new FileInputStream(alignabilityMapPath);
-        InputStream gzipStream = new GZIPInputStream(fileStream);
-        Reader decoder = new InputStreamReader(gzipStream);
-        this.bufferedReader = new BufferedReader(decoder);
+        // the bedGraph file is decompressed on a separate thread while we parse it
+        this.inputStream = new ReadAheadGzipInputStream(alignabilityMapPath);
         ready = true;
-        this.scoreList = new ArrayList<>();
-        this.coordinateList = new ArrayList<>();
         this.kmerSize=kmerSize;
 
     }
@@ -99,111 +118,200 @@ public class AlignabilityMapIterator implements Iterator<AlignabilityMap> {
 
 
     /**
-     * This checks if {@link #bufferedReader} is null -- if so, we are finished and there are no more Chromosome2AlignabilityMap objects.
+     * @return true until the alignability map of the last chromosome has been returned.
      */
     @Override
     public boolean hasNext() {
-        if (ready) return true;
-        try {
-            return this.bufferedReader.ready();
-        } catch (Exception e) {
-            return false;
-        }
+        return ready;
     }
 
 
     @Override
     public AlignabilityMap next() {
-        String line;
-        String[] A;
-        String chromosome;
-        Integer startPos;
-        int endPos;
-        Integer alignabilityScore;
         try {
-            // This will be the first line for each chromosome, but may
-            AlignabilityMap currentArrayPair = null;
-            while ((line = this.bufferedReader.readLine()) != null) {
-                A = line.split("\t");
-                chromosome = A[0];
-                startPos = Integer.parseInt(A[1]) + 1; // start coordinates of the bedGraph format are 0-based
-                endPos = Integer.parseInt(A[2]);     // end coordinates of the bedGraph format are 1-based
-                alignabilityScore = (int) Math.round(1.0 / Double.parseDouble(A[3]));
-                int dist = startPos - prevEnd;
+            int length;
+            while ((length = readLine()) >= 0) {
+                if (length == 0) {
+                    continue;
+                }
+                int tab1 = indexOfTab(0, length);
+                int tab2 = indexOfTab(tab1 + 1, length);
+                int tab3 = indexOfTab(tab2 + 1, length);
+                int end4 = indexOfTab(tab3 + 1, length);
+                int startPos = parseInt(tab1 + 1, tab2, length) + 1; // start coordinates of the bedGraph format are 0-based
+                int endPos = parseInt(tab2 + 1, tab3, length);       // end coordinates of the bedGraph format are 1-based
+                int alignabilityScore = parseScore(tab3 + 1, end4);
+                boolean sameChromosome = Arrays.equals(line, 0, tab1, prevChrBytes, 0, prevChrBytes.length);
                 if (prevChr.equals("chr0")) { // only the case for the version first line of the file.
-                    if (startPos != 1) {
-                        // there is a gap before the first region of the chromosome
-                        // therefore, the first block starts after "1"
-                        //the following fills in a block with -1 (a flag)
-                        coordinateList.add(1);
-                        scoreList.add(NO_ALIGNABILITY_SCORE_AVAILABLE);
-                    }
-                    coordinateList.add(startPos);
-                    scoreList.add(alignabilityScore);
-
-                } else if (!chromosome.equals(prevChr)) {
+                    setChromosome(tab1);
+                    addFirstRegion(startPos, alignabilityScore);
+                } else if (!sameChromosome) {
                     // this is the first line for a new chromosome
                     // we are finished with the previous chromosome and can
-                    // make a new Chromosome2AlignabilityMap object
+                    // make a new AlignabilityMap object
                     // first we need to store the values on the current line,
                     // which are the first values for the "new" chromosome
-
-                    if (chromSizesMap.containsKey(prevChr) && (prevEnd < chromSizesMap.get(prevChr))) {
-                        // there were no alignability scores for the last postions of the last chromosome
-                        coordinateList.add(prevEnd + 1);
-                        scoreList.add(-1);
-                    }
-
-                    currentArrayPair = new AlignabilityMap(prevChr, coordinateList, scoreList, this.kmerSize);
-                    coordinateList.clear();
-                    scoreList.clear();
-
-                    prevChr = chromosome;
-                    // when we get here, we are done making the Chromosome2AlignabilityMap object for the "previous" chromosome
-                    logger.trace("Done making chromosome alignability map for " + chromosome + " prev=" + prevChr + " size=" + chromSizesMap.get(chromosome));
+                    AlignabilityMap currentArrayPair = finishChromosome();
+                    setChromosome(tab1);
+                    // when we get here, we are done making the AlignabilityMap object for the "previous" chromosome
+                    logger.trace("Done making chromosome alignability map for " + currentArrayPair.getChromName() + " next=" + prevChr);
                     // now use the data from the "new" line for the first block of the "new chromosome"
-
-                    if (startPos != 1) {
-                        // there is a gap before the first region of the chromosome
-                        // therefore, the first block starts after "1"
-                        //the following fills in a block with -1 (a flag)
-                        coordinateList.add(1);
-                        scoreList.add(NO_ALIGNABILITY_SCORE_AVAILABLE);
-                    }
-                    coordinateList.add(startPos);
-                    scoreList.add(alignabilityScore);
+                    addFirstRegion(startPos, alignabilityScore);
                     prevEnd = endPos;
-                    logger.trace("returning array pair for " + currentArrayPair.getChromName());
                     return currentArrayPair; // THIS IS WHERE THE ITERATOR RETURNS THE NEXT OBJECT
                 } else {
                     // this is NOT the first line for a new chromosome
-                    if (1 < dist) {
+                    if (1 < startPos - prevEnd) {
                         // there is a gap before the current region
-                        //alignabilityMap.get(chromosome).addCoordScorePair(prevEnd + 1, -1);
-                        coordinateList.add(prevEnd + 1);
-                        scoreList.add(-1);
+                        add(prevEnd + 1, NO_ALIGNABILITY_SCORE_AVAILABLE);
                     }
-                    coordinateList.add(startPos);
-                    scoreList.add(alignabilityScore);
+                    add(startPos, alignabilityScore);
                 }
-                prevChr = chromosome;
                 prevEnd = endPos;
             } // end while
-            // When we get here, we want to return the very last Chromosome2AlignabilityMap object.
+            // When we get here, we want to return the very last AlignabilityMap object.
             logger.trace("Making last alignability map for " + prevChr);
-            if (chromSizesMap.containsKey(prevChr) && (prevEnd < chromSizesMap.get(prevChr))) {
-                // there were no alignability scores for the last postions of the last chromosome
-                coordinateList.add(prevEnd + 1);
-                scoreList.add(-1);
-            }
-            currentArrayPair = new AlignabilityMap(prevChr, coordinateList, scoreList, this.kmerSize);
             ready = false;
-            return currentArrayPair;
+            inputStream.close();
+            return finishChromosome();
 
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("Could not read alignability map: {}", e.getMessage());
         }
         return null;
     }
 
+    /** Start the list of regions of a chromosome. */
+    private void addFirstRegion(int startPos, int alignabilityScore) {
+        if (startPos != 1) {
+            // there is a gap before the first region of the chromosome
+            // therefore, the first block starts after "1"
+            //the following fills in a block with -1 (a flag)
+            add(1, NO_ALIGNABILITY_SCORE_AVAILABLE);
+        }
+        add(startPos, alignabilityScore);
+    }
+
+    /** @return the alignability map of {@link #prevChr}, the regions are cleared for the next chromosome. */
+    private AlignabilityMap finishChromosome() {
+        Integer chromSize = chromSizesMap.get(prevChr);
+        if (chromSize != null && prevEnd < chromSize) {
+            // there were no alignability scores for the last postions of the last chromosome
+            add(prevEnd + 1, NO_ALIGNABILITY_SCORE_AVAILABLE);
+        }
+        AlignabilityMap map = new AlignabilityMap(prevChr,
+                Arrays.copyOf(coordinates, size),
+                Arrays.copyOf(scores, size),
+                this.kmerSize);
+        size = 0;
+        return map;
+    }
+
+    private void setChromosome(int nameLength) {
+        prevChrBytes = Arrays.copyOf(line, nameLength);
+        prevChr = new String(prevChrBytes, StandardCharsets.US_ASCII);
+    }
+
+    private void add(int coordinate, int score) {
+        if (size == coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, 2 * size);
+            scores = Arrays.copyOf(scores, 2 * size);
+        }
+        coordinates[size] = coordinate;
+        scores[size] = score;
+        size++;
+    }
+
+    /**
+     * Copy the next line of the bedGraph file to {@link #line}.
+     * @return length of the line (without the line break), or -1 at the end of the file
+     */
+    private int readLine() throws IOException {
+        int length = 0;
+        while (true) {
+            if (bufferPos == bufferEnd) {
+                bufferEnd = inputStream.readNBytes(buffer, 0, BUFFER_SIZE);
+                bufferPos = 0;
+                if (bufferEnd == 0) {
+                    return length > 0 ? length : -1;
+                }
+            }
+            int i = bufferPos;
+            while (i < bufferEnd && buffer[i] != '\n') {
+                i++;
+            }
+            int n = i - bufferPos;
+            if (length + n > line.length) {
+                line = Arrays.copyOf(line, Math.max(2 * line.length, length + n));
+            }
+            System.arraycopy(buffer, bufferPos, line, length, n);
+            length += n;
+            bufferPos = i;
+            if (i < bufferEnd) {
+                bufferPos++; // skip the line break
+                if (length > 0 && line[length - 1] == '\r') {
+                    length--;
+                }
+                return length;
+            }
+        }
+    }
+
+    /** @return index of the next tab at or after {@code from}, or {@code length} if there is none. */
+    private int indexOfTab(int from, int length) {
+        int i = from;
+        while (i < length && line[i] != '\t') {
+            i++;
+        }
+        return i;
+    }
+
+    private int parseInt(int from, int to, int length) {
+        if (from >= to || to >= length) {
+            throw new NumberFormatException("Malformed bedGraph line: " + new String(line, 0, length, StandardCharsets.US_ASCII));
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Malformed bedGraph line: " + new String(line, 0, length, StandardCharsets.US_ASCII));
+            }
+            value = 10 * value + digit;
+        }
+        return value;
+    }
+
+    /**
+     * The bedGraph files contain the reciprocal of the number of positions in the genome a k-mer maps to. We
+     * store this number, i.e., {@code Math.round(1.0 / Double.parseDouble(field))}. For plain decimal numbers with
+     * up to 15 digits, {@code mantissa / 10^scale} is exactly the double that {@link Double#parseDouble} would
+     * return, and so we do not need to create a String. Other numbers (e.g., 1e-05) are parsed with
+     * {@link Double#parseDouble}.
+     * @return the alignability score of the field {@code line[from..to)}
+     */
+    private int parseScore(int from, int to) {
+        long mantissa = 0;
+        int scale = 0;
+        boolean point = false;
+        boolean simple = from < to;
+        for (int i = from; i < to && simple; i++) {
+            byte c = line[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = 10 * mantissa + (c - '0');
+                if (point) {
+                    scale++;
+                }
+                simple = mantissa <= MAX_EXACT_MANTISSA / 10 && scale < POWERS_OF_TEN.length;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                simple = false;
+            }
+        }
+        double value = simple
+                ? mantissa / POWERS_OF_TEN[scale]
+                : Double.parseDouble(new String(line, from, to - from, StandardCharsets.US_ASCII));
+        return (int) Math.round(1.0 / value);
+    }
+
 }
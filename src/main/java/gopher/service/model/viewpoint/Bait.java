@@ -1,11 +1,11 @@
 package gopher.service.model.viewpoint;
 
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import gopher.io.BaseComposition;
+import gopher.io.GenomeSequence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 
 /**
  * This class represents a bait (i.e., probe sequence) used for capture Hi-C enrichment.
@@ -31,16 +31,29 @@ public class Bait implements Serializable {
     /** repeat content of the bait . */
     private double repeatContent;
 
-    public Bait(String refID, int startPos, int endPos, IndexedFastaSequenceFile fastaReader, AlignabilityMap alignabilityMap) {
+    public Bait(String refID, int startPos, int endPos, GenomeSequence fastaReader, AlignabilityMap alignabilityMap) {
         this.refID = refID;
         this.startPos = startPos;
         this.endPos = endPos;
-        String subsequence = fastaReader.getSubsequenceAt(this.refID, this.startPos, this.endPos).getBaseString();
-        this.setGCContent(subsequence);
-        this.setRepeatContent(subsequence);
+        BaseComposition composition = fastaReader.getBaseComposition(this.refID, this.startPos, this.endPos);
+        this.setGCContent(composition);
+        this.setRepeatContent(composition);
         this.setAlignabilityScore(alignabilityMap);
     }
 
+    /**
+     * This constructor is used by {@link BaitScanner}, which calculates the G/C, repeat and alignability
+     * values incrementally for all baits of a margin.
+     */
+    Bait(String refID, int startPos, int endPos, double GCcontent, double repeatContent, double averageKmeralignabilty) {
+        this.refID = refID;
+        this.startPos = startPos;
+        this.endPos = endPos;
+        this.GCcontent = GCcontent;
+        this.repeatContent = repeatContent;
+        this.averageKmeralignabilty = averageKmeralignabilty;
+    }
+
     public String getRefId() {
         return refID;
     }
@@ -88,28 +101,17 @@ public class Bait implements Serializable {
 
     /**
      * Calculate GC content of the bait.
-     * @param subsequence DNA sequence of the bait
+     * @param composition nucleotide counts of the bait
      */
-    private void setGCContent(String subsequence) {
-        int GC = 0;
-        for (int i = 0; i < subsequence.length(); i++) {
-            switch (subsequence.charAt(i)) {
-                case 'G', 'g', 'C', 'c' -> GC++;
-            }
-        }
-        this.GCcontent = (double) GC / (double) subsequence.length();
+    private void setGCContent(BaseComposition composition) {
+        this.GCcontent = (double) composition.gc() / (double) composition.length();
     }
 
 
     private void setAlignabilityScore(AlignabilityMap alignabilityMap) {
         int kmerSize = alignabilityMap.getKmersize();
-        double score = 0.0;
-        ArrayList<Integer> alignabilityScoreList = alignabilityMap.getScoreFromTo(startPos, endPos - kmerSize + 1);
-        for (Integer d : alignabilityScoreList) {
-            if(d==(-1.0)) {score=-1.0; break;} // probe contains Ns, which have an alignability of -1
-            score = score + d;
-        }
-        this.averageKmeralignabilty = score/alignabilityScoreList.size();
+        // -1/n if the probe contains Ns, which have an alignability of -1
+        this.averageKmeralignabilty = alignabilityMap.getMeanScore(startPos, endPos - kmerSize + 1);
     }
 
 
@@ -117,16 +119,11 @@ public class Bait implements Serializable {
     /**
      * Calculate repeat content based on lower (repeat) and uppercase letters.
      *
-     * @param subsequence DNA sequence of the bait
+     * @param composition nucleotide counts of the bait
      */
-    private void setRepeatContent(String subsequence) {
-        // count upper and lower case
-        int lowerCase = 0, upperCase = 0;
-        for (int i = 0; i < subsequence.length(); i++) {
-            if (Character.isLowerCase(subsequence.charAt(i))) lowerCase++;
-            if (Character.isUpperCase(subsequence.charAt(i))) upperCase++;
-        }
-        this.repeatContent = ((double) lowerCase / (lowerCase + (double) upperCase));
+    private void setRepeatContent(BaseComposition composition) {
+        // lower case nucleotides relative to all letters
+        this.repeatContent = ((double) composition.softMasked() / composition.letters());
     }
 
 }
\ No newline at end of file
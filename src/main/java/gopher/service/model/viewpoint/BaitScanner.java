@@ -0,0 +1,126 @@
+package gopher.service.model.viewpoint;
+
+import gopher.io.GenomeSequence;
+
+/**
+ * This class evaluates the candidate baits of one margin of a {@link Segment}. The sequence of the margin is
+ * read from the FASTA file only once, and the G/C and repeat (lower case) counts of the current bait window are
+ * updated incrementally as the window slides by one nucleotide in up- or downstream direction. The mean alignability
+ * of the window is taken from the cumulative sums of the {@link AlignabilityMap}. The values are identical to those
+ * that are calculated by the {@link Bait} constructor, but we avoid one FASTA query and one full rescan of the bait
+ * sequence for every offset.
+ * <p>
+ * Use {@link #moveTo(int)} to position the window, {@link #isUsable(double, double, double)} to check the
+ * constraints, and {@link #toBait()} to create a {@link Bait} object for windows that are actually used.
+ */
+class BaitScanner {
+    /** The id of the larger sequence where the margin is located (usually a chromosome).*/
+    private final String refID;
+    /** One-based position of the first nucleotide of {@link #bases}. */
+    private final int regionStart;
+    /** Sequence of the region that is covered by all bait windows that can be evaluated by this scanner. */
+    private final byte[] bases;
+    /** Length of the baits (usually 120 bp). */
+    private final int baitSize;
+    /** Number of k-mers whose alignability scores are averaged for one bait. */
+    private final int nKmers;
+    /** Alignability data for the chromosome. */
+    private final AlignabilityMap alignabilityMap;
+    /** One-based start position of the current bait window (or -1 if the window has not been placed yet). */
+    private int windowStart = -1;
+    private int gcCount;
+    private int lowerCaseCount;
+    private int upperCaseCount;
+
+    /**
+     * @param refID name of the chromosome
+     * @param from one-based position of the first nucleotide of the first bait that will be evaluated
+     * @param to one-based position of the last nucleotide of the last bait that will be evaluated
+     * @param baitSize length of the baits
+     * @param fastaReader genome sequence
+     * @param alignabilityMap alignability data for the chromosome
+     */
+    BaitScanner(String refID, int from, int to, int baitSize, GenomeSequence fastaReader, AlignabilityMap alignabilityMap) {
+        this.refID = refID;
+        this.regionStart = from;
+        this.baitSize = baitSize;
+        this.bases = fastaReader.getBases(refID, from, to);
+        int kmerSize = alignabilityMap.getKmersize();
+        this.nKmers = baitSize - kmerSize + 1;
+        this.alignabilityMap = alignabilityMap;
+    }
+
+    /**
+     * Place the bait window at the indicated position. If the new position is adjacent to the current position,
+     * the counts are updated for the nucleotide that enters and the nucleotide that leaves the window; otherwise,
+     * they are calculated from scratch.
+     * @param start one-based start position of the bait
+     */
+    void moveTo(int start) {
+        if (windowStart > 0 && start == windowStart + 1) {
+            removeBase(windowStart);
+            addBase(windowStart + baitSize);
+        } else if (windowStart > 0 && start == windowStart - 1) {
+            removeBase(windowStart + baitSize - 1);
+            addBase(start);
+        } else if (start != windowStart) {
+            gcCount = 0;
+            lowerCaseCount = 0;
+            upperCaseCount = 0;
+            for (int pos = start; pos < start + baitSize; pos++) {
+                addBase(pos);
+            }
+        }
+        windowStart = start;
+    }
+
+    private void addBase(int pos) {
+        byte b = bases[pos - regionStart];
+        if (b >= 'a' && b <= 'z') lowerCaseCount++;
+        else if (b >= 'A' && b <= 'Z') upperCaseCount++;
+        if (isGC(b)) gcCount++;
+    }
+
+    private void removeBase(int pos) {
+        byte b = bases[pos - regionStart];
+        if (b >= 'a' && b <= 'z') lowerCaseCount--;
+        else if (b >= 'A' && b <= 'Z') upperCaseCount--;
+        if (isGC(b)) gcCount--;
+    }
+
+    private static boolean isGC(byte b) {
+        return switch (b) {
+            case 'G', 'g', 'C', 'c' -> true;
+            default -> false;
+        };
+    }
+
+    double getGCContent() {
+        return (double) gcCount / (double) baitSize;
+    }
+
+    double getRepeatContent() {
+        return ((double) lowerCaseCount / (lowerCaseCount + (double) upperCaseCount));
+    }
+
+    /** @return mean k-mer alignability of the current window (-1/n if the window contains k-mers without score, i.e., Ns). */
+    double getAlignabilityScore() {
+        if (nKmers <= 0) {
+            return Double.NaN; // no k-mer fits into the bait
+        }
+        return alignabilityMap.getMeanScore(windowStart, windowStart + nKmers - 1);
+    }
+
+    /** Same constraints as {@link Bait#isUsable(double, double, double)}. */
+    boolean isUsable(double minGCcontent, double maxGCcontent, double maxAlignabilityScore) {
+        double gc = getGCContent();
+        return  (minGCcontent <= gc &&
+                gc <= maxGCcontent &&
+                getAlignabilityScore() <= maxAlignabilityScore);
+    }
+
+    /** @return a {@link Bait} object for the current window. */
+    Bait toBait() {
+        return new Bait(refID, windowStart, windowStart + baitSize - 1, getGCContent(), getRepeatContent(), getAlignabilityScore());
+    }
+}
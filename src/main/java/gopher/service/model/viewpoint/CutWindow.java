@@ -0,0 +1,22 @@
+package gopher.service.model.viewpoint;
+
+/**
+ * The cuts in the (zoomed) window around a viewpoint, as far as {@link ViewPoint} needs them to decide whether the
+ * window needs to be enlarged. The segments of the viewpoint are then built by the {@link SegmentFactory} of the
+ * final window.
+ */
+interface CutWindow {
+
+    /** @return the number of cutting sites upstream of the given position. */
+    int getNumOfCutsUpstreamPos(int pos);
+
+    /** @return the number of cutting sites downstream of the given position. */
+    int getNumOfCutsDownstreamPos(int pos);
+
+    boolean maxDistUpOutOfChromosome();
+
+    boolean maxDistDownOutOfChromosome();
+
+    /** @return the factory with all cuts of this window. */
+    SegmentFactory getSegmentFactory();
+}
@@ -1,20 +1,20 @@
 package gopher.service.model.viewpoint;
 
 import gopher.exception.GopherException;
+import gopher.io.GenomeSequence;
+import gopher.io.GenomeSequenceReader;
 import gopher.service.GopherService;
 import gopher.service.model.Default;
 import gopher.service.model.GopherGene;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
-import javafx.application.Platform;
-import javafx.beans.property.StringProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * This is the Task that coordinates creation of ViewPoints from the data entered by the user.
@@ -37,12 +37,22 @@ public class ExtendedViewPointCreationTask extends ViewPointCreationTask {
         super(service);
     }
 
-    private void calculateViewPoints(GopherGene gopherGene,
-                                     String referenceSequenceID,
-                                     IndexedFastaSequenceFile fastaReader,
-                                     AlignabilityMap c2aMap,
-                                     int chromLen) {
-        int chromosomeLength = fastaReader.getSequence(referenceSequenceID).length();
+    /**
+     * Set up the Task of creating ViewPoints on a shared thread pool.
+     * @param service Model of the panel design project
+     * @param executor thread pool for the calculation of the viewpoints
+     */
+    public ExtendedViewPointCreationTask(GopherService service, ExecutorService executor) {
+        super(service, executor);
+    }
+
+    @Override
+    List<ViewPoint> calculateViewPoints(GopherGene gopherGene,
+                                        String referenceSequenceID,
+                                        GenomeSequence fastaReader,
+                                        AlignabilityMap c2aMap,
+                                        int chromLen) {
+        List<ViewPoint> viewpoints = new ArrayList<>();
         List<Integer> gPosList = gopherGene.getTSSlist();
         if (! gopherGene.isForward()) {
             Collections.reverse(gPosList);
@@ -52,7 +62,7 @@ public class ExtendedViewPointCreationTask extends ViewPointCreationTask {
         // Note we do this differently according to strand.
         for (Integer gPos : gPosList) {
             if (isCancelled()) // true if user has cancelled the task
-                return;
+                break;
             ViewPoint vp = new ViewPoint.Builder(referenceSequenceID, gPos,chromLen).
                     targetName(gopherGene.getGeneSymbol()).
                     upstreamLength(gopherService.getSizeUp()).
@@ -67,14 +77,18 @@ public class ExtendedViewPointCreationTask extends ViewPointCreationTask {
                     isForwardStrand(gopherGene.isForward()).
                     accessionNr(gopherGene.getRefSeqID()).
                     c2alignabilityMap(c2aMap).
+                    segmentRegistry(segmentRegistry).
+                    cutSiteIndex(cutSiteIndex).
                     model(this.gopherService).
                     build();
             vp.setPromoterNumber(++n,gPosList.size());
-            updateProgress(i++, total); /* this will update the progress bar */
-            updateMessage(String.format("[%d/%d] Creating view point for %s", i, total, vp));
+            int i = nProcessed.incrementAndGet();
+            /* this will update the progress bar (at most a few times per second) */
+            updateProgress(i, total, () -> String.format("[%d/%d] Creating view point for %s", i, total, vp));
             vp.generateViewpointExtendedApproach(gopherService.getSizeUp(), gopherService.getSizeDown(), gopherService);
-            viewpointlist.add(vp);
+            viewpoints.add(vp);
         }
+        return viewpoints;
     }
 
 
@@ -89,70 +103,31 @@ public class ExtendedViewPointCreationTask extends ViewPointCreationTask {
             logger.error("Attempt to start ViewPoint creation with chosenEnzymes=null");
             throw new GopherException("Attempt to start ViewPoint creation thread with null chosenEnzymes");
         }
-        this.total = getTotalGeneCount();
-        this.i = 0;
+        this.total = getTotalPromoterCount(); // one step per viewpoint, i.e., per transcription start site
+        this.nProcessed.set(0);
         String faipath = this.gopherService.getIndexedGenomeFastaIndexFile();
         String fastapath = this.gopherService.getGenomeFastaFile();
         if (faipath == null) {
             logger.error("Could not retrieve faidx file for " + fastapath);
             throw new GopherException("Could not retrieve faidx file for " + fastapath);
         }
-        IndexedFastaSequenceFile fastaReader;
-        try {
-            fastaReader =new IndexedFastaSequenceFile(new File(fastapath));
-        } catch (FileNotFoundException fnfe) {
-            throw new GopherException(String.format("Could not find genome fasta file [%s]",fnfe.getMessage()));
+        try (GenomeSequenceReader genome = openGenome(fastapath)) {
+            double meanLen = getEstimatedMeanRestrictionFragmentLength(genome);
+            gopherService.setEstAvgRestFragLen(meanLen);
+            gopherService.setNormalDistributionsExtended();
+            String chromInfoPath= gopherService.getChromInfoPathIncludingFileNameGz();
+            String alignabilitMapPath= gopherService.getAlignabilityMapPathIncludingFileNameGz();
+            int kmerSize=Default.KMER_SIZE;
+            Iterator<AlignabilityMap> apiterator = openAlignabilityMaps(alignabilitMapPath, chromInfoPath, kmerSize);
+            createViewPoints(genome, apiterator);
+        } catch (IOException e){
+            e.printStackTrace();
         }
-
-        double meanLen = getEstimatedMeanRestrictionFragmentLength(fastaReader);
-        gopherService.setEstAvgRestFragLen(meanLen);
-        gopherService.setNormalDistributionsExtended();
-        String chromInfoPath= gopherService.getChromInfoPathIncludingFileNameGz();
-        String alignabilitMapPath= gopherService.getAlignabilityMapPathIncludingFileNameGz();
-        int kmerSize=Default.KMER_SIZE;
-
-        try {
-        AlignabilityMapIterator apiterator = new AlignabilityMapIterator(alignabilitMapPath,chromInfoPath, kmerSize);
-        logger.trace("About to start iteration in new function");
-
-        while (apiterator.hasNext()) {
-            if (isCancelled()) // true if user has cancelled the task
-                return null;
-            AlignabilityMap apair = apiterator.next();
-            String referenceSequenceID = apair.getChromName();
-            if (! chromosomes.containsKey(referenceSequenceID)) {
-                continue; // skip if we have no gene on this chromosome
-            }
-            ChromosomeGroup group = chromosomes.get(referenceSequenceID);
-            if (group==null) {
-                logger.error("group is null while searching for \"" + referenceSequenceID +"\"");
-                for (ChromosomeGroup g : chromosomes.values()) {
-                    logger.error(g.getReferenceSequenceID());
-                }
-            }
-            int chromosomeLen = fastaReader.getSequence(referenceSequenceID).length();
-            //for (GopherGene gene : group.getGenes()) {
-            group.getGenes().forEach(gene -> calculateViewPoints(gene, referenceSequenceID, fastaReader, apair,chromosomeLen));
+        if (isCancelled()) {
+            return null;
         }
-
-
-    } catch (IOException e){
-        e.printStackTrace();
-    }
         logger.trace(String.format("Created %d extended viewpoints", viewpointlist.size()));
         this.gopherService.setViewPoints(viewpointlist);
         return null;
     }
-
-    /**
-     * This function updates the label on the viewpoint creation dialog with the name of the current viewpoint.
-     *
-     * @param sb  A StringPoperty that is bound to a label on the viewpoint creation dialog
-     * @param msg Name of the current viewpoint
-     */
-    private void updateLabelText(StringProperty sb, String msg) {
-        Platform.runLater( () -> sb.setValue(String.format("Creating view point for %s", msg)));
-    }
-
-
 }
@@ -0,0 +1,109 @@
+package gopher.service.model.viewpoint;
+
+import gopher.io.GenomeSequence;
+import gopher.service.model.RestrictionEnzyme;
+import gopher.service.model.digest.CutSiteIndex;
+
+import java.util.List;
+
+/**
+ * The window of a {@link SegmentFactory} without its cuts. The numbers of cuts up- and downstream of a position are
+ * answered with queries for the nearest cuts of the {@link CutSiteIndex}, and they are only counted up to
+ * {@link #MAX_CUTS} (which is all that {@link ViewPoint} needs to know while it enlarges the window). Growing the
+ * window of a viewpoint in a gene desert is thus cheap, and the cuts of the final window are only collected once, by
+ * {@link #getSegmentFactory()}.
+ */
+class IndexedCutWindow implements CutWindow {
+    /** The numbers of cuts are counted up to this number. */
+    static final int MAX_CUTS = 2;
+
+    private final String referenceSequenceID;
+    private final int genomicPos;
+    private final GenomeSequence fastaReader;
+    private final int chromosomeLength;
+    private final int upstreamLength;
+    private final int downstreamLength;
+    private final List<RestrictionEnzyme> chosenEnzymeList;
+    private final CutSiteIndex cutSiteIndex;
+    /** The distances from {@link #genomicPos} after zooming, as in {@link SegmentFactory}. */
+    private final int maxDistToGenomicPosUp;
+    private final int maxDistToGenomicPosDown;
+    /**
+     * True if the window was cut off at the start of the chromosome, which then counts as a cut. (The window is
+     * shortened at the end of the chromosome before SegmentFactory checks for this, and so the end never counts.)
+     */
+    private final boolean cutAtStart;
+    private SegmentFactory segmentFactory;
+
+    /**
+     * @param upstreamLength distance to 'genomicPos' in upstream direction (before zooming)
+     * @param downstreamLength distance to 'genomicPos' in downstream direction (before zooming)
+     * @param cutSiteIndex index with the enzymes and the chromosome (see {@link SegmentFactory#usesIndex})
+     */
+    IndexedCutWindow(String referenceSequenceID,
+                     int genomicPos,
+                     GenomeSequence fastaReader,
+                     int chromLen,
+                     int upstreamLength,
+                     int downstreamLength,
+                     List<RestrictionEnzyme> chosenEnzymeList,
+                     CutSiteIndex cutSiteIndex) {
+        this.referenceSequenceID = referenceSequenceID;
+        this.genomicPos = genomicPos;
+        this.fastaReader = fastaReader;
+        this.chromosomeLength = chromLen;
+        this.upstreamLength = upstreamLength;
+        this.downstreamLength = downstreamLength;
+        this.chosenEnzymeList = chosenEnzymeList;
+        this.cutSiteIndex = cutSiteIndex;
+        // the same window as in the constructor of SegmentFactory
+        int maxDistUp = Math.min(upstreamLength * SegmentFactory.MAXIMUM_ZOOM_FACTOR, genomicPos);
+        int maxDistDown = downstreamLength * SegmentFactory.MAXIMUM_ZOOM_FACTOR;
+        if (chromLen < genomicPos + maxDistDown) {
+            maxDistDown = chromLen - genomicPos;
+        }
+        this.maxDistToGenomicPosUp = maxDistUp;
+        this.maxDistToGenomicPosDown = maxDistDown;
+        this.cutAtStart = genomicPos - maxDistUp < 1;
+    }
+
+    /** @return the number of cutting sites upstream of the given position (at most {@link #MAX_CUTS}). */
+    @Override
+    public int getNumOfCutsUpstreamPos(int pos) {
+        int[] cuts = cutSiteIndex.getNearestCutsUpstream(referenceSequenceID, genomicPos - maxDistToGenomicPosUp,
+                genomicPos + maxDistToGenomicPosDown, pos, MAX_CUTS);
+        int n = cuts.length;
+        // the start of the chromosome is the farthest cut
+        if (n < MAX_CUTS && cutAtStart && 1 < pos && (n == 0 || cuts[n - 1] != 1)) {
+            n++;
+        }
+        return n;
+    }
+
+    /** @return the number of cutting sites downstream of the given position (at most {@link #MAX_CUTS}). */
+    @Override
+    public int getNumOfCutsDownstreamPos(int pos) {
+        int[] cuts = cutSiteIndex.getNearestCutsDownstream(referenceSequenceID, genomicPos - maxDistToGenomicPosUp,
+                genomicPos + maxDistToGenomicPosDown, pos, MAX_CUTS);
+        return cuts.length;
+    }
+
+    @Override
+    public boolean maxDistUpOutOfChromosome() {
+        return genomicPos - maxDistToGenomicPosUp < 1;
+    }
+
+    @Override
+    public boolean maxDistDownOutOfChromosome() {
+        return chromosomeLength < maxDistToGenomicPosDown + genomicPos;
+    }
+
+    @Override
+    public SegmentFactory getSegmentFactory() {
+        if (segmentFactory == null) {
+            segmentFactory = new SegmentFactory(referenceSequenceID, genomicPos, fastaReader, chromosomeLength,
+                    upstreamLength, downstreamLength, chosenEnzymeList, cutSiteIndex);
+        }
+        return segmentFactory;
+    }
+}
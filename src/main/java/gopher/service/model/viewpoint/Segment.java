@@ -2,12 +2,16 @@ package gopher.service.model.viewpoint;
 
 import com.google.common.collect.ImmutableList;
 import gopher.service.GopherService;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import gopher.io.BaseComposition;
+import gopher.io.GenomeSequence;
 import gopher.gui.factories.PopupFactory;
 import gopher.service.model.IntPair;
+import gopher.util.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
@@ -18,11 +22,21 @@ import java.util.Set;
 /**
  * This class represents a restriction digest that is a member of a viewpoint.
  * Note that {@link #startPos} and {@link #endPos} use one-based inclusive numbering.
+ * <p>
+ * The G/C and repeat contents and the baits are calculated lazily, i.e., when they are first needed, because many
+ * segments of the initial window of a viewpoint are discarded without ever being looked at. The calculation needs
+ * the genome sequence, and so the owner of the segments needs to call {@link #calculateStatistics()} before the
+ * genome is closed (this is also done before a segment is serialized).
  * @author Peter Hansen
  * @version 0.3.6 (2018-07-17)
  */
 public class Segment implements Serializable {
     private static final Logger logger = LoggerFactory.getLogger(Segment.class.getName());
+    private static final Metrics.Counter SEGMENT_COUNTER = Metrics.counter("segment.created");
+    private static final Metrics.Timer CONTENT_TIMER = Metrics.timer("segment.content");
+    private static final Metrics.Counter SHARED_CONTENT_COUNTER = Metrics.counter("segment.content.shared");
+    private static final Metrics.Timer BAIT_TIMER = Metrics.timer("segment.baits");
+    private static final Metrics.Counter SHARED_BAITS_COUNTER = Metrics.counter("segment.baits.shared");
 
     public boolean isOverlapsTSS() {
         return overlapsTSS;
@@ -62,7 +76,7 @@ public class Segment implements Serializable {
 
     private double GCcontentUp;
 
-    private final transient IndexedFastaSequenceFile fastaReader;
+    private final transient GenomeSequence fastaReader;
 
     /** Size of the margins in up and downstream direction. */
     private final Integer marginSize;
@@ -74,8 +88,21 @@ public class Segment implements Serializable {
     private List<Bait> baitListUpStreamMargin;
     private List<Bait> baitListDownStreamMargin;
 
-
-    public Segment(String refSequenceID, int start, int end, IndexedFastaSequenceFile idFasta, int marginSize) {
+    /** True if the G/C and repeat contents have not been calculated yet. */
+    private transient boolean contentPending;
+    /** True if the baits have not been placed yet (the parameters are in the following fields). */
+    private transient boolean baitsPending;
+    private transient AlignabilityMap alignabilityMap;
+    private transient int minBaitCount;
+    private transient int baitSize;
+    private transient double minBaitGcContent;
+    private transient double maxBaitGcContent;
+    private transient double maxAlignabilityScore;
+    /** Registry for sharing the statistics with other segments of the same fragment (may be null). */
+    private transient SegmentRegistry registry;
+
+
+    public Segment(String refSequenceID, int start, int end, GenomeSequence idFasta, int marginSize) {
         this.referenceSequenceID = refSequenceID;
         this.startPos = start;
         this.endPos = end;
@@ -84,11 +111,110 @@ public class Segment implements Serializable {
         this.selected = false; /* default */
         this.baitListDownStreamMargin = new ArrayList<>();
         this.baitListUpStreamMargin = new ArrayList<>();
-        calculateGCandRepeatContent(fastaReader);
-        calculateRepeatAndGcContentMargins(fastaReader);
+        this.contentPending = true;
+        SEGMENT_COUNTER.increment();
+    }
+
+    /**
+     * Create a segment that shares its statistics and baits with the other segments of the same fragment in the
+     * registry.
+     */
+    Segment(String refSequenceID, int start, int end, GenomeSequence idFasta, int marginSize, SegmentRegistry registry) {
+        this(refSequenceID, start, end, idFasta, marginSize);
+        this.registry = registry;
+    }
+
+    /** Calculate the G/C and repeat contents (or copy them from the registry) if this has not been done yet. */
+    private void ensureContent() {
+        if (contentPending) {
+            contentPending = false;
+            Segment other = registry == null ? null : registry.getContent(this);
+            if (other != null) {
+                this.repeatContent = other.repeatContent;
+                this.repeatContentUp = other.repeatContentUp;
+                this.repeatContentDown = other.repeatContentDown;
+                this.GCcontent = other.GCcontent;
+                this.GCcontentUp = other.GCcontentUp;
+                this.GCcontentDown = other.GCcontentDown;
+                SHARED_CONTENT_COUNTER.increment();
+                return;
+            }
+            long start = CONTENT_TIMER.start();
+            calculateGCandRepeatContent(fastaReader);
+            calculateRepeatAndGcContentMargins(fastaReader);
+            CONTENT_TIMER.stop(start);
+            if (registry != null) {
+                registry.putContent(this);
+            }
+        }
+    }
+
+    /**
+     * Place the baits (or copy them from the registry) if {@link #setUsableBaits} has been called and the baits have
+     * not been placed yet.
+     */
+    private void ensureBaits() {
+        if (baitsPending) {
+            baitsPending = false;
+            AlignabilityMap map = alignabilityMap;
+            alignabilityMap = null;
+            Segment other = registry == null ? null : registry.getBaits(this);
+            if (other != null) {
+                this.baitListUpStreamMargin = other.baitListUpStreamMargin;
+                this.baitListDownStreamMargin = other.baitListDownStreamMargin;
+                this.unselectable = other.unselectable;
+                this.balanced = other.balanced;
+                this.unbalanced = other.unbalanced;
+                SHARED_BAITS_COUNTER.increment();
+                return;
+            }
+            long start = BAIT_TIMER.start();
+            placeUsableBaits(minBaitCount, baitSize, map, minBaitGcContent, maxBaitGcContent, maxAlignabilityScore);
+            BAIT_TIMER.stop(start);
+            if (registry != null) {
+                registry.putBaits(this);
+            }
+        }
+    }
+
+    /**
+     * Calculate the G/C and repeat contents and place the baits now, e.g., because the genome sequence is about to be
+     * closed.
+     */
+    public void calculateStatistics() {
+        ensureContent();
+        ensureBaits();
+        registry = null;
+    }
+
+    /**
+     * Do not calculate the contents and baits that are still pending, e.g., because the segment is outside the range
+     * of its viewpoint. The contents are then not available (NaN), and the segment has no baits and cannot be
+     * selected.
+     */
+    void skipStatistics() {
+        if (contentPending) {
+            contentPending = false;
+            this.repeatContent = this.repeatContentUp = this.repeatContentDown = Double.NaN;
+            this.GCcontent = this.GCcontentUp = this.GCcontentDown = Double.NaN;
+        }
+        if (baitsPending) {
+            baitsPending = false;
+            alignabilityMap = null;
+            this.unselectable = true;
+            this.balanced = false;
+            this.unbalanced = false;
+        }
+        registry = null;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        calculateStatistics();
+        out.defaultWriteObject();
     }
 
     public String detailedReport() {
+        ensureContent();
         return String.format("%s:%d-%d [len: %d] repeat-up:%.1f, down:%.1f  GC-up:%.1f, down:%.1f overlaps TSS: %s",
                 referenceSequenceID,
                 startPos,
@@ -104,13 +230,15 @@ public class Segment implements Serializable {
     /**
      * @param startPos absolute coordinate of the starting position of the Segment.
      */
-    public void setStartPos(Integer startPos) { this.startPos=startPos; }
+    public void setStartPos(Integer startPos) { calculateStatistics(); this.startPos=startPos; }
 
     public double getGCcontentDown() {
+        ensureContent();
         return GCcontentDown;
     }
 
     public double getGCcontentUp() {
+        ensureContent();
         return GCcontentUp;
     }
 
@@ -121,6 +249,7 @@ public class Segment implements Serializable {
 
     /** @param endPos absolute coordinate of the end position of the Segment. */
     public void setEndPos(Integer endPos) {
+        calculateStatistics();
         this.startPos=endPos;
     }
 
@@ -158,28 +287,22 @@ public class Segment implements Serializable {
 
     /**
      * This function calculates the {@link #repeatContent} of this segment by counting lower and uppercase.
+     * The counts are taken from {@link GenomeSequence#getBaseComposition}, which does not need to read the
+     * sequence if the genome is a {@link gopher.io.PackedGenome}.
      */
-    private void calculateGCandRepeatContent(IndexedFastaSequenceFile fastaReader) {
-        String subsequence = fastaReader.getSubsequenceAt(referenceSequenceID, startPos, endPos).getBaseString();
+    private void calculateGCandRepeatContent(GenomeSequence fastaReader) {
+        BaseComposition composition = fastaReader.getBaseComposition(referenceSequenceID, startPos, endPos);
+        if (composition.length()==0) return;
         /* determine repeat content */
-        int lowerCase = 0, upperCase = 0; int GC=0;
-        if (subsequence.length()==0) return;
-        for (int i = 0; i < subsequence.length(); i++) {
-            if (Character.isLowerCase(subsequence.charAt(i))) lowerCase++;
-            if (Character.isUpperCase(subsequence.charAt(i))) upperCase++;
-            switch (subsequence.charAt(i)) {
-                case 'G', 'g', 'C', 'c' -> GC++;
-            }
-        }
-        this.repeatContent = ((double) lowerCase / (lowerCase + (double) upperCase));
-        this.GCcontent=(double)GC/(double)subsequence.length();
+        this.repeatContent = ((double) composition.softMasked() / composition.letters());
+        this.GCcontent=(double)composition.gc()/(double)composition.length();
     }
 
     /**
      * Calculates the repetitive and GC content on the margins of the segment (if the segment is too small, we take the
      * repeat content of the entire segment to be the margin repeat content).
      */
-    private void calculateRepeatAndGcContentMargins(IndexedFastaSequenceFile fastaReader) {
+    private void calculateRepeatAndGcContentMargins(GenomeSequence fastaReader) {
 
         /* generate Segment objects for margins */
 
@@ -202,19 +325,12 @@ public class Segment implements Serializable {
             IntPair seg = margins.get(i);
             int start = seg.startPos();
             int end = seg.endPos();
-            String s = fastaReader.getSubsequenceAt(this.referenceSequenceID,start,end).getBaseString();
+            BaseComposition composition = fastaReader.getBaseComposition(this.referenceSequenceID,start,end);
 
             /* determine repeat content */
-            int lowerCase = 0, upperCase = 0;
-            int gc = 0; int at = 0;
-            for (int j = 0; j < s.length(); j++) {
-                if (Character.isLowerCase(s.charAt(j))) lowerCase++;
-                if (Character.isUpperCase(s.charAt(j))) upperCase++;
-                if (s.charAt(j)=='A' || s.charAt(j)=='T' || s.charAt(j)=='a' || s.charAt(j)=='t') at++;
-                if (s.charAt(j)=='G' || s.charAt(j)=='C' || s.charAt(j)=='g' || s.charAt(j)=='c') gc++;
-            }
-            double repcon = ((double) lowerCase / (lowerCase + (double) upperCase));
-            double gccon = ((double) gc / (lowerCase + (double) (at+gc)));
+            int lowerCase = composition.softMasked();
+            double repcon = ((double) lowerCase / composition.letters());
+            double gccon = ((double) composition.gc() / (lowerCase + (double) composition.acgt()));
             if (i==0) {
                 this.repeatContentUp = repcon;
                 this.GCcontentUp = gccon;
@@ -231,44 +347,53 @@ public class Segment implements Serializable {
      * @return repeat content of this segment.
      */
     public double getRepeatContent() {
+        ensureContent();
         return repeatContent;
     }
     /** @return A formatted string, e.g., "7.23%", representing the repeat content */
-    public String getRepeatContentAsPercent() { return String.format("%.2f%%",100*repeatContent);}
+    public String getRepeatContentAsPercent() { return String.format("%.2f%%",100*getRepeatContent());}
 
     public double getRepeatContentMarginUp() {
+        ensureContent();
         return repeatContentUp;
     }
     /** @return A formatted string, e.g., "7.23%", representing the repeat content of the margin on the up side */
-    public String getRepeatContentMarginUpAsPercent() { return String.format("%.2f%%",100*repeatContentUp);}
+    public String getRepeatContentMarginUpAsPercent() { return String.format("%.2f%%",100*getRepeatContentMarginUp());}
 
     public double getRepeatContentMarginDown() {
+        ensureContent();
         return repeatContentDown;
     }
     public double getGcContentMarginDown() {
+        ensureContent();
         return GCcontentDown;
     }
     public double getGcContentMarginUp() {
+        ensureContent();
         return GCcontentUp;
     }
     /** @return A formatted string, e.g., "7.23%", representing the repeat content of the margin on the down side */
-    public String getRepeatContentMarginDownAsPercent() { return String.format("%.2f%%",100*repeatContentDown);}
+    public String getRepeatContentMarginDownAsPercent() { return String.format("%.2f%%",100*getRepeatContentMarginDown());}
 
-    public double getMeanMarginRepeatContent() { return 0.5*(repeatContentUp+repeatContentDown);}
+    public double getMeanMarginRepeatContent() { return 0.5*(getRepeatContentMarginUp()+getRepeatContentMarginDown());}
 
     public String getGCcontentAsPercent() {
+        ensureContent();
         return String.format("%.2f%%",100*GCcontent);
     }
 
     public String getGCcontentUpAsPercent() {
+        ensureContent();
         return String.format("%.2f%%",100*GCcontentUp);
     }
 
     public String getGCcontentDownAsPercent() {
+        ensureContent();
         return String.format("%.2f%%",100*GCcontentDown);
     }
 
     public double getGCcontent() {
+        ensureContent();
         return GCcontent;
     }
     /** @return a String such as {@code chr3:425930-736434}. */
@@ -346,36 +471,22 @@ public class Segment implements Serializable {
     }
 
     /**
-     * this is used for the binary tree.
+     * Set the parameters for placing the baits. The baits are placed when they (or the selectability of this segment)
+     * are first needed.
      */
-    public boolean preceeds(Segment other) {
-        if (other.getReferenceSequenceID().compareTo(getReferenceSequenceID()) == 0) {
-            // we are on same chromosome -- check the position
-            return getStartPos() < other.getStartPos();
-        } else {
-            // return true iff this chromosome lexigraphicall preceeds the other one
-            return (getReferenceSequenceID().compareTo(other.getReferenceSequenceID()) < 0);
-        }
-    }
-
-
-    public boolean preceeds(String chrom, int pos) {
-        if (getReferenceSequenceID().compareTo(chrom)==0) {
-            // we are on same chromosome -- check the position
-            return getStartPos() < pos;
-        } else {
-            // return true iff this chromosome lexigraphically preceeds the other one
-            return (getReferenceSequenceID().compareTo(chrom) < 0);
-        }
+    public void setUsableBaits(GopherService model, AlignabilityMap chromosome2AlignabilityMap, double maxAlignabilityScore) {
+        this.minBaitCount = model.getMinBaitCount();
+        this.baitSize = model.getProbeLength();
+        this.minBaitGcContent = model.getMinGCcontent();
+        this.maxBaitGcContent = model.getMaxGCcontent();
+        this.maxAlignabilityScore = maxAlignabilityScore;
+        this.alignabilityMap = chromosome2AlignabilityMap;
+        this.baitsPending = true;
     }
 
-
     /** NEW VERSION */
-    public void setUsableBaits(GopherService model, AlignabilityMap chromosome2AlignabilityMap, double maxAlignabilityScore) {
-        int bmin =model.getMinBaitCount();
-        int baitSize = model.getProbeLength();
-        double minGCcontent = model.getMinGCcontent();
-        double maxGCcontent = model.getMaxGCcontent();
+    private void placeUsableBaits(int bmin, int baitSize, AlignabilityMap chromosome2AlignabilityMap,
+                                  double minGCcontent, double maxGCcontent, double maxAlignabilityScore) {
         if (this.length() < baitSize) {
             // do not place baits in segments shorter than the bait size
             this.unselectable = true;
@@ -440,14 +551,15 @@ public class Segment implements Serializable {
     }
 
     public String getNumberOfBaitsUpDownAsString() {
+        ensureBaits();
         return String.format("%d/%d",this.baitListUpStreamMargin.size(),this.baitListDownStreamMargin.size() );
     }
 
-    public int getBaitNumTotal() { return this.baitListUpStreamMargin.size() + this.baitListDownStreamMargin.size(); }
+    public int getBaitNumTotal() { ensureBaits(); return this.baitListUpStreamMargin.size() + this.baitListDownStreamMargin.size(); }
 
-    public int getBaitNumUp() { return this.baitListUpStreamMargin.size(); }
+    public int getBaitNumUp() { ensureBaits(); return this.baitListUpStreamMargin.size(); }
 
-    public int getBaitNumDown() {return this.baitListDownStreamMargin.size(); }
+    public int getBaitNumDown() { ensureBaits(); return this.baitListDownStreamMargin.size(); }
 
 
     /**
@@ -460,21 +572,30 @@ public class Segment implements Serializable {
      * @param maxAlignabilityScore maximum allowable alignability score
      */
     public void setUsableBaitsForUpstreamMargin(int bmax, int baitSize, AlignabilityMap alignabilityMap, double minGCcontent, double maxGCcontent, double maxAlignabilityScore) {
+        ensureBaits();
 
         int sta = this.getStartPos();
         int end = this.getStartPos() + marginSize - 1;
+        // the last bait either ends at the end of the margin or at the end of the segment, whichever comes first
+        int last = end - baitSize + 1;
+        if (sta <= this.getEndPos() - baitSize + 1) {
+            last = Math.min(last, this.getEndPos() - baitSize + 1);
+        }
 
         ArrayList<Bait> baitListUpStreamMargin = new ArrayList<>();
-        for(int i = sta; i <= end - baitSize + 1; i++ ) { // from left to right because this is the upstream margin
-            Bait b = new Bait(this.referenceSequenceID, i, i + baitSize - 1, fastaReader, alignabilityMap);
+        if (last < sta) {
+            this.baitListUpStreamMargin = baitListUpStreamMargin;
+            return;
+        }
+        BaitScanner scanner = new BaitScanner(this.referenceSequenceID, sta, last + baitSize - 1, baitSize, fastaReader, alignabilityMap);
+        for(int i = sta; i <= last; i++ ) { // from left to right because this is the upstream margin
+            scanner.moveTo(i);
             // check for constraints and add if appropriate
-            if( b.isUsable(minGCcontent, maxGCcontent, maxAlignabilityScore) ) {
-                baitListUpStreamMargin.add(b);
+            if( scanner.isUsable(minGCcontent, maxGCcontent, maxAlignabilityScore) ) {
+                baitListUpStreamMargin.add(scanner.toBait());
             }
             // abort if bmax is reached
             if (baitListUpStreamMargin.size()==bmax) { break; }
-            // abort if end of bait reaches end of segment
-            if (i + baitSize - 1 == this.getEndPos()) { break; }
         }
         this.baitListUpStreamMargin=baitListUpStreamMargin;
     }
@@ -501,6 +622,7 @@ public class Segment implements Serializable {
 
 
     public List<Bait> getBaitsForUpstreamMargin() {
+        ensureBaits();
         return this.baitListUpStreamMargin;
     }
 
@@ -511,31 +633,35 @@ public class Segment implements Serializable {
 
 
         int sta = this.getEndPos() - marginSize + 1;
-        Integer end = this.getEndPos();
+        int end = this.getEndPos();
+        int first = end - baitSize + 1;
+        // the last bait either starts right after the start of the margin or at the start of the segment, whichever comes first
+        int last = sta + 1;
+        if (sta < this.getStartPos() && this.getStartPos() <= first) {
+            last = this.getStartPos();
+        }
 
         ArrayList<Bait> baitListDownStreamMargin = new ArrayList<>();
-        for (int i = end - baitSize + 1; sta < i; i--) { // from right to left because this is the upstream margin
-
-            // init bait
-            Bait b = new Bait(this.referenceSequenceID, i, i + baitSize - 1, fastaReader, alignabilityMap);
-
+        if (first < last) {
+            this.baitListDownStreamMargin = baitListDownStreamMargin;
+            return;
+        }
+        BaitScanner scanner = new BaitScanner(this.referenceSequenceID, last, end, baitSize, fastaReader, alignabilityMap);
+        for (int i = first; last <= i; i--) { // from right to left because this is the upstream margin
+            scanner.moveTo(i);
             // check for constraints and add if appropriate
-            if( b.isUsable(minGCcontent, maxGCcontent, maxAlignabilityScore) ) {
-                baitListDownStreamMargin.add(b);
+            if( scanner.isUsable(minGCcontent, maxGCcontent, maxAlignabilityScore) ) {
+                baitListDownStreamMargin.add(scanner.toBait());
             }
 
             // abort if bmax is reached
             if(baitListDownStreamMargin.size()==bmax) { break; }
-
-            // abort if end of bait reaches start of segment
-            if(i == this.getStartPos()) { break; }
-
         }
         this.baitListDownStreamMargin=baitListDownStreamMargin;
     }
 
 
-    public List<Bait> getBaitsForDownstreamMargin()  { return this.baitListDownStreamMargin; }
+    public List<Bait> getBaitsForDownstreamMargin()  { ensureBaits(); return this.baitListDownStreamMargin; }
 
 
     /**
@@ -568,18 +694,22 @@ public class Segment implements Serializable {
     }
 
     public boolean isBalanced() {
+        ensureBaits();
         return this.balanced;
     }
 
     public boolean isUnbalanced() {
+        ensureBaits();
         return this.unbalanced;
     }
 
     public boolean isUnselectable() {
+        ensureBaits();
         return this.unselectable;
     }
 
     public Double getMeanGCcontentOfBaits() {
+        ensureBaits();
         double meanGCcontentOfBaits = 0.0;
         for(Bait b : baitListUpStreamMargin) {
             meanGCcontentOfBaits = meanGCcontentOfBaits + b.getGCContent();
@@ -597,6 +727,7 @@ public class Segment implements Serializable {
     }
 
     public Double getMeanAlignabilityOfBaits() {
+        ensureBaits();
         double meanAlignabilityOfBaits = 0.0;
         for(Bait b : baitListUpStreamMargin) {
             meanAlignabilityOfBaits = meanAlignabilityOfBaits + b.getAlignabilityScore();
@@ -608,6 +739,7 @@ public class Segment implements Serializable {
     }
 
     public Double getMeanRepeatContentOfBaits() {
+        ensureBaits();
         double meanRepeatContentOfBaits = 0.0;
         for(Bait b : baitListUpStreamMargin) {
             meanRepeatContentOfBaits = meanRepeatContentOfBaits + b.getRepeatContent();
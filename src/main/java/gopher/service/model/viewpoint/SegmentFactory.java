@@ -1,14 +1,16 @@
 package gopher.service.model.viewpoint;
 
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import gopher.service.model.digest.CutSiteIndex;
+import gopher.service.model.digest.CutSiteScanner;
+import gopher.service.model.digest.CutSites;
+import gopher.io.GenomeSequence;
 import gopher.service.model.RestrictionEnzyme;
+import gopher.util.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * This is a utility class for the class 'ViewPoint' that holds the cutting positions for the provided restriction enzyme motifs.
@@ -22,8 +24,9 @@ import java.util.regex.Pattern;
  * @author Peter Hansen
  * @version 0.1.2 (2017-11-26)
  */
-public class SegmentFactory implements Serializable {
+public class SegmentFactory implements CutWindow, Serializable {
     private static final Logger logger = LoggerFactory.getLogger(SegmentFactory.class.getName());
+    private static final Metrics.Timer CUT_TIMER = Metrics.timer("viewpoints.cuts");
     /**
      * serialization version ID
      */
@@ -48,7 +51,18 @@ public class SegmentFactory implements Serializable {
     }
     /** This determines the maximum allowed zooming factor for the extended approach. */
     static final int MAXIMUM_ZOOM_FACTOR=3;
-
+    /** Scanner for the most recently used list of enzymes (the same enzymes are used for all viewpoints). */
+    private static volatile CutSiteScanner cutSiteScanner;
+
+    /** @return a {@link CutSiteScanner} for the enzymes (reused as long as the list of enzymes does not change). */
+    private static CutSiteScanner getCutSiteScanner(List<RestrictionEnzyme> chosenEnzymeList) {
+        CutSiteScanner scanner = cutSiteScanner;
+        if (scanner == null || !scanner.getEnzymes().equals(chosenEnzymeList)) {
+            scanner = new CutSiteScanner(chosenEnzymeList);
+            cutSiteScanner = scanner;
+        }
+        return scanner;
+    }
 
 
     /**
@@ -62,16 +76,34 @@ public class SegmentFactory implements Serializable {
      * @param genomicPos              central position of the region for which the CuttingPositionMap is created (one-based numbering).
      * @param maxDistToGenomicPosUp   maximal distance to 'genomicPos' in upstream direction.
      * @param maxDistToGenomicPosDown maximal distance to 'genomicPos' in downstream direction.
-     * @param fastaReader             indexed FASTA file that contains the sequence information required for the calculation of cutting positions.
+     * @param fastaReader             genome sequence (FASTA file or packed genome) that contains the sequence information required for the calculation of cutting positions.
      * @param chosenEnzymeList        List of cutting {@link RestrictionEnzyme} objects.
      */
     public SegmentFactory(String referenceSequenceID,
                           Integer genomicPos,
-                          IndexedFastaSequenceFile fastaReader,
+                          GenomeSequence fastaReader,
                           int chromLen,
                           Integer maxDistToGenomicPosUp,
                           Integer maxDistToGenomicPosDown,
                           List<RestrictionEnzyme> chosenEnzymeList) {
+        this(referenceSequenceID, genomicPos, fastaReader, chromLen, maxDistToGenomicPosUp, maxDistToGenomicPosDown,
+                chosenEnzymeList, null);
+    }
+
+    /**
+     * Same as above, but the cutting positions are taken from an index of the genome if it has the enzymes and the
+     * sequence, so that overlapping windows of neighbouring viewpoints do not need to be scanned again.
+     *
+     * @param cutSiteIndex index of the cuts of the enzymes in the genome (null to scan the sequence of the window).
+     */
+    public SegmentFactory(String referenceSequenceID,
+                          Integer genomicPos,
+                          GenomeSequence fastaReader,
+                          int chromLen,
+                          Integer maxDistToGenomicPosUp,
+                          Integer maxDistToGenomicPosDown,
+                          List<RestrictionEnzyme> chosenEnzymeList,
+                          CutSiteIndex cutSiteIndex) {
         maxDistToGenomicPosUp=maxDistToGenomicPosUp*MAXIMUM_ZOOM_FACTOR;
         if(genomicPos<maxDistToGenomicPosUp) {
             maxDistToGenomicPosUp=genomicPos;
@@ -89,35 +121,43 @@ public class SegmentFactory implements Serializable {
 
 
 
-        for (RestrictionEnzyme enzyme : chosenEnzymeList) {
-            String cutpat = enzyme.getPlainSite();
-            int offset = enzyme.getOffset();
-            // get sequence around genomic position and convert everything to uppercase
-            if (chromosomeLength < genomicPos + maxDistToGenomicPosDown) {
-                logger.warn(String.format("maxDistToGenomicPosDown [%d] + genomicPos [%d] = %d > length of chromosome [%s;%d] -> will adjust",
-                        maxDistToGenomicPosDown,genomicPos,(maxDistToGenomicPosDown+genomicPos), referenceSequenceID , chromosomeLength));
-                maxDistToGenomicPosDown = chromosomeLength - genomicPos;
-                allPositionSet.add(chromosomeLength);
-            }
-            if (genomicPos - maxDistToGenomicPosUp < 1) {
-                logger.warn(String.format("genomicPos [%d] - maxDistToGenomicPosUp [%d] < 1 (on chromosome %s) -> will adjust",
-                        genomicPos, maxDistToGenomicPosUp, referenceSequenceID));
-                maxDistToGenomicPosUp = genomicPos;
-                allPositionSet.add(1);
-            }
+        if (chromosomeLength < genomicPos + maxDistToGenomicPosDown) {
+            logger.warn(String.format("maxDistToGenomicPosDown [%d] + genomicPos [%d] = %d > length of chromosome [%s;%d] -> will adjust",
+                    maxDistToGenomicPosDown,genomicPos,(maxDistToGenomicPosDown+genomicPos), referenceSequenceID , chromosomeLength));
+            maxDistToGenomicPosDown = chromosomeLength - genomicPos;
+            allPositionSet.add(chromosomeLength);
+        }
+        if (genomicPos - maxDistToGenomicPosUp < 1) {
+            logger.warn(String.format("genomicPos [%d] - maxDistToGenomicPosUp [%d] < 1 (on chromosome %s) -> will adjust",
+                    genomicPos, maxDistToGenomicPosUp, referenceSequenceID));
+            maxDistToGenomicPosUp = genomicPos;
+            allPositionSet.add(1);
+        }
+        int fragmentStart=genomicPos - maxDistToGenomicPosUp; /* one-based position of first nucleotide in the entire subsequence returned by fasta reader */
+        int fragmentEnd = genomicPos + maxDistToGenomicPosDown;
+        // each cut is the one-based position of first nucleotide after the restriction enzyme cuts
+        CutSites cuts;
+        long start = CUT_TIMER.start();
+        if (usesIndex(cutSiteIndex, chosenEnzymeList, referenceSequenceID)) {
+            cuts = cutSiteIndex.getCuts(referenceSequenceID, fragmentStart, fragmentEnd);
+        } else {
             // note fastaReader refers to one-based numbering scheme.
-            String genomicPosRegionString = fastaReader.getSubsequenceAt(referenceSequenceID, genomicPos - maxDistToGenomicPosUp, genomicPos + maxDistToGenomicPosDown).getBaseString().toUpperCase();
-            Pattern pattern = Pattern.compile(cutpat,Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(genomicPosRegionString);
-            ArrayList<Integer> cuttingPositionList = new ArrayList<>();
-            int fragmentStart=genomicPos - maxDistToGenomicPosUp; /* one-based position of first nucleotide in the entire subsequence returned by fasta reader */
-            while (matcher.find()) {
-                    // replaces matcher.start() - maxDistToGenomicPosUp + offset;
-                    int pos = fragmentStart + matcher.start() + offset; /* one-based position of first nucleotide after the restriction enzyme cuts */
-                    cuttingPositionList.add(pos);
-                    allPositionSet.add(pos);
-            }
-            cuttingPositionMap.put(enzyme.getPlainSite(), cuttingPositionList); // push array list to map
+            byte[] genomicPosRegion = fastaReader.getBases(referenceSequenceID, fragmentStart, fragmentEnd);
+            // find the sites of all enzymes in one pass
+            cuts = getCutSiteScanner(chosenEnzymeList).scan(genomicPosRegion, fragmentStart);
+        }
+        CUT_TIMER.stop(start);
+        List<ArrayList<Integer>> cuttingPositionLists = new ArrayList<>();
+        for (int i = 0; i < chosenEnzymeList.size(); i++) {
+            cuttingPositionLists.add(new ArrayList<>());
+        }
+        for (int i = 0; i < cuts.size(); i++) {
+            int pos = cuts.getPosition(i);
+            cuttingPositionLists.get(cuts.getEnzymeId(i)).add(pos);
+            allPositionSet.add(pos);
+        }
+        for (int i = 0; i < chosenEnzymeList.size(); i++) {
+            cuttingPositionMap.put(chosenEnzymeList.get(i).getPlainSite(), cuttingPositionLists.get(i)); // push array list to map
         }
         ArrayList<Integer> cuttingPositionListUnion = new ArrayList<>(allPositionSet);
         Collections.sort(cuttingPositionListUnion);
@@ -125,7 +165,13 @@ public class SegmentFactory implements Serializable {
     }
 
 
+    /** @return true if the cutting positions can be taken from the index (it has the enzymes and the sequence). */
+    static boolean usesIndex(CutSiteIndex cutSiteIndex, List<RestrictionEnzyme> chosenEnzymeList, String referenceSequenceID) {
+        return cutSiteIndex != null && cutSiteIndex.hasEnzymes(chosenEnzymeList) && cutSiteIndex.hasContig(referenceSequenceID);
+    }
+
     /** @return  the number of cutting sites upstream of the given position. */
+    @Override
     public int getNumOfCutsUpstreamPos(int pos) {
         int numOfCuts=0;
         for(Integer cut : getAllCuts()) {
@@ -141,6 +187,7 @@ public class SegmentFactory implements Serializable {
 
 
     /** @return the number of cutting sites downstream of the given position. */
+    @Override
     public int getNumOfCutsDownstreamPos(int pos) {
         int numOfCuts=0;
         for(Integer cut : getAllCuts()) {
@@ -151,14 +198,21 @@ public class SegmentFactory implements Serializable {
         return numOfCuts;
     }
 
+    @Override
     public boolean maxDistUpOutOfChromosome() {
         return (genomicPos-maxDistToGenomicPosUp < 1);
     }
 
+    @Override
     public boolean maxDistDownOutOfChromosome() {
         return (this.chromosomeLength < maxDistToGenomicPosDown + genomicPos);
     }
 
+    @Override
+    public SegmentFactory getSegmentFactory() {
+        return this;
+    }
+
 
 
     private void setGenomicPos(Integer genomicPos) {
@@ -0,0 +1,56 @@
+package gopher.service.model.viewpoint;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares the G/C and repeat contents and the baits of {@link Segment} objects for the same restriction fragment
+ * between the viewpoints of one viewpoint creation run. The windows of neighbouring viewpoints (e.g., of genes with
+ * several transcription start sites) overlap, so that many fragments are part of several viewpoints. Each viewpoint
+ * still has its own {@link Segment} objects, since the selection of a segment belongs to the viewpoint, but the first
+ * segment of a fragment that calculates its statistics publishes itself here, and later segments of the same
+ * fragment copy the results (the bait lists are shared and must not be modified). If two worker threads calculate
+ * the same fragment at the same time, both calculate it, which gives the same result.
+ * <p>
+ * All segments of a run must use the same margin size and bait parameters, and the registry should be dropped
+ * at the end of the run.
+ */
+class SegmentRegistry {
+
+    /** A restriction fragment. */
+    private record Key(String chromosome, int start, int end) {}
+
+    /** Segments whose contents have been calculated. */
+    private final Map<Key, Segment> contents = new ConcurrentHashMap<>();
+    /** Segments whose baits have been placed. */
+    private final Map<Key, Segment> baits = new ConcurrentHashMap<>();
+
+    private static Key key(Segment segment) {
+        return new Key(segment.getReferenceSequenceID(), segment.getStartPos(), segment.getEndPos());
+    }
+
+    /** @return a segment for the same fragment whose contents have been calculated, or null */
+    Segment getContent(Segment segment) {
+        return contents.get(key(segment));
+    }
+
+    /** Publish a segment whose contents have been calculated. */
+    void putContent(Segment segment) {
+        contents.putIfAbsent(key(segment), segment);
+    }
+
+    /** @return a segment for the same fragment whose baits have been placed, or null */
+    Segment getBaits(Segment segment) {
+        return baits.get(key(segment));
+    }
+
+    /** Publish a segment whose baits have been placed. */
+    void putBaits(Segment segment) {
+        baits.putIfAbsent(key(segment), segment);
+    }
+
+    /** @return number of fragments with calculated contents. */
+    int size() {
+        return contents.size();
+    }
+}
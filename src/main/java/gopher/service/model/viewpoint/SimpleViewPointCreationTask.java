@@ -1,17 +1,19 @@
 package gopher.service.model.viewpoint;
 
 import gopher.exception.GopherException;
+import gopher.io.GenomeSequence;
+import gopher.io.GenomeSequenceReader;
 import gopher.service.GopherService;
 import gopher.service.model.Default;
 import gopher.service.model.GopherGene;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 
 /**
@@ -33,23 +35,37 @@ public class SimpleViewPointCreationTask extends ViewPointCreationTask {
       super(service);
   }
 
+    /**
+     * Set up the Task of creating ViewPoints on a shared thread pool.
+     * @param service Model of the panel design project
+     * @param executor thread pool for the calculation of the viewpoints
+     */
+    public SimpleViewPointCreationTask(GopherService service, ExecutorService executor) {
+        super(service, executor);
+    }
+
     /**
      * Calculate the data for the current ViewPoint object
      * @param vpvgene A representation of the input gene and target (usually the TSS)
      * @param referenceSequenceID Chromosome/scaffold on which the gene is located
-     * @param fastaReader HTSJDK object to read FASTA file
+     * @param fastaReader genome sequence
      * @param chr2alignMap alignability map for the current chromosome
+     * @return the viewpoints for all transcription start sites of the gene
      */
-    private void calculateViewPoints(GopherGene vpvgene,
-                                     String referenceSequenceID,
-                                     IndexedFastaSequenceFile fastaReader,
-                                     AlignabilityMap chr2alignMap,
-                                     int chromLen) {
+    @Override
+    List<ViewPoint> calculateViewPoints(GopherGene vpvgene,
+                                        String referenceSequenceID,
+                                        GenomeSequence fastaReader,
+                                        AlignabilityMap chr2alignMap,
+                                        int chromLen) {
         List<Integer> gPosList = vpvgene.getTSSlist();
+        List<ViewPoint> viewpoints = new ArrayList<>();
         int n=0; // we will order the promoters from first (most upstream) to last
         // Note we do this differently according to strand.
-        LOGGER.info("Creating simple viewpoint for " + vpvgene.getGeneSymbol());
+        LOGGER.info("Creating simple viewpoint for {}", vpvgene.getGeneSymbol());
         for (Integer gPos : gPosList) {
+            if (isCancelled()) // true if user has cancelled the task
+                break;
             ViewPoint vp = new ViewPoint.Builder(referenceSequenceID, gPos,chromLen).
                     targetName(vpvgene.getGeneSymbol()).
                     upstreamLength(gopherService.getSizeUp()).
@@ -63,14 +79,18 @@ public class SimpleViewPointCreationTask extends ViewPointCreationTask {
                     isForwardStrand(vpvgene.isForward()).
                     accessionNr(vpvgene.getRefSeqID()).
                     c2alignabilityMap(chr2alignMap).
+                    segmentRegistry(segmentRegistry).
+                    cutSiteIndex(cutSiteIndex).
                     model(this.gopherService).
                     build();
             vp.setPromoterNumber(++n,gPosList.size());
-            updateProgress(i++, total); /* this will update the progress bar */
-            updateMessage(String.format("[%d/%d] Creating view point for %s", i, total, vpvgene));
+            int i = nProcessed.incrementAndGet();
+            /* this will update the progress bar (at most a few times per second) */
+            updateProgress(i, total, () -> String.format("[%d/%d] Creating view point for %s", i, total, vpvgene));
             vp.generateViewpointSimple(gopherService);
-            viewpointlist.add(vp);
+            viewpoints.add(vp);
         }
+        return viewpoints;
     }
 
 
@@ -90,7 +110,7 @@ public class SimpleViewPointCreationTask extends ViewPointCreationTask {
         LOGGER.info("SimpleViewPointCreationTask: Got total of {} promoters", this.total);
         updateTitle(String.format("Creating viewpoints using 'simple' approach with %d promoters", this.total));
         updateProgress(0,1000);
-        this.i = 0;
+        this.nProcessed.set(0);
         LOGGER.trace(String.format("extracting GopherGenes & have %d chromosome groups ", chromosomes.size()));
         long milli = System.currentTimeMillis();
 
@@ -102,49 +122,25 @@ public class SimpleViewPointCreationTask extends ViewPointCreationTask {
             LOGGER.error("Could not retrieve faidx file for " + fastapath);
             throw new GopherException("Could not retrieve faidx file for " + fastapath);
         }
-        IndexedFastaSequenceFile fastaReader;
         LOGGER.trace("Reading genome FAST from {}", fastapath);
-        try {
-            fastaReader = new IndexedFastaSequenceFile(new File(fastapath));
-        } catch (FileNotFoundException fnfe) {
-            throw new GopherException(String.format("Could not find genome fasta file [%s]",fnfe.getMessage()));
-        }
-        updateProgress(40,1000);
-        double meanLen = getEstimatedMeanRestrictionFragmentLength(fastaReader);
-        LOGGER.trace("MeanRestrictionFragmentLength = {}", meanLen);
-        gopherService.setEstAvgRestFragLen(meanLen);
-        gopherService.setNormalDistributionSimple(meanLen);
-        String chromInfoPath= gopherService.getChromInfoPathIncludingFileNameGz();
-        String alignabilitMapPath= gopherService.getAlignabilityMapPathIncludingFileNameGz();
-        int kmerSize=Default.KMER_SIZE;
-        try {
-            AlignabilityMapIterator apiterator = new AlignabilityMapIterator(alignabilitMapPath, chromInfoPath, kmerSize);
-            while (apiterator.hasNext()) {
-                AlignabilityMap apair = apiterator.next();
-                String referenceSequenceID = apair.getChromName();
-                LOGGER.trace("Creating viewpoints for RefID=" + referenceSequenceID);
-                if (!chromosomes.containsKey(referenceSequenceID)) {
-                    continue; // skip if we have no gene on this chromosome
-                }
-                ChromosomeGroup chromosome = chromosomes.get(referenceSequenceID);
-                if (chromosome == null) {
-                    LOGGER.error("chromosome is null while searching for \"" + referenceSequenceID + "\"");
-                    for (ChromosomeGroup g : chromosomes.values()) {
-                        LOGGER.error(g.getReferenceSequenceID());
-                    }
-                    continue;
-                } else {
-                    LOGGER.trace("chromosome=" + chromosome.getReferenceSequenceID());
-                }
-                int chromosomeLen = fastaReader.getSequence(referenceSequenceID).length();
-                chromosome.getGenes().forEach(gopherGene ->
-                        calculateViewPoints(gopherGene, referenceSequenceID, fastaReader, apair,chromosomeLen));
-            }
-
+        try (GenomeSequenceReader genome = openGenome(fastapath)) {
+            updateProgress(40,1000);
+            double meanLen = getEstimatedMeanRestrictionFragmentLength(genome);
+            LOGGER.trace("MeanRestrictionFragmentLength = {}", meanLen);
+            gopherService.setEstAvgRestFragLen(meanLen);
+            gopherService.setNormalDistributionSimple(meanLen);
+            String chromInfoPath= gopherService.getChromInfoPathIncludingFileNameGz();
+            String alignabilitMapPath= gopherService.getAlignabilityMapPathIncludingFileNameGz();
+            int kmerSize=Default.KMER_SIZE;
+            Iterator<AlignabilityMap> apiterator = openAlignabilityMaps(alignabilitMapPath, chromInfoPath, kmerSize);
+            createViewPoints(genome, apiterator);
         } catch (IOException e){
             e.printStackTrace();
         }
-        long end = milli - System.currentTimeMillis();
+        if (isCancelled()) {
+            return null;
+        }
+        long end = System.currentTimeMillis() - milli;
         LOGGER.trace(String.format("Generation of viewpoints (simple approach) took %.1f sec", end / 1000.0));
         this.gopherService.setViewPoints(viewpointlist);
         return null;
@@ -5,7 +5,8 @@ import gopher.service.GopherService;
 import gopher.service.model.Approach;
 import gopher.service.model.Default;
 import gopher.service.model.RestrictionEnzyme;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import gopher.service.model.digest.CutSiteIndex;
+import gopher.io.GenomeSequence;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -184,14 +185,20 @@ public class ViewPoint implements Serializable {
         this.accession=builder.accessionNr;
         this.maximumRepeatContent=builder.maximumRepeatContent;
         this.gopherService =builder.service;
-        init(builder.fastaReader,builder.c2alignmap, builder.chromosomelen);
+        init(builder.fastaReader,builder.c2alignmap, builder.chromosomelen, builder.segmentRegistry, builder.cutSiteIndex);
     }
 
 
-    private void init(IndexedFastaSequenceFile fastaReader, AlignabilityMap c2align, int chromosomeLength) {
+    private void init(GenomeSequence fastaReader, AlignabilityMap c2align, int chromosomeLength, SegmentRegistry registry,
+                      CutSiteIndex cutSiteIndex) {
         this.restrictionSegmentList=new ArrayList<>();
         boolean changed;
-        /* Create segmentFactory */
+        /* The segments are only created for the window of the last iteration that had cuts on both sides (if any).
+           Creating the segments (with the bait scan) is expensive, and so we only do this once after the loop.
+           With a cut-site index, the iterations only look up the nearest cuts (see IndexedCutWindow). */
+        CutWindow fragmentWindow = null;
+        CutWindow window;
+        /* Find the window and the segmentFactory */
         if(gopherService.getApproach().     equals(Approach.SIMPLE)) {
             this.upstreamNucleotideLength= gopherService.getEstAvgRestFragLen().intValue();
             this.downstreamNucleotideLength= gopherService.getEstAvgRestFragLen().intValue();
@@ -205,41 +212,39 @@ public class ViewPoint implements Serializable {
             do {
                 LOGGER.trace("segmentFactory iteration = " + iteration);
                 changed=false;
-                segmentFactory = new SegmentFactory(this.chromosomeID,
-                        this.genomicPos,
-                        fastaReader,
+                window = createCutWindow(fastaReader,
                         chromosomeLength,
                         this.upstreamNucleotideLength,
                         this.downstreamNucleotideLength,
-                        ViewPoint.chosenEnzymes);
+                        cutSiteIndex);
                 iteration++;
 
                 LOGGER.trace("Number of frags="+restrictionSegmentList.size());
 
-                if(segmentFactory.getNumOfCutsUpstreamPos(genomicPos) < 2
+                if(window.getNumOfCutsUpstreamPos(genomicPos) < 2
                         && hasMoreSequenceUpstream() ) {
                     this.upstreamNucleotideLength = this.upstreamNucleotideLength + increment;
-                    this.restrictionSegmentList.clear();
+                    fragmentWindow = null;
                     changed=true;
                 }
-                if(segmentFactory.getNumOfCutsDownstreamPos(genomicPos) < 2
+                if(window.getNumOfCutsDownstreamPos(genomicPos) < 2
                         && hasMoreSequenceDownstream(chromosomeLength)) {
                     this.downstreamNucleotideLength = this.downstreamNucleotideLength + increment;
-                    this.restrictionSegmentList.clear();
+                    fragmentWindow = null;
                     changed=true;
                 }
 
-                if((0 < segmentFactory.getNumOfCutsUpstreamPos(genomicPos)) &&
-                        (0 < segmentFactory.getNumOfCutsDownstreamPos(genomicPos))) {
+                if((0 < window.getNumOfCutsUpstreamPos(genomicPos)) &&
+                        (0 < window.getNumOfCutsDownstreamPos(genomicPos))) {
                     LOGGER.trace("0<x and 0<y");
-                    initRestrictionFragments(fastaReader, c2align);
+                    fragmentWindow = window;
                 }
                 increment *= 2;
             }
-            while (changed && (segmentFactory.getNumOfCutsUpstreamPos(genomicPos) < 2 ||
-                    segmentFactory.getNumOfCutsDownstreamPos(genomicPos) < 2) &&
-                    !segmentFactory.maxDistUpOutOfChromosome() &&
-                    !segmentFactory.maxDistDownOutOfChromosome());
+            while (changed && (window.getNumOfCutsUpstreamPos(genomicPos) < 2 ||
+                    window.getNumOfCutsDownstreamPos(genomicPos) < 2) &&
+                    !window.maxDistUpOutOfChromosome() &&
+                    !window.maxDistDownOutOfChromosome());
         } else {
             /*
             For the extended approach, we want to have all digests that overlap the range specified by the user
@@ -255,42 +260,44 @@ public class ViewPoint implements Serializable {
             do {
                 LOGGER.trace("segmentFactory iteration = " + iteration + " (" + this.targetName + ")");
                 changed=false;
-                segmentFactory = new SegmentFactory(this.chromosomeID,
-                        this.genomicPos,
-                        fastaReader,
+                window = createCutWindow(fastaReader,
                         chromosomeLength,
                         upstreamLength,
                         downstreamLength,
-                        ViewPoint.chosenEnzymes);
+                        cutSiteIndex);
                 LOGGER.trace("Done with Segment factory");
                 iteration++;
 
                 LOGGER.trace("Number of frags = " + restrictionSegmentList.size());
 
-                if(segmentFactory.getNumOfCutsUpstreamPos(genomicPos-upstreamNucleotideLength) < 2
+                if(window.getNumOfCutsUpstreamPos(genomicPos-upstreamNucleotideLength) < 2
                         && !(genomicPos-upstreamLength < 0) ) {
                     upstreamLength = upstreamLength + increment;
-                    this.restrictionSegmentList.clear();
+                    fragmentWindow = null;
                     changed=true;
                 }
-                if(segmentFactory.getNumOfCutsDownstreamPos(genomicPos+downstreamNucleotideLength) < 2
+                if(window.getNumOfCutsDownstreamPos(genomicPos+downstreamNucleotideLength) < 2
                         && !(chromosomeLength < genomicPos + downstreamLength)) {
                     downstreamLength = downstreamLength + increment;
-                    this.restrictionSegmentList.clear();
+                    fragmentWindow = null;
                     changed=true;
                 }
 
-                if((0 < segmentFactory.getNumOfCutsUpstreamPos(genomicPos)) &&
-                        (0 < segmentFactory.getNumOfCutsDownstreamPos(genomicPos))) {
+                if((0 < window.getNumOfCutsUpstreamPos(genomicPos)) &&
+                        (0 < window.getNumOfCutsDownstreamPos(genomicPos))) {
                     LOGGER.trace("0<x and 0<y");
-                    initRestrictionFragments(fastaReader, c2align);
+                    fragmentWindow = window;
                 }
             }
-            while (changed && (segmentFactory.getNumOfCutsUpstreamPos(genomicPos-upstreamNucleotideLength) < 2 ||
-                    segmentFactory.getNumOfCutsDownstreamPos(genomicPos+downstreamNucleotideLength) < 2) &&
+            while (changed && (window.getNumOfCutsUpstreamPos(genomicPos-upstreamNucleotideLength) < 2 ||
+                    window.getNumOfCutsDownstreamPos(genomicPos+downstreamNucleotideLength) < 2) &&
                     !(genomicPos - upstreamLength < 0) &&
                     !(chromosomeLength < genomicPos + downstreamLength));
         }
+        if (fragmentWindow != null) {
+            segmentFactory = fragmentWindow.getSegmentFactory();
+            initRestrictionFragments(segmentFactory, fastaReader, c2align, registry);
+        }
         /* The iterative approach can result in more than one adjacent digest in up- or downstream direction.
            Such digests need to be removed from the list.
          */
@@ -320,6 +327,20 @@ public class ViewPoint implements Serializable {
         }
     }
 
+    /**
+     * @return the cuts in the window with the given lengths (before zooming) around {@link #genomicPos}. The counts
+     * are looked up in the cut-site index if possible, and otherwise the cuts are found by a {@link SegmentFactory}.
+     */
+    private CutWindow createCutWindow(GenomeSequence fastaReader, int chromosomeLength, int upstreamLength,
+                                      int downstreamLength, CutSiteIndex cutSiteIndex) {
+        if (SegmentFactory.usesIndex(cutSiteIndex, ViewPoint.chosenEnzymes, this.chromosomeID)) {
+            return new IndexedCutWindow(this.chromosomeID, this.genomicPos, fastaReader, chromosomeLength,
+                    upstreamLength, downstreamLength, ViewPoint.chosenEnzymes, cutSiteIndex);
+        }
+        return new SegmentFactory(this.chromosomeID, this.genomicPos, fastaReader, chromosomeLength,
+                upstreamLength, downstreamLength, ViewPoint.chosenEnzymes, cutSiteIndex);
+    }
+
     /** @return true if we are at or over the 3' end of the chromosome. */
     private boolean hasMoreSequenceDownstream(int chromlen) {
         return (this.genomicPos + this.downstreamNucleotideLength < chromlen);
@@ -331,16 +352,19 @@ public class ViewPoint implements Serializable {
 
 
     /**
-     * This function uses the information about cutting position sites from the {@link #segmentFactory} to build
+     * This function uses the information about cutting position sites from a {@link SegmentFactory} to build
      * a list of {@link Segment} objects in {@link #restrictionSegmentList}.
      */
-    private void initRestrictionFragments(IndexedFastaSequenceFile fastaReader, AlignabilityMap c2align) {
+    private void initRestrictionFragments(SegmentFactory factory,
+                                          GenomeSequence fastaReader,
+                                          AlignabilityMap c2align,
+                                          SegmentRegistry registry) {
         this.restrictionSegmentList = new ArrayList<>();
-        for (int j = 0; j < segmentFactory.getAllCuts().size() - 1; j++) {
+        for (int j = 0; j < factory.getAllCuts().size() - 1; j++) {
             Segment restFrag = new Segment(chromosomeID,
-                    segmentFactory.getUpstreamCut(j),
-                    segmentFactory.getDownstreamCut(j) - 1,
-                    fastaReader ,marginSize);
+                    factory.getUpstreamCut(j),
+                    factory.getDownstreamCut(j) - 1,
+                    fastaReader ,marginSize, registry);
             double maxMeanAlignabilityScore = 1.0 * gopherService.getMaxMeanKmerAlignability();
             restFrag.setUsableBaits(gopherService,c2align,maxMeanAlignabilityScore);
             restrictionSegmentList.add(restFrag);
@@ -469,25 +493,26 @@ public class ViewPoint implements Serializable {
      */
     private void setFragmentsForExtendedApproach(int lowerLimit, int upperLimit, boolean updateOriginallySelected) {
         for (Segment segment:restrictionSegmentList) {
-            segment.setSelected(true,updateOriginallySelected); // initial segment selection is done here and nowhere else
+            // initial segment selection is done here and nowhere else
+            segment.setSelected(false,updateOriginallySelected);
             // do not select fragments that are too small
             if (segment.length() < this.minFragSize) { // minFragSize should be at least one bait size
-                segment.setSelected(false,updateOriginallySelected);
+                continue;
             }
             // do not select segments that are entirely outside the allowed range
-            if((segment.getEndPos() < lowerLimit) || (upperLimit < segment.getStartPos()) ) {
-                segment.setSelected(false,updateOriginallySelected);
+            if (!segment.overlapsRange(lowerLimit, upperLimit)) {
+                continue;
             }
-
+            // the baits are only placed for the segments that get here (see Segment#ensureBaits)
             // do not select segments that have less than 2 times bmin baits
             if(segment.isUnselectable()) {
-                segment.setSelected(false,updateOriginallySelected);
+                continue;
             }
-
             // if allow single margin is false, do not select unbalanced digests
             if(!gopherService.getAllowUnbalancedMargins() && segment.isUnbalanced()) {
-                segment.setSelected(false,updateOriginallySelected);
+                continue;
             }
+            segment.setSelected(true,updateOriginallySelected);
         }
     }
 
@@ -548,6 +573,30 @@ public class ViewPoint implements Serializable {
 
         setDerivationApproach(Approach.EXTENDED);
         calculateViewpointScoreExtended();
+        calculateSegmentStatistics(lowerLimit, upperLimit);
+    }
+
+    /**
+     * Calculate the statistics and baits of the segments that remain in the viewpoint. The segments calculate them
+     * lazily, and so the segments that were discarded while the viewpoint was created were never calculated. This
+     * must be done while the genome sequence is still open, i.e., by the task that creates the viewpoint.
+     */
+    void calculateSegmentStatistics() {
+        restrictionSegmentList.forEach(Segment::calculateStatistics);
+    }
+
+    /**
+     * Calculate the statistics and baits of the segments in the range from lowerLimit to upperLimit. The segments
+     * outside of this range can never be selected, and so they are left without statistics and baits.
+     */
+    private void calculateSegmentStatistics(int lowerLimit, int upperLimit) {
+        for (Segment segment : restrictionSegmentList) {
+            if (segment.overlapsRange(lowerLimit, upperLimit)) {
+                segment.calculateStatistics();
+            } else {
+                segment.skipStatistics();
+            }
+        }
     }
 
 
@@ -646,6 +695,7 @@ public class ViewPoint implements Serializable {
             }
         }
         setDerivationApproach(Approach.SIMPLE);
+        calculateSegmentStatistics();
     }
 
     private boolean isSegmentValid(Segment seg) {
@@ -874,7 +924,7 @@ public class ViewPoint implements Serializable {
         private String accessionNr=null;
         private final int genomicPos;
         // other params
-        private IndexedFastaSequenceFile fastaReader;
+        private GenomeSequence fastaReader;
         private String targetName="";
         // Optional parameters - initialized to default values
         /* upstream nucleotide length for digest generation (upstream of genomic pos).*/
@@ -890,6 +940,10 @@ public class ViewPoint implements Serializable {
         private int marginSize=Default.MARGIN_SIZE;
         private GopherService service;
         private AlignabilityMap c2alignmap;
+        /** Shares the statistics of segments with the other viewpoints of the same run (null for no sharing). */
+        private SegmentRegistry segmentRegistry;
+        /** Index of the cuts of the chosen enzymes in the genome (null to scan the sequence around the viewpoint). */
+        private CutSiteIndex cutSiteIndex;
 
         private final int chromosomelen;
 
@@ -906,7 +960,7 @@ public class ViewPoint implements Serializable {
         }
         Builder targetName(String val)
         { targetName = val;  return this; }
-        Builder fastaReader(IndexedFastaSequenceFile val) {
+        Builder fastaReader(GenomeSequence val) {
             this.fastaReader=val; return this;
         }
         Builder maximumGcContent(double maxGC) {
@@ -940,6 +994,12 @@ public class ViewPoint implements Serializable {
         Builder model(GopherService model) {
             this.service =model; return this;
         }
+        Builder segmentRegistry(SegmentRegistry registry) {
+            this.segmentRegistry = registry; return this;
+        }
+        Builder cutSiteIndex(CutSiteIndex index) {
+            this.cutSiteIndex = index; return this;
+        }
         Builder c2alignabilityMap(AlignabilityMap c2am) {
             this.c2alignmap = c2am; return this;
         }
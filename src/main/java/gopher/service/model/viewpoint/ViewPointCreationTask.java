@@ -1,29 +1,39 @@
 package gopher.service.model.viewpoint;
 
+import gopher.exception.GopherException;
+import gopher.io.GenomeSequence;
+import gopher.io.GenomeSequenceReader;
+import gopher.io.PackedGenome;
 import gopher.service.GopherService;
 import gopher.service.model.GopherGene;
 import gopher.service.model.RestrictionEnzyme;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
-import htsjdk.samtools.reference.ReferenceSequence;
-import javafx.concurrent.Task;
+import gopher.service.model.digest.CutSiteIndex;
+import gopher.service.model.digest.CutSiteScanner;
+import gopher.util.CancellableJob;
+import gopher.util.GopherTask;
+import gopher.util.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
- * Base class for the tasks that create viewpoints.
+ * Base class for the tasks that create viewpoints. The viewpoints of the individual genes are calculated
+ * in parallel on a thread pool (see {@link #createViewPoints}).
  * @author Peter Robinson
  * @version 0.0.3 (2017-09-27)
  */
-public abstract class ViewPointCreationTask extends Task<Void> {
+public abstract class ViewPointCreationTask extends GopherTask<Void> {
     private static final Logger logger = LoggerFactory.getLogger(ViewPointCreationTask.class.getName());
+    private static final Metrics.Timer CREATE_TIMER = Metrics.timer("viewpoints.create");
+    private static final Metrics.Timer GENE_TIMER = Metrics.timer("viewpoints.gene");
+    private static final Metrics.Counter VIEWPOINT_COUNTER = Metrics.counter("viewpoints.created");
+    private static final Metrics.Timer ALIGNABILITY_TIMER = Metrics.timer("alignability.read");
     /**  Key: Name of chromosome; value: Chromosome with {@link GopherGene} objects located on the chromosome. */
     protected Map<String, ChromosomeGroup> chromosomes = null;
     /** The total number of genes for which we are making viewpoints. This number is only used for the progress
@@ -35,8 +45,18 @@ public abstract class ViewPointCreationTask extends Task<Void> {
     protected final GopherService gopherService;
     /** Total number of viewpoints (used for the progress dialog) */
     protected int total;
-    /** Index of current viewpoint (used for the progress dialog) */
-    protected int i;
+    /** Number of viewpoints that have been processed so far by the worker threads (used for the progress dialog) */
+    protected final AtomicInteger nProcessed = new AtomicInteger();
+    /** Thread pool on which the viewpoints of the individual genes are calculated. */
+    private final ExecutorService executor;
+    /** True if {@link #executor} was created by this task and needs to be shut down once the task is done. */
+    private final boolean ownsExecutor;
+    /** Shares the statistics of the segments of overlapping viewpoints (only during {@link #createViewPoints}). */
+    protected SegmentRegistry segmentRegistry = null;
+    /** Index of the cuts of the chosen enzymes in the genome (only during {@link #createViewPoints}; null if none). */
+    protected CutSiteIndex cutSiteIndex = null;
+    /** FASTA readers that were opened by the worker threads; they are closed once the task is done. */
+    private final List<GenomeSequenceReader> workerFastaReaders = new CopyOnWriteArrayList<>();
 
     /**
      * List of {@link ViewPoint} objects that we will return to the Model when this Task is done.
@@ -45,8 +65,44 @@ public abstract class ViewPointCreationTask extends Task<Void> {
 
     protected abstract Void call() throws Exception;
 
+    /**
+     * Calculate the viewpoints for all transcription start sites of one gene. This method is called concurrently
+     * by the worker threads and must therefore not modify shared state.
+     * @param gene A representation of the input gene and target (usually the TSS)
+     * @param referenceSequenceID Chromosome/scaffold on which the gene is located
+     * @param fastaReader genome sequence (either shared by all workers or owned by the current worker thread)
+     * @param chr2alignMap alignability map for the current chromosome (shared read-only by all workers)
+     * @param chromLen length of the chromosome
+     * @return the viewpoints of the gene, in the order of the promoter numbers
+     */
+    abstract List<ViewPoint> calculateViewPoints(GopherGene gene,
+                                                 String referenceSequenceID,
+                                                 GenomeSequence fastaReader,
+                                                 AlignabilityMap chr2alignMap,
+                                                 int chromLen);
 
+    /**
+     * Create a task that uses its own thread pool with one thread per available processor.
+     * @param service Model of the panel design project
+     */
     ViewPointCreationTask(GopherService service) {
+        this(service, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()), true);
+    }
+
+    /**
+     * Create a task that calculates the viewpoints on the given (shared) thread pool. The pool is not shut down
+     * by this task. Note that the pool must not be used to run the task itself, because the task waits for the
+     * viewpoints that are calculated on the pool.
+     * @param service Model of the panel design project
+     * @param executor thread pool for the calculation of the viewpoints
+     */
+    ViewPointCreationTask(GopherService service, ExecutorService executor) {
+        this(service, executor, false);
+    }
+
+    private ViewPointCreationTask(GopherService service, ExecutorService executor, boolean ownsExecutor) {
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
         this.gopherService = service;
         this.viewpointlist = new ArrayList<>();
         assignGopherGenesToChromosomes(service.getGopherGeneList());
@@ -93,41 +149,213 @@ public abstract class ViewPointCreationTask extends Task<Void> {
         }
     }
 
+    /**
+     * Calculate the viewpoints for the genes on all chromosomes that are covered by the alignability map.
+     * The alignability map of each chromosome is read on the thread of this task and shared read-only by the
+     * worker threads, and each gene is submitted as a separate job to {@link #executor}. If a {@link PackedGenome}
+     * has been built for the FASTA file, all workers share the memory-mapped genome; otherwise, since the HTSJDK
+     * FASTA readers are not thread-safe, every worker thread opens its own reader. The results are collected in
+     * the order in which the jobs were submitted, so that the order of {@link #viewpointlist} is the same as
+     * with sequential processing. To limit memory consumption, we only read the alignability map of the next
+     * chromosome once the jobs of the chromosome before the current one have been collected.
+     * @param genome reader for the genome FASTA file that is used on the thread of this task
+     * @param apiterator iterator over the alignability maps of the chromosomes (see {@link #openAlignabilityMaps})
+     * @throws GopherException if a viewpoint could not be calculated or the task was interrupted
+     */
+    void createViewPoints(GenomeSequenceReader genome,
+                          Iterator<AlignabilityMap> apiterator) throws GopherException {
+        String fastapath = genome.getFastaPath();
+        PackedGenome packedGenome = openPackedGenome(fastapath);
+        ThreadLocal<GenomeSequence> workerFastaReader = ThreadLocal.withInitial(() -> {
+            if (packedGenome != null) {
+                return packedGenome;
+            }
+            try {
+                GenomeSequenceReader reader = new GenomeSequenceReader(fastapath);
+                workerFastaReaders.add(reader);
+                return reader;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        long startTime = CREATE_TIMER.start();
+        cutSiteIndex = openCutSiteIndex(fastapath);
+        segmentRegistry = new SegmentRegistry();
+        Deque<CancellableJob<List<ViewPoint>>> pending = new ArrayDeque<>();
+        try {
+            while (apiterator.hasNext()) {
+                if (isCancelled()) // true if user has cancelled the task
+                    return;
+                long readStart = ALIGNABILITY_TIMER.start();
+                AlignabilityMap apair = apiterator.next();
+                ALIGNABILITY_TIMER.stop(readStart);
+                String referenceSequenceID = apair.getChromName();
+                if (!chromosomes.containsKey(referenceSequenceID)) {
+                    continue; // skip if we have no gene on this chromosome
+                }
+                ChromosomeGroup group = chromosomes.get(referenceSequenceID);
+                logger.trace("Creating viewpoints for RefID=" + referenceSequenceID);
+                int chromosomeLen = genome.getLength(referenceSequenceID); // from the FASTA index
+                List<GopherGene> genes = group.getGenes();
+                for (GopherGene gene : genes) {
+                    CancellableJob<List<ViewPoint>> job = new CancellableJob<>(() ->
+                            timeViewPoints(gene, referenceSequenceID, workerFastaReader.get(), apair, chromosomeLen));
+                    executor.execute(job);
+                    pending.add(job);
+                }
+                // collect the previous chromosomes while the workers are busy with the current one
+                while (pending.size() > genes.size()) {
+                    collectViewPoints(pending.poll());
+                }
+            }
+            while (!pending.isEmpty()) {
+                collectViewPoints(pending.poll());
+            }
+        } finally {
+            /* The jobs that are already running still use the readers, the index and the registry, and so we let
+               them finish (they do not check for interrupts, and an interrupt would only close the channel of the
+               FASTA reader of the worker) before we release them; the other jobs are not started anymore. */
+            pending.forEach(f -> f.cancel(false));
+            pending.forEach(CancellableJob::awaitStopped);
+            cutSiteIndex = null;
+            logger.trace("Calculated the statistics of {} distinct segments", segmentRegistry.size());
+            segmentRegistry = null;
+            for (GenomeSequenceReader reader : workerFastaReaders) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    logger.warn("Could not close FASTA reader: {}", e.getMessage());
+                }
+            }
+            workerFastaReaders.clear();
+            if (ownsExecutor) {
+                executor.shutdownNow();
+            }
+            CREATE_TIMER.stop(startTime);
+        }
+    }
+
+    /** {@link #calculateViewPoints} with the time per gene and the number of viewpoints recorded in {@link Metrics}. */
+    private List<ViewPoint> timeViewPoints(GopherGene gene,
+                                           String referenceSequenceID,
+                                           GenomeSequence fastaReader,
+                                           AlignabilityMap chr2alignMap,
+                                           int chromLen) {
+        long start = GENE_TIMER.start();
+        List<ViewPoint> viewpoints = calculateViewPoints(gene, referenceSequenceID, fastaReader, chr2alignMap, chromLen);
+        GENE_TIMER.stop(start);
+        VIEWPOINT_COUNTER.add(viewpoints.size());
+        return viewpoints;
+    }
+
+    /**
+     * Get the alignability maps of the chromosomes with genes. We use the binary {@link AlignabilityCache}, which
+     * is created from the bedGraph file the first time it is needed, and only read the maps of the chromosomes in
+     * {@link #chromosomes}. If the cache cannot be created (e.g., because the directory is not writable), we parse
+     * the bedGraph file.
+     * @param alignabilityMapPath path of the (gzipped) bedGraph file
+     * @param chromInfoPath path of the (gzipped) chromInfo file
+     * @param kmerSize k-mer size of the alignability map
+     * @return iterator over the alignability maps in the order of the bedGraph file
+     * @throws IOException if the bedGraph file cannot be read
+     */
+    Iterator<AlignabilityMap> openAlignabilityMaps(String alignabilityMapPath,
+                                                   String chromInfoPath,
+                                                   int kmerSize) throws IOException {
+        try {
+            return AlignabilityCache.open(alignabilityMapPath, chromInfoPath, kmerSize).iterator(chromosomes.keySet());
+        } catch (IOException e) {
+            logger.warn("Could not use alignability cache, parsing {} instead: {}", alignabilityMapPath, e.getMessage());
+            return new AlignabilityMapIterator(alignabilityMapPath, chromInfoPath, kmerSize);
+        }
+    }
+
+    /**
+     * @param fastapath path to the indexed genome FASTA file
+     * @return the packed genome for the FASTA file, or null if there is no up-to-date packed genome
+     */
+    private PackedGenome openPackedGenome(String fastapath) {
+        if (! PackedGenome.isUpToDate(fastapath)) {
+            return null;
+        }
+        try {
+            return new PackedGenome(PackedGenome.getPackedGenomePath(fastapath));
+        } catch (IOException e) {
+            logger.warn("Could not open packed genome, reading the FASTA file instead: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get the index of the cutting positions of the chosen enzymes, which is created the first time the enzymes are
+     * used with this genome. The index is passed to the {@link SegmentFactory} objects of all viewpoints of the run,
+     * so that overlapping windows of neighbouring viewpoints do not need to be scanned again.
+     * @param fastapath path to the indexed genome FASTA file
+     * @return the index, or null if it cannot be created (then every window is scanned)
+     */
+    private CutSiteIndex openCutSiteIndex(String fastapath) {
+        List<RestrictionEnzyme> enzymes = gopherService.getChosenEnzymelist();
+        if (enzymes == null || enzymes.isEmpty()) {
+            return null;
+        }
+        try {
+            return CutSiteIndex.open(fastapath, enzymes, executor);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Could not use cut site index, scanning the sequence of each viewpoint instead: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /** Wait for the viewpoints of one gene and add them to {@link #viewpointlist}. */
+    private void collectViewPoints(Future<List<ViewPoint>> future) throws GopherException {
+        try {
+            viewpointlist.addAll(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GopherException("Viewpoint creation was interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new GopherException("Could not create viewpoint: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Open the genome FASTA file.
+     * @param fastapath path to the indexed genome FASTA file
+     * @return reader for the genome
+     * @throws GopherException if the FASTA file or its index cannot be read
+     */
+    GenomeSequenceReader openGenome(String fastapath) throws GopherException {
+        try {
+            return new GenomeSequenceReader(fastapath);
+        } catch (IOException e) {
+            throw new GopherException(String.format("Could not find genome fasta file [%s]", e.getMessage()));
+        }
+    }
+
     /**
      * Estimate the average size of restriction fragments for the chosen restriction enyzymes
      * by looking at at least 100,000 fragments
-     * @param fastaReader HTSJDK object to read the genome FASTA file
+     * @param genome reader for the genome FASTA file
      * @return Estimate of the average fragment length in the genome for the selected restriction enzyme(s)
      */
-    double getEstimatedMeanRestrictionFragmentLength(IndexedFastaSequenceFile fastaReader) {
+    double getEstimatedMeanRestrictionFragmentLength(GenomeSequenceReader genome) {
         logger.trace("Estimating the average length of restriction fragments from at least 100,000 fragments...");
         int THRESHOLD_NUMBER_OF_FRAGMENTS=100_000;
-        // Combine all patterns into one regular expression.
-        String regExCombinedCutPat = gopherService.getChosenEnzymelist().
-                stream().
-                map(RestrictionEnzyme::getPlainSite).
-                collect(Collectors.joining("|"));
+        CutSiteScanner scanner = new CutSiteScanner(gopherService.getChosenEnzymelist());
         // count all occurrences of the cutting motifs and divide by sequence length
         int totalNumOfCuts = 0;
         long totalLength = 0;
-        ReferenceSequence rf = fastaReader.nextSequence();
-        while(rf != null) {
-            if(rf.getName().contains("_")) {rf = fastaReader.nextSequence(); continue;} // skip random chromosomes
-            if(rf.getName().contains("chrM")) {rf = fastaReader.nextSequence(); continue;} // skip random chromosome M
-            logger.trace("Cutting: " + rf.getName());
-            String sequence = fastaReader.getSequence(rf.getName()).getBaseString();
-            logger.trace("\tPattern: " + regExCombinedCutPat);
-            Pattern pattern = Pattern.compile(regExCombinedCutPat,Pattern.CASE_INSENSITIVE);
-            Matcher matcher = pattern.matcher(sequence);
-            while (matcher.find()) {
-                totalNumOfCuts++;
-            }
-
-            totalLength = totalLength + sequence.length();
+        for (String name : genome.getContigNames()) {
+            if(name.contains("_")) {continue;} // skip random chromosomes
+            if(name.contains("chrM")) {continue;} // skip random chromosome M
+            logger.trace("Cutting: " + name);
+            byte[] sequence = genome.getBases(name);
+            totalNumOfCuts += scanner.countSites(sequence);
+            totalLength = totalLength + sequence.length;
             logger.trace("\tCurrent number of cuts: " + totalNumOfCuts);
             logger.trace("\tCurrent length: " + totalLength);
             logger.trace("\tEstimated average length : " + (1.0*totalLength/totalNumOfCuts));
-            rf = fastaReader.nextSequence();
             if(THRESHOLD_NUMBER_OF_FRAGMENTS<totalNumOfCuts) {break;}
         }
 
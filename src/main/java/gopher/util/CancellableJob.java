@@ -0,0 +1,57 @@
+package gopher.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A job for a thread pool that can be cancelled and then waited for. {@link #cancel(boolean)} of a
+ * {@link FutureTask} returns at once, also if the job is running, and a running job does not stop unless it checks
+ * for interrupts. A job that uses resources of the caller (e.g., the FASTA readers of the worker threads) may
+ * therefore still use them after it has been cancelled. Once a job has been cancelled, {@link #awaitStopped()}
+ * either keeps it from ever starting or waits until it has finished, so that the resources can then be released.
+ * @param <T> type of the result of the job
+ */
+public class CancellableJob<T> extends FutureTask<T> {
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    public CancellableJob(Callable<T> callable) {
+        super(callable);
+    }
+
+    @Override
+    public void run() {
+        if (!started.compareAndSet(false, true)) {
+            return; // stopped before it was started
+        }
+        try {
+            super.run();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Make sure that the job does not run anymore: if it has not started yet, it never will, and otherwise we wait
+     * until it has finished (even if the current thread is interrupted). The job should be cancelled first.
+     */
+    public void awaitStopped() {
+        if (started.compareAndSet(false, true)) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                finished.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package gopher.util;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.scene.control.ProgressIndicator;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Base class of the long-running tasks of Gopher (creation of viewpoints, digests, indexing, ...). In the GUI, the
+ * tasks are run on a thread and their progress is bound to a progress dialog as with any other {@link Task}. The
+ * {@link Task} machinery, however, posts every state change to the JavaFX application thread and fails if the JavaFX
+ * toolkit has not been started, which is not possible on a compute node without a display. {@link #runHeadless}
+ * therefore runs the work of the task on the calling thread and reports the progress, messages and titles to a
+ * {@link ProgressListener} instead.
+ * <p>
+ * Tasks that report progress for every item (gene, chromosome, block of a file, ...) should use the throttled
+ * {@link #updateProgress(long, long, Supplier)} and {@link #updateProgress(ProgressIndicator, double)}, which publish
+ * at most {@link #UPDATES_PER_SECOND} updates per second and format the message only if it is published. The worker
+ * threads then only pay for a clock read and an atomic comparison per item, rather than for formatting a message and
+ * posting an event to the JavaFX application thread.
+ * @param <V> type of the result of the task
+ */
+public abstract class GopherTask<V> extends Task<V> {
+
+    /** Receives the progress of a task that is run with {@link #runHeadless}. Implementations must be thread-safe,
+     * because some tasks report progress from their worker threads. */
+    public interface ProgressListener {
+        /**
+         * @param workDone work done so far
+         * @param max total work
+         */
+        void progress(double workDone, double max);
+
+        /** @param message current status message of the task */
+        void message(String message);
+
+        /** @param title title of the task (by default, this is treated as a status message) */
+        default void title(String title) {
+            message(title);
+        }
+    }
+
+    /** Maximum number of throttled progress updates per second. */
+    public static final int UPDATES_PER_SECOND = 10;
+    private static final long UPDATE_INTERVAL_NANOS = 1_000_000_000L / UPDATES_PER_SECOND;
+
+    /** Listener of the current headless run, or null if the task is run as a JavaFX task. */
+    private volatile ProgressListener listener = null;
+    /** Earliest time ({@link System#nanoTime()}) of the next throttled progress update. */
+    private final AtomicLong nextUpdate = new AtomicLong(System.nanoTime());
+
+    /**
+     * Run the task on the current thread without the JavaFX toolkit. Note that a task that is run like this
+     * cannot be cancelled.
+     * @param listener receives the progress of the task
+     * @return the result of the task
+     * @throws Exception if the task fails
+     */
+    public V runHeadless(ProgressListener listener) throws Exception {
+        this.listener = listener;
+        try {
+            return call();
+        } finally {
+            this.listener = null;
+        }
+    }
+
+    @Override
+    protected void updateProgress(long workDone, long max) {
+        updateProgress((double) workDone, (double) max);
+    }
+
+    @Override
+    protected void updateProgress(double workDone, double max) {
+        ProgressListener l = listener;
+        if (l != null) {
+            l.progress(workDone, max);
+        } else {
+            super.updateProgress(workDone, max);
+        }
+    }
+
+    @Override
+    protected void updateMessage(String message) {
+        ProgressListener l = listener;
+        if (l != null) {
+            l.message(message);
+        } else {
+            super.updateMessage(message);
+        }
+    }
+
+    @Override
+    protected void updateTitle(String title) {
+        ProgressListener l = listener;
+        if (l != null) {
+            l.title(title);
+        } else {
+            super.updateTitle(title);
+        }
+    }
+
+    /**
+     * Decide whether a throttled progress update is published. If several threads report progress at the same time,
+     * only one of them gets to publish.
+     * @param always if true, the update is published in any case (e.g., the last update of a task)
+     * @return true if the caller should publish its update
+     */
+    private boolean claimUpdate(boolean always) {
+        long now = System.nanoTime();
+        if (always) {
+            nextUpdate.set(now + UPDATE_INTERVAL_NANOS);
+            return true;
+        }
+        long next = nextUpdate.get();
+        return now - next >= 0 && nextUpdate.compareAndSet(next, now + UPDATE_INTERVAL_NANOS);
+    }
+
+    /**
+     * Throttled progress update that may be called for every item, also from several threads. The update is published
+     * at most {@link #UPDATES_PER_SECOND} times per second, and always when all work is done. Updates with more work
+     * done than the total (e.g., if the total was underestimated) are throttled as well.
+     * @param workDone work done so far
+     * @param max total work
+     * @param message supplies the message, which is only formatted if the update is published
+     */
+    protected void updateProgress(long workDone, long max, Supplier<String> message) {
+        if (claimUpdate(workDone == max)) {
+            updateMessage(message.get());
+            updateProgress(workDone, max);
+        }
+    }
+
+    /**
+     * Throttled update of a progress indicator of the GUI. Without an indicator (e.g., if the task is run headless),
+     * the progress of the task is updated instead. The start (0) and the end (1) are always shown.
+     * @param indicator progress indicator in the GUI (may be null)
+     * @param progress current progress (between 0 and 1)
+     */
+    protected void updateProgress(ProgressIndicator indicator, double progress) {
+        if (! claimUpdate(progress <= 0 || progress >= 1)) {
+            return;
+        }
+        if (indicator == null) {
+            updateProgress(Math.min(progress, 1.0), 1.0);
+        } else {
+            Platform.runLater(() -> indicator.setProgress(progress));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package gopher.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers and counters for the stages of a panel design (creation of viewpoints and segments, placement of baits,
+ * reading the genome, digests and exports), so that we can see where the time of a large design is spent.
+ * The instruments are registered once by name, usually in a static field of the class that uses them, e.g.
+ * <pre>
+ * private static final Metrics.Timer BAIT_TIMER = Metrics.timer("segment.baits");
+ * ...
+ * long start = BAIT_TIMER.start();
+ * try { ... } finally { BAIT_TIMER.stop(start); }
+ * </pre>
+ * Timers and counters can be updated from many threads at a time; they only use {@link LongAdder}s, so that the
+ * cost on the hot paths is a clock read and a few uncontended additions. The values are collected since the start
+ * of the current design, i.e., the creation of the viewpoints in the GUI or the start of a command-line run, which
+ * call {@link #reset()}; they are shown in the GUI (Help menu) and written next to the report.
+ */
+public final class Metrics {
+
+    /** Number of buckets of the histograms; bucket i counts the durations below 2^i ns. */
+    private static final int N_BUCKETS = 64;
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Counter> COUNTERS = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    /** @return the timer with the given name (which is created if needed) */
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, Timer::new);
+    }
+
+    /** @return the counter with the given name (which is created if needed) */
+    public static Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, Counter::new);
+    }
+
+    /** Set all timers and counters to zero (before a new design). */
+    public static void reset() {
+        TIMERS.values().forEach(Timer::reset);
+        COUNTERS.values().forEach(Counter::reset);
+    }
+
+    /**
+     * Measures the durations of a stage: number of calls, total and maximum time, and a histogram with power-of-two
+     * buckets from which the percentiles are estimated.
+     */
+    public static final class Timer {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+        private final LongAdder[] buckets = new LongAdder[N_BUCKETS];
+
+        private Timer(String name) {
+            this.name = name;
+            for (int i = 0; i < N_BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** @return the start time that is passed to {@link #stop(long)} */
+        public long start() {
+            return System.nanoTime();
+        }
+
+        /** Record the time since start, which was returned by {@link #start()}. */
+        public void stop(long start) {
+            record(System.nanoTime() - start);
+        }
+
+        /** @param nanos duration of one call of the stage in ns */
+        public void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            buckets[Math.min(N_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getTotalMillis() {
+            return totalNanos.sum() / 1e6;
+        }
+
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0.0 : totalNanos.sum() / 1e6 / n;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        /**
+         * @param p a fraction between 0 and 1, e.g., 0.99
+         * @return upper bound of the bucket of the histogram that contains the p-quantile of the durations (in ms)
+         */
+        public double getPercentileMillis(double p) {
+            long n = count.sum();
+            if (n == 0) {
+                return 0.0;
+            }
+            long rank = (long) Math.ceil(p * n);
+            long seen = 0;
+            for (int i = 0; i < N_BUCKETS; i++) {
+                seen += buckets[i].sum();
+                if (seen >= rank) {
+                    // bucket i holds the durations d with 2^(i-1) <= d < 2^i, and none is above the maximum
+                    return Math.min(Math.pow(2, i), maxNanos.get()) / 1e6;
+                }
+            }
+            return getMaxMillis();
+        }
+
+        private void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            for (LongAdder b : buckets) {
+                b.reset();
+            }
+        }
+    }
+
+    /** Counts events or amounts of data (e.g., bases read or cache hits). */
+    public static final class Counter {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long n) {
+            count.add(n);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        private void reset() {
+            count.reset();
+        }
+    }
+
+    /** @return the timers that have been used, in the order of their names */
+    public static List<Timer> getTimers() {
+        return TIMERS.values().stream().filter(t -> t.getCount() > 0).toList();
+    }
+
+    /** @return the counters that have been used, in the order of their names */
+    public static List<Counter> getCounters() {
+        return COUNTERS.values().stream().filter(c -> c.getCount() > 0).toList();
+    }
+
+    /**
+     * @return the current values as tab-separated lines (with a header): name, type, count, and for timers the
+     * total, mean, maximum, median, 90th and 99th percentile durations in ms
+     */
+    public static List<String> getTsvLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add("name\ttype\tcount\ttotal_ms\tmean_ms\tmax_ms\tp50_ms\tp90_ms\tp99_ms");
+        for (Timer t : getTimers()) {
+            // machine-readable, i.e., independent of the locale of the user
+            lines.add(String.format(Locale.ROOT, "%s\ttimer\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f",
+                    t.getName(), t.getCount(), t.getTotalMillis(), t.getMeanMillis(), t.getMaxMillis(),
+                    t.getPercentileMillis(0.5), t.getPercentileMillis(0.9), t.getPercentileMillis(0.99)));
+        }
+        for (Counter c : getCounters()) {
+            lines.add(String.format(Locale.ROOT, "%s\tcounter\t%d\t\t\t\t\t\t", c.getName(), c.getCount()));
+        }
+        return lines;
+    }
+
+    /** Write the current values as a tab-separated file (see {@link #getTsvLines()}). */
+    public static void writeTsv(Path path) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (String line : getTsvLines()) {
+                w.write(line);
+                w.write('\n');
+            }
+        }
+    }
+
+    /**
+     * @param reportPath path of the report of the design
+     * @return path of the metrics file next to the report, e.g., {@code design-metrics.tsv} for {@code design.txt}
+     */
+    public static String getMetricsPath(String reportPath) {
+        int slash = Math.max(reportPath.lastIndexOf('/'), reportPath.lastIndexOf('\\'));
+        int dot = reportPath.lastIndexOf('.');
+        String base = dot > slash ? reportPath.substring(0, dot) : reportPath;
+        return base + "-metrics.tsv";
+    }
+}
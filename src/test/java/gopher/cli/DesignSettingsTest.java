@@ -0,0 +1,92 @@
+package gopher.cli;
+
+import gopher.exception.GopherException;
+import gopher.service.GopherService;
+import gopher.service.impl.GopherServiceImpl;
+import gopher.service.model.Approach;
+import gopher.service.model.Default;
+import gopher.service.model.GopherModel;
+import gopher.service.model.RestrictionEnzyme;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DesignSettingsTest {
+
+    private static Properties getProperties(Path dir) throws IOException {
+        Files.createDirectory(dir.resolve("genome"));
+        Files.writeString(dir.resolve("genome").resolve("align.bedgraph.gz"), "");
+        Files.writeString(dir.resolve("genome").resolve("chromInfo.txt.gz"), "");
+        Properties properties = new Properties();
+        properties.setProperty(DesignSettings.PROJECT_NAME, "panel");
+        properties.setProperty(DesignSettings.GENOME_BUILD, "hg38");
+        properties.setProperty(DesignSettings.GENOME_DIRECTORY, "genome");
+        properties.setProperty(DesignSettings.ALIGNABILITY_PATH, "genome/align.bedgraph.gz");
+        properties.setProperty(DesignSettings.CHROMINFO_PATH, "genome/chromInfo.txt.gz");
+        properties.setProperty(DesignSettings.ENZYMES, "DpnII, HindIII");
+        properties.setProperty(DesignSettings.TARGETS, "bed");
+        properties.setProperty(DesignSettings.TARGETS_PATH, "targets.bed");
+        properties.setProperty(DesignSettings.APPROACH, "extended");
+        properties.setProperty(DesignSettings.SIZE_UP, "8000");
+        properties.setProperty(DesignSettings.MIN_GC_CONTENT, "0.3");
+        return properties;
+    }
+
+    @Test
+    public void testApply(@TempDir Path dir) throws Exception {
+        DesignSettings settings = new DesignSettings(getProperties(dir), dir);
+        GopherService service = new GopherServiceImpl(new GopherModel());
+        settings.apply(service);
+        assertEquals("panel", service.getProjectName());
+        assertEquals("hg38", service.getGenomeBuild());
+        assertEquals(dir.resolve("genome").toAbsolutePath().toString(), service.getGenomeDirectoryPath());
+        assertEquals(List.of("DpnII", "HindIII"),
+                service.getChosenEnzymelist().stream().map(RestrictionEnzyme::getName).toList());
+        assertEquals(Approach.EXTENDED, service.getApproach());
+        assertEquals(8000, service.getSizeUp());
+        assertEquals(Default.SIZE_DOWNSTREAM, service.getSizeDown());
+        assertEquals(0.3, service.getMinGCcontent(), 1e-9);
+        assertEquals(Default.MAX_GC_CONTENT, service.getMaxGCcontent(), 1e-9);
+        assertEquals(GopherModel.TargetType.BED_TARGETS, settings.getTargetType());
+        assertEquals(dir.resolve("targets.bed").toAbsolutePath().toString(), settings.getTargetsPath());
+        assertEquals(dir.toAbsolutePath().toString(), settings.getOutputDirectory());
+    }
+
+    @Test
+    public void testInvalidSettings(@TempDir Path dir) throws IOException {
+        Properties properties = getProperties(dir);
+        properties.setProperty(DesignSettings.ENZYMES, "DpnII,NoSuchEnzyme");
+        GopherException e = assertThrows(GopherException.class,
+                () -> new DesignSettings(properties, dir).apply(new GopherServiceImpl(new GopherModel())));
+        assertTrue(e.getMessage().contains("NoSuchEnzyme"));
+        properties.setProperty(DesignSettings.ENZYMES, "DpnII");
+        properties.setProperty(DesignSettings.SIZE_UP, "5kb");
+        assertThrows(GopherException.class,
+                () -> new DesignSettings(properties, dir).apply(new GopherServiceImpl(new GopherModel())));
+        properties.remove(DesignSettings.SIZE_UP);
+        properties.remove(DesignSettings.GENOME_BUILD);
+        assertThrows(GopherException.class,
+                () -> new DesignSettings(properties, dir).apply(new GopherServiceImpl(new GopherModel())));
+    }
+
+    @Test
+    public void testSweepEnzymes(@TempDir Path dir) throws Exception {
+        Properties properties = getProperties(dir);
+        List<RestrictionEnzyme> allEnzymes = new GopherServiceImpl(new GopherModel()).getAllEnyzmes();
+        assertTrue(new DesignSettings(properties, dir).getSweepEnzymes(allEnzymes).isEmpty());
+        properties.setProperty(DesignSettings.SWEEP_ENZYMES, "all");
+        assertEquals(allEnzymes, new DesignSettings(properties, dir).getSweepEnzymes(allEnzymes));
+        properties.setProperty(DesignSettings.SWEEP_ENZYMES, "HindIII,DpnII");
+        assertEquals(List.of("HindIII", "DpnII"), new DesignSettings(properties, dir).getSweepEnzymes(allEnzymes)
+                .stream().map(RestrictionEnzyme::getName).toList());
+        properties.setProperty(DesignSettings.SWEEP_ENZYMES, "NoSuchEnzyme");
+        assertThrows(GopherException.class, () -> new DesignSettings(properties, dir).getSweepEnzymes(allEnzymes));
+    }
+}
@@ -0,0 +1,62 @@
+package gopher.io;
+
+import gopher.exception.UnindexableFastaFileException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The index and the packed genome that are built from a stream of FASTA data (as written by {@link GenomeGunZipper})
+ * must not depend on how the data are split into chunks.
+ */
+public class FastaIndexBuilderTest {
+
+    private static final String GENOME = "src/test/resources/testgenome/test_genome.fa";
+
+    /** Feed the data to the builder in chunks of random sizes. */
+    private static List<FastaIndexEntry> build(byte[] data, PackedGenomeWriter writer) throws Exception {
+        FastaIndexBuilder builder = new FastaIndexBuilder("test.fa", 0, writer);
+        Random random = new Random(42);
+        int off = 0;
+        while (off < data.length) {
+            int len = Math.min(data.length - off, 1 + random.nextInt(40));
+            builder.accept(data, off, len);
+            off += len;
+        }
+        return builder.finish();
+    }
+
+    @Test
+    public void testChunkedIndex(@TempDir Path dir) throws Exception {
+        byte[] data = Files.readAllBytes(Path.of(GENOME));
+        String packedPath = dir.resolve("test_genome.fa.packed").toString();
+        List<FastaIndexEntry> entries;
+        try (PackedGenomeWriter writer = new PackedGenomeWriter(packedPath)) {
+            entries = build(data, writer);
+        }
+        assertEquals(Files.readAllLines(Path.of(GENOME + ".fai")), entries.stream().map(FastaIndexEntry::toString).toList());
+        try (GenomeSequenceReader reader = new GenomeSequenceReader(GENOME);
+             PackedGenome packed = new PackedGenome(packedPath)) {
+            for (String name : reader.getContigNames()) {
+                assertArrayEquals(reader.getBases(name), packed.getBases(name, 1, packed.getLength(name)));
+            }
+        }
+    }
+
+    @Test
+    public void testErrors() {
+        byte[] duplicate = ">chrA\nACGT\n>chrA\nACGT\n".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(UnindexableFastaFileException.class, () -> build(duplicate, null));
+        byte[] lineLength = ">chrA\nACGT\nACG\nACGT\n".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(UnindexableFastaFileException.class, () -> build(lineLength, null));
+        byte[] empty = "\n\n".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(UnindexableFastaFileException.class, () -> build(empty, null));
+    }
+}
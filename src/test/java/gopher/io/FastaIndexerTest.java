@@ -0,0 +1,108 @@
+package gopher.io;
+
+import gopher.exception.GopherException;
+import gopher.exception.UnindexableFastaFileException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The FAI index must be identical to the index produced by {@code samtools faidx}. The FAI files in the test
+ * resources were created with samtools.
+ */
+public class FastaIndexerTest {
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    public static void setup() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterAll
+    public static void shutdown() {
+        executor.shutdown();
+    }
+
+    private static List<String> index(String path) throws GopherException, IOException {
+        List<String> lines = new ArrayList<>();
+        try (FastaIndexer indexer = new FastaIndexer(path, executor)) {
+            for (FastaIndexEntry entry : indexer.index()) {
+                lines.add(entry.toString());
+            }
+        }
+        return lines;
+    }
+
+    private static String write(Path dir, String content) throws IOException {
+        Path path = dir.resolve("test.fa");
+        Files.writeString(path, content);
+        return path.toString();
+    }
+
+    @Test
+    public void testSameAsSamtools() throws GopherException, IOException {
+        String[] paths = {"src/test/resources/testgenome/test_genome.fa",
+                "src/test/resources/smallgenome/chr4_ctg9_hap1.fa",
+                "src/test/resources/testAlignabilityMap/testAlignabilityMap.fa"};
+        for (String path : paths) {
+            assertEquals(Files.readAllLines(Path.of(path + ".fai")), index(path), path);
+        }
+    }
+
+    /** Last lines may be shorter and may be followed by empty lines; Windows line breaks count as line bytes. A missing line break at the end of the file is counted as
+     * by samtools. */
+    @Test
+    public void testLastLine(@TempDir Path dir) throws GopherException, IOException {
+        String path = write(dir, ">chrA description\nACGTA\nACGTA\nAC\n\n>chrB\r\nACG\r\nA\r\n>chrC\nAC");
+        assertEquals(List.of("chrA\t12\t18\t5\t6", "chrB\t4\t41\t3\t5", "chrC\t2\t55\t2\t3"), index(path));
+    }
+
+    @Test
+    public void testDuplicateName(@TempDir Path dir) throws IOException {
+        String path = write(dir, ">chrA\nACGT\n>chrB\nACGT\n>chrA\nACGT\n");
+        Exception e = assertThrows(UnindexableFastaFileException.class, () -> index(path));
+        assertTrue(e.getMessage().endsWith("Duplicate sequence name found for chrA"));
+    }
+
+    @Test
+    public void testDifferentLineLength(@TempDir Path dir) throws IOException {
+        String shortLine = write(dir, ">chrA\nACGT\nAC\nACGT\n");
+        Exception e = assertThrows(UnindexableFastaFileException.class, () -> index(shortLine));
+        assertTrue(e.getMessage().endsWith("Different line length in chrA"));
+        String emptyLine = write(dir, ">chrA\nACGT\n\nACGT\n");
+        assertThrows(UnindexableFastaFileException.class, () -> index(emptyLine));
+        String noHeader = write(dir, "ACGT\n>chrA\nACGT\n");
+        assertThrows(UnindexableFastaFileException.class, () -> index(noHeader));
+    }
+
+    /** The sequences that are written to the packed genome are the same as in the FASTA file. */
+    @Test
+    public void testWriteSequences(@TempDir Path dir) throws GopherException, IOException {
+        String fasta = "src/test/resources/testgenome/test_genome.fa";
+        String packedPath = dir.resolve("test_genome.fa.packed").toString();
+        try (FastaIndexer indexer = new FastaIndexer(fasta, executor);
+             PackedGenomeWriter writer = new PackedGenomeWriter(packedPath)) {
+            indexer.index();
+            indexer.writeSequences(writer, fraction -> assertTrue(fraction > 0 && fraction <= 1));
+        }
+        try (GenomeSequenceReader reader = new GenomeSequenceReader(fasta);
+             PackedGenome packed = new PackedGenome(packedPath)) {
+            assertEquals(reader.getContigNames(), packed.getContigNames());
+            for (String name : reader.getContigNames()) {
+                assertArrayEquals(reader.getBases(name), packed.getBases(name, 1, packed.getLength(name)));
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package gopher.io;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GenomeSequenceReaderTest {
+
+    private static GenomeSequenceReader genome;
+
+    @BeforeAll
+    public static void setup() throws IOException {
+        genome = new GenomeSequenceReader("src/test/resources/testgenome/test_genome.fa");
+    }
+
+    @AfterAll
+    public static void tearDown() throws IOException {
+        genome.close();
+    }
+
+    @Test
+    public void testContigNamesInFileOrder() {
+        List<String> names = genome.getContigNames();
+        assertEquals(6, names.size());
+        assertEquals("chr_t1_GATC", names.get(0));
+        assertEquals("veryshort", names.get(1));
+    }
+
+    /** The lengths from the index must match the sequences. */
+    @Test
+    public void testLengths() {
+        long total = 0;
+        for (String name : genome.getContigNames()) {
+            assertEquals(genome.getBases(name).length, genome.getLength(name));
+            total += genome.getLength(name);
+        }
+        assertEquals(total, genome.getTotalLength());
+        assertEquals(56, genome.getLength("veryshort"));
+    }
+
+    @Test
+    public void testSubsequence() {
+        byte[] all = genome.getBases("chr_t2_AAGCTT");
+        byte[] sub = genome.getBases("chr_t2_AAGCTT", 11, 20);
+        assertEquals(10, sub.length);
+        for (int i = 0; i < sub.length; i++) {
+            assertEquals(all[10 + i], sub[i]);
+        }
+    }
+
+    @Test
+    public void testUnknownContig() {
+        assertFalse(genome.hasContig("chrUnknown"));
+        assertThrows(IllegalArgumentException.class, () -> genome.getLength("chrUnknown"));
+    }
+}
@@ -0,0 +1,126 @@
+package gopher.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The packed genome must return exactly the same bases as the FASTA file, including soft-masked (lower case)
+ * positions and runs of N and other characters.
+ */
+public class PackedGenomeTest {
+
+    private static final String GENOME = "src/test/resources/testgenome/test_genome.fa";
+
+    private static final String SEQUENCE = "NNNNacgtACGTnnnnNNnACGTRYacgtmACGTN";
+
+    private PackedGenome pack(Path dir) throws IOException {
+        String path = dir.resolve("test_genome.fa" + PackedGenome.SUFFIX).toString();
+        try (GenomeSequenceReader reader = new GenomeSequenceReader(GENOME)) {
+            PackedGenomeWriter.write(reader, path);
+        }
+        return new PackedGenome(path);
+    }
+
+    @Test
+    public void testSameAsFasta(@TempDir Path dir) throws IOException {
+        try (GenomeSequenceReader fasta = new GenomeSequenceReader(GENOME);
+             PackedGenome packed = pack(dir)) {
+            assertEquals(fasta.getContigNames(), packed.getContigNames());
+            for (String name : fasta.getContigNames()) {
+                int len = fasta.getLength(name);
+                assertEquals(len, packed.getLength(name));
+                assertArrayEquals(fasta.getBases(name), packed.getBases(name, 1, len));
+                for (int start = 1; start <= len; start += 7) {
+                    int end = Math.min(len, start + 12);
+                    assertArrayEquals(fasta.getBases(name, start, end), packed.getBases(name, start, end));
+                }
+            }
+        }
+    }
+
+    /** Lower case letters, runs of N/n and IUPAC codes are restored; the contig is appended in small pieces. */
+    @Test
+    public void testMaskAndOtherCharacters(@TempDir Path dir) throws IOException {
+        String path = dir.resolve("masked.packed").toString();
+        byte[] seq = SEQUENCE.getBytes(StandardCharsets.US_ASCII);
+        try (PackedGenomeWriter writer = new PackedGenomeWriter(path)) {
+            writer.beginContig("empty");
+            writer.beginContig("chrX");
+            for (int i = 0; i < seq.length; i += 3) {
+                writer.append(seq, i, Math.min(3, seq.length - i));
+            }
+        }
+        try (var files = Files.list(dir)) {
+            assertTrue(files.noneMatch(p -> p.toString().endsWith(".tmp")));
+        }
+        try (PackedGenome packed = new PackedGenome(path)) {
+            assertEquals(0, packed.getLength("empty"));
+            assertEquals(SEQUENCE.length(), packed.getLength("chrX"));
+            for (int start = 1; start <= seq.length; start++) {
+                for (int end = start; end <= seq.length; end++) {
+                    String expected = SEQUENCE.substring(start - 1, end);
+                    String actual = new String(packed.getBases("chrX", start, end), StandardCharsets.US_ASCII);
+                    assertEquals(expected, actual);
+                }
+            }
+        }
+    }
+
+    /** The counts from the cumulative index must be the same as the counts of the bases. */
+    @Test
+    public void testBaseComposition(@TempDir Path dir) throws IOException {
+        // random sequence that spans several blocks, with soft-masked stretches and runs of N/n
+        Random random = new Random(42);
+        byte[] seq = new byte[3 * PackedGenome.BLOCK_SIZE + 77];
+        for (int i = 0; i < seq.length; i++) {
+            seq[i] = (byte) "ACGT".charAt(random.nextInt(4));
+        }
+        for (int k = 0; k < 12; k++) {
+            int start = random.nextInt(seq.length - 50);
+            int len = 1 + random.nextInt(50);
+            boolean runOfN = random.nextBoolean();
+            for (int i = start; i < start + len; i++) {
+                seq[i] = runOfN ? (byte) 'N' : (byte) Character.toLowerCase(seq[i]);
+            }
+            if (runOfN && random.nextBoolean()) {
+                seq[start] = 'n';
+            }
+        }
+        String path = dir.resolve("random.packed").toString();
+        try (PackedGenomeWriter writer = new PackedGenomeWriter(path)) {
+            writer.beginContig("chrR");
+            writer.append(seq, 0, seq.length);
+        }
+        try (PackedGenome packed = new PackedGenome(path)) {
+            assertArrayEquals(seq, packed.getBases("chrR", 1, seq.length));
+            for (int start = 1; start <= seq.length; start += 13) {
+                for (int end = start - 1; end <= seq.length; end += 29) {
+                    assertEquals(BaseComposition.of(seq, start - 1, end), packed.getBaseComposition("chrR", start, end));
+                }
+            }
+            assertEquals(BaseComposition.of(seq), packed.getBaseComposition("chrR", 1, seq.length));
+        }
+    }
+
+    @Test
+    public void testInvalidInterval(@TempDir Path dir) throws IOException {
+        try (PackedGenome packed = pack(dir)) {
+            assertThrows(IllegalArgumentException.class, () -> packed.getBases("veryshort", 0, 10));
+            assertThrows(IllegalArgumentException.class, () -> packed.getBases("veryshort", 50, 57));
+            assertThrows(IllegalArgumentException.class, () -> packed.getLength("chrUnknown"));
+        }
+    }
+
+    @Test
+    public void testNotAPackedGenome() {
+        assertThrows(IOException.class, () -> new PackedGenome(GENOME));
+    }
+}
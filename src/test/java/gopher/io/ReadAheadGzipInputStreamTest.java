@@ -0,0 +1,116 @@
+package gopher.io;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The decompressed data must be the same for gzip and BGZF files, including data that span several chunks.
+ */
+public class ReadAheadGzipInputStreamTest {
+
+    /** Compressible random data, larger than the chunks and BGZF blocks. */
+    private static byte[] randomData() {
+        Random random = new Random(42);
+        byte[] data = new byte[3_000_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) "ACGTacgtN\n".charAt(random.nextInt(10));
+        }
+        return data;
+    }
+
+    @Test
+    public void testGzip(@TempDir Path dir) throws IOException {
+        byte[] data = randomData();
+        Path path = dir.resolve("test.txt.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(path))) {
+            out.write(data);
+        }
+        try (ReadAheadGzipInputStream in = new ReadAheadGzipInputStream(path.toString())) {
+            assertFalse(in.isBgzf());
+            assertArrayEquals(data, in.readAllBytes());
+            assertEquals(-1, in.read());
+            assertEquals(Files.size(path), in.getCompressedBytesRead());
+        }
+    }
+
+    @Test
+    public void testBgzf(@TempDir Path dir) throws IOException {
+        byte[] data = randomData();
+        Path path = dir.resolve("test.txt.bgz");
+        try (OutputStream out = new BlockCompressedOutputStream(path.toFile())) {
+            out.write(data);
+        }
+        try (ReadAheadGzipInputStream in = new ReadAheadGzipInputStream(path.toString())) {
+            assertTrue(in.isBgzf());
+            byte[] actual = new byte[data.length];
+            // read the first bytes one at a time
+            for (int i = 0; i < 10; i++) {
+                actual[i] = (byte) in.read();
+            }
+            assertEquals(data.length - 10, in.readNBytes(actual, 10, data.length - 10));
+            assertArrayEquals(data, actual);
+            assertEquals(-1, in.read());
+        }
+    }
+
+    /** Closing the stream before all data have been read stops the reader thread. */
+    @Test
+    public void testCloseEarly(@TempDir Path dir) throws IOException, InterruptedException {
+        Path path = dir.resolve("test.txt.gz");
+        // more data than the reader thread decompresses ahead of the consumer
+        byte[] data = randomData();
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(path), 1 << 16) {{ def.setLevel(1); }}) {
+            for (int i = 0; i < 30; i++) {
+                out.write(data);
+            }
+        }
+        ReadAheadGzipInputStream in = new ReadAheadGzipInputStream(path.toString());
+        assertEquals(1000, in.readNBytes(1000).length);
+        in.close();
+        assertEquals(-1, in.read());
+        in.getReaderThread().join(10_000);
+        assertFalse(in.getReaderThread().isAlive());
+    }
+
+    /** If a block cannot be inflated, the reader thread is stopped even though the stream was not closed. */
+    @Test
+    public void testCorruptBgzfBlock(@TempDir Path dir) throws IOException, InterruptedException {
+        Path path = dir.resolve("test.txt.bgz");
+        // more blocks than the reader thread decompresses ahead of the consumer
+        byte[] data = randomData();
+        try (OutputStream out = new BlockCompressedOutputStream(path.toFile())) {
+            for (int i = 0; i < 5; i++) {
+                out.write(data);
+            }
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        int blockSize = ((bytes[16] & 0xff) | (bytes[17] & 0xff) << 8) + 1;
+        bytes[blockSize - 8] ^= 1; // CRC of the first block
+        Files.write(path, bytes);
+        ReadAheadGzipInputStream in = new ReadAheadGzipInputStream(path.toString());
+        assertThrows(IOException.class, in::readAllBytes);
+        in.getReaderThread().join(10_000);
+        assertFalse(in.getReaderThread().isAlive());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testNotGzip() {
+        assertThrows(IOException.class, () -> {
+            try (InputStream in = new ReadAheadGzipInputStream("src/test/resources/testgenome/test_genome.fa")) {
+                in.readAllBytes();
+            }
+        });
+    }
+}
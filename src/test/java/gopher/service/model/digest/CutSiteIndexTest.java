@@ -0,0 +1,113 @@
+package gopher.service.model.digest;
+
+import gopher.io.GenomeSequenceReader;
+import gopher.service.model.RestrictionEnzyme;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The cuts in a window that are read from the index must be the same as the cuts found by scanning the window.
+ */
+public class CutSiteIndexTest {
+
+    private static final String GENOME = "src/test/resources/testgenome/test_genome.fa";
+
+    private static final List<RestrictionEnzyme> ENZYMES = List.of(new RestrictionEnzyme("DpnII", "^GATC"),
+            new RestrictionEnzyme("HindIII", "A^AGCTT"), new RestrictionEnzyme("NlaIII", "CATG^"));
+
+    /** Copy the test genome, since the index is written next to the FASTA file. */
+    private static String copyGenome(Path dir) throws IOException {
+        Path fasta = dir.resolve("test_genome.fa");
+        Files.copy(Path.of(GENOME), fasta);
+        Files.copy(Path.of(GENOME + ".fai"), dir.resolve("test_genome.fa.fai"));
+        return fasta.toString();
+    }
+
+    private static void assertSameCuts(CutSites expected, CutSites actual) {
+        assertArrayEquals(expected.getPositions(), actual.getPositions());
+        assertArrayEquals(expected.getEnzymeIds(), actual.getEnzymeIds());
+    }
+
+    @Test
+    public void testSameAsScan(@TempDir Path dir) throws IOException {
+        String fasta = copyGenome(dir);
+        assertFalse(CutSiteIndex.isUpToDate(fasta, ENZYMES));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CutSiteIndex index;
+        try {
+            index = CutSiteIndex.open(fasta, ENZYMES, executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(CutSiteIndex.isUpToDate(fasta, ENZYMES));
+        assertFalse(CutSiteIndex.isUpToDate(fasta, ENZYMES.subList(0, 2)));
+        try (var files = Files.list(dir)) {
+            assertTrue(files.noneMatch(p -> p.toString().endsWith(".tmp")));
+        }
+        assertTrue(index.hasEnzymes(ENZYMES));
+        assertFalse(index.hasEnzymes(List.of(new RestrictionEnzyme("DpnII", "GATC^"),
+                ENZYMES.get(1), ENZYMES.get(2))));
+
+        CutSiteScanner scanner = new CutSiteScanner(ENZYMES);
+        try (GenomeSequenceReader reader = new GenomeSequenceReader(fasta)) {
+            for (String name : reader.getContigNames()) {
+                assertTrue(index.hasContig(name));
+                int len = reader.getLength(name);
+                assertSameCuts(scanner.scan(reader.getBases(name), 1), index.getCuts(name, 1, len));
+                // windows that start and end within recognition sites
+                for (int from = 1; from <= len; from += 7) {
+                    for (int to = from; to <= len; to += 13) {
+                        assertSameCuts(scanner.scan(reader.getBases(name, from, to), from), index.getCuts(name, from, to));
+                    }
+                }
+            }
+        }
+        assertFalse(index.hasContig("chrUnknown"));
+        assertThrows(IllegalArgumentException.class, () -> index.getCuts("chrUnknown", 1, 10));
+    }
+
+    /** The nearest cuts are the cuts of the window next to the position (each position once). */
+    @Test
+    public void testNearestCuts(@TempDir Path dir) throws IOException {
+        String fasta = copyGenome(dir);
+        CutSiteIndex index = CutSiteIndex.open(fasta, ENZYMES, null);
+        try (GenomeSequenceReader reader = new GenomeSequenceReader(fasta)) {
+            for (String name : reader.getContigNames()) {
+                int len = reader.getLength(name);
+                for (int from = 1; from <= len; from += 11) {
+                    for (int to = from; to <= len; to += 17) {
+                        int[] positions = Arrays.stream(index.getCuts(name, from, to).getPositions()).distinct().toArray();
+                        for (int pos = from - 5; pos <= to + 5; pos += 3) {
+                            for (int k = 1; k <= 3; k++) {
+                                int p = pos;
+                                int[] upstream = Arrays.stream(positions).filter(c -> c < p).toArray();
+                                int[] expected = new int[Math.min(k, upstream.length)];
+                                for (int i = 0; i < expected.length; i++) {
+                                    expected[i] = upstream[upstream.length - 1 - i];
+                                }
+                                assertArrayEquals(expected, index.getNearestCutsUpstream(name, from, to, pos, k));
+                                expected = Arrays.stream(positions).filter(c -> c >= p).limit(k).toArray();
+                                assertArrayEquals(expected, index.getNearestCutsDownstream(name, from, to, pos, k));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNotAnIndex() {
+        assertThrows(IOException.class, () -> new CutSiteIndex(GENOME + ".fai"));
+    }
+}
@@ -0,0 +1,102 @@
+package gopher.service.model.digest;
+
+import gopher.service.model.RestrictionEnzyme;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CutSiteScannerTest {
+
+    private static final RestrictionEnzyme DpnII = new RestrictionEnzyme("DpnII", "^GATC");
+    private static final RestrictionEnzyme DpnIIcA = new RestrictionEnzyme("DpnIIcA", "^GAATC");
+    private static final RestrictionEnzyme HindIII = new RestrictionEnzyme("HindIII", "A^AGCTT");
+    private static final RestrictionEnzyme NlaIII = new RestrictionEnzyme("NlaIII", "CATG^");
+    private static final RestrictionEnzyme PvuI = new RestrictionEnzyme("PvuI", "CGAT^CG");
+
+    @Test
+    public void testSingleEnzyme() {
+        CutSiteScanner scanner = new CutSiteScanner(List.of(HindIII));
+        // AAGCTT at zero-based positions 3 and 12; the cut is after the first A
+        CutSites cuts = scanner.scan("CCCAAGCTTGGGaagcttNN", 1);
+        assertEquals(2, cuts.size());
+        assertArrayEquals(new int[]{5, 14}, cuts.getPositions());
+        assertEquals(HindIII, cuts.getEnzyme(0));
+    }
+
+    @Test
+    public void testFirstPosition() {
+        CutSiteScanner scanner = new CutSiteScanner(List.of(NlaIII));
+        CutSites cuts = scanner.scan("ACATGA".getBytes(), 1000);
+        assertEquals(1, cuts.size());
+        assertEquals(1005, cuts.getPosition(0)); // CATG starts at 1001, cut after the G
+    }
+
+    @Test
+    public void testOverlappingSitesOfOneEnzyme() {
+        CutSiteScanner scanner = new CutSiteScanner(List.of(PvuI));
+        // CGATCGATCG contains two overlapping PvuI sites that start at zero-based positions 0 and 4
+        CutSites cuts = scanner.scan("CGATCGATCG", 1);
+        assertArrayEquals(new int[]{5, 9}, cuts.getPositions());
+    }
+
+    @Test
+    public void testSitesThatAreSuffixesOfOtherSites() {
+        // GATC is not contained in GAATC, but both are found, and NlaIII (CATG) overlaps with the GATC site
+        CutSiteScanner scanner = new CutSiteScanner(List.of(DpnII, DpnIIcA, NlaIII));
+        CutSites cuts = scanner.scan("GAATCATGATC", 1);
+        assertEquals(3, cuts.size());
+        assertArrayEquals(new int[]{1, 8, 9}, cuts.getPositions());
+        assertArrayEquals(new byte[]{1, 0, 2}, cuts.getEnzymeIds());
+        assertEquals(3, scanner.countSites("GAATCATGATC".getBytes()));
+    }
+
+    @Test
+    public void testNIsNotMatched() {
+        CutSiteScanner scanner = new CutSiteScanner(List.of(DpnII));
+        CutSites cuts = scanner.scan("GANTCGATNGATC", 1);
+        assertArrayEquals(new int[]{10}, cuts.getPositions());
+    }
+
+    @Test
+    public void testUnsupportedSite() {
+        RestrictionEnzyme degenerate = new RestrictionEnzyme("Degenerate", "^GANTC");
+        assertThrows(IllegalArgumentException.class, () -> new CutSiteScanner(List.of(degenerate)));
+    }
+
+    /**
+     * For enzymes whose sites cannot overlap with themselves, the scanner must find the same positions as a regular
+     * expression search for each enzyme separately.
+     */
+    @Test
+    public void testSameAsRegularExpressionSearch() {
+        List<RestrictionEnzyme> enzymes = List.of(DpnII, DpnIIcA, HindIII, NlaIII);
+        Random random = new Random(42);
+        char[] alphabet = {'A', 'C', 'G', 'T', 'a', 'c', 'g', 't', 'N'};
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            sb.append(alphabet[random.nextInt(alphabet.length)]);
+        }
+        String sequence = sb.toString();
+        List<long[]> expected = new ArrayList<>();
+        for (int id = 0; id < enzymes.size(); id++) {
+            RestrictionEnzyme enzyme = enzymes.get(id);
+            Matcher matcher = Pattern.compile(enzyme.getPlainSite(), Pattern.CASE_INSENSITIVE).matcher(sequence);
+            while (matcher.find()) {
+                expected.add(new long[]{matcher.start() + enzyme.getOffset() + 1, id});
+            }
+        }
+        expected.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        CutSites cuts = new CutSiteScanner(enzymes).scan(sequence.getBytes(), 1);
+        assertEquals(expected.size(), cuts.size());
+        for (int i = 0; i < cuts.size(); i++) {
+            assertEquals(expected.get(i)[0], cuts.getPosition(i));
+            assertEquals(expected.get(i)[1], cuts.getEnzymeId(i));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package gopher.service.model.digest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DigestFileWriterTest {
+
+    private static final List<DetailedDigest> DIGESTS = List.of(
+            new DetailedDigest("chr1", 1, 99, 1, "None", "DpnII", 99,
+                    0.4, 0.4, 0.1, 0.2, false, 0, 0),
+            new DetailedDigest("chr1", 100, 250, 2, "DpnII", "None", 151,
+                    0.5, 0.5, 0.0, 0.25, true, 1, 2));
+
+    private List<String> writeAndRead(File file) throws IOException {
+        try (DigestFileWriter writer = new DigestFileWriter(file.getAbsolutePath())) {
+            writer.writeHeader();
+            writer.write(DIGESTS);
+            assertEquals(2, writer.getDigestCount());
+        }
+        InputStream is = new FileInputStream(file);
+        if (file.getName().endsWith(DigestFileWriter.GZIP_SUFFIX)) {
+            is = new GZIPInputStream(is);
+        }
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.US_ASCII))) {
+            return br.lines().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testPlainTextFile(@TempDir Path dir) throws IOException {
+        List<String> lines = writeAndRead(dir.resolve("digests.txt").toFile());
+        assertEquals(3, lines.size());
+        assertEquals(String.join("\t", DetailedDigest.headerFields()), lines.get(0));
+        assertEquals("chr1\t100\t250\t2\tDpnII\tNone\t151\t0.500\t0.500\t0.000\t0.250\tT\t1\t2", lines.get(2));
+    }
+
+    @Test
+    public void testCompressedFile(@TempDir Path dir) throws IOException {
+        List<String> plain = writeAndRead(dir.resolve("digests.txt").toFile());
+        List<String> compressed = writeAndRead(dir.resolve("digests.txt.gz").toFile());
+        assertEquals(plain, compressed);
+    }
+}
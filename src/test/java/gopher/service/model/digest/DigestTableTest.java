@@ -0,0 +1,83 @@
+package gopher.service.model.digest;
+
+import gopher.io.GenomeSequenceReader;
+import gopher.service.model.RestrictionEnzyme;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A digest table must give back the digests it was created from, and write the same lines to the digest file.
+ */
+public class DigestTableTest {
+
+    private static final String GENOME = "src/test/resources/testgenome/test_genome.fa";
+
+    private static void assertSameDigest(DetailedDigest expected, DetailedDigest actual) {
+        assertEquals(expected.chromosome(), actual.chromosome());
+        assertEquals(expected.digestStartPosition(), actual.digestStartPosition());
+        assertEquals(expected.digestEndPosition(), actual.digestEndPosition());
+        assertEquals(expected.digestNumber(), actual.digestNumber());
+        assertEquals(expected.restrictionSite5prime(), actual.restrictionSite5prime());
+        assertEquals(expected.restrictionSite3prime(), actual.restrictionSite3prime());
+        assertEquals(expected.digestLength(), actual.digestLength());
+        assertEquals(expected.gcContent5prime(), actual.gcContent5prime());
+        assertEquals(expected.gcContent3prime(), actual.gcContent3prime());
+        assertEquals(expected.repeatContent5prime(), actual.repeatContent5prime());
+        assertEquals(expected.repeatContent3prime(), actual.repeatContent3prime());
+        assertEquals(expected.enrichmentStatus(), actual.enrichmentStatus());
+        assertEquals(expected.nProbes5prime(), actual.nProbes5prime());
+        assertEquals(expected.nProbes3prime(), actual.nProbes3prime());
+    }
+
+    @Test
+    public void testDigestsOfGenome() throws IOException {
+        List<RestrictionEnzyme> enzymes = List.of(new RestrictionEnzyme("DpnII", "^GATC"),
+                new RestrictionEnzyme("HindIII", "A^AGCTT"));
+        GenomeDigester digester = new GenomeDigester(enzymes, GENOME, List.of(), 10);
+        List<DetailedDigest> expected = new ArrayList<>();
+        DigestTable table = new DigestTable();
+        try (GenomeSequenceReader reader = new GenomeSequenceReader(GENOME)) {
+            for (String name : reader.getContigNames()) {
+                List<DetailedDigest> digests = digester.cutOneChromosome(name, reader.getBases(name));
+                expected.addAll(digests);
+                table.addAll(DigestTable.of(digests));
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        int row = 0;
+        for (DetailedDigest digest : table) {
+            assertSameDigest(expected.get(row), digest);
+            assertEquals(expected.get(row).chromosome(), table.getChromosome(row));
+            assertEquals(expected.get(row).toString(), table.formatRow(row));
+            row++;
+        }
+        assertEquals(expected.size(), row);
+        assertEquals(0, table.getEnrichedCount());
+        assertThrows(IndexOutOfBoundsException.class, () -> table.get(table.size()));
+    }
+
+    /** Rows of another table are appended with the enzyme ids of this table. */
+    @Test
+    public void testAddAll() {
+        DetailedDigest d1 = new DetailedDigest("chr1", 1, 99, 1, "None", "DpnII", 99,
+                0.4, 0.4, 0.1, 0.2, false, 0, 0);
+        DetailedDigest d2 = new DetailedDigest("chr1", 100, 250, 2, "DpnII", "None", 151,
+                0.5, 0.5, 0.0, 0.25, true, 1, 2);
+        DetailedDigest d3 = new DetailedDigest("chr2", 1, 10, 1, "HindIII", "DpnII", 10,
+                0.5, 0.5, 0.0, 0.25, true, 3, 0);
+        DigestTable table = DigestTable.of(List.of(d1));
+        table.addAll(DigestTable.of(List.of(d3, d2)));
+        assertEquals(3, table.size());
+        assertSameDigest(d1, table.get(0));
+        assertSameDigest(d3, table.get(1));
+        assertSameDigest(d2, table.get(2));
+        assertEquals("chr1", table.getChromosome(2));
+        assertEquals(d2.toString(), table.formatRow(2));
+        assertEquals(2, table.getEnrichedCount());
+    }
+}
@@ -0,0 +1,86 @@
+package gopher.service.model.digest;
+
+import gopher.io.GenomeSequenceReader;
+import gopher.service.model.RestrictionEnzyme;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The statistics of the sweep must be the same as the statistics of digesting the genome with each enzyme alone.
+ */
+public class MultiEnzymeDigestSweepTaskTest {
+
+    private static final String GENOME = "src/test/resources/testgenome/test_genome.fa";
+
+    private static final List<RestrictionEnzyme> ENZYMES = List.of(new RestrictionEnzyme("DpnII", "^GATC"),
+            new RestrictionEnzyme("HindIII", "A^AGCTT"), new RestrictionEnzyme("NlaIII", "CATG^"));
+
+    @Test
+    public void testSameAsSingleEnzymeDigests() throws IOException {
+        MultiEnzymeDigestSweepTask task = new MultiEnzymeDigestSweepTask(ENZYMES, GENOME, List.of(), 10, null);
+        DigestStatistics[] expected = new DigestStatistics[ENZYMES.size()];
+        DigestStatistics[] actual = new DigestStatistics[ENZYMES.size()];
+        for (int e = 0; e < ENZYMES.size(); e++) {
+            expected[e] = new DigestStatistics(ENZYMES.get(e).getName());
+            actual[e] = new DigestStatistics(ENZYMES.get(e).getName());
+        }
+        try (GenomeSequenceReader reader = new GenomeSequenceReader(GENOME)) {
+            for (String name : reader.getContigNames()) {
+                byte[] sequence = reader.getBases(name);
+                DigestStatistics[] statistics = task.sweepChromosome(name, sequence);
+                for (int e = 0; e < ENZYMES.size(); e++) {
+                    GenomeDigester digester = new GenomeDigester(ENZYMES.get(e), GENOME, List.of(), 10);
+                    expected[e].addAll(digester.cutOneChromosome(name, sequence));
+                    actual[e].add(statistics[e]);
+                }
+            }
+        }
+        for (int e = 0; e < ENZYMES.size(); e++) {
+            assertEquals(expected[e].toString(), actual[e].toString());
+            assertEquals(expected[e].getCount(), actual[e].getCount());
+            assertTrue(actual[e].getCount() > 0);
+        }
+    }
+
+    @Test
+    public void testStatistics() {
+        DigestStatistics statistics = new DigestStatistics("DpnII");
+        assertEquals(0, statistics.getMedianLength());
+        assertEquals(0, statistics.getMinLength());
+        int[] lengths = {10, 30, 20, 50_000};
+        int start = 1;
+        for (int len : lengths) {
+            statistics.add(new DetailedDigest("chr1", start, start + len - 1, 1, "DpnII", "DpnII", len,
+                    0.5, 0.3, 0.1, 0.0, len == 20, 0, 0));
+            start += len;
+        }
+        assertEquals(4, statistics.getCount());
+        assertEquals(10, statistics.getMinLength());
+        assertEquals(50_000, statistics.getMaxLength());
+        assertEquals(20, statistics.getMedianLength());
+        assertEquals(50_060 / 4.0, statistics.getMeanLength(), 1e-9);
+        assertEquals(0.4, statistics.getMeanGcContent(), 1e-9);
+        assertEquals(0.05, statistics.getMeanRepeatContent(), 1e-9);
+        assertEquals(1, statistics.getEnrichedCount());
+    }
+
+    @Test
+    public void testWriteReport(@TempDir Path dir) throws IOException {
+        DigestStatistics statistics = new DigestStatistics("HindIII");
+        statistics.add(new DetailedDigest("chr1", 1, 100, 1, "None", "HindIII", 100,
+                0.5, 0.5, 0.0, 0.0, false, 0, 0));
+        Path report = dir.resolve("report.tsv");
+        MultiEnzymeDigestSweepTask.writeReport(List.of(statistics), report.toString());
+        List<String> lines = Files.readAllLines(report);
+        assertEquals(2, lines.size());
+        assertEquals(String.join("\t", DigestStatistics.headerFields()), lines.get(0));
+        assertEquals("HindIII\t1\t100\t100\t100\t100.0\t100\t0.500\t0.000\t0", lines.get(1));
+    }
+}
@@ -0,0 +1,100 @@
+package gopher.service.model.digest;
+
+import gopher.exception.GopherException;
+import gopher.service.model.RestrictionEnzyme;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Digesting the chromosomes in parallel must produce the same digests in the same order as serial digestion.
+ */
+public class OrderedChromosomeRunnerTest {
+
+    private static final String GENOME = "src/test/resources/testgenome/test_genome.fa";
+
+    private static final List<String> CHROMOSOMES = List.of("chr_t1_GATC", "veryshort", "chr_t2_AAGCTT",
+            "chr_t3_GATC_AAGCTT", "chr_t4_GATC_short_20bp_and_long_24bp_fragments",
+            "chr_t4_GATC_short_20bp_and_long_24bp_fragments_copy");
+
+    private static ExecutorService executor;
+
+    private static GenomeDigester digester;
+
+    @BeforeAll
+    public static void setup() {
+        executor = Executors.newFixedThreadPool(3);
+        List<RestrictionEnzyme> enzymes = List.of(new RestrictionEnzyme("DpnII", "^GATC"),
+                new RestrictionEnzyme("HindIII", "A^AGCTT"));
+        digester = new GenomeDigester(enzymes, GENOME, List.of(), 10);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        executor.shutdown();
+    }
+
+    private List<DetailedDigest> digest(OrderedChromosomeRunner runner, List<String> names) throws GopherException {
+        List<DetailedDigest> digests = new ArrayList<>();
+        runner.run(digester::cutOneChromosome,
+                (name, length, result) -> {
+                    names.add(name);
+                    digests.addAll(result);
+                },
+                () -> false);
+        return digests;
+    }
+
+    @Test
+    public void testParallelSameAsSerial() throws GopherException {
+        List<String> serialNames = new ArrayList<>();
+        List<DetailedDigest> serial = digest(new OrderedChromosomeRunner(GENOME, null), serialNames);
+        List<String> parallelNames = new ArrayList<>();
+        List<DetailedDigest> parallel = digest(new OrderedChromosomeRunner(GENOME, executor), parallelNames);
+        assertEquals(CHROMOSOMES, serialNames);
+        assertEquals(CHROMOSOMES, parallelNames);
+        assertEquals(serial, parallel);
+    }
+
+    /** With a budget that is smaller than any chromosome, only one chromosome at a time may be processed. */
+    @Test
+    public void testSmallMemoryBudget() throws GopherException {
+        List<DetailedDigest> serial = digest(new OrderedChromosomeRunner(GENOME, null), new ArrayList<>());
+        List<String> names = new ArrayList<>();
+        List<DetailedDigest> parallel = digest(new OrderedChromosomeRunner(GENOME, executor, 1), names);
+        assertEquals(CHROMOSOMES, names);
+        assertEquals(serial, parallel);
+    }
+
+    /** If processing is cancelled, the run only ends once the chromosomes that are being processed are done. */
+    @Test
+    public void testCancelWaitsForRunningJobs() throws GopherException {
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        new OrderedChromosomeRunner(GENOME, executor).run(
+                (name, sequence) -> {
+                    started.incrementAndGet();
+                    running.incrementAndGet();
+                    // busy for a while without reacting to interrupts (as the digester)
+                    long end = System.nanoTime() + 100_000_000L;
+                    while (System.nanoTime() < end) {
+                        Thread.onSpinWait();
+                    }
+                    running.decrementAndGet();
+                    return sequence.length;
+                },
+                (name, length, result) -> {},
+                () -> started.get() > 0);
+        assertTrue(started.get() > 0);
+        assertEquals(0, running.get());
+    }
+}
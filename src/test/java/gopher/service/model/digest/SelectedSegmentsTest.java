@@ -0,0 +1,124 @@
+package gopher.service.model.digest;
+
+import gopher.io.GenomeSequenceReader;
+import gopher.service.model.viewpoint.Segment;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SelectedSegmentsTest {
+
+    private static GenomeSequenceReader genome;
+
+    @BeforeAll
+    public static void setup() throws IOException {
+        genome = new GenomeSequenceReader("src/test/resources/testgenome/test_genome.fa");
+    }
+
+    @AfterAll
+    public static void close() throws IOException {
+        genome.close();
+    }
+
+    private static Segment segment(String chrom, int start, int end) {
+        return new Segment(chrom, start, end, genome, 5);
+    }
+
+    /** @return segment with the given bait counts (so that we can tell which segment was found) */
+    private static Segment segment(String chrom, int start, int end, int baitNumUp, int baitNumDown) {
+        return new Segment(chrom, start, end, genome, 5) {
+            @Override
+            public int getBaitNumUp() {
+                return baitNumUp;
+            }
+
+            @Override
+            public int getBaitNumDown() {
+                return baitNumDown;
+            }
+        };
+    }
+
+    @Test
+    public void testLookup() {
+        // segments in arbitrary order, with a duplicate start position
+        SelectedSegments segments = new SelectedSegments(List.of(
+                segment("chr_t2_AAGCTT", 50, 60),
+                segment("chr_t1_GATC", 30, 40),
+                segment("chr_t1_GATC", 10, 20),
+                segment("chr_t1_GATC", 10, 25)));
+        assertEquals(3, segments.size());
+        assertTrue(segments.contains("chr_t1_GATC", 10));
+        assertTrue(segments.contains("chr_t2_AAGCTT", 50));
+        assertFalse(segments.contains("chr_t2_AAGCTT", 10));
+        assertFalse(segments.contains("veryshort", 10));
+
+        SelectedSegments.Cursor cursor = segments.cursor("chr_t1_GATC");
+        assertEquals(-1, cursor.find(1));
+        assertEquals(0, cursor.find(10));
+        assertEquals(0, cursor.getBaitNumUp(0));
+        assertEquals(0, cursor.getBaitNumDown(0));
+        assertEquals(-1, cursor.find(21));
+        assertEquals(1, cursor.find(30));
+        assertEquals(-1, cursor.find(41));
+        assertEquals(-1, segments.cursor("veryshort").find(10));
+    }
+
+    /** Segments at both ends of a chromosome (length 164), passed in unsorted order. */
+    @Test
+    public void testChromosomeEnds() {
+        SelectedSegments segments = new SelectedSegments(List.of(
+                segment("chr_t1_GATC", 150, 164, 5, 6),
+                segment("chr_t1_GATC", 1, 20, 1, 2),
+                segment("chr_t2_AAGCTT", 1, 30, 7, 8),
+                segment("chr_t1_GATC", 80, 100, 3, 4)));
+        assertEquals(4, segments.size());
+        for (int pos : new int[]{1, 80, 150}) {
+            assertTrue(segments.contains("chr_t1_GATC", pos));
+        }
+        for (int pos : new int[]{0, 2, 20, 79, 81, 149, 151, 164, 165}) {
+            assertFalse(segments.contains("chr_t1_GATC", pos), "position " + pos);
+        }
+        assertTrue(segments.contains("chr_t2_AAGCTT", 1));
+        assertFalse(segments.contains("chr_t2_AAGCTT", 80));
+        assertFalse(segments.contains("chr_t3_GATC_AAGCTT", 1));
+
+        // the first segment of the chromosome
+        SelectedSegments.Cursor cursor = segments.cursor("chr_t1_GATC");
+        int i = cursor.find(1);
+        assertEquals(0, i);
+        assertEquals(1, cursor.getBaitNumUp(i));
+        assertEquals(2, cursor.getBaitNumDown(i));
+        // a miss between two segments does not skip the next segment
+        assertEquals(-1, cursor.find(21));
+        i = cursor.find(80);
+        assertEquals(1, i);
+        assertEquals(3, cursor.getBaitNumUp(i));
+        assertEquals(4, cursor.getBaitNumDown(i));
+        // the last segment of the chromosome
+        i = cursor.find(150);
+        assertEquals(2, i);
+        assertEquals(5, cursor.getBaitNumUp(i));
+        assertEquals(6, cursor.getBaitNumDown(i));
+        assertEquals(-1, cursor.find(164));
+
+        // a new cursor can jump over several segments
+        cursor = segments.cursor("chr_t1_GATC");
+        i = cursor.find(150);
+        assertEquals(2, i);
+        assertEquals(5, cursor.getBaitNumUp(i));
+        assertEquals(-1, cursor.find(165));
+
+        // the bait counts of the other chromosome are kept separately
+        cursor = segments.cursor("chr_t2_AAGCTT");
+        i = cursor.find(1);
+        assertEquals(0, i);
+        assertEquals(7, cursor.getBaitNumUp(i));
+        assertEquals(8, cursor.getBaitNumDown(i));
+    }
+}
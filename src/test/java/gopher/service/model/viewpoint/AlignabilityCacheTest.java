@@ -0,0 +1,76 @@
+package gopher.service.model.viewpoint;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The alignability maps read from the binary cache must be the same as the maps parsed from the bedGraph file.
+ */
+public class AlignabilityCacheTest {
+
+    private static final String ALIGNABILITY_PATH = "src/test/resources/testAlignabilityMap/testAlignabilityMap.bedgraph.gz";
+    private static final String CHROM_INFO_PATH = "src/test/resources/testAlignabilityMap/chromInfo.txt.gz";
+    private static final int KMER_SIZE = 50;
+
+    /** Copy the test files, since the cache is written next to the bedGraph file. */
+    private static String[] copyTestFiles(Path dir) throws IOException {
+        Path bedGraph = dir.resolve("testAlignabilityMap.bedgraph.gz");
+        Path chromInfo = dir.resolve("chromInfo.txt.gz");
+        Files.copy(Path.of(ALIGNABILITY_PATH), bedGraph, StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(Path.of(CHROM_INFO_PATH), chromInfo, StandardCopyOption.REPLACE_EXISTING);
+        return new String[]{bedGraph.toString(), chromInfo.toString()};
+    }
+
+    @Test
+    public void testSameAsBedGraph(@TempDir Path dir) throws IOException {
+        String[] paths = copyTestFiles(dir);
+        assertFalse(AlignabilityCache.isUpToDate(paths[0], paths[1], KMER_SIZE));
+        AlignabilityCache cache = AlignabilityCache.open(paths[0], paths[1], KMER_SIZE);
+        assertTrue(AlignabilityCache.isUpToDate(paths[0], paths[1], KMER_SIZE));
+        assertFalse(AlignabilityCache.isUpToDate(paths[0], paths[1], KMER_SIZE + 1));
+        try (var files = Files.list(dir)) {
+            assertTrue(files.noneMatch(p -> p.toString().endsWith(".tmp")));
+        }
+        assertEquals(KMER_SIZE, cache.getKmerSize());
+        assertEquals(List.of("chr1", "chr2", "chr3"), cache.getChromosomeNames());
+
+        AlignabilityMapIterator iterator = new AlignabilityMapIterator(ALIGNABILITY_PATH, CHROM_INFO_PATH, KMER_SIZE);
+        while (iterator.hasNext()) {
+            AlignabilityMap expected = iterator.next();
+            AlignabilityMap actual = cache.getAlignabilityMap(expected.getChromName());
+            assertNotNull(actual);
+            assertArrayEquals(expected.getCoordinates(), actual.getCoordinates());
+            assertArrayEquals(expected.getScores(), actual.getScores());
+            for (int pos = 1; pos < 2000; pos += 17) {
+                assertEquals(expected.getMeanScore(pos, pos + 119), actual.getMeanScore(pos, pos + 119));
+            }
+        }
+        assertNull(cache.getAlignabilityMap("chrUnknown"));
+    }
+
+    /** Only the requested chromosomes are returned, in the order of the bedGraph file. */
+    @Test
+    public void testIterator(@TempDir Path dir) throws IOException {
+        String[] paths = copyTestFiles(dir);
+        AlignabilityCache cache = AlignabilityCache.open(paths[0], paths[1], KMER_SIZE);
+        Iterator<AlignabilityMap> iterator = cache.iterator(new HashSet<>(List.of("chr3", "chr1", "chrUnknown")));
+        List<String> names = new ArrayList<>();
+        while (iterator.hasNext()) {
+            names.add(iterator.next().getChromName());
+        }
+        assertEquals(List.of("chr1", "chr3"), names);
+    }
+
+    @Test
+    public void testNotACache() {
+        assertThrows(IOException.class, () -> new AlignabilityCache(CHROM_INFO_PATH));
+    }
+}
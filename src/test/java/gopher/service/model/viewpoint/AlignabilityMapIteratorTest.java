@@ -0,0 +1,66 @@
+package gopher.service.model.viewpoint;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The byte-level parser must give the same coordinates and scores as parsing the lines with
+ * {@link Double#parseDouble}, including the regions with score -1 that fill the gaps.
+ */
+public class AlignabilityMapIteratorTest {
+
+    private static final String CHROM_INFO_PATH = "src/test/resources/testAlignabilityMap/chromInfo.txt.gz";
+
+    private static void gzip(Path path, String content) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(path))) {
+            out.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void testParseBedGraph(@TempDir Path dir) throws IOException {
+        Path bedGraph = dir.resolve("test.bedgraph.gz");
+        gzip(bedGraph, """
+                chr1\t10\t20\t1
+                chr1\t20\t30\t0.333333
+                chr1\t40\t50\t0.4\r
+                chr1\t50\t60\t1e-05
+                chr1\t60\t70\t0.000244141
+
+                chr2\t0\t2000\t0.5
+                chr3\t5\t6\t0.2500000000000000001""");
+        AlignabilityMapIterator iterator = new AlignabilityMapIterator(bedGraph.toString(), CHROM_INFO_PATH, 50);
+        List<AlignabilityMap> maps = new ArrayList<>();
+        while (iterator.hasNext()) {
+            maps.add(iterator.next());
+        }
+        assertEquals(3, maps.size());
+
+        AlignabilityMap chr1 = maps.get(0);
+        assertEquals("chr1", chr1.getChromName());
+        assertArrayEquals(new int[]{1, 11, 21, 31, 41, 51, 61, 71}, chr1.getCoordinates());
+        int[] expected = {-1, 1, 3, -1, (int) Math.round(1.0 / 0.4), 100000, (int) Math.round(1.0 / 0.000244141), -1};
+        assertArrayEquals(expected, chr1.getScores());
+
+        // chr2 covers the whole chromosome
+        AlignabilityMap chr2 = maps.get(1);
+        assertArrayEquals(new int[]{1}, chr2.getCoordinates());
+        assertArrayEquals(new int[]{2}, chr2.getScores());
+
+        // the mantissa of the last score is too long for the fast path
+        AlignabilityMap chr3 = maps.get(2);
+        assertArrayEquals(new int[]{1, 6, 7}, chr3.getCoordinates());
+        assertArrayEquals(new int[]{-1, 4, -1}, chr3.getScores());
+    }
+}
@@ -11,6 +11,7 @@ import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 /**
@@ -80,4 +81,29 @@ public class AlignabilityMapTest {
         assertEquals(-1, scoreArray.get(1),0.001);
     }
 
-}
\ No newline at end of file
+    /** Mean of the scores of the list as calculated by the original bait code. */
+    private static double meanOfList(AlignabilityMap map, int from, int to) {
+        double score = 0.0;
+        ArrayList<Integer> scores = map.getScoreFromTo(from, to);
+        for (Integer d : scores) {
+            if (d == -1) { score = -1.0; break; }
+            score = score + d;
+        }
+        return score / scores.size();
+    }
+
+    /** The cumulative sums must give the same mean scores as the list of scores for every window. */
+    @Test
+    public void testGetMeanScore() {
+        for (AlignabilityMap map : chr2alMap.values()) {
+            for (int from = 1; from <= 2500; from += 7) {
+                for (int len : new int[]{1, 2, 50, 71, 300}) {
+                    int to = from + len - 1;
+                    assertEquals(meanOfList(map, from, to), map.getMeanScore(from, to), 1e-12,
+                            map.getChromName() + ":" + from + "-" + to);
+                }
+            }
+        }
+        assertTrue(Double.isNaN(chr2alMap.get("chr1").getMeanScore(100, 99)));
+    }
+}
@@ -0,0 +1,79 @@
+package gopher.service.model.viewpoint;
+
+import gopher.io.GenomeSequenceReader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The values calculated by the sliding window of {@link BaitScanner} must be identical to the values
+ * calculated by the {@link Bait} constructor for the same coordinates.
+ */
+public class BaitScannerTest {
+
+    private static GenomeSequenceReader fastaReader;
+
+    private static AlignabilityMap chr1map;
+
+    private static final int BAIT_SIZE = 120;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        fastaReader = new GenomeSequenceReader("src/test/resources/testAlignabilityMap/testAlignabilityMap.fa");
+        String alignabilityPath = "src/test/resources/testAlignabilityMap/testAlignabilityMap.bedgraph.gz";
+        String chromInfoPath = "src/test/resources/testAlignabilityMap/chromInfo.txt.gz";
+        AlignabilityMapIterator iterator = new AlignabilityMapIterator(alignabilityPath, chromInfoPath, 50);
+        while (iterator.hasNext()) {
+            AlignabilityMap map = iterator.next();
+            if (map.getChromName().equals("chr1")) {
+                chr1map = map;
+            }
+        }
+    }
+
+    private void assertSameValues(Bait expected, BaitScanner scanner) {
+        Bait bait = scanner.toBait();
+        assertEquals(expected.getStartPos(), bait.getStartPos());
+        assertEquals(expected.getEndPos(), bait.getEndPos());
+        assertEquals(expected.getGCContent(), bait.getGCContent());
+        assertEquals(expected.getRepeatContent(), bait.getRepeatContent());
+        assertEquals(expected.getAlignabilityScore(), bait.getAlignabilityScore());
+    }
+
+    @Test
+    public void testSlidingDownstream() {
+        int from = 50;
+        int to = 900;
+        BaitScanner scanner = new BaitScanner("chr1", from, to, BAIT_SIZE, fastaReader, chr1map);
+        for (int i = from; i <= to - BAIT_SIZE + 1; i++) {
+            scanner.moveTo(i);
+            Bait expected = new Bait("chr1", i, i + BAIT_SIZE - 1, fastaReader, chr1map);
+            assertSameValues(expected, scanner);
+        }
+    }
+
+    @Test
+    public void testSlidingUpstream() {
+        int from = 900;
+        int to = 2002;
+        BaitScanner scanner = new BaitScanner("chr1", from, to, BAIT_SIZE, fastaReader, chr1map);
+        for (int i = to - BAIT_SIZE + 1; from <= i; i--) {
+            scanner.moveTo(i);
+            Bait expected = new Bait("chr1", i, i + BAIT_SIZE - 1, fastaReader, chr1map);
+            assertSameValues(expected, scanner);
+        }
+    }
+
+    @Test
+    public void testJump() {
+        BaitScanner scanner = new BaitScanner("chr1", 100, 1500, BAIT_SIZE, fastaReader, chr1map);
+        int[] positions = {100, 101, 700, 699, 1200, 1381};
+        for (int i : positions) {
+            scanner.moveTo(i);
+            Bait expected = new Bait("chr1", i, i + BAIT_SIZE - 1, fastaReader, chr1map);
+            assertSameValues(expected, scanner);
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package gopher.service.model.viewpoint;
 
 import gopher.service.model.IntPair;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import gopher.io.GenomeSequenceReader;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
@@ -35,7 +35,7 @@ public class ProbeFactoryTest {
         ClassLoader classLoader = SegmentTest.class.getClassLoader();
         //String testFastaFile = classLoader.getResource("src/test/resources/testAlignabilityMap/testAlignabilityMap.fa").getFile();
         File fasta = new File("src/test/resources/testAlignabilityMap/testAlignabilityMap.fa");
-        IndexedFastaSequenceFile fastaReader = new IndexedFastaSequenceFile(fasta);
+        GenomeSequenceReader fastaReader = new GenomeSequenceReader(fasta.getAbsolutePath());
         testSeg = new Segment("chr1",900,2002, fastaReader, 20);
     }
 
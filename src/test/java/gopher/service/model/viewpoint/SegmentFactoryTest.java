@@ -1,13 +1,17 @@
 package gopher.service.model.viewpoint;
 
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import gopher.io.GenomeSequenceReader;
 
 import gopher.service.model.RestrictionEnzyme;
+import gopher.service.model.digest.CutSiteIndex;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -44,7 +48,7 @@ public class SegmentFactoryTest {
     private static final Integer genomicPos_1 = 125;
     private static final Integer maxDistToGenomicPosUp = 115;
     private static final Integer maxDistToGenomicPosDown = 115;
-    private static IndexedFastaSequenceFile testFastaReader;
+    private static GenomeSequenceReader testFastaReader;
     private static List<RestrictionEnzyme> chosenEnzymeList;
     private static SegmentFactory segmentFactory =null;
 
@@ -67,8 +71,8 @@ public class SegmentFactoryTest {
         ClassLoader classLoader = SegmentFactoryTest.class.getClassLoader();
         testFastaFile = classLoader.getResource("testgenome/test_genome.fa").getFile();
         final File fasta = new File(testFastaFile);
-        testFastaReader = new IndexedFastaSequenceFile(fasta);
-        referenceSequenceLength = testFastaReader.getSequence(refSeqID1).length();
+        testFastaReader = new GenomeSequenceReader(fasta.getAbsolutePath());
+        referenceSequenceLength = testFastaReader.getLength(refSeqID1);
         segmentFactory = new SegmentFactory(refSeqID1,
                 genomicPos_1,
                 testFastaReader,
@@ -149,8 +153,8 @@ public class SegmentFactoryTest {
         int maxDistDown=15;
         SegmentFactory cpm;
         try {
-            testFastaReader = new IndexedFastaSequenceFile(fasta);
-            String seq=testFastaReader.getSequence(refID).getBaseString();
+            testFastaReader = new GenomeSequenceReader(fasta.getAbsolutePath());
+            String seq=new String(testFastaReader.getBases(refID));
             int len = seq.length();
             cpm = new SegmentFactory(refID,
                     genomicPos,
@@ -177,8 +181,20 @@ public class SegmentFactoryTest {
         assertEquals(adjustedGatcSitesOffsetZero,cpm.getAllCuts());
     }
 
-
-
-
-
+    /** The cuts from the cut site index must be the same as the cuts found by scanning the window. */
+    @Test
+    public void testSameCutsWithCutSiteIndex(@TempDir Path dir) throws IOException {
+        Path fasta = dir.resolve("test_genome.fa");
+        Files.copy(Path.of(testFastaFile), fasta);
+        Files.copy(Path.of(testFastaFile + ".fai"), dir.resolve("test_genome.fa.fai"));
+        CutSiteIndex index = CutSiteIndex.open(fasta.toString(), chosenEnzymeList, null);
+        for (String name : testFastaReader.getContigNames()) {
+            int len = testFastaReader.getLength(name);
+            for (int pos = 1; pos <= len; pos += 11) {
+                SegmentFactory expected = new SegmentFactory(name, pos, testFastaReader, len, 17, 23, chosenEnzymeList);
+                SegmentFactory actual = new SegmentFactory(name, pos, testFastaReader, len, 17, 23, chosenEnzymeList, index);
+                assertEquals(expected.getCuttingPositionHashMap(), actual.getCuttingPositionHashMap());
+            }
+        }
+    }
 }
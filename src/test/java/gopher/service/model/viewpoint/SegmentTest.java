@@ -1,7 +1,7 @@
 package gopher.service.model.viewpoint;
 
 import gopher.service.model.IntPair;
-import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import gopher.io.GenomeSequenceReader;
 import gopher.service.model.Default;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,7 +15,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 public class SegmentTest {
 
-    private static IndexedFastaSequenceFile FastaReader;
+    private static GenomeSequenceReader FastaReader;
     private static final String referenceSequenceID = "chr_t4_GATC_short_20bp_and_long_24bp_fragments";
 
     private static Segment segmentA; // no repeats
@@ -32,7 +32,7 @@ public class SegmentTest {
 
         String testFastaFile = classLoader.getResource("testgenome/test_genome.fa").getFile();
         File fasta = new File(testFastaFile);
-        FastaReader = new IndexedFastaSequenceFile(fasta);
+        FastaReader = new GenomeSequenceReader(fasta.getAbsolutePath());
 
         segmentA = buildSegmentA(FastaReader);
         segmentB = buildSegmentB(FastaReader);
@@ -48,7 +48,7 @@ public class SegmentTest {
      * GATCAACCGGTGACATGANCATTT
      * @return A Segment with no repeat bases
      */
-    private static Segment buildSegmentA(IndexedFastaSequenceFile reader) {
+    private static Segment buildSegmentA(GenomeSequenceReader reader) {
         return new Segment(referenceSequenceID,21,44,
                 reader,
                 Default.MARGIN_SIZE);
@@ -63,7 +63,7 @@ public class SegmentTest {
      * @param reader Reader with test FASTA sequence
      * @return A Segment with 10/24 repeat bases
      */
-    private static Segment buildSegmentB(IndexedFastaSequenceFile reader) {
+    private static Segment buildSegmentB(GenomeSequenceReader reader) {
         return new Segment(referenceSequenceID,69,92,
                 reader,
                 Default.MARGIN_SIZE);
@@ -78,7 +78,7 @@ public class SegmentTest {
      * @param reader Reader with test FASTA sequence
      * @return A Segment with 100% repeat bases
      */
-    private static Segment buildSegmentC(IndexedFastaSequenceFile reader) {
+    private static Segment buildSegmentC(GenomeSequenceReader reader) {
         return new Segment(referenceSequenceID,93,112,
                 reader,
                 Default.MARGIN_SIZE);
@@ -330,7 +330,7 @@ public class SegmentTest {
 
         // create segment for testing
         File fasta = new File("src/test/resources/testAlignabilityMap/testAlignabilityMap.fa");
-        FastaReader = new IndexedFastaSequenceFile(fasta);
+        FastaReader = new GenomeSequenceReader(fasta.getAbsolutePath());
         Segment testSeg = new Segment("chr1",900,2002, FastaReader, 250);
         List<IntPair> ip = testSeg.getSegmentMargins();
         Integer upStreamStaPos = ip.get(0).startPos();
@@ -349,4 +349,33 @@ public class SegmentTest {
         }
         assertNotNull(amp);
     }
+
+    /**
+     * The contents are calculated on first access or before the genome is closed. A segment whose statistics are
+     * skipped has no contents and baits.
+     */
+    @Test
+    public void testStatisticsAreCalculatedLazily() throws IOException {
+        Segment skipped = buildSegmentB(FastaReader);
+        Segment eager = buildSegmentB(FastaReader);
+        eager.calculateStatistics();
+        skipped.skipStatistics();
+        FastaReader.close();
+        assertEquals(10.0 / 24, eager.getRepeatContent(), 1e-9);
+        assertTrue(Double.isNaN(skipped.getRepeatContent()));
+        assertEquals(0, skipped.getBaitNumTotal());
+    }
+
+    /** A segment for the same fragment copies the contents from the registry instead of reading the genome. */
+    @Test
+    public void testSharedStatistics() throws IOException {
+        SegmentRegistry registry = new SegmentRegistry();
+        Segment first = new Segment(referenceSequenceID, 69, 92, FastaReader, Default.MARGIN_SIZE, registry);
+        Segment second = new Segment(referenceSequenceID, 69, 92, FastaReader, Default.MARGIN_SIZE, registry);
+        first.calculateStatistics();
+        assertEquals(1, registry.size());
+        FastaReader.close();
+        assertEquals(first.getRepeatContent(), second.getRepeatContent());
+        assertEquals(first.getGCcontentUp(), second.getGCcontentUp());
+    }
 }
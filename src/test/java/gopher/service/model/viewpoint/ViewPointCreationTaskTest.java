@@ -0,0 +1,146 @@
+package gopher.service.model.viewpoint;
+
+import gopher.exception.GopherException;
+import gopher.io.GenomeSequence;
+import gopher.io.GenomeSequenceReader;
+import gopher.service.GopherService;
+import gopher.service.impl.GopherServiceImpl;
+import gopher.service.model.GopherGene;
+import gopher.service.model.GopherModel;
+import gopher.service.model.RestrictionEnzyme;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The viewpoints of the genes are calculated in parallel. If one gene fails, the genes that are still being
+ * calculated must be able to finish with the FASTA readers and the shared objects of the run, which are only
+ * released afterwards.
+ */
+public class ViewPointCreationTaskTest {
+
+    private static final String GENOME = "src/test/resources/testgenome/test_genome.fa";
+    private static final String CHROM1 = "chr_t1_GATC";
+    private static final String CHROM2 = "chr_t2_AAGCTT";
+
+    private static ExecutorService executor;
+
+    @BeforeAll
+    public static void setup() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        executor.shutdown();
+    }
+
+    /** Task whose viewpoints only read a bit of sequence after a while (and fail for the gene FAIL). */
+    private static class TestTask extends ViewPointCreationTask {
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        /** Set if a gene found the reader closed or the registry of the run released. */
+        final AtomicBoolean tornDown = new AtomicBoolean(false);
+
+        TestTask(GopherService service, ExecutorService executor) {
+            super(service, executor);
+        }
+
+        @Override
+        protected Void call() {
+            return null;
+        }
+
+        @Override
+        List<ViewPoint> calculateViewPoints(GopherGene gene, String referenceSequenceID, GenomeSequence fastaReader,
+                                            AlignabilityMap chr2alignMap, int chromLen) {
+            started.incrementAndGet();
+            running.incrementAndGet();
+            try {
+                if (gene.getGeneSymbol().equals("FAIL")) {
+                    throw new IllegalStateException("No viewpoint for FAIL");
+                }
+                // busy for a while without reacting to interrupts
+                long end = System.nanoTime() + 50_000_000L;
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+                try {
+                    if (fastaReader.getBases(referenceSequenceID, 1, 10).length != 10 || segmentRegistry == null) {
+                        tornDown.set(true);
+                    }
+                } catch (RuntimeException e) {
+                    tornDown.set(true);
+                }
+                return List.of();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    private static GopherService service(String... genes) {
+        GopherService service = new GopherServiceImpl(new GopherModel());
+        service.setChosenRestrictionEnzymes(List.of(new RestrictionEnzyme("DpnII", "^GATC")));
+        List<GopherGene> gopherGenes = new ArrayList<>();
+        for (String symbol : genes) {
+            String chrom = symbol.startsWith("B") ? CHROM2 : CHROM1;
+            GopherGene gene = new GopherGene("NM_" + symbol, symbol, false, chrom, "+");
+            gene.addGenomicPosition(50);
+            gopherGenes.add(gene);
+        }
+        service.setGopherGenes(gopherGenes);
+        return service;
+    }
+
+    private static Iterator<AlignabilityMap> alignabilityMaps(GenomeSequenceReader genome) {
+        List<AlignabilityMap> maps = new ArrayList<>();
+        for (String chrom : List.of(CHROM1, CHROM2)) {
+            maps.add(new AlignabilityMap(chrom, new int[]{0, genome.getLength(chrom)}, new int[]{1}, 50));
+        }
+        return maps.iterator();
+    }
+
+    private static GenomeSequenceReader copyGenome(Path dir) throws IOException {
+        Path fasta = dir.resolve("test_genome.fa");
+        Files.copy(Path.of(GENOME), fasta);
+        Files.copy(Path.of(GENOME + ".fai"), dir.resolve("test_genome.fa.fai"));
+        return new GenomeSequenceReader(fasta.toString());
+    }
+
+    @Test
+    public void testAllGenes(@TempDir Path dir) throws Exception {
+        TestTask task = new TestTask(service("A1", "A2", "A3", "B1", "B2"), executor);
+        try (GenomeSequenceReader genome = copyGenome(dir)) {
+            task.createViewPoints(genome, alignabilityMaps(genome));
+        }
+        assertEquals(5, task.started.get());
+        assertFalse(task.tornDown.get());
+    }
+
+    @Test
+    public void testFailingGeneWaitsForRunningGenes(@TempDir Path dir) throws Exception {
+        TestTask task = new TestTask(service("FAIL", "A1", "A2", "A3", "B1", "B2", "B3", "B4"), executor);
+        try (GenomeSequenceReader genome = copyGenome(dir)) {
+            GopherException e = assertThrows(GopherException.class,
+                    () -> task.createViewPoints(genome, alignabilityMaps(genome)));
+            assertTrue(e.getMessage().contains("No viewpoint for FAIL"));
+        }
+        assertEquals(0, task.running.get());
+        assertFalse(task.tornDown.get());
+    }
+}
@@ -1,4 +1,234 @@
 package gopher.service.model.viewpoint;
 
+import gopher.io.GenomeSequence;
+import gopher.io.GenomeSequenceReader;
+import gopher.service.GopherService;
+import gopher.service.impl.GopherServiceImpl;
+import gopher.service.model.GopherModel;
+import gopher.service.model.RestrictionEnzyme;
+import gopher.service.model.digest.CutSiteIndex;
+import gopher.util.Metrics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class ViewPointTest {
+
+    private static final String CHROM = "chrT";
+    private static final int TSS = 10_000;
+    private static final int SIZE_UP = 2_000;
+    private static final int SIZE_DOWN = 1_000;
+
+    private static final List<RestrictionEnzyme> ENZYMES = List.of(new RestrictionEnzyme("DpnII", "^GATC"),
+            new RestrictionEnzyme("HindIII", "A^AGCTT"));
+
+    private static GopherService service;
+
+    /**
+     * In-memory genome (random sequence, i.e., a DpnII cut about every 256 bp) that records the regions that are
+     * read.
+     */
+    private static class CountingGenome implements GenomeSequence {
+        private final byte[] sequence;
+        final List<int[]> reads = new ArrayList<>();
+
+        CountingGenome(int length) {
+            Random random = new Random(42);
+            byte[] acgt = "ACGT".getBytes(StandardCharsets.US_ASCII);
+            sequence = new byte[length];
+            for (int i = 0; i < length; i++) {
+                sequence[i] = acgt[random.nextInt(4)];
+            }
+        }
+
+        @Override
+        public List<String> getContigNames() { return List.of(CHROM); }
+
+        @Override
+        public boolean hasContig(String contig) { return CHROM.equals(contig); }
+
+        @Override
+        public int getLength(String contig) { return sequence.length; }
+
+        @Override
+        public byte[] getBases(String contig, int start, int end) {
+            synchronized (reads) {
+                reads.add(new int[]{start, end});
+            }
+            byte[] bases = new byte[end - start + 1];
+            System.arraycopy(sequence, start - 1, bases, 0, bases.length);
+            return bases;
+        }
+
+        @Override
+        public void close() {}
+
+        /** @return true if any of the regions read since the last reset is within the segment. */
+        boolean wasRead(Segment segment) {
+            return reads.stream().anyMatch(r -> segment.getStartPos() <= r[0] && r[1] <= segment.getEndPos());
+        }
+    }
+
+    @BeforeAll
+    public static void setup() {
+        service = new GopherServiceImpl(new GopherModel());
+        service.setApproach("extended");
+        service.setEstAvgRestFragLen(256);
+        service.setSizeUp(SIZE_UP);
+        service.setSizeDown(SIZE_DOWN);
+        service.setNormalDistributionsExtended();
+        service.setMinFragSize(130);
+        service.setProbeLength(120);
+        service.setMinBaitCount(1);
+        service.setMaxMeanKmerAlignability(10);
+        service.setMinGCcontent(0.2);
+        service.setMaxGCcontent(0.8);
+        ViewPoint.setChosenEnzymes(ENZYMES);
+    }
+
+    private static ViewPoint buildViewPoint(CountingGenome genome, boolean forward) {
+        AlignabilityMap map = new AlignabilityMap(CHROM, new int[]{0, genome.getLength(CHROM)}, new int[]{1}, 50);
+        return new ViewPoint.Builder(CHROM, TSS, genome.getLength(CHROM))
+                .targetName("T")
+                .upstreamLength(SIZE_UP)
+                .downstreamLength(SIZE_DOWN)
+                .isForwardStrand(forward)
+                .minimumFragmentSize(service.getMinFragSize())
+                .fastaReader(genome)
+                .c2alignabilityMap(map)
+                .model(service)
+                .build();
+    }
+
+    /**
+     * The segments outside of the range of an extended viewpoint can never be selected, and so their contents and
+     * baits are never calculated, i.e., the genome is never read for them.
+     */
+    @Test
+    public void testOutOfRangeSegmentsAreNotCalculated() {
+        for (boolean forward : List.of(true, false)) {
+            CountingGenome genome = new CountingGenome(20_000);
+            ViewPoint vp = buildViewPoint(genome, forward);
+            genome.reads.clear(); // the cuts have been searched
+            vp.generateViewpointExtendedApproach(SIZE_UP, SIZE_DOWN, service);
+            int lowerLimit = TSS - (forward ? SIZE_UP : SIZE_DOWN);
+            int upperLimit = TSS + (forward ? SIZE_DOWN : SIZE_UP);
+            int outOfRange = 0;
+            for (Segment segment : vp.getAllSegments()) {
+                if (segment.overlapsRange(lowerLimit, upperLimit)) {
+                    assertTrue(genome.wasRead(segment));
+                } else {
+                    outOfRange++;
+                    assertFalse(genome.wasRead(segment));
+                    assertFalse(segment.isSelected());
+                    assertTrue(segment.isUnselectable());
+                    assertEquals(0, segment.getBaitNumTotal());
+                }
+            }
+            assertTrue(outOfRange > 0);
+            assertTrue(vp.getNumOfSelectedFrags() > 0);
+            // the segments were all calculated or skipped when the viewpoint was generated
+            int reads = genome.reads.size();
+            vp.getAllSegments().forEach(Segment::getMeanRepeatContentOfBaitsAsPercent);
+            assertEquals(reads, genome.reads.size());
+        }
+    }
+
+    /**
+     * Write a genome with stretches without G (and thus without cuts) at the start and in the middle, where the
+     * windows of the viewpoints must be enlarged many times or reach the start of the chromosome.
+     */
+    private static String writeGenome(Path dir, int length) throws IOException {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            boolean desert = i < 3_000 || (length / 4 <= i && i < 3 * length / 4);
+            sb.append(desert ? "ACT".charAt(random.nextInt(3)) : "ACGT".charAt(random.nextInt(4)));
+        }
+        Path fasta = dir.resolve("genome.fa");
+        String header = ">" + CHROM + "\n";
+        Files.writeString(fasta, header + sb + "\n");
+        Files.writeString(dir.resolve("genome.fa.fai"),
+                String.format("%s\t%d\t%d\t%d\t%d\n", CHROM, length, header.length(), length, length + 1));
+        return fasta.toString();
+    }
+
+    private static String design(ViewPoint vp) {
+        StringBuilder sb = new StringBuilder(String.format("%s:%d-%d up=%d down=%d", vp.getTargetName(),
+                vp.getStartPos(), vp.getEndPos(), vp.getUpstreamNucleotideLength(), vp.getDownstreamNucleotideLength()));
+        for (Segment segment : vp.getAllSegments()) {
+            sb.append(String.format(" %d-%d%s", segment.getStartPos(), segment.getEndPos(),
+                    segment.isSelected() ? "*" : ""));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * With a cut-site index, the window of a viewpoint is enlarged by looking up the nearest cuts, and the cuts of the
+     * window are only collected once. The viewpoints must be the same as with the windows of the scanned sequence.
+     */
+    @Test
+    public void testSameDesignsWithCutSiteIndex(@TempDir Path dir) throws IOException {
+        int length = 40_000;
+        String fasta = writeGenome(dir, length);
+        Metrics.Timer cutTimer = Metrics.timer("viewpoints.cuts");
+        try (GenomeSequenceReader genome = new GenomeSequenceReader(fasta)) {
+            CutSiteIndex index = CutSiteIndex.open(fasta, ENZYMES, null);
+            AlignabilityMap map = new AlignabilityMap(CHROM, new int[]{0, length}, new int[]{1}, 50);
+            for (String approach : List.of("simple", "extended")) {
+                GopherService s = new GopherServiceImpl(new GopherModel());
+                s.setApproach(approach);
+                s.setEstAvgRestFragLen(300);
+                s.setSizeUp(SIZE_UP);
+                s.setSizeDown(SIZE_DOWN);
+                s.setNormalDistributionsExtended();
+                s.setNormalDistributionSimple(300);
+                s.setMinFragSize(130);
+                s.setProbeLength(120);
+                s.setMinBaitCount(1);
+                s.setMaxMeanKmerAlignability(10);
+                s.setMinGCcontent(0.2);
+                s.setMaxGCcontent(0.8);
+                for (int pos = 100; pos < length; pos += 700) {
+                    for (boolean forward : List.of(true, false)) {
+                        List<String> designs = new ArrayList<>();
+                        for (CutSiteIndex cutSiteIndex : new CutSiteIndex[]{null, index}) {
+                            long factories = cutTimer.getCount();
+                            ViewPoint vp = new ViewPoint.Builder(CHROM, pos, length)
+                                    .targetName("T" + pos)
+                                    .upstreamLength(SIZE_UP)
+                                    .downstreamLength(SIZE_DOWN)
+                                    .isForwardStrand(forward)
+                                    .minimumFragmentSize(s.getMinFragSize())
+                                    .fastaReader(genome)
+                                    .c2alignabilityMap(map)
+                                    .cutSiteIndex(cutSiteIndex)
+                                    .model(s)
+                                    .build();
+                            if (cutSiteIndex != null) {
+                                assertTrue(cutTimer.getCount() - factories <= 1);
+                            }
+                            if (approach.equals("simple")) {
+                                vp.generateViewpointSimple(s);
+                            } else {
+                                vp.generateViewpointExtendedApproach(SIZE_UP, SIZE_DOWN, s);
+                            }
+                            designs.add(design(vp));
+                        }
+                        assertEquals(designs.get(0), designs.get(1), approach);
+                    }
+                }
+            }
+        }
+    }
 }
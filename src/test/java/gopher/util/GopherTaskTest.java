@@ -0,0 +1,140 @@
+package gopher.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A task that is run headless reports to the listener, and does not need the JavaFX toolkit (which is not started
+ * in the tests).
+ */
+public class GopherTaskTest {
+
+    @Test
+    public void testRunHeadless() throws Exception {
+        GopherTask<String> task = new GopherTask<>() {
+            @Override
+            protected String call() {
+                updateTitle("Counting");
+                for (int i = 1; i <= 4; i++) {
+                    updateMessage("Step " + i);
+                    updateProgress(i, 4);
+                }
+                return "done";
+            }
+        };
+        List<String> events = new ArrayList<>();
+        String result = task.runHeadless(new GopherTask.ProgressListener() {
+            @Override
+            public void progress(double workDone, double max) {
+                events.add(workDone + "/" + max);
+            }
+
+            @Override
+            public void message(String message) {
+                events.add(message);
+            }
+        });
+        assertEquals("done", result);
+        assertEquals(List.of("Counting", "Step 1", "1.0/4.0", "Step 2", "2.0/4.0", "Step 3", "3.0/4.0", "Step 4", "4.0/4.0"),
+                events);
+    }
+
+    /**
+     * Worker threads that report every item publish only a few updates (whose messages are formatted), and the last
+     * update is always published.
+     */
+    @Test
+    public void testThrottledProgress() throws Exception {
+        int n = 200_000;
+        AtomicInteger formatted = new AtomicInteger();
+        GopherTask<Void> task = new GopherTask<>() {
+            @Override
+            protected Void call() throws Exception {
+                ExecutorService executor = Executors.newFixedThreadPool(4);
+                AtomicLong done = new AtomicLong();
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int t = 0; t < 4; t++) {
+                        futures.add(executor.submit(() -> {
+                            for (int k = 0; k < n / 4; k++) {
+                                long i = done.incrementAndGet();
+                                updateProgress(i, n, () -> {
+                                    formatted.incrementAndGet();
+                                    return "Item " + i;
+                                });
+                            }
+                        }));
+                    }
+                    for (Future<?> f : futures) {
+                        f.get();
+                    }
+                } finally {
+                    executor.shutdown();
+                }
+                return null;
+            }
+        };
+        List<Double> progress = Collections.synchronizedList(new ArrayList<>());
+        List<String> messages = Collections.synchronizedList(new ArrayList<>());
+        task.runHeadless(new GopherTask.ProgressListener() {
+            @Override
+            public void progress(double workDone, double max) {
+                progress.add(workDone);
+            }
+
+            @Override
+            public void message(String message) {
+                messages.add(message);
+            }
+        });
+        assertTrue(progress.contains((double) n));
+        assertTrue(messages.contains("Item " + n));
+        assertEquals(progress.size(), formatted.get());
+        assertEquals(messages.size(), formatted.get());
+        assertTrue(progress.size() < 1000, "too many updates: " + progress.size());
+    }
+
+    /** If more work is reported than the total, the updates beyond the total are still throttled. */
+    @Test
+    public void testThrottledProgressBeyondTotal() throws Exception {
+        int n = 100_000;
+        AtomicInteger formatted = new AtomicInteger();
+        GopherTask<Void> task = new GopherTask<>() {
+            @Override
+            protected Void call() {
+                for (int i = 1; i <= 2 * n; i++) {
+                    int k = i;
+                    updateProgress(i, n, () -> {
+                        formatted.incrementAndGet();
+                        return "Item " + k;
+                    });
+                }
+                return null;
+            }
+        };
+        List<Double> progress = new ArrayList<>();
+        task.runHeadless(new GopherTask.ProgressListener() {
+            @Override
+            public void progress(double workDone, double max) {
+                progress.add(workDone);
+            }
+
+            @Override
+            public void message(String message) {
+            }
+        });
+        assertTrue(progress.contains((double) n));
+        assertEquals(progress.size(), formatted.get());
+        assertTrue(progress.size() < 1000, "too many updates: " + progress.size());
+    }
+}
@@ -0,0 +1,90 @@
+package gopher.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTest {
+
+    @Test
+    public void testTimer() {
+        Metrics.Timer timer = Metrics.timer("test.timer");
+        assertSame(timer, Metrics.timer("test.timer"));
+        for (int i = 1; i <= 100; i++) {
+            timer.record(i * 1_000_000L); // 1 to 100 ms
+        }
+        assertEquals(100, timer.getCount());
+        assertEquals(5050.0, timer.getTotalMillis(), 1e-9);
+        assertEquals(50.5, timer.getMeanMillis(), 1e-9);
+        assertEquals(100.0, timer.getMaxMillis(), 1e-9);
+        // the percentiles are the upper bounds of power-of-two buckets, i.e., at most twice the exact value
+        double median = timer.getPercentileMillis(0.5);
+        assertTrue(median >= 50.0 && median <= 100.0, "median " + median);
+        assertEquals(100.0, timer.getPercentileMillis(0.99), 1e-9);
+    }
+
+    @Test
+    public void testCounterFromSeveralThreads() throws InterruptedException {
+        Metrics.Counter counter = Metrics.counter("test.counter");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    counter.increment();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, counter.getCount());
+    }
+
+    @Test
+    public void testWriteTsv(@TempDir Path dir) throws Exception {
+        Metrics.timer("test.tsv.timer").record(2_000_000L);
+        Metrics.counter("test.tsv.counter").add(7);
+        Path path = Path.of(Metrics.getMetricsPath(dir.resolve("project-report.txt").toString()));
+        assertEquals(dir.resolve("project-report-metrics.tsv"), path);
+        Metrics.writeTsv(path);
+        List<String> lines = Files.readAllLines(path);
+        assertTrue(lines.get(0).startsWith("name\ttype\tcount\ttotal_ms"));
+        assertTrue(lines.contains("test.tsv.timer\ttimer\t1\t2.000\t2.000\t2.000\t2.000\t2.000\t2.000"));
+        assertTrue(lines.contains("test.tsv.counter\tcounter\t7\t\t\t\t\t\t"));
+        for (String line : lines) {
+            assertEquals(9, line.split("\t", -1).length, line);
+        }
+    }
+
+    /** The file must be machine-readable, also if the default locale uses decimal commas. */
+    @Test
+    public void testTsvIndependentOfLocale() {
+        Metrics.timer("test.locale.timer").record(1_500_000L);
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.GERMANY);
+            assertTrue(Metrics.getTsvLines().contains("test.locale.timer\ttimer\t1\t1.500\t1.500\t1.500\t1.500\t1.500\t1.500"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void testReset() {
+        Metrics.Timer timer = Metrics.timer("test.reset.timer");
+        timer.record(1000);
+        Metrics.reset();
+        assertEquals(0, timer.getCount());
+        assertEquals(0.0, timer.getMaxMillis());
+        assertFalse(Metrics.getTimers().contains(timer));
+    }
+}